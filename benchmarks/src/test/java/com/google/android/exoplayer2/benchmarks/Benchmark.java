@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmarks;
+
+import com.google.android.exoplayer2.util.Assertions;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a benchmarked operation for a number of warmup iterations, followed by a number of measured
+ * iterations, and reports the throughput and allocation rate of the measured iterations.
+ */
+/* package */ final class Benchmark {
+
+  /** An operation to benchmark. */
+  public interface Operation {
+
+    /**
+     * Runs one iteration of the operation.
+     *
+     * @param counters The {@link Counters} to which processed bytes and samples should be added.
+     * @throws Exception If an error occurs.
+     */
+    void run(Counters counters) throws Exception;
+  }
+
+  /** Counts of the work done by an {@link Operation}. */
+  public static final class Counters {
+
+    /** The number of bytes processed. */
+    public long bytes;
+    /** The number of samples, or other units of work such as manifest segments, processed. */
+    public long samples;
+  }
+
+  /** The result of a benchmark. */
+  public static final class Result {
+
+    /** The name of the benchmark. */
+    public final String name;
+    /** The number of measured iterations. */
+    public final int iterations;
+    /** The total duration of the measured iterations, in nanoseconds. */
+    public final long durationNs;
+    /** The number of bytes processed by the measured iterations. */
+    public final long bytes;
+    /** The number of samples processed by the measured iterations. */
+    public final long samples;
+    /**
+     * The number of bytes allocated by the measured iterations, or -1 if the JVM doesn't support
+     * measuring allocations.
+     */
+    public final long allocatedBytes;
+
+    private Result(
+        String name,
+        int iterations,
+        long durationNs,
+        long bytes,
+        long samples,
+        long allocatedBytes) {
+      this.name = name;
+      this.iterations = iterations;
+      this.durationNs = durationNs;
+      this.bytes = bytes;
+      this.samples = samples;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    /** Returns the average duration of a measured iteration, in milliseconds. */
+    public double getMillisecondsPerIteration() {
+      return durationNs / 1e6 / iterations;
+    }
+
+    /** Returns the throughput in megabytes per second. */
+    public double getMegabytesPerSecond() {
+      return bytes / (1024d * 1024d) / (durationNs / 1e9);
+    }
+
+    /** Returns the throughput in samples per second. */
+    public double getSamplesPerSecond() {
+      return samples / (durationNs / 1e9);
+    }
+
+    /** Returns the number of bytes allocated per sample, or -1 if unknown. */
+    public double getAllocatedBytesPerSample() {
+      return allocatedBytes < 0 || samples == 0 ? -1 : (double) allocatedBytes / samples;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s: %.3f ms/iteration, %.2f MB/s, %.0f samples/s, %.1f allocated bytes/sample"
+              + " (%d iterations)",
+          name,
+          getMillisecondsPerIteration(),
+          getMegabytesPerSecond(),
+          getSamplesPerSecond(),
+          getAllocatedBytesPerSample(),
+          iterations);
+    }
+  }
+
+  /** The name of the system property used to set the number of warmup iterations. */
+  public static final String WARMUP_ITERATIONS_PROPERTY = "benchmarkWarmupIterations";
+  /** The name of the system property used to set the number of measurement iterations. */
+  public static final String MEASUREMENT_ITERATIONS_PROPERTY = "benchmarkMeasurementIterations";
+
+  private static final int DEFAULT_WARMUP_ITERATIONS = 1;
+  private static final int DEFAULT_MEASUREMENT_ITERATIONS = 3;
+
+  private Benchmark() {}
+
+  /**
+   * Runs a benchmark, printing and returning its {@link Result}.
+   *
+   * @param name The name of the benchmark.
+   * @param operation The {@link Operation} to benchmark.
+   * @return The {@link Result}.
+   * @throws Exception If the operation throws.
+   */
+  public static Result run(String name, Operation operation) throws Exception {
+    int warmupIterations = getIntProperty(WARMUP_ITERATIONS_PROPERTY, DEFAULT_WARMUP_ITERATIONS);
+    int measurementIterations =
+        getIntProperty(MEASUREMENT_ITERATIONS_PROPERTY, DEFAULT_MEASUREMENT_ITERATIONS);
+    for (int i = 0; i < warmupIterations; i++) {
+      operation.run(new Counters());
+    }
+    Counters counters = new Counters();
+    long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < measurementIterations; i++) {
+      operation.run(counters);
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    long endAllocatedBytes = getCurrentThreadAllocatedBytes();
+    long allocatedBytes =
+        startAllocatedBytes < 0 || endAllocatedBytes < 0
+            ? -1
+            : endAllocatedBytes - startAllocatedBytes;
+    Result result =
+        new Result(
+            name,
+            measurementIterations,
+            durationNs,
+            counters.bytes,
+            counters.samples,
+            allocatedBytes);
+    System.out.println(result);
+    return result;
+  }
+
+  /**
+   * Measures the number of heap bytes retained by the object returned by {@code supplier}, by
+   * comparing heap usage after garbage collection before and after it's created. The result is
+   * printed and returned. It's an estimate, since the JVM doesn't guarantee that garbage collection
+   * is complete.
+   *
+   * @param name The name of the measurement.
+   * @param supplier Creates the object whose retained size is measured.
+   * @return The estimated number of retained bytes.
+   * @throws Exception If the supplier throws.
+   */
+  public static long measureRetainedBytes(String name, Callable<?> supplier) throws Exception {
+    long startUsedBytes = getUsedHeapBytesAfterGc();
+    Object retained = supplier.call();
+    long retainedBytes = getUsedHeapBytesAfterGc() - startUsedBytes;
+    // Keep the object reachable until its retained size has been measured.
+    Assertions.checkNotNull(retained);
+    System.out.println(String.format(Locale.US, "%s: %d retained bytes", name, retainedBytes));
+    return retainedBytes;
+  }
+
+  private static long getUsedHeapBytesAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static int getIntProperty(String name, int defaultValue) {
+    String value = System.getProperty(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread, or -1 if unsupported. Reflection
+   * is used because java.lang.management isn't part of the Android SDK against which the
+   * benchmarks are compiled.
+   */
+  private static long getCurrentThreadAllocatedBytes() {
+    try {
+      Object threadMxBean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getThreadMXBean")
+              .invoke(/* obj= */ null);
+      Method getThreadAllocatedBytes =
+          Class.forName("com.sun.management.ThreadMXBean")
+              .getMethod("getThreadAllocatedBytes", long.class);
+      return (long) getThreadAllocatedBytes.invoke(threadMxBean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
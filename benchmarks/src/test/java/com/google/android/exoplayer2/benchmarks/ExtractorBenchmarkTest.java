@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmarks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.EOFException;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Benchmarks the throughput of extractors, excluding the cost of buffering samples. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorBenchmarkTest {
+
+  /** Creates extractor instances. */
+  private interface ExtractorFactory {
+    Extractor create();
+  }
+
+  @Test
+  public void fragmentedMp4() throws Exception {
+    benchmark("FragmentedMp4Extractor", FragmentedMp4Extractor::new, "mp4/sample_fragmented.mp4");
+  }
+
+  @Test
+  public void ts() throws Exception {
+    benchmark("TsExtractor", TsExtractor::new, "ts/sample.ts");
+  }
+
+  @Test
+  public void matroska() throws Exception {
+    benchmark("MatroskaExtractor", MatroskaExtractor::new, "mkv/sample.mkv");
+  }
+
+  @Test
+  public void mp3() throws Exception {
+    benchmark("Mp3Extractor", Mp3Extractor::new, "mp3/bear.mp3");
+  }
+
+  private static void benchmark(String name, ExtractorFactory extractorFactory, String file)
+      throws Exception {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), file);
+    Benchmark.Result result =
+        Benchmark.run(
+            name,
+            counters -> {
+              counters.samples += extract(extractorFactory.create(), data);
+              counters.bytes += data.length;
+            });
+    assertThat(result.samples).isGreaterThan(0);
+  }
+
+  /** Extracts all samples from {@code data}, returning the number of samples output. */
+  private static int extract(Extractor extractor, byte[] data)
+      throws IOException, InterruptedException {
+    CountingExtractorOutput output = new CountingExtractorOutput();
+    extractor.init(output);
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+    PositionHolder positionHolder = new PositionHolder();
+    ExtractorInput input = openInput(dataSource, /* position= */ 0);
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        dataSource.close();
+        input = openInput(dataSource, positionHolder.position);
+      }
+    }
+    dataSource.close();
+    extractor.release();
+    return output.trackOutput.sampleCount;
+  }
+
+  private static ExtractorInput openInput(ByteArrayDataSource dataSource, long position)
+      throws IOException {
+    long length =
+        dataSource.open(new DataSpec(Uri.EMPTY, position, C.LENGTH_UNSET, /* key= */ null));
+    return new DefaultExtractorInput(dataSource, position, position + length);
+  }
+
+  /** An {@link ExtractorOutput} that discards all samples, counting them as it does so. */
+  private static final class CountingExtractorOutput implements ExtractorOutput {
+
+    private final CountingTrackOutput trackOutput;
+
+    public CountingExtractorOutput() {
+      trackOutput = new CountingTrackOutput();
+    }
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      // All tracks share one output, since only the total sample count is of interest.
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+  }
+
+  /** A {@link TrackOutput} that discards sample data and counts samples. */
+  private static final class CountingTrackOutput implements TrackOutput {
+
+    private final byte[] scratch;
+
+    public int sampleCount;
+
+    public CountingTrackOutput() {
+      scratch = new byte[4096];
+    }
+
+    @Override
+    public void format(Format format) {
+      // Do nothing.
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      int bytesRead = input.read(scratch, 0, Math.min(length, scratch.length));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new EOFException();
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      data.skipBytes(length);
+    }
+
+    @Override
+    public void sampleMetadata(
+        long timeUs,
+        @C.BufferFlags int flags,
+        int size,
+        int offset,
+        @Nullable CryptoData encryptionData) {
+      sampleCount++;
+    }
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmarks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifestParser;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks parsing of large synthetic DASH, HLS and SmoothStreaming manifests, such as those of
+ * live streams with multi-hour DVR windows.
+ *
+ * <p>Each benchmark reports parse time, allocated bytes per segment and the heap retained by the
+ * parsed manifest.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestParserBenchmarkTest {
+
+  private static final Uri MANIFEST_URI = Uri.parse("https://example.com/live/manifest");
+
+  private static final int DASH_PERIOD_COUNT = 12;
+  private static final int DASH_SEGMENTS_PER_PERIOD = 1000;
+  private static final int DASH_VIDEO_REPRESENTATION_COUNT = 6;
+  private static final int DASH_AUDIO_LANGUAGE_COUNT = 4;
+
+  private static final int HLS_SEGMENT_COUNT = 12_000;
+  private static final int HLS_VARIANT_COUNT = 12;
+  private static final int HLS_AUDIO_RENDITION_COUNT = 8;
+  private static final int HLS_SUBTITLE_RENDITION_COUNT = 16;
+
+  private static final int SS_CHUNK_COUNT = 12_000;
+  private static final int SS_VIDEO_QUALITY_LEVEL_COUNT = 6;
+
+  private static final long SEGMENT_DURATION_MS = 2000;
+
+  @Test
+  public void dashMultiPeriodSegmentTimeline() throws Exception {
+    byte[] manifest = Util.getUtf8Bytes(createDashManifest());
+    DashManifestParser parser = new DashManifestParser();
+    benchmark(
+        "DashManifestParser",
+        manifest,
+        DASH_PERIOD_COUNT * DASH_SEGMENTS_PER_PERIOD,
+        () -> {
+          DashManifest dashManifest =
+              parser.parse(MANIFEST_URI, new ByteArrayInputStream(manifest));
+          assertThat(dashManifest.getPeriodCount()).isEqualTo(DASH_PERIOD_COUNT);
+          return dashManifest;
+        });
+  }
+
+  @Test
+  public void hlsMediaPlaylist() throws Exception {
+    byte[] playlist = Util.getUtf8Bytes(createHlsMediaPlaylist());
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    benchmark(
+        "HlsPlaylistParser media playlist",
+        playlist,
+        HLS_SEGMENT_COUNT,
+        () -> {
+          HlsMediaPlaylist mediaPlaylist =
+              (HlsMediaPlaylist) parser.parse(MANIFEST_URI, new ByteArrayInputStream(playlist));
+          assertThat(mediaPlaylist.segments).hasSize(HLS_SEGMENT_COUNT);
+          return mediaPlaylist;
+        });
+  }
+
+  @Test
+  public void hlsMediaPlaylistRefresh() throws Exception {
+    byte[] playlist = Util.getUtf8Bytes(createHlsMediaPlaylist());
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser().parse(MANIFEST_URI, new ByteArrayInputStream(playlist));
+    HlsPlaylistParser parser = new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousPlaylist);
+    benchmark(
+        "HlsPlaylistParser media playlist refresh",
+        playlist,
+        HLS_SEGMENT_COUNT,
+        () -> {
+          HlsMediaPlaylist mediaPlaylist =
+              (HlsMediaPlaylist) parser.parse(MANIFEST_URI, new ByteArrayInputStream(playlist));
+          assertThat(mediaPlaylist.segments).hasSize(HLS_SEGMENT_COUNT);
+          return mediaPlaylist;
+        });
+  }
+
+  @Test
+  public void hlsMasterPlaylist() throws Exception {
+    byte[] playlist = Util.getUtf8Bytes(createHlsMasterPlaylist());
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    benchmark(
+        "HlsPlaylistParser master playlist",
+        playlist,
+        HLS_VARIANT_COUNT + HLS_AUDIO_RENDITION_COUNT + HLS_SUBTITLE_RENDITION_COUNT,
+        () -> {
+          HlsMasterPlaylist masterPlaylist =
+              (HlsMasterPlaylist) parser.parse(MANIFEST_URI, new ByteArrayInputStream(playlist));
+          assertThat(masterPlaylist.variants).hasSize(HLS_VARIANT_COUNT);
+          return masterPlaylist;
+        });
+  }
+
+  @Test
+  public void smoothStreaming() throws Exception {
+    byte[] manifest = Util.getUtf8Bytes(createSsManifest());
+    SsManifestParser parser = new SsManifestParser();
+    benchmark(
+        "SsManifestParser",
+        manifest,
+        2 * SS_CHUNK_COUNT,
+        () -> {
+          SsManifest ssManifest = parser.parse(MANIFEST_URI, new ByteArrayInputStream(manifest));
+          assertThat(ssManifest.streamElements[0].chunkCount).isEqualTo(SS_CHUNK_COUNT);
+          return ssManifest;
+        });
+  }
+
+  /** Parses a manifest. */
+  private interface ManifestSupplier {
+    Object parse() throws Exception;
+  }
+
+  /**
+   * Benchmarks parsing a manifest, counting segments as samples, and then measures the heap
+   * retained by a single parsed instance.
+   */
+  private static void benchmark(
+      String name, byte[] manifest, int segmentCount, ManifestSupplier supplier) throws Exception {
+    Benchmark.Result result =
+        Benchmark.run(
+            name,
+            counters -> {
+              supplier.parse();
+              counters.bytes += manifest.length;
+              counters.samples += segmentCount;
+            });
+    assertThat(result.samples).isGreaterThan(0);
+    Benchmark.measureRetainedBytes(name, supplier::parse);
+  }
+
+  /**
+   * Returns a dynamic multi-period MPD in which each period lists every segment in its
+   * SegmentTimeline, as produced by many live packagers.
+   */
+  private static String createDashManifest() {
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:DASH:schema:MPD:2011\" type=\"dynamic\"")
+        .append(" availabilityStartTime=\"2020-01-01T00:00:00Z\"")
+        .append(" timeShiftBufferDepth=\"PT7H\" minimumUpdatePeriod=\"PT2S\"")
+        .append(" minBufferTime=\"PT1.5S\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n");
+    long periodDurationMs = DASH_SEGMENTS_PER_PERIOD * SEGMENT_DURATION_MS;
+    for (int period = 0; period < DASH_PERIOD_COUNT; period++) {
+      long periodStartMs = period * periodDurationMs;
+      builder
+          .append(" <Period id=\"")
+          .append(period)
+          .append("\" start=\"PT")
+          .append(formatSeconds(periodStartMs))
+          .append("S\">\n")
+          .append("  <SegmentTemplate timescale=\"1000\" presentationTimeOffset=\"")
+          .append(periodStartMs)
+          .append("\" initialization=\"$RepresentationID$/init.mp4\"")
+          .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+          .append("   <SegmentTimeline>\n");
+      for (int segment = 0; segment < DASH_SEGMENTS_PER_PERIOD; segment++) {
+        // Vary durations so that the timeline can't be collapsed into repeat counts.
+        long durationMs = SEGMENT_DURATION_MS + (segment % 2 == 0 ? 1 : -1);
+        builder
+            .append("    <S t=\"")
+            .append(periodStartMs + segment * SEGMENT_DURATION_MS)
+            .append("\" d=\"")
+            .append(durationMs)
+            .append("\"/>\n");
+      }
+      builder.append("   </SegmentTimeline>\n").append("  </SegmentTemplate>\n");
+      builder.append("  <AdaptationSet id=\"0\" mimeType=\"video/mp4\">\n");
+      for (int i = 0; i < DASH_VIDEO_REPRESENTATION_COUNT; i++) {
+        int height = 144 * (i + 1);
+        builder
+            .append("   <Representation id=\"video")
+            .append(i)
+            .append("\" codecs=\"avc1.4d401f\" width=\"")
+            .append(height * 16 / 9)
+            .append("\" height=\"")
+            .append(height)
+            .append("\" frameRate=\"30\" bandwidth=\"")
+            .append(400_000 * (i + 1))
+            .append("\"/>\n");
+      }
+      builder.append("  </AdaptationSet>\n");
+      for (int i = 0; i < DASH_AUDIO_LANGUAGE_COUNT; i++) {
+        builder
+            .append("  <AdaptationSet id=\"")
+            .append(i + 1)
+            .append("\" mimeType=\"audio/mp4\" lang=\"lang")
+            .append(i)
+            .append("\">\n")
+            .append("   <Role schemeIdUri=\"urn:mpeg:dash:role:2011\" value=\"main\"/>\n")
+            .append("   <Representation id=\"audio")
+            .append(i)
+            .append("\" codecs=\"mp4a.40.2\" audioSamplingRate=\"48000\" bandwidth=\"128000\">\n")
+            .append("    <AudioChannelConfiguration")
+            .append(" schemeIdUri=\"urn:mpeg:dash:23003:3:audio_channel_configuration:2011\"")
+            .append(" value=\"2\"/>\n")
+            .append("   </Representation>\n")
+            .append("  </AdaptationSet>\n");
+      }
+      builder.append(" </Period>\n");
+    }
+    builder.append("</MPD>\n");
+    return builder.toString();
+  }
+
+  /** Returns a live media playlist with a long sliding window and program date times. */
+  private static String createHlsMediaPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:6\n")
+        .append("#EXT-X-TARGETDURATION:2\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:100000\n")
+        .append("#EXT-X-DISCONTINUITY-SEQUENCE:10\n")
+        .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\",IV=0x1234\n");
+    for (int i = 0; i < HLS_SEGMENT_COUNT; i++) {
+      if (i % 1000 == 0) {
+        builder.append("#EXT-X-DISCONTINUITY\n");
+      }
+      long timeS = i * SEGMENT_DURATION_MS / 1000;
+      builder
+          .append("#EXT-X-PROGRAM-DATE-TIME:")
+          .append(
+              Util.formatInvariant(
+                  "2020-01-01T%02d:%02d:%02d.000Z", timeS / 3600, (timeS / 60) % 60, timeS % 60))
+          .append('\n')
+          .append("#EXTINF:2.000,\n")
+          .append("https://example.com/live/video/segment")
+          .append(100_000 + i)
+          .append(".ts\n");
+    }
+    return builder.toString();
+  }
+
+  /** Returns a master playlist with many variants and alternative renditions. */
+  private static String createHlsMasterPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n").append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+    for (int i = 0; i < HLS_AUDIO_RENDITION_COUNT; i++) {
+      builder
+          .append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",NAME=\"Audio ")
+          .append(i)
+          .append("\",LANGUAGE=\"lang")
+          .append(i)
+          .append("\",DEFAULT=")
+          .append(i == 0 ? "YES" : "NO")
+          .append(",AUTOSELECT=YES,CHANNELS=\"2\",URI=\"audio/")
+          .append(i)
+          .append("/playlist.m3u8\"\n");
+    }
+    for (int i = 0; i < HLS_SUBTITLE_RENDITION_COUNT; i++) {
+      builder
+          .append("#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",NAME=\"Subtitles ")
+          .append(i)
+          .append("\",LANGUAGE=\"lang")
+          .append(i)
+          .append("\",AUTOSELECT=YES,URI=\"subs/")
+          .append(i)
+          .append("/playlist.m3u8\"\n");
+    }
+    for (int i = 0; i < HLS_VARIANT_COUNT; i++) {
+      int height = 144 * (i + 1);
+      builder
+          .append("#EXT-X-STREAM-INF:BANDWIDTH=")
+          .append(400_000 * (i + 1))
+          .append(",AVERAGE-BANDWIDTH=")
+          .append(350_000 * (i + 1))
+          .append(",CODECS=\"avc1.4d401f,mp4a.40.2\",RESOLUTION=")
+          .append(height * 16 / 9)
+          .append('x')
+          .append(height)
+          .append(",FRAME-RATE=30.000,AUDIO=\"audio\",SUBTITLES=\"subs\"\n")
+          .append("video/")
+          .append(i)
+          .append("/playlist.m3u8\n");
+    }
+    return builder.toString();
+  }
+
+  /** Returns a SmoothStreaming manifest with long video and audio stream indexes. */
+  private static String createSsManifest() {
+    long timescale = 10_000_000;
+    long chunkDuration = SEGMENT_DURATION_MS * 10_000;
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<SmoothStreamingMedia MajorVersion=\"2\" MinorVersion=\"0\" TimeScale=\"")
+        .append(timescale)
+        .append("\" Duration=\"")
+        .append(SS_CHUNK_COUNT * chunkDuration)
+        .append("\">\n");
+    builder
+        .append(" <StreamIndex Type=\"video\" Name=\"video\" Chunks=\"")
+        .append(SS_CHUNK_COUNT)
+        .append("\" QualityLevels=\"")
+        .append(SS_VIDEO_QUALITY_LEVEL_COUNT)
+        .append("\" Url=\"QualityLevels({bitrate})/Fragments(video={start time})\">\n");
+    for (int i = 0; i < SS_VIDEO_QUALITY_LEVEL_COUNT; i++) {
+      int height = 144 * (i + 1);
+      builder
+          .append("  <QualityLevel Index=\"")
+          .append(i)
+          .append("\" Bitrate=\"")
+          .append(400_000 * (i + 1))
+          .append("\" FourCC=\"H264\" MaxWidth=\"")
+          .append(height * 16 / 9)
+          .append("\" MaxHeight=\"")
+          .append(height)
+          .append("\" CodecPrivateData=\"00000001674D401F9A0280F6C0440000030004000003")
+          .append("00CA3C60C92000000001685E0A64C8\"/>\n");
+    }
+    appendSsChunks(builder, chunkDuration);
+    builder
+        .append(" </StreamIndex>\n")
+        .append(" <StreamIndex Type=\"audio\" Name=\"audio\" Chunks=\"")
+        .append(SS_CHUNK_COUNT)
+        .append("\" QualityLevels=\"1\" Url=\"QualityLevels({bitrate})/Fragments(audio={start")
+        .append(" time})\">\n")
+        .append("  <QualityLevel Index=\"0\" Bitrate=\"128000\" FourCC=\"AACL\"")
+        .append(" SamplingRate=\"48000\" Channels=\"2\" BitsPerSample=\"16\" PacketSize=\"4\"")
+        .append(" AudioTag=\"255\" CodecPrivateData=\"1190\"/>\n");
+    appendSsChunks(builder, chunkDuration);
+    builder.append(" </StreamIndex>\n").append("</SmoothStreamingMedia>\n");
+    return builder.toString();
+  }
+
+  private static void appendSsChunks(StringBuilder builder, long chunkDuration) {
+    for (int i = 0; i < SS_CHUNK_COUNT; i++) {
+      builder
+          .append("  <c t=\"")
+          .append(i * chunkDuration)
+          .append("\" d=\"")
+          .append(chunkDuration)
+          .append("\"/>\n");
+    }
+  }
+
+  private static String formatSeconds(long timeMs) {
+    return Util.formatInvariant("%d.%03d", timeMs / 1000, timeMs % 1000);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmarks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Benchmarks writing to, reading from and seeking within a {@link SampleQueue}. */
+@RunWith(AndroidJUnit4.class)
+public final class SampleQueueBenchmarkTest {
+
+  private static final Format FORMAT = Format.createSampleFormat("id", "video/avc", 0);
+  private static final int ALLOCATION_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+  private static final int SAMPLE_SIZE = 4096;
+  private static final int SAMPLE_COUNT = 10_000;
+  private static final int KEYFRAME_INTERVAL = 30;
+  private static final long SAMPLE_DURATION_US = 33_333;
+  private static final int SEEK_COUNT = 1000;
+
+  @Test
+  public void writeAndRead() throws Exception {
+    ParsableByteArray sampleData = new ParsableByteArray(SAMPLE_SIZE);
+    Benchmark.Result result =
+        Benchmark.run(
+            "SampleQueue write and read",
+            counters -> {
+              SampleQueue sampleQueue = createSampleQueue();
+              DecoderInputBuffer buffer =
+                  new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+              FormatHolder formatHolder = new FormatHolder();
+              for (int i = 0; i < SAMPLE_COUNT; i++) {
+                writeSample(sampleQueue, sampleData, i);
+                readSample(sampleQueue, formatHolder, buffer);
+                sampleQueue.discardToRead();
+              }
+              counters.samples += SAMPLE_COUNT;
+              counters.bytes += (long) SAMPLE_COUNT * SAMPLE_SIZE;
+              sampleQueue.release();
+            });
+    assertThat(result.samples).isGreaterThan(0);
+  }
+
+  @Test
+  public void seekInLongQueue() throws Exception {
+    ParsableByteArray sampleData = new ParsableByteArray(SAMPLE_SIZE);
+    SampleQueue sampleQueue = createSampleQueue();
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      writeSample(sampleQueue, sampleData, i);
+    }
+    long durationUs = SAMPLE_COUNT * SAMPLE_DURATION_US;
+    Benchmark.Result result =
+        Benchmark.run(
+            "SampleQueue seek",
+            counters -> {
+              for (int i = 0; i < SEEK_COUNT; i++) {
+                long seekTimeUs = durationUs * i / SEEK_COUNT;
+                assertThat(sampleQueue.seekTo(seekTimeUs, /* allowTimeBeyondBuffer= */ false))
+                    .isTrue();
+              }
+              counters.samples += SEEK_COUNT;
+            });
+    sampleQueue.release();
+    assertThat(result.samples).isGreaterThan(0);
+  }
+
+  private static SampleQueue createSampleQueue() {
+    SampleQueue sampleQueue =
+        new SampleQueue(
+            new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE),
+            DrmSessionManager.getDummyDrmSessionManager());
+    sampleQueue.format(FORMAT);
+    return sampleQueue;
+  }
+
+  private static void writeSample(SampleQueue sampleQueue, ParsableByteArray data, int index) {
+    data.setPosition(0);
+    sampleQueue.sampleData(data, SAMPLE_SIZE);
+    int flags = index % KEYFRAME_INTERVAL == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    sampleQueue.sampleMetadata(
+        index * SAMPLE_DURATION_US, flags, SAMPLE_SIZE, /* offset= */ 0, /* cryptoData= */ null);
+  }
+
+  private static void readSample(
+      SampleQueue sampleQueue, FormatHolder formatHolder, DecoderInputBuffer buffer) {
+    int result;
+    do {
+      buffer.clear();
+      result =
+          sampleQueue.read(
+              formatHolder,
+              buffer,
+              /* formatRequired= */ false,
+              /* loadingFinished= */ false,
+              /* decodeOnlyUntilUs= */ 0);
+    } while (result == C.RESULT_FORMAT_READ);
+    assertThat(result).isEqualTo(C.RESULT_BUFFER_READ);
+  }
+}
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BoundedAllocator;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -89,7 +90,7 @@ public class DefaultLoadControl implements LoadControl {
   /** Builder for {@link DefaultLoadControl}. */
   public static final class Builder {
 
-    private DefaultAllocator allocator;
+    private BoundedAllocator allocator;
     private int minBufferAudioMs;
     private int minBufferVideoMs;
     private int maxBufferMs;
@@ -115,13 +116,14 @@ public class DefaultLoadControl implements LoadControl {
     }
 
     /**
-     * Sets the {@link DefaultAllocator} used by the loader.
+     * Sets the {@link BoundedAllocator} used by the loader. A {@link DefaultAllocator} is used if
+     * not set.
      *
-     * @param allocator The {@link DefaultAllocator}.
+     * @param allocator The {@link BoundedAllocator}.
      * @return This builder, for convenience.
      * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
      */
-    public Builder setAllocator(DefaultAllocator allocator) {
+    public Builder setAllocator(BoundedAllocator allocator) {
       Assertions.checkState(!createDefaultLoadControlCalled);
       this.allocator = allocator;
       return this;
@@ -234,7 +236,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private final DefaultAllocator allocator;
+  private final BoundedAllocator allocator;
 
   private final long minBufferAudioUs;
   private final long minBufferVideoUs;
@@ -296,7 +298,7 @@ public class DefaultLoadControl implements LoadControl {
   }
 
   protected DefaultLoadControl(
-      DefaultAllocator allocator,
+      BoundedAllocator allocator,
       int minBufferAudioMs,
       int minBufferVideoMs,
       int maxBufferMs,
@@ -382,7 +384,7 @@ public class DefaultLoadControl implements LoadControl {
 
   @Override
   public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
-    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferSize;
+    boolean targetBufferSizeReached = isTargetBufferSizeReached();
     long minBufferUs = hasVideo ? minBufferVideoUs : minBufferAudioUs;
     if (playbackSpeed > 1) {
       // The playback speed is faster than real time, so scale up the minimum required media
@@ -406,8 +408,7 @@ public class DefaultLoadControl implements LoadControl {
     long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
     return minBufferDurationUs <= 0
         || bufferedDurationUs >= minBufferDurationUs
-        || (!prioritizeTimeOverSizeThresholds
-            && allocator.getTotalBytesAllocated() >= targetBufferSize);
+        || (!prioritizeTimeOverSizeThresholds && isTargetBufferSizeReached());
   }
 
   /**
@@ -429,6 +430,11 @@ public class DefaultLoadControl implements LoadControl {
     return targetBufferSize;
   }
 
+  private boolean isTargetBufferSizeReached() {
+    int allowedBufferSize = Math.min(targetBufferSize, allocator.getAllocationLimit());
+    return allocator.getTotalBytesAllocated() >= allowedBufferSize;
+  }
+
   private void reset(boolean resetAllocator) {
     targetBufferSize = 0;
     isBuffering = false;
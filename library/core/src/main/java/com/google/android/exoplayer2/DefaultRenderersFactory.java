@@ -92,6 +92,7 @@ public class DefaultRenderersFactory implements RenderersFactory {
   private long allowedVideoJoiningTimeMs;
   private boolean playClearSamplesWithoutKeys;
   private boolean enableDecoderFallback;
+  private boolean enableAudioOffload;
   private MediaCodecSelector mediaCodecSelector;
 
   /** @param context A {@link Context}. */
@@ -217,6 +218,23 @@ public class DefaultRenderersFactory implements RenderersFactory {
     return this;
   }
 
+  /**
+   * Sets whether audio that the platform can decode on a low power audio processor should be
+   * offloaded to it, rather than decoded by the app. This reduces power consumption during
+   * audio-only playback. See {@link DefaultAudioSink#DefaultAudioSink(AudioCapabilities,
+   * DefaultAudioSink.AudioProcessorChain, boolean, boolean)} for the limitations of offloaded
+   * playback.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param enableAudioOffload Whether to enable audio offload.
+   * @return This factory, for convenience.
+   */
+  public DefaultRenderersFactory experimental_setEnableAudioOffload(boolean enableAudioOffload) {
+    this.enableAudioOffload = enableAudioOffload;
+    return this;
+  }
+
   /**
    * Sets a {@link MediaCodecSelector} for use by {@link MediaCodec} based renderers.
    *
@@ -434,7 +452,11 @@ public class DefaultRenderersFactory implements RenderersFactory {
             enableDecoderFallback,
             eventHandler,
             eventListener,
-            new DefaultAudioSink(AudioCapabilities.getCapabilities(context), audioProcessors)));
+            new DefaultAudioSink(
+                AudioCapabilities.getCapabilities(context),
+                new DefaultAudioSink.DefaultAudioProcessorChain(audioProcessors),
+                /* enableFloatOutput= */ false,
+                enableAudioOffload)));
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
       return;
@@ -58,6 +58,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
   private final Handler eventHandler;
   private final ExoPlayerImplInternal internalPlayer;
   private final Handler internalPlayerHandler;
+  private final Clock clock;
   private final CopyOnWriteArrayList<ListenerHolder> listeners;
   private final Timeline.Period period;
   private final ArrayDeque<Runnable> pendingListenerNotifications;
@@ -107,6 +108,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
     Assertions.checkState(renderers.length > 0);
     this.renderers = Assertions.checkNotNull(renderers);
     this.trackSelector = Assertions.checkNotNull(trackSelector);
+    this.clock = clock;
     this.playWhenReady = false;
     this.repeatMode = Player.REPEAT_MODE_OFF;
     this.shuffleModeEnabled = false;
@@ -173,6 +175,16 @@ import java.util.concurrent.CopyOnWriteArrayList;
     return internalPlayer.getPlaybackLooper();
   }
 
+  /**
+   * Returns the number of times the playback thread has woken up to render since the player was
+   * created.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   */
+  public long experimental_getDoSomeWorkCount() {
+    return internalPlayer.getDoSomeWorkCount();
+  }
+
   @Override
   public Looper getApplicationLooper() {
     return eventHandler.getLooper();
@@ -492,9 +504,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
     if (shouldMaskPosition()) {
       return maskingWindowPositionMs;
     } else if (playbackInfo.periodId.isAd()) {
-      return C.usToMs(playbackInfo.positionUs);
+      return C.usToMs(getEstimatedPositionUs());
     } else {
-      return periodPositionUsToWindowPositionMs(playbackInfo.periodId, playbackInfo.positionUs);
+      return periodPositionUsToWindowPositionMs(playbackInfo.periodId, getEstimatedPositionUs());
     }
   }
 
@@ -738,6 +750,21 @@ import java.util.concurrent.CopyOnWriteArrayList;
     }
   }
 
+  /**
+   * Returns the playback position in the current period, extrapolated from its last update if the
+   * playback thread deferred the next update while playing.
+   */
+  private long getEstimatedPositionUs() {
+    // Read the position before its update time, see PlaybackInfo.positionUpdateTimeMs.
+    long positionUs = playbackInfo.positionUs;
+    long positionUpdateTimeMs = playbackInfo.positionUpdateTimeMs;
+    if (positionUpdateTimeMs == C.TIME_UNSET || !isPlaying()) {
+      return positionUs;
+    }
+    long elapsedTimeMs = Math.max(0, clock.elapsedRealtime() - positionUpdateTimeMs);
+    return positionUs + (long) (C.msToUs(elapsedTimeMs) * playbackParameters.speed);
+  }
+
   private long periodPositionUsToWindowPositionMs(MediaPeriodId periodId, long positionUs) {
     long positionMs = C.usToMs(positionUs);
     playbackInfo.timeline.getPeriodByUid(periodId.periodUid, period);
@@ -122,6 +122,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private long rendererPositionUs;
   private int nextPendingMessageIndex;
   private boolean deliverPendingMessageAtStartPositionRequired;
+  private volatile long doSomeWorkCount;
 
   public ExoPlayerImplInternal(
       Renderer[] renderers,
@@ -269,6 +270,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
     return internalPlaybackThread.getLooper();
   }
 
+  /**
+   * Returns the number of times the playback thread has done work on the renderers since the
+   * player was created. May be called from any thread.
+   */
+  public long getDoSomeWorkCount() {
+    return doSomeWorkCount;
+  }
+
   // MediaSource.MediaSourceCaller implementation.
 
   @Override
@@ -551,6 +560,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
               /* isReadingAhead= */ playingPeriodHolder != queue.getReadingPeriod());
       long periodPositionUs = playingPeriodHolder.toPeriodTime(rendererPositionUs);
       maybeTriggerPendingMessages(playbackInfo.positionUs, periodPositionUs);
+      playbackInfo.positionUpdateTimeMs = C.TIME_UNSET;
       playbackInfo.positionUs = periodPositionUs;
     }
 
@@ -562,6 +572,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private void doSomeWork() throws ExoPlaybackException, IOException {
     long operationStartTimeMs = clock.uptimeMillis();
+    doSomeWorkCount++;
     updatePeriods();
 
     if (playbackInfo.playbackState == Player.STATE_IDLE
@@ -580,10 +591,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     TraceUtil.beginSection("doSomeWork");
 
+    long positionUpdateTimeMs = clock.elapsedRealtime();
     updatePlaybackPositions();
 
     boolean renderersEnded = true;
     boolean renderersAllowPlayback = true;
+    long minDurationToProgressUs = Long.MAX_VALUE;
     if (playingPeriodHolder.prepared) {
       long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
       playingPeriodHolder.mediaPeriod.discardBuffer(
@@ -593,10 +606,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
         if (renderer.getState() == Renderer.STATE_DISABLED) {
           continue;
         }
-        // TODO: Each renderer should return the maximum delay before which it wishes to be called
-        // again. The minimum of these values should then be used as the delay before the next
-        // invocation of this method.
         renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        minDurationToProgressUs =
+            Math.min(
+                minDurationToProgressUs,
+                renderer.getDurationToProgressUs(
+                    rendererPositionUs, rendererPositionElapsedRealtimeUs));
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
         // renderer is ready or ended. Also continue playback if the renderer is reading ahead into
@@ -646,7 +661,34 @@ import java.util.concurrent.atomic.AtomicBoolean;
       }
     }
 
-    if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
+    if (playWhenReady
+        && playbackInfo.playbackState == Player.STATE_READY
+        && playingPeriodHolder.prepared) {
+      // Let the renderers that have enough data buffered to keep playing for a while defer the
+      // next invocation of this method, within the bounds of the active and idle intervals. The
+      // transition to the next period must not be deferred. Whether loading can resume once the
+      // buffer drains is only checked in updatePeriods, so deferring also delays it by up to the
+      // interval, which is short compared to the duration the LoadControl keeps buffered. Messages
+      // sent at a position must not be delivered late either.
+      if (playingPeriodDurationUs != C.TIME_UNSET) {
+        minDurationToProgressUs =
+            Math.min(minDurationToProgressUs, playingPeriodDurationUs - playbackInfo.positionUs);
+      }
+      long durationToNextPendingMessageUs = getDurationToNextPendingMessageUs();
+      if (durationToNextPendingMessageUs != C.TIME_UNSET) {
+        minDurationToProgressUs = Math.min(minDurationToProgressUs, durationToNextPendingMessageUs);
+      }
+      long intervalMs =
+          minDurationToProgressUs == Long.MAX_VALUE
+              ? ACTIVE_INTERVAL_MS
+              : Util.constrainValue(
+                  C.usToMs(minDurationToProgressUs), ACTIVE_INTERVAL_MS, IDLE_INTERVAL_MS);
+      if (intervalMs > ACTIVE_INTERVAL_MS) {
+        // Let the application thread extrapolate the position until it's next updated.
+        playbackInfo.positionUpdateTimeMs = positionUpdateTimeMs;
+      }
+      scheduleNextWork(operationStartTimeMs, intervalMs);
+    } else if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
         || playbackInfo.playbackState == Player.STATE_BUFFERING) {
       scheduleNextWork(operationStartTimeMs, ACTIVE_INTERVAL_MS);
     } else if (enabledRenderers.length != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
@@ -1124,6 +1166,31 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
   }
 
+  /**
+   * Returns the duration until the position of the next pending message in the playing period, or
+   * {@link C#TIME_UNSET} if there's no such message.
+   */
+  private long getDurationToNextPendingMessageUs() {
+    if (pendingMessages.isEmpty() || playbackInfo.periodId.isAd()) {
+      return C.TIME_UNSET;
+    }
+    int currentPeriodIndex =
+        playbackInfo.timeline.getIndexOfPeriod(playbackInfo.periodId.periodUid);
+    // Pending messages are sorted by period index and then by position.
+    for (int i = 0; i < pendingMessages.size(); i++) {
+      PendingMessageInfo pendingMessageInfo = pendingMessages.get(i);
+      if (pendingMessageInfo.resolvedPeriodUid == null
+          || pendingMessageInfo.resolvedPeriodIndex > currentPeriodIndex) {
+        break;
+      }
+      if (pendingMessageInfo.resolvedPeriodIndex == currentPeriodIndex
+          && pendingMessageInfo.resolvedPeriodTimeUs > playbackInfo.positionUs) {
+        return pendingMessageInfo.resolvedPeriodTimeUs - playbackInfo.positionUs;
+      }
+    }
+    return C.TIME_UNSET;
+  }
+
   private void ensureStopped(Renderer renderer) throws ExoPlaybackException {
     if (renderer.getState() == Renderer.STATE_STARTED) {
       renderer.stop();
@@ -78,6 +78,13 @@ import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
    * in the {@link #timeline}, in microseconds.
    */
   public volatile long positionUs;
+  /**
+   * The {@link com.google.android.exoplayer2.util.Clock#elapsedRealtime()} at which {@link
+   * #positionUs} was last updated, if the playback thread deferred its next update while playing,
+   * or {@link C#TIME_UNSET} otherwise. Cleared before {@link #positionUs} is updated and set after
+   * it, so a reader that reads {@link #positionUs} first never pairs it with an older update time.
+   */
+  public volatile long positionUpdateTimeMs;
 
   /**
    * Creates empty dummy playback info which can be used for masking as long as no real playback
@@ -149,6 +156,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
     this.bufferedPositionUs = bufferedPositionUs;
     this.totalBufferedDurationUs = totalBufferedDurationUs;
     this.positionUs = positionUs;
+    positionUpdateTimeMs = C.TIME_UNSET;
   }
 
   /**
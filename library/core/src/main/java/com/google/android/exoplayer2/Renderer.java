@@ -63,6 +63,12 @@ public interface Renderer extends PlayerMessage.Target {
    */
   int STATE_STARTED = 2;
 
+  /**
+   * The default duration after which a started renderer should be rendered again, in
+   * microseconds. See {@link #getDurationToProgressUs(long, long)}.
+   */
+  long DEFAULT_DURATION_TO_PROGRESS_US = 10_000;
+
   /**
    * Returns the track type that the {@link Renderer} handles. For example, a video renderer will
    * return {@link C#TRACK_TYPE_VIDEO}, an audio renderer will return {@link C#TRACK_TYPE_AUDIO}, a
@@ -248,6 +254,25 @@ public interface Renderer extends PlayerMessage.Target {
    */
   void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException;
 
+  /**
+   * Returns the duration after which the renderer can next make progress, if {@link #render(long,
+   * long)} isn't called again before then. Called after each call to {@link #render(long, long)}
+   * while the player is playing, and used by the player to decide when to render again. For
+   * example, an audio renderer whose output buffer is full can make no progress until some of the
+   * buffered audio has been played out.
+   *
+   * <p>The default implementation returns {@link #DEFAULT_DURATION_TO_PROGRESS_US}.
+   *
+   * @param positionUs The current media time in microseconds, as passed to the most recent call to
+   *     {@link #render(long, long)}.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds, as
+   *     passed to the most recent call to {@link #render(long, long)}.
+   * @return The duration after which the renderer can next make progress, in microseconds.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return DEFAULT_DURATION_TO_PROGRESS_US;
+  }
+
   /**
    * Whether the renderer is able to immediately render media from the current position.
    * <p>
@@ -841,6 +841,18 @@ public class SimpleExoPlayer extends BasePlayer
     this.priorityTaskManager = priorityTaskManager;
   }
 
+  /**
+   * Returns the number of times the playback thread has woken up to render since the player was
+   * created. Dividing the difference between two calls by the time elapsed between them gives the
+   * wake-up rate of the playback thread, which dominates the CPU cost of playback when little
+   * decoding work is required.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   */
+  public long experimental_getDoSomeWorkCount() {
+    return player.experimental_getDoSomeWorkCount();
+  }
+
   /**
    * Sets the {@link PlaybackParams} governing audio playback.
    *
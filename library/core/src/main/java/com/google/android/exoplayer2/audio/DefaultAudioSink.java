@@ -24,6 +24,7 @@ import android.os.ConditionVariable;
 import android.os.SystemClock;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.PlaybackParameters;
@@ -175,6 +176,17 @@ public final class DefaultAudioSink implements AudioSink {
    * The length for passthrough {@link AudioTrack} buffers, in microseconds.
    */
   private static final long PASSTHROUGH_BUFFER_DURATION_US = 250000;
+  /**
+   * The length for offloaded {@link AudioTrack} buffers, in microseconds.
+   */
+  private static final long OFFLOAD_BUFFER_DURATION_US = 50000000;
+  /**
+   * The sample rates of MP3 audio, all of which must be supported for offload to be reported as
+   * supported, since the sample rate isn't known when support is queried.
+   */
+  private static final int[] OFFLOAD_MP3_SAMPLE_RATES = {
+    8000, 11025, 12000, 16000, 22050, 24000, 32000, 44100, 48000
+  };
   /**
    * A multiplication factor to apply to the minimum buffer size requested by the underlying
    * {@link AudioTrack}.
@@ -239,6 +251,7 @@ public final class DefaultAudioSink implements AudioSink {
   @Nullable private final AudioCapabilities audioCapabilities;
   private final AudioProcessorChain audioProcessorChain;
   private final boolean enableFloatOutput;
+  private final boolean enableOffload;
   private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
   private final TrimmingAudioProcessor trimmingAudioProcessor;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
@@ -338,9 +351,43 @@ public final class DefaultAudioSink implements AudioSink {
       @Nullable AudioCapabilities audioCapabilities,
       AudioProcessorChain audioProcessorChain,
       boolean enableFloatOutput) {
+    this(audioCapabilities, audioProcessorChain, enableFloatOutput, /* enableOffload= */ false);
+  }
+
+  /**
+   * Creates a new default audio sink, optionally using float output for high resolution PCM and
+   * optionally offloading the playback of MP3 audio, with the specified {@code
+   * audioProcessorChain}.
+   *
+   * <p>If offload is enabled, MP3 audio that the platform can decode on a low power audio
+   * processor is written to an offloaded {@link AudioTrack} with a large buffer, instead of being
+   * decoded by the app. This makes it possible for the playback thread to wake up much less often
+   * during audio-only playback. Offload requires API level 29, and isn't used in tunneling mode.
+   * It's only reported as supported if the platform can offload MP3 at every sample rate and
+   * channel count the audio may have, so that {@link #configure} always honors it. Renderers
+   * query support again after tunneling is enabled, and decode the audio if it isn't supported.
+   * Audio processing, playback parameters and gapless trimming are not available for offloaded
+   * audio.
+   *
+   * @param audioCapabilities The audio capabilities for playback on this device. May be null if the
+   *     default capabilities (no encoded audio passthrough support) should be assumed.
+   * @param audioProcessorChain An {@link AudioProcessorChain} which is used to apply playback
+   *     parameters adjustments. The instance passed in must not be reused in other sinks.
+   * @param enableFloatOutput Whether to enable 32-bit float output. Where possible, 32-bit float
+   *     output will be used if the input is 32-bit float, and also if the input is high resolution
+   *     (24-bit or 32-bit) integer PCM. Audio processing (for example, speed adjustment) will not
+   *     be available when float output is in use.
+   * @param enableOffload Whether to enable offloaded playback of MP3 audio.
+   */
+  public DefaultAudioSink(
+      @Nullable AudioCapabilities audioCapabilities,
+      AudioProcessorChain audioProcessorChain,
+      boolean enableFloatOutput,
+      boolean enableOffload) {
     this.audioCapabilities = audioCapabilities;
     this.audioProcessorChain = Assertions.checkNotNull(audioProcessorChain);
     this.enableFloatOutput = enableFloatOutput;
+    this.enableOffload = enableOffload;
     releasingConditionVariable = new ConditionVariable(true);
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
     channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
@@ -382,10 +429,9 @@ public final class DefaultAudioSink implements AudioSink {
       // channels to the output device's required number of channels.
       return encoding != C.ENCODING_PCM_FLOAT || Util.SDK_INT >= 21;
     } else {
-      return audioCapabilities != null
-          && audioCapabilities.supportsEncoding(encoding)
-          && (channelCount == Format.NO_VALUE
-              || channelCount <= audioCapabilities.getMaxChannelCount());
+      return supportsPassthrough(channelCount, encoding)
+          || (useOffload(encoding)
+              && isOffloadedPlaybackAlwaysSupportedV29(channelCount, encoding));
     }
   }
 
@@ -454,6 +500,13 @@ public final class DefaultAudioSink implements AudioSink {
       throw new ConfigurationException("Unsupported channel count: " + channelCount);
     }
 
+    boolean offload =
+        !isInputPcm && !supportsPassthrough(channelCount, encoding) && useOffload(encoding);
+    if (offload && !isOffloadedPlaybackSupportedV29(channelCount, sampleRate, encoding)) {
+      throw new ConfigurationException(
+          "Offload not supported: " + encoding + ", " + channelCount + ", " + sampleRate);
+    }
+
     int inputPcmFrameSize =
         isInputPcm ? Util.getPcmFrameSize(inputEncoding, inputChannelCount) : C.LENGTH_UNSET;
     int outputPcmFrameSize =
@@ -471,7 +524,8 @@ public final class DefaultAudioSink implements AudioSink {
             specifiedBufferSize,
             processingEnabled,
             canApplyPlaybackParameters,
-            availableAudioProcessors);
+            availableAudioProcessors,
+            offload);
     if (isInitialized()) {
       this.pendingConfiguration = pendingConfiguration;
     } else {
@@ -1079,7 +1133,64 @@ public final class DefaultAudioSink implements AudioSink {
     return audioTrack != null;
   }
 
-  private long getSubmittedFrames() {
+  /** Returns the configuration passed to the most recent call to {@link #configure}. */
+  @VisibleForTesting
+  @Nullable
+  /* package */ Configuration getLatestConfiguration() {
+    return pendingConfiguration != null ? pendingConfiguration : configuration;
+  }
+
+  private boolean supportsPassthrough(int channelCount, @C.Encoding int encoding) {
+    return audioCapabilities != null
+        && audioCapabilities.supportsEncoding(encoding)
+        && (channelCount == Format.NO_VALUE
+            || channelCount <= audioCapabilities.getMaxChannelCount());
+  }
+
+  private boolean useOffload(@C.Encoding int encoding) {
+    // Only MP3 is offloaded, as the buffer sizes used for offload would be prohibitively large for
+    // high bitrate encodings.
+    return enableOffload && Util.SDK_INT >= 29 && !tunneling && encoding == C.ENCODING_MP3;
+  }
+
+  /**
+   * Returns whether offloaded playback is supported for all the sample rates and, if {@code
+   * channelCount} is {@link Format#NO_VALUE}, all the channel counts that MP3 audio may have.
+   */
+  @TargetApi(29)
+  private boolean isOffloadedPlaybackAlwaysSupportedV29(
+      int channelCount, @C.Encoding int encoding) {
+    int minChannelCount = channelCount == Format.NO_VALUE ? 1 : channelCount;
+    int maxChannelCount = channelCount == Format.NO_VALUE ? 2 : channelCount;
+    for (int i = minChannelCount; i <= maxChannelCount; i++) {
+      for (int sampleRate : OFFLOAD_MP3_SAMPLE_RATES) {
+        if (!isOffloadedPlaybackSupportedV29(/* channelCount= */ i, sampleRate, encoding)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @TargetApi(29)
+  private boolean isOffloadedPlaybackSupportedV29(
+      int channelCount, int sampleRate, @C.Encoding int encoding) {
+    int channelConfig = getChannelConfig(channelCount, /* isInputPcm= */ false);
+    if (channelConfig == AudioFormat.CHANNEL_INVALID) {
+      return false;
+    }
+    AudioFormat format =
+        new AudioFormat.Builder()
+            .setChannelMask(channelConfig)
+            .setEncoding(encoding)
+            .setSampleRate(sampleRate)
+            .build();
+    return AudioManager.isOffloadedPlaybackSupported(
+        format, audioAttributes.getAudioAttributesV21());
+  }
+
+  @VisibleForTesting
+  /* package */ long getSubmittedFrames() {
     return configuration.isInputPcm
         ? (submittedPcmBytes / configuration.inputPcmFrameSize)
         : submittedEncodedFrames;
@@ -1124,6 +1235,8 @@ public final class DefaultAudioSink implements AudioSink {
 
   private static int getMaximumEncodedRateBytesPerSecond(@C.Encoding int encoding) {
     switch (encoding) {
+      case C.ENCODING_MP3:
+        return 320 * 1000 / 8;
       case C.ENCODING_AC3:
         return 640 * 1000 / 8;
       case C.ENCODING_E_AC3:
@@ -1153,7 +1266,10 @@ public final class DefaultAudioSink implements AudioSink {
   private static int getFramesPerEncodedSample(@C.Encoding int encoding, ByteBuffer buffer) {
     switch (encoding) {
       case C.ENCODING_MP3:
-        return MpegAudioHeader.getFrameSampleCount(buffer.get(buffer.position()));
+        int frameSampleCount =
+            MpegAudioHeader.getFrameSampleCount(getBigEndianInt(buffer, buffer.position()));
+        // Report an invalid header as an unknown frame count, so that the buffer is dropped.
+        return frameSampleCount == C.LENGTH_UNSET ? 0 : frameSampleCount;
       case C.ENCODING_DTS:
       case C.ENCODING_DTS_HD:
         return DtsUtil.parseDtsAudioSampleCount(buffer);
@@ -1174,6 +1290,12 @@ public final class DefaultAudioSink implements AudioSink {
     }
   }
 
+  /** Returns the four bytes of {@code buffer} at {@code index} as a big-endian integer. */
+  private static int getBigEndianInt(ByteBuffer buffer, int index) {
+    int value = buffer.getInt(index);
+    return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+  }
+
   @TargetApi(21)
   private static int writeNonBlockingV21(AudioTrack audioTrack, ByteBuffer buffer, int size) {
     return audioTrack.write(buffer, size, WRITE_NON_BLOCKING);
@@ -1318,7 +1440,8 @@ public final class DefaultAudioSink implements AudioSink {
   }
 
   /** Stores configuration relating to the audio format. */
-  private static final class Configuration {
+  @VisibleForTesting
+  /* package */ static final class Configuration {
 
     public final boolean isInputPcm;
     public final int inputPcmFrameSize;
@@ -1331,6 +1454,7 @@ public final class DefaultAudioSink implements AudioSink {
     public final boolean processingEnabled;
     public final boolean canApplyPlaybackParameters;
     public final AudioProcessor[] availableAudioProcessors;
+    public final boolean offload;
 
     public Configuration(
         boolean isInputPcm,
@@ -1343,7 +1467,8 @@ public final class DefaultAudioSink implements AudioSink {
         int specifiedBufferSize,
         boolean processingEnabled,
         boolean canApplyPlaybackParameters,
-        AudioProcessor[] availableAudioProcessors) {
+        AudioProcessor[] availableAudioProcessors,
+        boolean offload) {
       this.isInputPcm = isInputPcm;
       this.inputPcmFrameSize = inputPcmFrameSize;
       this.inputSampleRate = inputSampleRate;
@@ -1351,6 +1476,7 @@ public final class DefaultAudioSink implements AudioSink {
       this.outputSampleRate = outputSampleRate;
       this.outputChannelConfig = outputChannelConfig;
       this.outputEncoding = outputEncoding;
+      this.offload = offload;
       this.bufferSize = specifiedBufferSize != 0 ? specifiedBufferSize : getDefaultBufferSize();
       this.processingEnabled = processingEnabled;
       this.canApplyPlaybackParameters = canApplyPlaybackParameters;
@@ -1360,7 +1486,8 @@ public final class DefaultAudioSink implements AudioSink {
     public boolean canReuseAudioTrack(Configuration audioTrackConfiguration) {
       return audioTrackConfiguration.outputEncoding == outputEncoding
           && audioTrackConfiguration.outputSampleRate == outputSampleRate
-          && audioTrackConfiguration.outputChannelConfig == outputChannelConfig;
+          && audioTrackConfiguration.outputChannelConfig == outputChannelConfig
+          && audioTrackConfiguration.offload == offload;
     }
 
     public long inputFramesToDurationUs(long frameCount) {
@@ -1379,7 +1506,9 @@ public final class DefaultAudioSink implements AudioSink {
         boolean tunneling, AudioAttributes audioAttributes, int audioSessionId)
         throws InitializationException {
       AudioTrack audioTrack;
-      if (Util.SDK_INT >= 21) {
+      if (offload) {
+        audioTrack = createOffloadedAudioTrackV29(audioAttributes, audioSessionId);
+      } else if (Util.SDK_INT >= 21) {
         audioTrack = createAudioTrackV21(tunneling, audioAttributes, audioSessionId);
       } else {
         int streamType = Util.getStreamTypeForAudioUsage(audioAttributes.usage);
@@ -1433,15 +1562,9 @@ public final class DefaultAudioSink implements AudioSink {
       } else {
         attributes = audioAttributes.getAudioAttributesV21();
       }
-      AudioFormat format =
-          new AudioFormat.Builder()
-              .setChannelMask(outputChannelConfig)
-              .setEncoding(outputEncoding)
-              .setSampleRate(outputSampleRate)
-              .build();
       return new AudioTrack(
           attributes,
-          format,
+          getAudioFormatV21(),
           bufferSize,
           MODE_STREAM,
           audioSessionId != C.AUDIO_SESSION_ID_UNSET
@@ -1449,6 +1572,31 @@ public final class DefaultAudioSink implements AudioSink {
               : AudioManager.AUDIO_SESSION_ID_GENERATE);
     }
 
+    @TargetApi(29)
+    private AudioTrack createOffloadedAudioTrackV29(
+        AudioAttributes audioAttributes, int audioSessionId) {
+      return new AudioTrack.Builder()
+          .setAudioAttributes(audioAttributes.getAudioAttributesV21())
+          .setAudioFormat(getAudioFormatV21())
+          .setTransferMode(MODE_STREAM)
+          .setBufferSizeInBytes(bufferSize)
+          .setSessionId(
+              audioSessionId != C.AUDIO_SESSION_ID_UNSET
+                  ? audioSessionId
+                  : AudioManager.AUDIO_SESSION_ID_GENERATE)
+          .setOffloadedPlayback(true)
+          .build();
+    }
+
+    @TargetApi(21)
+    private AudioFormat getAudioFormatV21() {
+      return new AudioFormat.Builder()
+          .setChannelMask(outputChannelConfig)
+          .setEncoding(outputEncoding)
+          .setSampleRate(outputSampleRate)
+          .build();
+    }
+
     private int getDefaultBufferSize() {
       if (isInputPcm) {
         int minBufferSize =
@@ -1464,6 +1612,9 @@ public final class DefaultAudioSink implements AudioSink {
         return Util.constrainValue(multipliedBufferSize, minAppBufferSize, maxAppBufferSize);
       } else {
         int rate = getMaximumEncodedRateBytesPerSecond(outputEncoding);
+        if (offload) {
+          return (int) (OFFLOAD_BUFFER_DURATION_US * rate / C.MICROS_PER_SECOND);
+        }
         if (outputEncoding == C.ENCODING_AC3) {
           rate *= AC3_BUFFER_MULTIPLICATION_FACTOR;
         }
@@ -101,6 +101,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private boolean allowPositionDiscontinuity;
   private long lastInputTimeUs;
   private int pendingStreamChangeCount;
+  private long pendingOutputBufferTimeUs;
 
   /**
    * @param context A context.
@@ -691,6 +692,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     allowPositionDiscontinuity = true;
     lastInputTimeUs = C.TIME_UNSET;
     pendingStreamChangeCount = 0;
+    pendingOutputBufferTimeUs = C.TIME_UNSET;
   }
 
   @Override
@@ -711,6 +713,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     try {
       lastInputTimeUs = C.TIME_UNSET;
       pendingStreamChangeCount = 0;
+      pendingOutputBufferTimeUs = C.TIME_UNSET;
       audioSink.flush();
     } finally {
       try {
@@ -740,6 +743,18 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     return audioSink.hasPendingData() || super.isReady();
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (pendingOutputBufferTimeUs == C.TIME_UNSET) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink is full, so nothing can be done until part of the pending buffer's preceding data
+    // has been played out. Wake up halfway through to keep the sink from running dry.
+    long bufferedDurationUs =
+        (long) ((pendingOutputBufferTimeUs - positionUs) / audioSink.getPlaybackParameters().speed);
+    return Math.max(DEFAULT_DURATION_TO_PROGRESS_US, bufferedDurationUs / 2);
+  }
+
   @Override
   public long getPositionUs() {
     if (getState() == STATE_STARTED) {
@@ -824,8 +839,10 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
       if (audioSink.handleBuffer(buffer, bufferPresentationTimeUs)) {
         codec.releaseOutputBuffer(bufferIndex, false);
         decoderCounters.renderedOutputBufferCount++;
+        pendingOutputBufferTimeUs = C.TIME_UNSET;
         return true;
       }
+      pendingOutputBufferTimeUs = bufferPresentationTimeUs;
     } catch (AudioSink.InitializationException | AudioSink.WriteException e) {
       // TODO(internal: b/145658993) Use outputFormat instead.
       throw createRendererException(e, inputFormat);
@@ -520,6 +520,18 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
         || (inputFormat != null && !waitingForKeys && (isSourceReady() || outputBuffer != null));
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (outputBuffer == null || outputBuffer.isEndOfStream()) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink is full, so nothing can be done until part of the pending buffer's preceding data
+    // has been played out. Wake up halfway through to keep the sink from running dry.
+    long bufferedDurationUs =
+        (long) ((outputBuffer.timeUs - positionUs) / audioSink.getPlaybackParameters().speed);
+    return Math.max(DEFAULT_DURATION_TO_PROGRESS_US, bufferedDurationUs / 2);
+  }
+
   @Override
   public long getPositionUs() {
     if (getState() == STATE_STARTED) {
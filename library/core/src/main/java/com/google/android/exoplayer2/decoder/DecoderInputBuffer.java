@@ -124,7 +124,10 @@ public class DecoderInputBuffer extends Buffer {
    *
    * <p>If the capacity of {@link #data} is sufficient this method does nothing. If the capacity is
    * insufficient then an attempt is made to replace {@link #data} with a new {@link ByteBuffer}
-   * whose capacity is sufficient. Data up to the current position is copied to the new buffer.
+   * whose capacity is sufficient. Data up to the current position is copied to the new buffer. When
+   * the buffer replacement mode is {@link #BUFFER_REPLACEMENT_MODE_DIRECT}, a replacement buffer is
+   * given additional capacity beyond that required for the write, since direct buffers are costly
+   * to allocate and are only freed by the garbage collector.
    *
    * @param length The length of the write that must be accommodated, in bytes.
    * @throws IllegalStateException If there is insufficient capacity to accommodate the write and
@@ -144,7 +147,11 @@ public class DecoderInputBuffer extends Buffer {
       return;
     }
     // Instantiate a new buffer if possible.
-    ByteBuffer newData = createReplacementByteBuffer(requiredCapacity);
+    int newCapacity =
+        bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT
+            ? Math.max(requiredCapacity, capacity + capacity / 2)
+            : requiredCapacity;
+    ByteBuffer newData = createReplacementByteBuffer(newCapacity);
     newData.order(data.order());
     // Copy data up to the current position from the old buffer to the new one.
     if (position > 0) {
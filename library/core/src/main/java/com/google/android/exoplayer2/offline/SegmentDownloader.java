@@ -25,13 +25,20 @@ import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for multi segment stream downloaders.
@@ -66,6 +73,7 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
   private final DataSpec manifestDataSpec;
   private final Cache cache;
   private final CacheDataSource dataSource;
+  private final CacheDataSource[] segmentDataSources;
   private final CacheDataSource offlineDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   private final PriorityTaskManager priorityTaskManager;
@@ -84,6 +92,12 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     this.streamKeys = new ArrayList<>(streamKeys);
     this.cache = constructorHelper.getCache();
     this.dataSource = constructorHelper.createCacheDataSource();
+    // CacheDataSource instances aren't thread-safe, so each parallel fetch needs its own.
+    segmentDataSources = new CacheDataSource[constructorHelper.getMaxParallelSegmentDownloads()];
+    segmentDataSources[0] = dataSource;
+    for (int i = 1; i < segmentDataSources.length; i++) {
+      segmentDataSources[i] = constructorHelper.createCacheDataSource();
+    }
     this.offlineDataSource = constructorHelper.createOfflineCacheDataSource();
     this.cacheKeyFactory = constructorHelper.getCacheKeyFactory();
     this.priorityTaskManager = constructorHelper.getPriorityTaskManager();
@@ -92,7 +106,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
 
   /**
    * Downloads the selected streams in the media. If multiple streams are selected, they are
-   * downloaded in sync with one another.
+   * downloaded in sync with one another. Up to {@link
+   * DownloaderConstructorHelper#getMaxParallelSegmentDownloads()} segments are fetched in parallel,
+   * in order of their start times.
    *
    * @throws IOException Thrown when there is an error downloading.
    * @throws InterruptedException If the thread has been interrupted.
@@ -147,22 +163,13 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
                 bytesDownloaded,
                 segmentsDownloaded);
       }
-      byte[] buffer = new byte[BUFFER_SIZE_BYTES];
-      for (int i = 0; i < segments.size(); i++) {
-        CacheUtil.cache(
-            segments.get(i).dataSpec,
-            cache,
-            cacheKeyFactory,
-            dataSource,
-            buffer,
-            priorityTaskManager,
-            C.PRIORITY_DOWNLOAD,
-            progressNotifier,
-            isCanceled,
-            true);
-        if (progressNotifier != null) {
-          progressNotifier.onSegmentDownloaded();
+      if (segmentDataSources.length == 1 || segments.size() <= 1) {
+        byte[] buffer = new byte[BUFFER_SIZE_BYTES];
+        for (int i = 0; i < segments.size(); i++) {
+          downloadSegment(segments.get(i), dataSource, buffer, progressNotifier);
         }
+      } else {
+        downloadSegmentsInParallel(segments, progressNotifier);
       }
     } finally {
       priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
@@ -219,6 +226,100 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       DataSource dataSource, M manifest, boolean allowIncompleteList)
       throws InterruptedException, IOException;
 
+  private void downloadSegment(
+      Segment segment,
+      CacheDataSource dataSource,
+      byte[] buffer,
+      @Nullable ProgressNotifier progressNotifier)
+      throws IOException, InterruptedException {
+    CacheUtil.cache(
+        segment.dataSpec,
+        cache,
+        cacheKeyFactory,
+        dataSource,
+        buffer,
+        priorityTaskManager,
+        C.PRIORITY_DOWNLOAD,
+        progressNotifier,
+        isCanceled,
+        true);
+    if (progressNotifier != null) {
+      progressNotifier.onSegmentDownloaded();
+    }
+  }
+
+  /**
+   * Downloads {@code segments} using one worker thread per segment data source. Workers take the
+   * next segment in order whenever they become idle, so that the downloaded part of the media
+   * grows from its start. If a segment fails to download, workers stop taking new segments and the
+   * first error is thrown once the in-flight segments have completed.
+   */
+  private void downloadSegmentsInParallel(
+      List<Segment> segments, @Nullable ProgressNotifier progressNotifier)
+      throws IOException, InterruptedException {
+    int workerCount = Math.min(segmentDataSources.length, segments.size());
+    AtomicInteger nextSegmentIndex = new AtomicInteger();
+    AtomicBoolean hasFailed = new AtomicBoolean();
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            workerCount, runnable -> new Thread(runnable, "SegmentDownloader:Worker"));
+    try {
+      List<Future<?>> workers = new ArrayList<>(workerCount);
+      for (int i = 0; i < workerCount; i++) {
+        CacheDataSource workerDataSource = segmentDataSources[i];
+        workers.add(
+            executorService.submit(
+                () -> {
+                  byte[] buffer = new byte[BUFFER_SIZE_BYTES];
+                  int segmentIndex;
+                  while (!hasFailed.get()
+                      && (segmentIndex = nextSegmentIndex.getAndIncrement()) < segments.size()) {
+                    try {
+                      downloadSegment(
+                          segments.get(segmentIndex), workerDataSource, buffer, progressNotifier);
+                    } catch (Exception e) {
+                      hasFailed.set(true);
+                      throw e;
+                    }
+                  }
+                  return null;
+                }));
+      }
+      for (int i = 0; i < workers.size(); i++) {
+        try {
+          workers.get(i).get();
+        } catch (ExecutionException e) {
+          Throwable cause = Assertions.checkNotNull(e.getCause());
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          }
+          Util.sneakyThrow(cause);
+        }
+      }
+    } finally {
+      // Interrupts any workers still running if this thread was interrupted. They also stop
+      // promptly if the download is canceled, since they share isCanceled.
+      executorService.shutdownNow();
+      // Wait for the workers to stop, so that none of them writes to the cache after the download
+      // has returned, for example whilst the content is being removed.
+      boolean wasInterrupted = false;
+      while (true) {
+        try {
+          if (executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+            break;
+          }
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   private void removeDataSpec(DataSpec dataSpec) {
     CacheUtil.remove(dataSpec, cache, cacheKeyFactory);
   }
@@ -232,6 +333,10 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         /* flags= */ DataSpec.FLAG_ALLOW_GZIP);
   }
 
+  /**
+   * Aggregates progress across segments. Its methods are synchronized because segments may be
+   * downloaded in parallel.
+   */
   private static final class ProgressNotifier implements CacheUtil.ProgressListener {
 
     private final ProgressListener progressListener;
@@ -256,12 +361,12 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
 
     @Override
-    public void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
       bytesDownloaded += newBytesCached;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
 
-    public void onSegmentDownloaded() {
+    public synchronized void onSegmentDownloaded() {
       segmentsDownloaded++;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prefetches the start of the windows that follow the current window of a {@link Player} into a
+ * {@link Cache}, so that transitions between short playlist items don't stall.
+ *
+ * <p>Whenever the current window or the playlist changes, the data of the next {@code windowCount}
+ * windows (in playback order, taking the repeat and shuffle modes into account) is loaded into the
+ * cache on a background thread. The data to load for each window is determined by a {@link
+ * DataSpecProvider}, and is limited to {@code maxBytesPerWindow} bytes. Prefetching of windows
+ * that are no longer among the next windows, for example because the user skipped past them, is
+ * canceled.
+ *
+ * <p>The prefetched data is only used if the player reads its media through a {@link
+ * com.google.android.exoplayer2.upstream.cache.CacheDataSource} that uses the same cache.
+ *
+ * <p>Instances must be created and released on the application thread of the player.
+ */
+public final class PlaylistPrefetcher implements Player.EventListener {
+
+  /** Provides the data to prefetch for the windows of a playlist. */
+  public interface DataSpecProvider {
+
+    /**
+     * Returns the data to prefetch for a window, in the order in which it should be loaded. For
+     * progressive media this is the start of the media file. For adaptive media it will typically
+     * be the manifest, followed by the initialization and first media segments.
+     *
+     * @param timeline The {@link Timeline} of the player.
+     * @param windowIndex The index of the window in the timeline.
+     * @return The {@link DataSpec}s to prefetch. May be empty.
+     */
+    List<DataSpec> getDataSpecs(Timeline timeline, int windowIndex);
+  }
+
+  private static final String TAG = "PlaylistPrefetcher";
+
+  private final Player player;
+  private final Cache cache;
+  private final DataSource.Factory upstreamFactory;
+  private final DataSpecProvider dataSpecProvider;
+  private final int windowCount;
+  private final long maxBytesPerWindow;
+  private final ExecutorService executorService;
+  private final Timeline.Window window;
+  private final HashMap<Object, AtomicBoolean> windowUidToCanceledFlag;
+
+  /**
+   * Creates an instance and starts prefetching.
+   *
+   * @param player The {@link Player} whose playlist should be prefetched.
+   * @param cache The {@link Cache} into which data is loaded.
+   * @param upstreamFactory A {@link DataSource.Factory} for sources that read data not yet in the
+   *     cache.
+   * @param dataSpecProvider The {@link DataSpecProvider} for the data of each window.
+   * @param windowCount The number of windows following the current window to prefetch.
+   * @param maxBytesPerWindow The maximum number of bytes to prefetch for each window.
+   */
+  public PlaylistPrefetcher(
+      Player player,
+      Cache cache,
+      DataSource.Factory upstreamFactory,
+      DataSpecProvider dataSpecProvider,
+      int windowCount,
+      long maxBytesPerWindow) {
+    Assertions.checkArgument(windowCount > 0 && maxBytesPerWindow > 0);
+    this.player = player;
+    this.cache = cache;
+    this.upstreamFactory = upstreamFactory;
+    this.dataSpecProvider = dataSpecProvider;
+    this.windowCount = windowCount;
+    this.maxBytesPerWindow = maxBytesPerWindow;
+    executorService = Util.newSingleThreadExecutor("ExoPlayer:PlaylistPrefetcher");
+    window = new Timeline.Window();
+    windowUidToCanceledFlag = new HashMap<>();
+    player.addListener(this);
+    updatePrefetching();
+  }
+
+  /**
+   * Cancels all prefetching and stops listening to the player. Blocks until the background thread
+   * has stopped writing to the cache, so the cache may be released once this method returns.
+   */
+  public void release() {
+    player.removeListener(this);
+    for (AtomicBoolean isCanceled : windowUidToCanceledFlag.values()) {
+      isCanceled.set(true);
+    }
+    windowUidToCanceledFlag.clear();
+    executorService.shutdownNow();
+    boolean wasInterrupted = false;
+    while (true) {
+      try {
+        if (executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        wasInterrupted = true;
+      }
+    }
+    if (wasInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Player.EventListener implementation.
+
+  @Override
+  public void onTimelineChanged(Timeline timeline, @Player.TimelineChangeReason int reason) {
+    updatePrefetching();
+  }
+
+  @Override
+  public void onPositionDiscontinuity(@Player.DiscontinuityReason int reason) {
+    updatePrefetching();
+  }
+
+  @Override
+  public void onRepeatModeChanged(@Player.RepeatMode int repeatMode) {
+    updatePrefetching();
+  }
+
+  @Override
+  public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
+    updatePrefetching();
+  }
+
+  // Internal methods.
+
+  private void updatePrefetching() {
+    Timeline timeline = player.getCurrentTimeline();
+    HashSet<Object> windowUids = new HashSet<>();
+    if (!timeline.isEmpty()) {
+      int currentWindowIndex = player.getCurrentWindowIndex();
+      // In repeat one mode the next window is only reached by skipping, which behaves as if
+      // repeat mode were off.
+      int repeatMode =
+          player.getRepeatMode() == Player.REPEAT_MODE_ONE
+              ? Player.REPEAT_MODE_OFF
+              : player.getRepeatMode();
+      int windowIndex = currentWindowIndex;
+      for (int i = 0; i < windowCount; i++) {
+        windowIndex =
+            timeline.getNextWindowIndex(windowIndex, repeatMode, player.getShuffleModeEnabled());
+        if (windowIndex == C.INDEX_UNSET || windowIndex == currentWindowIndex) {
+          break;
+        }
+        Object windowUid = timeline.getWindow(windowIndex, window).uid;
+        windowUids.add(windowUid);
+        if (!windowUidToCanceledFlag.containsKey(windowUid)) {
+          AtomicBoolean isCanceled = new AtomicBoolean();
+          windowUidToCanceledFlag.put(windowUid, isCanceled);
+          List<DataSpec> dataSpecs =
+              new ArrayList<>(dataSpecProvider.getDataSpecs(timeline, windowIndex));
+          executorService.execute(() -> prefetch(dataSpecs, isCanceled));
+        }
+      }
+    }
+    // Cancel prefetching of windows that are no longer coming up.
+    Iterator<Object> iterator = windowUidToCanceledFlag.keySet().iterator();
+    while (iterator.hasNext()) {
+      Object windowUid = iterator.next();
+      if (!windowUids.contains(windowUid)) {
+        Assertions.checkNotNull(windowUidToCanceledFlag.get(windowUid)).set(true);
+        iterator.remove();
+      }
+    }
+  }
+
+  private void prefetch(List<DataSpec> dataSpecs, AtomicBoolean isCanceled) {
+    long bytesRemaining = maxBytesPerWindow;
+    // The number of bytes of the current DataSpec that are cached. Data of unknown length may be
+    // shorter than the remaining budget, so the budget is reduced by what was actually cached.
+    long[] bytesCached = new long[1];
+    for (int i = 0; i < dataSpecs.size() && bytesRemaining > 0 && !isCanceled.get(); i++) {
+      DataSpec dataSpec = dataSpecs.get(i);
+      long length =
+          dataSpec.length == C.LENGTH_UNSET
+              ? bytesRemaining
+              : Math.min(dataSpec.length, bytesRemaining);
+      bytesCached[0] = 0;
+      try {
+        CacheUtil.cache(
+            dataSpec.subrange(/* offset= */ 0, length),
+            cache,
+            /* cacheKeyFactory= */ null,
+            upstreamFactory.createDataSource(),
+            (requestLength, cachedLength, newBytesCached) -> bytesCached[0] = cachedLength,
+            isCanceled);
+        bytesRemaining -= bytesCached[0];
+      } catch (InterruptedException e) {
+        // Canceled, or the prefetcher was released.
+        return;
+      } catch (IOException e) {
+        // Prefetching is best effort. The player will load the data itself.
+        Log.w(TAG, "Prefetching failed: " + dataSpec.uri, e);
+        return;
+      }
+    }
+  }
+}
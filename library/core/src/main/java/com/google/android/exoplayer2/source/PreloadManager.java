@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Prepares {@link MediaSource}s that are likely to be played soon, and buffers the start of their
+ * default windows, so that playback starts almost immediately when they're played.
+ *
+ * <p>Sources are preloaded on the playback thread of an {@link ExoPlayer}, without renderers. A
+ * preloaded source is obtained by calling {@link #takeMediaSource(Object)} and passing the returned
+ * source to {@link ExoPlayer#prepare(MediaSource)} of the same player, which then adopts the
+ * preloaded period if it starts playback at the default position. Each source buffers up to a
+ * duration and byte budget, and the least recently used sources are released when more than the
+ * maximum number of sources are preloaded.
+ *
+ * <p>Preloaded media is buffered into a separate pool of at most {@code maxPreloadBytes} per
+ * source, so that pending preloads don't reduce the buffer of the current playback. Once a
+ * preloaded period is adopted, its further loads use the allocator of the player's {@link
+ * LoadControl}, and the media that was preloaded isn't counted by the {@link LoadControl} until
+ * it's played or discarded. The player's {@link BandwidthMeter} is informed of preload transfers.
+ * Both must be the ones the player was built with.
+ *
+ * <p>All methods must be called on the application thread of the player.
+ */
+public final class PreloadManager {
+
+  /** The default duration of media to buffer for each source, in milliseconds. */
+  public static final long DEFAULT_PRELOAD_DURATION_MS = 3000;
+  /** The default maximum number of bytes to buffer for each source. */
+  public static final long DEFAULT_MAX_PRELOAD_BYTES = 2 * 1024 * 1024;
+
+  private final Handler playbackHandler;
+  private final Allocator allocator;
+  @Nullable private final TransferListener mediaTransferListener;
+  private final int maxPreloadedSources;
+  private final long preloadDurationUs;
+  private final long maxPreloadBytes;
+  private final LinkedHashMap<Object, PreloadMediaSource> preloadedSources;
+
+  /**
+   * Creates an instance that uses {@link #DEFAULT_PRELOAD_DURATION_MS} and {@link
+   * #DEFAULT_MAX_PRELOAD_BYTES}.
+   *
+   * @param player The {@link ExoPlayer} that will play the preloaded sources.
+   * @param loadControl The {@link LoadControl} of the player.
+   * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+   * @param maxPreloadedSources The maximum number of sources to keep preloaded.
+   */
+  public PreloadManager(
+      ExoPlayer player,
+      LoadControl loadControl,
+      BandwidthMeter bandwidthMeter,
+      int maxPreloadedSources) {
+    this(
+        player,
+        loadControl,
+        bandwidthMeter,
+        maxPreloadedSources,
+        DEFAULT_PRELOAD_DURATION_MS,
+        DEFAULT_MAX_PRELOAD_BYTES);
+  }
+
+  /**
+   * @param player The {@link ExoPlayer} that will play the preloaded sources.
+   * @param loadControl The {@link LoadControl} of the player.
+   * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+   * @param maxPreloadedSources The maximum number of sources to keep preloaded.
+   * @param preloadDurationMs The duration of media to buffer for each source, in milliseconds.
+   * @param maxPreloadBytes The maximum number of bytes to buffer for each source.
+   */
+  public PreloadManager(
+      ExoPlayer player,
+      LoadControl loadControl,
+      BandwidthMeter bandwidthMeter,
+      int maxPreloadedSources,
+      long preloadDurationMs,
+      long maxPreloadBytes) {
+    Assertions.checkArgument(maxPreloadedSources > 0);
+    playbackHandler = new Handler(player.getPlaybackLooper());
+    allocator = loadControl.getAllocator();
+    mediaTransferListener = bandwidthMeter.getTransferListener();
+    this.maxPreloadedSources = maxPreloadedSources;
+    this.preloadDurationUs = C.msToUs(preloadDurationMs);
+    this.maxPreloadBytes = maxPreloadBytes;
+    preloadedSources =
+        new LinkedHashMap<>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+  }
+
+  /**
+   * Starts preloading a source, or marks it as the most recently used if it's already preloaded.
+   * The least recently used source is released if more than the maximum number of sources are
+   * preloaded.
+   *
+   * @param key A key identifying the source, for use with {@link #takeMediaSource(Object)}.
+   * @param mediaSource The {@link MediaSource} to preload. Must not be prepared yet.
+   */
+  public void preload(Object key, MediaSource mediaSource) {
+    if (preloadedSources.get(key) != null) {
+      return;
+    }
+    PreloadMediaSource preloadMediaSource =
+        new PreloadMediaSource(
+            mediaSource, allocator, mediaTransferListener, preloadDurationUs, maxPreloadBytes);
+    preloadedSources.put(key, preloadMediaSource);
+    playbackHandler.post(preloadMediaSource::preload);
+    Iterator<PreloadMediaSource> iterator = preloadedSources.values().iterator();
+    while (preloadedSources.size() > maxPreloadedSources) {
+      PreloadMediaSource evictedSource = iterator.next();
+      iterator.remove();
+      playbackHandler.post(evictedSource::releasePreload);
+    }
+  }
+
+  /**
+   * Removes a preloaded source from the manager and returns it. The returned source should be
+   * passed to {@link ExoPlayer#prepare(MediaSource)} of the player with which the manager was
+   * created, and is released by the player when it's no longer used.
+   *
+   * @param key The key passed to {@link #preload(Object, MediaSource)}.
+   * @return The preloaded {@link MediaSource}, or null if no source with the key is preloaded.
+   */
+  @Nullable
+  public MediaSource takeMediaSource(Object key) {
+    return preloadedSources.remove(key);
+  }
+
+  /**
+   * Releases a preloaded source.
+   *
+   * @param key The key passed to {@link #preload(Object, MediaSource)}.
+   */
+  public void remove(Object key) {
+    PreloadMediaSource preloadMediaSource = preloadedSources.remove(key);
+    if (preloadMediaSource != null) {
+      playbackHandler.post(preloadMediaSource::releasePreload);
+    }
+  }
+
+  /** Releases all preloaded sources. */
+  public void release() {
+    for (PreloadMediaSource preloadMediaSource : preloadedSources.values()) {
+      playbackHandler.post(preloadMediaSource::releasePreload);
+    }
+    preloadedSources.clear();
+  }
+}
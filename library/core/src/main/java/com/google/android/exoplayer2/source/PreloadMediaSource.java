@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Wraps a {@link MediaSource} so that it can be prepared, and the start of its default window
+ * buffered, before it's prepared by a player. Used by {@link PreloadManager}.
+ *
+ * <p>The preloaded {@link MediaPeriod} is handed over to the player if the player creates a period
+ * with the same period uid and start position. Tracks that were buffered during preloading are
+ * retained if the player selects a track group that was preloaded and its selection includes the
+ * preloaded track. A retained stream continues to load the preloaded track, so adaptation within
+ * the group only takes effect from the next period.
+ *
+ * <p>Media is preloaded into a separate pool of allocations, so that it doesn't reduce the buffer
+ * of the player's current playback. After the handover, the player's allocator is used for new
+ * loads, while memory that was preloaded stays outside of the player's accounting until it's
+ * released. All methods must be called on the playback thread of the player that will play the
+ * source.
+ */
+/* package */ final class PreloadMediaSource extends CompositeMediaSource<Void> {
+
+  private final MediaSource mediaSource;
+  private final Allocator allocator;
+  @Nullable private final TransferListener mediaTransferListener;
+  private final long preloadDurationUs;
+  private final long maxPreloadBytes;
+  private final MediaSourceCaller preloadCaller;
+  private final Timeline.Window window;
+  private final Timeline.Period period;
+
+  private boolean preloading;
+  @Nullable private PreloadMediaPeriod preloadMediaPeriod;
+
+  /**
+   * @param mediaSource The {@link MediaSource} to preload.
+   * @param allocator The {@link Allocator} of the player, used by the preloaded period once it's
+   *     handed over. Media buffered before the handover is allocated from a separate pool that is
+   *     limited by {@code maxPreloadBytes}.
+   * @param mediaTransferListener The {@link TransferListener} to inform of media transfers while
+   *     preloading, or null.
+   * @param preloadDurationUs The duration of media to buffer, in microseconds.
+   * @param maxPreloadBytes The maximum number of bytes to buffer.
+   */
+  public PreloadMediaSource(
+      MediaSource mediaSource,
+      Allocator allocator,
+      @Nullable TransferListener mediaTransferListener,
+      long preloadDurationUs,
+      long maxPreloadBytes) {
+    this.mediaSource = mediaSource;
+    this.allocator = allocator;
+    this.mediaTransferListener = mediaTransferListener;
+    this.preloadDurationUs = preloadDurationUs;
+    this.maxPreloadBytes = maxPreloadBytes;
+    preloadCaller = (source, timeline) -> maybeCreatePreloadPeriod(timeline);
+    window = new Timeline.Window();
+    period = new Timeline.Period();
+  }
+
+  /** Starts preparing the source and buffering the start of its default window. */
+  public void preload() {
+    if (!preloading) {
+      preloading = true;
+      prepareSource(preloadCaller, mediaTransferListener);
+    }
+  }
+
+  /**
+   * Stops preloading, releasing the preloaded period if it hasn't been handed over to a player. The
+   * source is released if a player hasn't prepared it.
+   */
+  public void releasePreload() {
+    if (!preloading) {
+      return;
+    }
+    preloading = false;
+    if (preloadMediaPeriod != null) {
+      mediaSource.releasePeriod(preloadMediaPeriod.mediaPeriod);
+      preloadMediaPeriod = null;
+    }
+    releaseSource(preloadCaller);
+  }
+
+  @Override
+  @Nullable
+  public Object getTag() {
+    return mediaSource.getTag();
+  }
+
+  @Override
+  protected void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+    super.prepareSourceInternal(mediaTransferListener);
+    prepareChildSource(/* id= */ null, mediaSource);
+  }
+
+  @Override
+  public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+    PreloadMediaPeriod preloadMediaPeriod = this.preloadMediaPeriod;
+    this.preloadMediaPeriod = null;
+    if (preloadMediaPeriod != null
+        && preloadMediaPeriod.periodUid.equals(id.periodUid)
+        && preloadMediaPeriod.startPositionUs == startPositionUs) {
+      preloadMediaPeriod.handOver();
+    } else {
+      if (preloadMediaPeriod != null) {
+        mediaSource.releasePeriod(preloadMediaPeriod.mediaPeriod);
+      }
+      preloadMediaPeriod = null;
+    }
+    // The player has taken over, so the preload no longer needs to keep the source prepared.
+    if (preloading) {
+      preloading = false;
+      releaseSource(preloadCaller);
+    }
+    return preloadMediaPeriod != null
+        ? preloadMediaPeriod
+        : mediaSource.createPeriod(id, allocator, startPositionUs);
+  }
+
+  @Override
+  public void releasePeriod(MediaPeriod mediaPeriod) {
+    mediaSource.releasePeriod(
+        mediaPeriod instanceof PreloadMediaPeriod
+            ? ((PreloadMediaPeriod) mediaPeriod).mediaPeriod
+            : mediaPeriod);
+  }
+
+  @Override
+  protected void onChildSourceInfoRefreshed(Void id, MediaSource mediaSource, Timeline timeline) {
+    refreshSourceInfo(timeline);
+  }
+
+  private void maybeCreatePreloadPeriod(Timeline timeline) {
+    if (!preloading || preloadMediaPeriod != null || timeline.isEmpty()) {
+      return;
+    }
+    Pair<Object, Long> periodPosition =
+        timeline.getPeriodPosition(
+            window, period, /* windowIndex= */ 0, /* windowPositionUs= */ C.TIME_UNSET);
+    Object periodUid = periodPosition.first;
+    long startPositionUs = periodPosition.second;
+    // Buffer into a separate pool, so that preloading doesn't take from the buffer budget of the
+    // player's current playback. Loads after the period is handed over use the player's allocator.
+    PreloadAllocator preloadAllocator =
+        new PreloadAllocator(
+            allocator,
+            /* preloadAllocations= */ Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<>())),
+            /* bytesAllocated= */ new AtomicInteger(),
+            /* handedOver= */ new AtomicBoolean());
+    MediaPeriod mediaPeriod =
+        mediaSource.createPeriod(new MediaPeriodId(periodUid), preloadAllocator, startPositionUs);
+    preloadMediaPeriod =
+        new PreloadMediaPeriod(mediaPeriod, preloadAllocator, periodUid, startPositionUs);
+    mediaPeriod.prepare(preloadMediaPeriod, startPositionUs);
+  }
+
+  /**
+   * A {@link MediaPeriod} that buffers within the preload budget until it's handed over to a
+   * player, and then forwards all calls to the wrapped period.
+   */
+  private final class PreloadMediaPeriod implements MediaPeriod, MediaPeriod.Callback {
+
+    public final MediaPeriod mediaPeriod;
+    public final Object periodUid;
+    public final long startPositionUs;
+
+    private final PreloadAllocator allocator;
+
+    private boolean handedOver;
+    private boolean prepared;
+    @Nullable private Callback callback;
+    @NullableType private TrackSelection[] preloadSelections;
+    @NullableType private SampleStream[] preloadStreams;
+
+    public PreloadMediaPeriod(
+        MediaPeriod mediaPeriod,
+        PreloadAllocator allocator,
+        Object periodUid,
+        long startPositionUs) {
+      this.mediaPeriod = mediaPeriod;
+      this.allocator = allocator;
+      this.periodUid = periodUid;
+      this.startPositionUs = startPositionUs;
+      preloadSelections = new TrackSelection[0];
+      preloadStreams = new SampleStream[0];
+    }
+
+    public void handOver() {
+      handedOver = true;
+      allocator.handOver();
+    }
+
+    // MediaPeriod implementation.
+
+    @Override
+    public void prepare(Callback callback, long positionUs) {
+      this.callback = callback;
+      if (prepared) {
+        callback.onPrepared(this);
+      }
+    }
+
+    @Override
+    public void maybeThrowPrepareError() throws IOException {
+      mediaPeriod.maybeThrowPrepareError();
+    }
+
+    @Override
+    public TrackGroupArray getTrackGroups() {
+      return mediaPeriod.getTrackGroups();
+    }
+
+    @Override
+    public long selectTracks(
+        @NullableType TrackSelection[] selections,
+        boolean[] mayRetainStreamFlags,
+        @NullableType SampleStream[] streams,
+        boolean[] streamResetFlags,
+        long positionUs) {
+      if (preloadStreams.length == 0) {
+        return mediaPeriod.selectTracks(
+            selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+      }
+      // Combine the player's first selection with the preload selection, so that streams of
+      // tracks that were selected by both are retained and the other preload streams are disabled.
+      int length = selections.length;
+      TrackSelection[] combinedSelections =
+          Arrays.copyOf(selections, length + preloadSelections.length);
+      boolean[] combinedMayRetainStreamFlags = new boolean[combinedSelections.length];
+      SampleStream[] combinedStreams = Arrays.copyOf(streams, combinedSelections.length);
+      boolean[] combinedStreamResetFlags = new boolean[combinedSelections.length];
+      for (int i = 0; i < length; i++) {
+        combinedMayRetainStreamFlags[i] = mayRetainStreamFlags[i];
+      }
+      for (int i = 0; i < preloadSelections.length; i++) {
+        int index = getMatchingSelectionIndex(selections, preloadSelections[i]);
+        if (index != C.INDEX_UNSET && streams[index] == null) {
+          combinedStreams[index] = preloadStreams[i];
+          combinedMayRetainStreamFlags[index] = true;
+        } else {
+          combinedStreams[length + i] = preloadStreams[i];
+        }
+      }
+      preloadSelections = new TrackSelection[0];
+      preloadStreams = new SampleStream[0];
+      long selectedPositionUs =
+          mediaPeriod.selectTracks(
+              combinedSelections,
+              combinedMayRetainStreamFlags,
+              combinedStreams,
+              combinedStreamResetFlags,
+              positionUs);
+      System.arraycopy(combinedStreams, 0, streams, 0, length);
+      System.arraycopy(combinedStreamResetFlags, 0, streamResetFlags, 0, length);
+      return selectedPositionUs;
+    }
+
+    @Override
+    public void discardBuffer(long positionUs, boolean toKeyframe) {
+      mediaPeriod.discardBuffer(positionUs, toKeyframe);
+    }
+
+    @Override
+    public long readDiscontinuity() {
+      return mediaPeriod.readDiscontinuity();
+    }
+
+    @Override
+    public long seekToUs(long positionUs) {
+      return mediaPeriod.seekToUs(positionUs);
+    }
+
+    @Override
+    public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+      return mediaPeriod.getAdjustedSeekPositionUs(positionUs, seekParameters);
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+      return mediaPeriod.getBufferedPositionUs();
+    }
+
+    @Override
+    public long getNextLoadPositionUs() {
+      return mediaPeriod.getNextLoadPositionUs();
+    }
+
+    @Override
+    public boolean continueLoading(long positionUs) {
+      return mediaPeriod.continueLoading(positionUs);
+    }
+
+    @Override
+    public boolean isLoading() {
+      return mediaPeriod.isLoading();
+    }
+
+    @Override
+    public void reevaluateBuffer(long positionUs) {
+      mediaPeriod.reevaluateBuffer(positionUs);
+    }
+
+    // MediaPeriod.Callback implementation.
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      prepared = true;
+      if (callback != null) {
+        callback.onPrepared(this);
+      } else if (!handedOver) {
+        selectPreloadTracks();
+        maybeContinuePreloading();
+      }
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod mediaPeriod) {
+      if (callback != null) {
+        callback.onContinueLoadingRequested(this);
+      } else if (!handedOver) {
+        maybeContinuePreloading();
+      }
+    }
+
+    // Internal methods.
+
+    private void selectPreloadTracks() {
+      TrackGroupArray trackGroups = mediaPeriod.getTrackGroups();
+      preloadSelections = new TrackSelection[trackGroups.length];
+      for (int i = 0; i < trackGroups.length; i++) {
+        preloadSelections[i] = new FixedTrackSelection(trackGroups.get(i), /* track= */ 0);
+      }
+      preloadStreams = new SampleStream[trackGroups.length];
+      mediaPeriod.selectTracks(
+          preloadSelections,
+          new boolean[trackGroups.length],
+          preloadStreams,
+          new boolean[trackGroups.length],
+          startPositionUs);
+    }
+
+    private void maybeContinuePreloading() {
+      if (prepared) {
+        long bufferedPositionUs = mediaPeriod.getBufferedPositionUs();
+        if (bufferedPositionUs == C.TIME_END_OF_SOURCE
+            || bufferedPositionUs - startPositionUs >= preloadDurationUs
+            || allocator.getTotalBytesAllocated() >= maxPreloadBytes) {
+          return;
+        }
+      }
+      mediaPeriod.continueLoading(startPositionUs);
+    }
+
+    private int getMatchingSelectionIndex(
+        @NullableType TrackSelection[] selections, @Nullable TrackSelection preloadSelection) {
+      if (preloadSelection == null) {
+        return C.INDEX_UNSET;
+      }
+      int preloadedTrack = preloadSelection.getIndexInTrackGroup(0);
+      for (int i = 0; i < selections.length; i++) {
+        TrackSelection selection = selections[i];
+        if (selection != null
+            && selection.getTrackGroup() == preloadSelection.getTrackGroup()
+            && selection.indexOf(preloadedTrack) != C.INDEX_UNSET) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+  }
+
+  /**
+   * An {@link Allocator} that allocates from its own pool until the preloaded period is handed
+   * over, and from the player's allocator afterwards. Allocations are released to the allocator
+   * they were obtained from.
+   */
+  private static final class PreloadAllocator implements Allocator {
+
+    private final Allocator playerAllocator;
+    private final DefaultAllocator preloadAllocator;
+    private final Set<Allocation> preloadAllocations;
+    private final AtomicInteger bytesAllocated;
+    private final AtomicBoolean handedOver;
+
+    public PreloadAllocator(
+        Allocator playerAllocator,
+        Set<Allocation> preloadAllocations,
+        AtomicInteger bytesAllocated,
+        AtomicBoolean handedOver) {
+      this.playerAllocator = playerAllocator;
+      this.preloadAllocations = preloadAllocations;
+      this.bytesAllocated = bytesAllocated;
+      this.handedOver = handedOver;
+      preloadAllocator =
+          new DefaultAllocator(
+              /* trimOnReset= */ true, playerAllocator.getIndividualAllocationLength());
+    }
+
+    /** Makes subsequent allocations come from the player's allocator. */
+    public void handOver() {
+      handedOver.set(true);
+      preloadAllocator.trim();
+    }
+
+    @Override
+    public Allocation allocate() {
+      if (handedOver.get()) {
+        return playerAllocator.allocate();
+      }
+      Allocation allocation = preloadAllocator.allocate();
+      preloadAllocations.add(allocation);
+      bytesAllocated.addAndGet(preloadAllocator.getIndividualAllocationLength());
+      return allocation;
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      if (preloadAllocations.remove(allocation)) {
+        bytesAllocated.addAndGet(-preloadAllocator.getIndividualAllocationLength());
+        preloadAllocator.release(allocation);
+        if (handedOver.get()) {
+          // The pool is no longer allocated from, so free the memory straight away.
+          preloadAllocator.trim();
+        }
+      } else {
+        playerAllocator.release(allocation);
+      }
+    }
+
+    @Override
+    public void release(Allocation[] allocations) {
+      for (Allocation allocation : allocations) {
+        release(allocation);
+      }
+    }
+
+    @Override
+    public void trim() {
+      preloadAllocator.trim();
+      playerAllocator.trim();
+    }
+
+    /** Returns the number of bytes currently allocated from the preload pool. */
+    @Override
+    public int getTotalBytesAllocated() {
+      return bytesAllocated.get();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return playerAllocator.getIndividualAllocationLength();
+    }
+
+    @Override
+    public Allocator getTrackAllocator(int trackType) {
+      Allocator trackAllocator = playerAllocator.getTrackAllocator(trackType);
+      return trackAllocator == playerAllocator
+          ? this
+          : new PreloadAllocator(trackAllocator, preloadAllocations, bytesAllocated, handedOver);
+    }
+  }
+}
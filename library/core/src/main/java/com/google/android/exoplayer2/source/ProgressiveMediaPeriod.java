@@ -642,7 +642,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   @Override
   public TrackOutput track(int id, int type) {
-    return prepareTrackOutput(new TrackId(id, /* isIcyTrack= */ false));
+    return prepareTrackOutput(new TrackId(id, /* isIcyTrack= */ false), type);
   }
 
   @Override
@@ -660,7 +660,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   // Icy metadata. Called by the loading thread.
 
   /* package */ TrackOutput icyTrack() {
-    return prepareTrackOutput(new TrackId(0, /* isIcyTrack= */ true));
+    return prepareTrackOutput(new TrackId(0, /* isIcyTrack= */ true), C.TRACK_TYPE_METADATA);
   }
 
   // UpstreamFormatChangedListener implementation. Called by the loading thread.
@@ -672,14 +672,15 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   // Internal methods.
 
-  private TrackOutput prepareTrackOutput(TrackId id) {
+  private TrackOutput prepareTrackOutput(TrackId id, int trackType) {
     int trackCount = sampleQueues.length;
     for (int i = 0; i < trackCount; i++) {
       if (id.equals(sampleQueueTrackIds[i])) {
         return sampleQueues[i];
       }
     }
-    SampleQueue trackOutput = new SampleQueue(allocator, drmSessionManager);
+    SampleQueue trackOutput =
+        new SampleQueue(allocator.getTrackAllocator(trackType), drmSessionManager);
     trackOutput.setUpstreamFormatChangeListener(this);
     @NullableType
     TrackId[] sampleQueueTrackIds = Arrays.copyOf(this.sampleQueueTrackIds, trackCount + 1);
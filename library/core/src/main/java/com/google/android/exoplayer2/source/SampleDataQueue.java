@@ -114,6 +114,12 @@ import java.util.Arrays;
   /**
    * Reads data from the rolling buffer to populate a decoder input buffer.
    *
+   * <p>Sample data is copied from the queue's allocations directly into {@link
+   * DecoderInputBuffer#data}, with one bulk copy per allocation spanned by the sample. Renderers
+   * that set {@link DecoderInputBuffer#data} to a decoder owned buffer, such as a {@link
+   * android.media.MediaCodec} input buffer, therefore receive the sample without any intermediate
+   * copy.
+   *
    * @param buffer The buffer to populate.
    * @param extrasHolder The extras holder whose offset should be read and subsequently adjusted.
    */
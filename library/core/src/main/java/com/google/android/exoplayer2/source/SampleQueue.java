@@ -73,6 +73,13 @@ public class SampleQueue implements TrackOutput {
   private int relativeFirstIndex;
   private int readPosition;
 
+  // Absolute indices of the queued keyframes, in a ring buffer.
+  private int keyframeCapacity;
+  private int[] keyframeIndices;
+  private int keyframeCount;
+  private int relativeFirstKeyframeIndex;
+  private boolean keyframeIndicesSearchable;
+
   private long largestDiscardedTimestampUs;
   private long largestQueuedTimestampUs;
   private boolean isLastSampleQueued;
@@ -106,6 +113,9 @@ public class SampleQueue implements TrackOutput {
     sizes = new int[capacity];
     cryptoDatas = new CryptoData[capacity];
     formats = new Format[capacity];
+    keyframeCapacity = SAMPLE_CAPACITY_INCREMENT;
+    keyframeIndices = new int[keyframeCapacity];
+    keyframeIndicesSearchable = true;
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
     upstreamFormatRequired = true;
@@ -141,6 +151,9 @@ public class SampleQueue implements TrackOutput {
     absoluteFirstIndex = 0;
     relativeFirstIndex = 0;
     readPosition = 0;
+    keyframeCount = 0;
+    relativeFirstKeyframeIndex = 0;
+    keyframeIndicesSearchable = true;
     upstreamKeyframeRequired = true;
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
@@ -664,6 +677,14 @@ public class SampleQueue implements TrackOutput {
     Assertions.checkState(!upstreamFormatRequired);
 
     isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
+    if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      if (timeUs < largestQueuedTimestampUs) {
+        // An earlier sample has a later timestamp than this keyframe, so keyframe timestamps are no
+        // longer guaranteed to increase monotonically.
+        keyframeIndicesSearchable = false;
+      }
+      appendKeyframeIndex(absoluteFirstIndex + length);
+    }
     largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
 
     int relativeEndIndex = getRelativeIndex(length);
@@ -678,8 +699,9 @@ public class SampleQueue implements TrackOutput {
 
     length++;
     if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
+      // Increase the capacity. Growing geometrically keeps the amortized cost of copying the
+      // metadata constant per sample, however long the queue becomes.
+      int newCapacity = capacity + Math.max(capacity, SAMPLE_CAPACITY_INCREMENT);
       int[] newSourceIds = new int[newCapacity];
       long[] newOffsets = new long[newCapacity];
       long[] newTimesUs = new long[newCapacity];
@@ -748,6 +770,10 @@ public class SampleQueue implements TrackOutput {
     int discardCount = getWriteIndex() - discardFromIndex;
     Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
     length -= discardCount;
+    int absoluteEndIndex = absoluteFirstIndex + length;
+    while (keyframeCount > 0 && getKeyframeIndex(keyframeCount - 1) >= absoluteEndIndex) {
+      keyframeCount--;
+    }
     largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
     isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
     if (length != 0) {
@@ -830,16 +856,28 @@ public class SampleQueue implements TrackOutput {
    * @param length The length of the range being searched.
    * @param timeUs The specified time.
    * @param keyframe Whether only keyframes should be considered.
-   * @return The offset from {@code relativeFirstIndex} to the found sample, or -1 if no matching
+   * @return The offset from {@code relativeStartIndex} to the found sample, or -1 if no matching
    *     sample was found.
    */
   private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
+    int firstSearchOffset = 0;
+    if (keyframeIndicesSearchable) {
+      // Every sample before a keyframe has a timestamp no later than the keyframe's, so the last
+      // keyframe at or before timeUs can be binary searched, and any later matching sample must
+      // belong to the same group of pictures.
+      int keyframeOffset = findKeyframeBefore(relativeStartIndex, length, timeUs);
+      if (keyframe) {
+        return keyframeOffset;
+      } else if (keyframeOffset != -1) {
+        firstSearchOffset = keyframeOffset;
+      }
+    }
     int sampleCountToTarget = -1;
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
+    int searchIndex = relativeStartIndex + firstSearchOffset;
+    if (searchIndex >= capacity) {
+      searchIndex -= capacity;
+    }
+    for (int i = firstSearchOffset; i < length && timesUs[searchIndex] <= timeUs; i++) {
       if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         // We've found a suitable sample.
         sampleCountToTarget = i;
@@ -871,7 +909,15 @@ public class SampleQueue implements TrackOutput {
     if (readPosition < 0) {
       readPosition = 0;
     }
+    while (keyframeCount > 0 && getKeyframeIndex(0) < absoluteFirstIndex) {
+      relativeFirstKeyframeIndex++;
+      if (relativeFirstKeyframeIndex == keyframeCapacity) {
+        relativeFirstKeyframeIndex = 0;
+      }
+      keyframeCount--;
+    }
     if (length == 0) {
+      keyframeIndicesSearchable = true;
       int relativeLastDiscardIndex = (relativeFirstIndex == 0 ? capacity : relativeFirstIndex) - 1;
       return offsets[relativeLastDiscardIndex] + sizes[relativeLastDiscardIndex];
     } else {
@@ -879,6 +925,89 @@ public class SampleQueue implements TrackOutput {
     }
   }
 
+  /**
+   * Binary searches the keyframe indices for the last keyframe in the specified range that's before
+   * or at the specified time. Must only be called if {@link #keyframeIndicesSearchable} is true.
+   *
+   * @param relativeStartIndex The relative index from which to start searching.
+   * @param length The length of the range being searched.
+   * @param timeUs The specified time.
+   * @return The offset from {@code relativeStartIndex} to the found keyframe, or -1 if no matching
+   *     keyframe was found.
+   */
+  private int findKeyframeBefore(int relativeStartIndex, int length, long timeUs) {
+    int startOffset = relativeStartIndex - relativeFirstIndex;
+    if (startOffset < 0) {
+      startOffset += capacity;
+    }
+    int absoluteStartIndex = absoluteFirstIndex + startOffset;
+    int low = findFirstKeyframeAtOrAfter(absoluteStartIndex);
+    int high = findFirstKeyframeAtOrAfter(absoluteStartIndex + length) - 1;
+    int foundKeyframe = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int relativeSampleIndex = getRelativeIndex(getKeyframeIndex(mid) - absoluteFirstIndex);
+      if (timesUs[relativeSampleIndex] <= timeUs) {
+        foundKeyframe = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return foundKeyframe == -1 ? -1 : getKeyframeIndex(foundKeyframe) - absoluteStartIndex;
+  }
+
+  /**
+   * Returns the position in the keyframe indices of the first keyframe whose absolute index is at
+   * or after the specified absolute index, or {@link #keyframeCount} if there is no such keyframe.
+   */
+  private int findFirstKeyframeAtOrAfter(int absoluteIndex) {
+    int low = 0;
+    int high = keyframeCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getKeyframeIndex(mid) < absoluteIndex) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Returns the absolute sample index of the keyframe at the specified position. */
+  private int getKeyframeIndex(int position) {
+    return keyframeIndices[getRelativeKeyframeIndex(position)];
+  }
+
+  private void appendKeyframeIndex(int absoluteIndex) {
+    if (keyframeCount == keyframeCapacity) {
+      // Increase the capacity.
+      int newKeyframeCapacity = keyframeCapacity * 2;
+      int[] newKeyframeIndices = new int[newKeyframeCapacity];
+      int beforeWrap = keyframeCapacity - relativeFirstKeyframeIndex;
+      int afterWrap = relativeFirstKeyframeIndex;
+      System.arraycopy(
+          keyframeIndices, relativeFirstKeyframeIndex, newKeyframeIndices, 0, beforeWrap);
+      System.arraycopy(keyframeIndices, 0, newKeyframeIndices, beforeWrap, afterWrap);
+      keyframeIndices = newKeyframeIndices;
+      relativeFirstKeyframeIndex = 0;
+      keyframeCapacity = newKeyframeCapacity;
+    }
+    keyframeIndices[getRelativeKeyframeIndex(keyframeCount)] = absoluteIndex;
+    keyframeCount++;
+  }
+
+  /**
+   * Returns the relative index in {@link #keyframeIndices} for a given position.
+   *
+   * @param position The position, which must be in the range [0, keyframeCount].
+   */
+  private int getRelativeKeyframeIndex(int position) {
+    int relativeIndex = relativeFirstKeyframeIndex + position;
+    return relativeIndex < keyframeCapacity ? relativeIndex : relativeIndex - keyframeCapacity;
+  }
+
   /**
    * Finds the largest timestamp of any sample from the start of the queue up to the specified
    * length, assuming that the timestamps prior to a keyframe are always less than the timestamp of
@@ -60,4 +60,20 @@ public interface Allocator {
    */
   int getIndividualAllocationLength();
 
+  /**
+   * Returns an {@link Allocator} to be used for buffering the samples of a track of the specified
+   * type. Allocators that pool differently sized allocations may return a track specific allocator
+   * whose {@link #getIndividualAllocationLength()} is better suited to the typical sample size of
+   * the track type.
+   *
+   * <p>The default implementation returns this allocator.
+   *
+   * @param trackType The type of the track. One of the {@link
+   *     com.google.android.exoplayer2.C} {@code TRACK_TYPE_*} constants.
+   * @return The {@link Allocator} to use for the track.
+   */
+  default Allocator getTrackAllocator(int trackType) {
+    return this;
+  }
+
 }
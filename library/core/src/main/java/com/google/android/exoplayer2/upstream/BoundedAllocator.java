@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * An {@link Allocator} whose retained memory is bounded by a target buffer size, as set by the
+ * {@link com.google.android.exoplayer2.LoadControl} that owns it.
+ */
+public interface BoundedAllocator extends Allocator {
+
+  /**
+   * Sets the target buffer size in bytes. Unused {@link Allocation}s that would cause the total
+   * size of allocated and retained memory to exceed this target may be discarded by {@link
+   * #trim()}.
+   *
+   * @param targetBufferSize The target buffer size in bytes.
+   */
+  void setTargetBufferSize(int targetBufferSize);
+
+  /**
+   * Resets the allocator. Called when the owning {@link com.google.android.exoplayer2.LoadControl}
+   * is stopped or released.
+   */
+  void reset();
+
+  /**
+   * Returns the number of bytes that the owner of the allocator is currently permitted to have
+   * allocated. The limit may be lower than the target buffer size if the allocator shares memory
+   * with other players.
+   *
+   * <p>The default implementation returns {@link Integer#MAX_VALUE}, meaning the owner is limited
+   * only by its own target buffer size.
+   */
+  default int getAllocationLimit() {
+    return Integer.MAX_VALUE;
+  }
+}
@@ -22,7 +22,7 @@ import java.util.Arrays;
 /**
  * Default implementation of {@link Allocator}.
  */
-public final class DefaultAllocator implements Allocator {
+public final class DefaultAllocator implements BoundedAllocator {
 
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
 
@@ -77,12 +77,14 @@ public final class DefaultAllocator implements Allocator {
     singleAllocationReleaseHolder = new Allocation[1];
   }
 
+  @Override
   public synchronized void reset() {
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
   }
 
+  @Override
   public synchronized void setTargetBufferSize(int targetBufferSize) {
     boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
     this.targetBufferSize = targetBufferSize;
@@ -55,6 +55,12 @@ import java.util.zip.GZIPInputStream;
  * <p>Note: HTTP request headers will be set using all parameters passed via (in order of decreasing
  * priority) the {@code dataSpec}, {@link #setRequestProperty} and the default parameters used to
  * construct the instance.
+ *
+ * <p>By default the connection is disconnected when the source is closed. If connection reuse is
+ * enabled by calling {@link #setConnectionReuseEnabled(boolean)}, a connection whose response body
+ * has been read to the end (or can be cheaply drained) is instead returned to the platform's
+ * connection pool, so that later requests to the same host can skip the TCP and TLS handshakes. The
+ * pool itself can be configured using {@link #setConnectionPoolParameters(int, long)}.
  */
 public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSource {
 
@@ -82,6 +88,8 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
   private final RequestProperties requestProperties;
 
   @Nullable private Predicate<String> contentTypePredicate;
+  private boolean connectionReuseEnabled;
+  @Nullable private HttpConnectionReuseStats connectionReuseStats;
   @Nullable private DataSpec dataSpec;
   @Nullable private HttpURLConnection connection;
   @Nullable private InputStream inputStream;
@@ -93,6 +101,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
 
   private long bytesSkipped;
   private long bytesRead;
+  private boolean endOfInputReached;
 
   /** @param userAgent The User-Agent string that should be used. */
   public DefaultHttpDataSource(String userAgent) {
@@ -233,6 +242,48 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     this.contentTypePredicate = contentTypePredicate;
   }
 
+  /**
+   * Sets whether connections are returned to the platform's connection pool when the source is
+   * closed, rather than being disconnected. A connection is only returned if the end of its
+   * response body is reached, either by reading it or by draining a small remainder when the source
+   * is closed. The default value is {@code false}.
+   *
+   * @param connectionReuseEnabled Whether connections may be returned to the connection pool.
+   */
+  public void setConnectionReuseEnabled(boolean connectionReuseEnabled) {
+    this.connectionReuseEnabled = connectionReuseEnabled;
+  }
+
+  /**
+   * Sets the {@link HttpConnectionReuseStats} in which the outcome of each request is recorded.
+   *
+   * @param connectionReuseStats The {@link HttpConnectionReuseStats}, or {@code null} to stop
+   *     recording.
+   */
+  public void setConnectionReuseStats(@Nullable HttpConnectionReuseStats connectionReuseStats) {
+    this.connectionReuseStats = connectionReuseStats;
+  }
+
+  /**
+   * Configures the platform's HTTP connection pool, which is shared by all {@link
+   * HttpURLConnection}s in the process. The pool reads its configuration when it's created, so this
+   * method must be called before the first connection is made.
+   *
+   * <p>Note: This method changes global state. It sets the {@code http.keepAlive}, {@code
+   * http.maxConnections} and {@code http.keepAliveDuration} system properties, which affect every
+   * user of {@link HttpURLConnection} in the process, including code outside of ExoPlayer. Apps
+   * that configure these properties themselves shouldn't call this method.
+   *
+   * @param maxIdleConnections The maximum number of idle connections to keep in the pool.
+   * @param keepAliveDurationMs How long an idle connection is kept in the pool, in milliseconds.
+   */
+  public static void setConnectionPoolParameters(
+      int maxIdleConnections, long keepAliveDurationMs) {
+    System.setProperty("http.keepAlive", "true");
+    System.setProperty("http.maxConnections", Integer.toString(maxIdleConnections));
+    System.setProperty("http.keepAliveDuration", Long.toString(keepAliveDurationMs));
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -275,6 +326,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     this.dataSpec = dataSpec;
     this.bytesRead = 0;
     this.bytesSkipped = 0;
+    this.endOfInputReached = false;
     transferInitializing(dataSpec);
     try {
       connection = makeConnection(dataSpec);
@@ -362,18 +414,32 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
 
   @Override
   public void close() throws HttpDataSourceException {
+    boolean connectionReusable = false;
     try {
       if (inputStream != null) {
-        maybeTerminateInputStream(connection, bytesRemaining());
+        connectionReusable = connectionReuseEnabled && maybeDrainInputStream();
+        if (!connectionReusable) {
+          maybeTerminateInputStream(connection, bytesRemaining());
+        }
         try {
           inputStream.close();
         } catch (IOException e) {
+          connectionReusable = false;
           throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_CLOSE);
         }
       }
     } finally {
+      if (inputStream != null && connection != null && connectionReuseStats != null) {
+        connectionReuseStats.onRequestEnded(connection.getURL().getHost(), connectionReusable);
+      }
       inputStream = null;
-      closeConnectionQuietly();
+      if (connectionReusable) {
+        // Closing the fully read input stream has returned the connection to the pool. Calling
+        // disconnect would close its socket.
+        connection = null;
+      } else {
+        closeConnectionQuietly();
+      }
       if (opened) {
         opened = false;
         transferEnded();
@@ -699,6 +765,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
         // End of stream reached having not read sufficient data.
         throw new EOFException();
       }
+      endOfInputReached = true;
       return C.RESULT_END_OF_INPUT;
     }
 
@@ -707,6 +774,47 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     return read;
   }
 
+  /**
+   * Reads the remainder of the response body if it's known to be no longer than {@link
+   * #MAX_BYTES_TO_DRAIN}, so that closing the input stream returns the connection to the connection
+   * pool. A response body of unknown length is only considered drained if it was read to the end.
+   *
+   * @return Whether the end of the response body was reached.
+   */
+  private boolean maybeDrainInputStream() {
+    if (endOfInputReached) {
+      return true;
+    }
+    long bytesRemaining = bytesRemaining();
+    if (bytesRemaining == C.LENGTH_UNSET || bytesRemaining > MAX_BYTES_TO_DRAIN) {
+      return false;
+    }
+
+    // Acquire the shared skip buffer.
+    byte[] skipBuffer = skipBufferReference.getAndSet(null);
+    if (skipBuffer == null) {
+      skipBuffer = new byte[4096];
+    }
+
+    try {
+      // Even if no bytes are expected to remain, the server may have sent more than was requested.
+      long bytesDrained = 0;
+      while (bytesDrained <= MAX_BYTES_TO_DRAIN) {
+        int read = inputStream.read(skipBuffer, 0, skipBuffer.length);
+        if (read == -1) {
+          return true;
+        }
+        bytesDrained += read;
+      }
+      return false;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      // Release the shared skip buffer.
+      skipBufferReference.set(skipBuffer);
+    }
+  }
+
   /**
    * On platform API levels 19 and 20, okhttp's implementation of {@link InputStream#close} can
    * block for a long time if the stream has a lot of data remaining. Call this method before
@@ -29,6 +29,9 @@ public final class DefaultHttpDataSourceFactory extends BaseFactory {
   private final int readTimeoutMillis;
   private final boolean allowCrossProtocolRedirects;
 
+  private boolean connectionReuseEnabled;
+  @Nullable private HttpConnectionReuseStats connectionReuseStats;
+
   /**
    * Constructs a DefaultHttpDataSourceFactory. Sets {@link
    * DefaultHttpDataSource#DEFAULT_CONNECT_TIMEOUT_MILLIS} as the connection timeout, {@link
@@ -101,6 +104,26 @@ public final class DefaultHttpDataSourceFactory extends BaseFactory {
     this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
   }
 
+  /**
+   * Sets whether created sources return connections to the platform's connection pool.
+   *
+   * @param connectionReuseEnabled Whether connections may be returned to the connection pool.
+   * @see DefaultHttpDataSource#setConnectionReuseEnabled(boolean)
+   */
+  public void setConnectionReuseEnabled(boolean connectionReuseEnabled) {
+    this.connectionReuseEnabled = connectionReuseEnabled;
+  }
+
+  /**
+   * Sets the {@link HttpConnectionReuseStats} in which created sources record their requests.
+   *
+   * @param connectionReuseStats The {@link HttpConnectionReuseStats}, or {@code null}.
+   * @see DefaultHttpDataSource#setConnectionReuseStats(HttpConnectionReuseStats)
+   */
+  public void setConnectionReuseStats(@Nullable HttpConnectionReuseStats connectionReuseStats) {
+    this.connectionReuseStats = connectionReuseStats;
+  }
+
   @Override
   protected DefaultHttpDataSource createDataSourceInternal(
       HttpDataSource.RequestProperties defaultRequestProperties) {
@@ -111,6 +134,8 @@ public final class DefaultHttpDataSourceFactory extends BaseFactory {
             readTimeoutMillis,
             allowCrossProtocolRedirects,
             defaultRequestProperties);
+    dataSource.setConnectionReuseEnabled(connectionReuseEnabled);
+    dataSource.setConnectionReuseStats(connectionReuseStats);
     if (listener != null) {
       dataSource.addTransferListener(listener);
     }
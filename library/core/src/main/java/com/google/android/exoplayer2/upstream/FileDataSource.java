@@ -103,7 +103,7 @@ public final class FileDataSource extends BaseDataSource {
     return bytesRemaining;
   }
 
-  private static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
+  /* package */ static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
     try {
       return new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
     } catch (FileNotFoundException e) {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-host statistics about the reuse of HTTP connections by {@link DefaultHttpDataSource}.
+ *
+ * <p>{@link HttpURLConnection} doesn't report whether a request was sent over a pooled connection,
+ * so a request is counted as reusable if its connection was returned to the platform's connection
+ * pool when the source was closed, rather than being disconnected. A single instance can be shared
+ * between any number of sources, and all of its methods may be called from any thread.
+ */
+public final class HttpConnectionReuseStats {
+
+  /** Statistics for a single host. */
+  public static final class HostStats {
+
+    /** The number of requests whose response body was opened. */
+    public final int requestCount;
+    /** The number of requests whose connection was returned to the connection pool. */
+    public final int reusableRequestCount;
+
+    /**
+     * @param requestCount The number of requests whose response body was opened.
+     * @param reusableRequestCount The number of requests whose connection was returned to the
+     *     connection pool.
+     */
+    public HostStats(int requestCount, int reusableRequestCount) {
+      this.requestCount = requestCount;
+      this.reusableRequestCount = reusableRequestCount;
+    }
+
+    /**
+     * Returns the fraction of requests whose connection was returned to the connection pool, or 0
+     * if there were no requests.
+     */
+    public float getReuseRatio() {
+      return requestCount == 0 ? 0 : (float) reusableRequestCount / requestCount;
+    }
+  }
+
+  private final HashMap<String, HostStats> hostStats;
+
+  public HttpConnectionReuseStats() {
+    hostStats = new HashMap<>();
+  }
+
+  /**
+   * Returns the statistics for a host, or null if no requests to the host have been recorded.
+   *
+   * @param host The host name.
+   * @return The {@link HostStats} for the host, or null.
+   */
+  @Nullable
+  public synchronized HostStats getHostStats(String host) {
+    return hostStats.get(host);
+  }
+
+  /** Returns a snapshot of the statistics of all hosts, keyed by host name. */
+  public synchronized Map<String, HostStats> getAllHostStats() {
+    return Collections.unmodifiableMap(new HashMap<>(hostStats));
+  }
+
+  /** Discards all recorded statistics. */
+  public synchronized void reset() {
+    hostStats.clear();
+  }
+
+  /**
+   * Records the end of a request.
+   *
+   * @param host The host to which the request was made.
+   * @param connectionReusable Whether the connection was returned to the connection pool.
+   */
+  /* package */ synchronized void onRequestEnded(String host, boolean connectionReusable) {
+    HostStats stats = hostStats.get(host);
+    int requestCount = stats == null ? 0 : stats.requestCount;
+    int reusableRequestCount = stats == null ? 0 : stats.reusableRequestCount;
+    hostStats.put(
+        host,
+        new HostStats(requestCount + 1, reusableRequestCount + (connectionReusable ? 1 : 0)));
+  }
+}
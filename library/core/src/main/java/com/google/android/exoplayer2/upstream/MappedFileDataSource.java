@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link DataSource} for reading local files by memory mapping them.
+ *
+ * <p>Reads are served by copying from the mapped file, rather than by making a system call per
+ * read. The most recently mapped file remains mapped after the source is closed, so that opening
+ * the same file again, for example to continue reading a cache span after a partial read, doesn't
+ * need to map it again. The mapping is only reused if the file's length and last modification time
+ * are unchanged, and is replaced when a different file is opened. Each source therefore holds at
+ * most one mapping.
+ *
+ * <p>Java provides no way of unmapping a file explicitly, so a mapping is only released when it's
+ * garbage collected after being replaced, or after the source itself is no longer referenced. Until
+ * then it uses address space, and a mapped file that's deleted, for example when a cache span is
+ * evicted, continues to use disk space.
+ *
+ * <p>This source is intended for reading files that aren't modified whilst being read, such as
+ * committed cache files. It can be used instead of {@link FileDataSource} to read from a cache, by
+ * passing a {@link Factory} as the {@code cacheReadDataSourceFactory} of a {@link
+ * com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory}. Files larger than {@link
+ * Integer#MAX_VALUE} bytes can't be mapped, and fail to open.
+ */
+public final class MappedFileDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link MappedFileDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    @Nullable private TransferListener listener;
+
+    /**
+     * Sets a {@link TransferListener} for {@link MappedFileDataSource} instances created by this
+     * factory.
+     *
+     * @param listener The {@link TransferListener}.
+     * @return This factory.
+     */
+    public Factory setListener(@Nullable TransferListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    @Override
+    public MappedFileDataSource createDataSource() {
+      MappedFileDataSource dataSource = new MappedFileDataSource();
+      if (listener != null) {
+        dataSource.addTransferListener(listener);
+      }
+      return dataSource;
+    }
+  }
+
+  @Nullable private Uri uri;
+  @Nullable private MappedByteBuffer mappedBuffer;
+  @Nullable private String mappedPath;
+  private long mappedLastModifiedMs;
+  private long bytesRemaining;
+  private boolean opened;
+
+  public MappedFileDataSource() {
+    super(/* isNetwork= */ false);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws FileDataSourceException {
+    try {
+      Uri uri = dataSpec.uri;
+      this.uri = uri;
+
+      transferInitializing(dataSpec);
+
+      String path = Assertions.checkNotNull(uri.getPath());
+      File file = new File(path);
+      long lastModifiedMs = file.lastModified();
+      MappedByteBuffer mappedBuffer = this.mappedBuffer;
+      if (mappedBuffer == null
+          || !path.equals(mappedPath)
+          || lastModifiedMs != mappedLastModifiedMs
+          || file.length() != mappedBuffer.capacity()) {
+        // Drop the current mapping first, so that it can be released if mapping the file fails.
+        this.mappedBuffer = null;
+        mappedPath = null;
+        mappedBuffer = mapLocalFile(uri);
+        this.mappedBuffer = mappedBuffer;
+        mappedPath = path;
+        mappedLastModifiedMs = lastModifiedMs;
+      }
+
+      int fileLength = mappedBuffer.capacity();
+      if (dataSpec.position > fileLength) {
+        throw new EOFException();
+      }
+      mappedBuffer.position((int) dataSpec.position);
+      bytesRemaining =
+          dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position : dataSpec.length;
+      if (bytesRemaining < 0) {
+        throw new EOFException();
+      }
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) {
+    if (readLength == 0) {
+      return 0;
+    }
+    MappedByteBuffer mappedBuffer = castNonNull(this.mappedBuffer);
+    if (bytesRemaining == 0 || !mappedBuffer.hasRemaining()) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead =
+        (int) Math.min(Math.min(bytesRemaining, readLength), mappedBuffer.remaining());
+    mappedBuffer.get(buffer, offset, bytesRead);
+    bytesRemaining -= bytesRead;
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() {
+    uri = null;
+    if (opened) {
+      opened = false;
+      transferEnded();
+    }
+  }
+
+  /** Returns the current mapping, or null if no file is mapped. */
+  @VisibleForTesting
+  @Nullable
+  /* package */ MappedByteBuffer getMappedBuffer() {
+    return mappedBuffer;
+  }
+
+  private static MappedByteBuffer mapLocalFile(Uri uri) throws IOException {
+    try (RandomAccessFile file = FileDataSource.openLocalFile(uri);
+        FileChannel channel = file.getChannel()) {
+      long fileLength = channel.size();
+      if (fileLength > Integer.MAX_VALUE) {
+        throw new IOException("File too large to map: " + fileLength);
+      }
+      // The mapping remains valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, /* position= */ 0, fileLength);
+    }
+  }
+}
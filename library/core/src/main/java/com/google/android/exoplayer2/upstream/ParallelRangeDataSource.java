@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DataSource} that splits large requests into byte ranges, which are loaded in parallel
+ * over multiple connections and returned in order.
+ *
+ * <p>A request is first opened on a single upstream source, which serves the first chunk of the
+ * data so that reading can start without additional latency. If the opened length is known and
+ * greater than the chunk size, the remaining chunks are requested by up to {@code maxConnections}
+ * background loads, each of which opens its own upstream source for a single byte range. Chunks are
+ * loaded at most {@code maxConnections} ahead of the read position, so the memory used for a
+ * request is bounded by {@code maxConnections * chunkSize} bytes.
+ *
+ * <p>Requests whose length isn't known, requests that aren't GET requests and requests that allow
+ * gzip compression are read from the single upstream source without being split.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link ParallelRangeDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final int chunkSize;
+    private final int maxConnections;
+
+    /**
+     * Creates a factory for sources that use {@link #DEFAULT_CHUNK_SIZE} and {@link
+     * #DEFAULT_MAX_CONNECTIONS}.
+     *
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream sources.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this(upstreamFactory, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream sources.
+     * @param chunkSize The size of each byte range, in bytes.
+     * @param maxConnections The maximum number of byte ranges that are loaded in parallel.
+     */
+    public Factory(DataSource.Factory upstreamFactory, int chunkSize, int maxConnections) {
+      this.upstreamFactory = upstreamFactory;
+      this.chunkSize = chunkSize;
+      this.maxConnections = maxConnections;
+    }
+
+    @Override
+    public ParallelRangeDataSource createDataSource() {
+      return new ParallelRangeDataSource(upstreamFactory, chunkSize, maxConnections);
+    }
+  }
+
+  /** The default size of each byte range, in bytes. */
+  public static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+  /** The default maximum number of byte ranges that are loaded in parallel. */
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+  private static final String THREAD_NAME = "ExoPlayer:ParallelRangeDataSource";
+  private static final long THREAD_KEEP_ALIVE_MS = 1000;
+
+  private final DataSource.Factory upstreamFactory;
+  private final int chunkSize;
+  private final int maxConnections;
+  private final ThreadPoolExecutor executor;
+  private final List<TransferListener> transferListeners;
+  private final ArrayDeque<Future<byte[]>> pendingChunks;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private DataSource primaryDataSource;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
+  private boolean splitting;
+  private long primaryBytesRemaining;
+  private long nextChunkOffset;
+  private long length;
+  @Nullable private byte[] currentChunk;
+  private int currentChunkPosition;
+
+  /**
+   * @param upstreamFactory A {@link DataSource.Factory} for the upstream sources.
+   * @param chunkSize The size of each byte range, in bytes.
+   * @param maxConnections The maximum number of byte ranges that are loaded in parallel.
+   */
+  public ParallelRangeDataSource(
+      DataSource.Factory upstreamFactory, int chunkSize, int maxConnections) {
+    Assertions.checkArgument(chunkSize > 0 && maxConnections > 0);
+    this.upstreamFactory = upstreamFactory;
+    this.chunkSize = chunkSize;
+    this.maxConnections = maxConnections;
+    executor =
+        new ThreadPoolExecutor(
+            maxConnections,
+            maxConnections,
+            THREAD_KEEP_ALIVE_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, THREAD_NAME));
+    // Let idle threads exit, since there's no method for releasing the source.
+    executor.allowCoreThreadTimeOut(true);
+    transferListeners = Collections.synchronizedList(new ArrayList<>());
+    pendingChunks = new ArrayDeque<>();
+    responseHeaders = Collections.emptyMap();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    transferListeners.add(transferListener);
+    if (primaryDataSource != null) {
+      primaryDataSource.addTransferListener(transferListener);
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    DataSource primaryDataSource = createUpstreamDataSource();
+    this.primaryDataSource = primaryDataSource;
+    long openedLength = primaryDataSource.open(dataSpec);
+    uri = primaryDataSource.getUri();
+    responseHeaders = primaryDataSource.getResponseHeaders();
+    splitting =
+        openedLength != C.LENGTH_UNSET
+            && openedLength > chunkSize
+            && dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+            && !dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP);
+    if (splitting) {
+      length = openedLength;
+      primaryBytesRemaining = chunkSize;
+      nextChunkOffset = chunkSize;
+      maybeLoadChunks();
+    }
+    return openedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (!splitting) {
+      return Assertions.checkNotNull(primaryDataSource).read(buffer, offset, readLength);
+    }
+
+    if (primaryDataSource != null) {
+      if (primaryBytesRemaining > 0) {
+        int bytesToRead = (int) Math.min(readLength, primaryBytesRemaining);
+        int bytesRead = primaryDataSource.read(buffer, offset, bytesToRead);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        primaryBytesRemaining -= bytesRead;
+        return bytesRead;
+      }
+      // The rest of the data is read from the chunks.
+      DataSource primaryDataSource = this.primaryDataSource;
+      this.primaryDataSource = null;
+      primaryDataSource.close();
+    }
+
+    byte[] currentChunk = this.currentChunk;
+    if (currentChunk == null || currentChunkPosition == currentChunk.length) {
+      if (pendingChunks.isEmpty()) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      currentChunk = getChunk(pendingChunks.remove());
+      this.currentChunk = currentChunk;
+      currentChunkPosition = 0;
+      maybeLoadChunks();
+    }
+    int bytesToRead = Math.min(readLength, currentChunk.length - currentChunkPosition);
+    System.arraycopy(currentChunk, currentChunkPosition, buffer, offset, bytesToRead);
+    currentChunkPosition += bytesToRead;
+    return bytesToRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataSpec = null;
+    uri = null;
+    responseHeaders = Collections.emptyMap();
+    splitting = false;
+    currentChunk = null;
+    while (!pendingChunks.isEmpty()) {
+      // Interrupting the load causes it to close its upstream source.
+      pendingChunks.remove().cancel(/* mayInterruptIfRunning= */ true);
+    }
+    if (primaryDataSource != null) {
+      DataSource primaryDataSource = this.primaryDataSource;
+      this.primaryDataSource = null;
+      primaryDataSource.close();
+    }
+  }
+
+  private DataSource createUpstreamDataSource() {
+    DataSource dataSource = upstreamFactory.createDataSource();
+    synchronized (transferListeners) {
+      for (TransferListener transferListener : transferListeners) {
+        dataSource.addTransferListener(transferListener);
+      }
+    }
+    return dataSource;
+  }
+
+  private void maybeLoadChunks() {
+    DataSpec dataSpec = Assertions.checkNotNull(this.dataSpec);
+    while (pendingChunks.size() < maxConnections && nextChunkOffset < length) {
+      DataSpec chunkDataSpec =
+          dataSpec.subrange(nextChunkOffset, Math.min(chunkSize, length - nextChunkOffset));
+      pendingChunks.add(executor.submit(() -> loadChunk(chunkDataSpec)));
+      nextChunkOffset += chunkDataSpec.length;
+    }
+  }
+
+  private byte[] loadChunk(DataSpec chunkDataSpec) throws IOException {
+    DataSource dataSource = createUpstreamDataSource();
+    try {
+      dataSource.open(chunkDataSpec);
+      byte[] data = new byte[(int) chunkDataSpec.length];
+      int position = 0;
+      while (position < data.length) {
+        if (Thread.interrupted()) {
+          throw new InterruptedIOException();
+        }
+        int bytesRead = dataSource.read(data, position, data.length - position);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        position += bytesRead;
+      }
+      return data;
+    } finally {
+      Util.closeQuietly(dataSource);
+    }
+  }
+
+  private static byte[] getChunk(Future<byte[]> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+
+/**
+ * Coordinates buffer memory between several players, enforcing a single global byte budget.
+ *
+ * <p>Each player is given its own {@link PlayerAllocator}, for example by passing it to {@link
+ * com.google.android.exoplayer2.DefaultLoadControl.Builder#setAllocator(BoundedAllocator)}. All
+ * player allocators draw from one pool of {@link Allocation}s. The budget is split between the
+ * players that are currently buffering in proportion to their priorities, where a player never
+ * receives more than the target buffer size requested by its load control. Budget not needed by
+ * one player is redistributed between the others.
+ *
+ * <p>A player whose priority is {@link #PRIORITY_PAUSED} receives no share of the budget, so it
+ * stops loading beyond the minimum buffer duration of its load control. Unused allocations are
+ * returned to the shared pool and discarded by {@link #trim()} when the pool exceeds the budget.
+ */
+public final class SharedAllocator {
+
+  /** Priority for the player that is visible and playing. */
+  public static final int PRIORITY_FOREGROUND = 4;
+  /** Priority for players that are buffering ahead of being played. */
+  public static final int PRIORITY_PREFETCH = 1;
+  /** Priority for players that are paused, and which should not buffer further. */
+  public static final int PRIORITY_PAUSED = 0;
+
+  private final DefaultAllocator allocator;
+  private final int totalBufferSize;
+  private final ArrayList<PlayerAllocator> playerAllocators;
+
+  /**
+   * Constructs an instance using allocations of {@link C#DEFAULT_BUFFER_SEGMENT_SIZE} bytes.
+   *
+   * @param totalBufferSize The global budget in bytes, shared between all players.
+   */
+  public SharedAllocator(int totalBufferSize) {
+    this(totalBufferSize, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param totalBufferSize The global budget in bytes, shared between all players.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public SharedAllocator(int totalBufferSize, int individualAllocationSize) {
+    Assertions.checkArgument(totalBufferSize >= 0);
+    this.totalBufferSize = totalBufferSize;
+    allocator = new DefaultAllocator(/* trimOnReset= */ false, individualAllocationSize);
+    allocator.setTargetBufferSize(totalBufferSize);
+    playerAllocators = new ArrayList<>();
+  }
+
+  /**
+   * Creates a {@link PlayerAllocator} for a new player.
+   *
+   * @param priority The priority of the player. Priorities are relative weights, such as {@link
+   *     #PRIORITY_FOREGROUND}, {@link #PRIORITY_PREFETCH} or {@link #PRIORITY_PAUSED}.
+   * @return The {@link PlayerAllocator}.
+   */
+  public synchronized PlayerAllocator createPlayerAllocator(int priority) {
+    Assertions.checkArgument(priority >= 0);
+    PlayerAllocator playerAllocator = new PlayerAllocator(priority);
+    playerAllocators.add(playerAllocator);
+    return playerAllocator;
+  }
+
+  /**
+   * Removes a {@link PlayerAllocator} once its player has been released. Any allocations it still
+   * holds remain valid, but no longer count towards any player's share.
+   *
+   * @param playerAllocator The {@link PlayerAllocator} to remove.
+   */
+  public synchronized void removePlayerAllocator(PlayerAllocator playerAllocator) {
+    if (playerAllocators.remove(playerAllocator)) {
+      updateShares();
+      allocator.trim();
+    }
+  }
+
+  /** Returns the global budget in bytes. */
+  public int getTotalBufferSize() {
+    return totalBufferSize;
+  }
+
+  /** Returns the total number of bytes currently allocated by all players. */
+  public int getTotalBytesAllocated() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  /** Discards unused allocations that would cause the global budget to be exceeded. */
+  public void trim() {
+    allocator.trim();
+  }
+
+  /**
+   * Recomputes the share of each player. Players are granted shares in proportion to their
+   * priority, capped at their requested target buffer size. Budget that capped players don't need
+   * is redistributed between the remaining players until no more can be handed out.
+   */
+  private void updateShares() {
+    int remainingBufferSize = totalBufferSize;
+    long remainingPriority = 0;
+    for (int i = 0; i < playerAllocators.size(); i++) {
+      PlayerAllocator playerAllocator = playerAllocators.get(i);
+      playerAllocator.share = 0;
+      if (playerAllocator.isActive()) {
+        remainingPriority += playerAllocator.priority;
+      }
+    }
+    boolean shareCapped = true;
+    while (shareCapped && remainingPriority > 0) {
+      shareCapped = false;
+      // Grant the full request of any player whose request is below its proportional share.
+      for (int i = 0; i < playerAllocators.size(); i++) {
+        PlayerAllocator playerAllocator = playerAllocators.get(i);
+        if (playerAllocator.isActive() && playerAllocator.share == 0) {
+          long proportionalShare =
+              remainingBufferSize * (long) playerAllocator.priority / remainingPriority;
+          if (playerAllocator.requestedBufferSize <= proportionalShare) {
+            playerAllocator.share = playerAllocator.requestedBufferSize;
+            remainingBufferSize -= playerAllocator.requestedBufferSize;
+            remainingPriority -= playerAllocator.priority;
+            shareCapped = true;
+          }
+        }
+      }
+    }
+    if (remainingPriority > 0) {
+      // Split what's left in proportion to priority between the players whose requests exceed it.
+      for (int i = 0; i < playerAllocators.size(); i++) {
+        PlayerAllocator playerAllocator = playerAllocators.get(i);
+        if (playerAllocator.isActive() && playerAllocator.share == 0) {
+          playerAllocator.share =
+              (int) (remainingBufferSize * (long) playerAllocator.priority / remainingPriority);
+        }
+      }
+    }
+  }
+
+  /** A {@link BoundedAllocator} for a single player, drawing from the shared pool. */
+  public final class PlayerAllocator implements BoundedAllocator {
+
+    private int priority;
+    private int requestedBufferSize;
+    private int share;
+    private int allocatedCount;
+
+    private PlayerAllocator(int priority) {
+      this.priority = priority;
+    }
+
+    /**
+     * Sets the priority of the player, for example when it moves between the foreground and
+     * background. Lowering the priority of a player trims the shared pool.
+     *
+     * @param priority The new priority.
+     */
+    public void setPriority(int priority) {
+      Assertions.checkArgument(priority >= 0);
+      synchronized (SharedAllocator.this) {
+        boolean priorityReduced = priority < this.priority;
+        this.priority = priority;
+        updateShares();
+        if (priorityReduced) {
+          allocator.trim();
+        }
+      }
+    }
+
+    /** Returns the priority of the player. */
+    public int getPriority() {
+      synchronized (SharedAllocator.this) {
+        return priority;
+      }
+    }
+
+    // BoundedAllocator implementation.
+
+    @Override
+    public void setTargetBufferSize(int targetBufferSize) {
+      synchronized (SharedAllocator.this) {
+        boolean targetBufferSizeReduced = targetBufferSize < requestedBufferSize;
+        requestedBufferSize = targetBufferSize;
+        updateShares();
+        if (targetBufferSizeReduced) {
+          allocator.trim();
+        }
+      }
+    }
+
+    @Override
+    public void reset() {
+      setTargetBufferSize(0);
+    }
+
+    @Override
+    public int getAllocationLimit() {
+      synchronized (SharedAllocator.this) {
+        return share;
+      }
+    }
+
+    @Override
+    public Allocation allocate() {
+      synchronized (SharedAllocator.this) {
+        allocatedCount++;
+        return allocator.allocate();
+      }
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      synchronized (SharedAllocator.this) {
+        allocatedCount--;
+        allocator.release(allocation);
+      }
+    }
+
+    @Override
+    public void release(Allocation[] allocations) {
+      synchronized (SharedAllocator.this) {
+        allocatedCount -= allocations.length;
+        allocator.release(allocations);
+      }
+    }
+
+    @Override
+    public void trim() {
+      allocator.trim();
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      synchronized (SharedAllocator.this) {
+        return allocatedCount * allocator.getIndividualAllocationLength();
+      }
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocator.getIndividualAllocationLength();
+    }
+
+    private boolean isActive() {
+      return priority > 0 && requestedBufferSize > 0;
+    }
+  }
+}
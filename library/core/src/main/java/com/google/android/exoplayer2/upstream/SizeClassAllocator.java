@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.content.ComponentCallbacks2;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Arrays;
+
+/**
+ * A {@link BoundedAllocator} that pools {@link Allocation}s of several sizes.
+ *
+ * <p>Each size class is served by its own pool. {@link #getTrackAllocator(int)} returns the pool
+ * whose allocation length best fits the typical sample size of a track type, so that small audio,
+ * text and metadata samples don't each occupy a segment sized for video. {@link #allocate()}
+ * allocates from the largest size class. All pools share a single target buffer size, and {@link
+ * #getTotalBytesAllocated()} reports the total across all of them, so the allocator can be used
+ * in place of a {@link DefaultAllocator} by a {@link
+ * com.google.android.exoplayer2.DefaultLoadControl}.
+ *
+ * <p>Applications can forward memory pressure signals to {@link #onTrimMemory(int)} to release
+ * pooled memory early.
+ */
+public final class SizeClassAllocator implements BoundedAllocator {
+
+  /** The default allocation length for text, metadata and camera motion tracks. */
+  public static final int DEFAULT_SMALL_ALLOCATION_LENGTH = 4 * 1024;
+  /** The default allocation length for audio tracks. */
+  public static final int DEFAULT_MEDIUM_ALLOCATION_LENGTH = 16 * 1024;
+  /** The default allocation length for video and muxed tracks. */
+  public static final int DEFAULT_LARGE_ALLOCATION_LENGTH = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  private static final int AVAILABLE_EXTRA_CAPACITY = 100;
+
+  private final boolean trimOnReset;
+  private final Pool smallPool;
+  private final Pool mediumPool;
+  private final Pool largePool;
+  private final Pool[] pools;
+
+  private int targetBufferSize;
+
+  /**
+   * Constructs an instance using the {@code DEFAULT_*_ALLOCATION_LENGTH} size classes.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   */
+  public SizeClassAllocator(boolean trimOnReset) {
+    this(
+        trimOnReset,
+        DEFAULT_SMALL_ALLOCATION_LENGTH,
+        DEFAULT_MEDIUM_ALLOCATION_LENGTH,
+        DEFAULT_LARGE_ALLOCATION_LENGTH);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param smallAllocationLength The length of allocations for text, metadata and camera motion
+   *     tracks.
+   * @param mediumAllocationLength The length of allocations for audio tracks.
+   * @param largeAllocationLength The length of allocations for video, muxed and unknown tracks.
+   */
+  public SizeClassAllocator(
+      boolean trimOnReset,
+      int smallAllocationLength,
+      int mediumAllocationLength,
+      int largeAllocationLength) {
+    Assertions.checkArgument(smallAllocationLength > 0);
+    Assertions.checkArgument(mediumAllocationLength >= smallAllocationLength);
+    Assertions.checkArgument(largeAllocationLength >= mediumAllocationLength);
+    this.trimOnReset = trimOnReset;
+    smallPool = new Pool(smallAllocationLength);
+    mediumPool =
+        mediumAllocationLength == smallAllocationLength
+            ? smallPool
+            : new Pool(mediumAllocationLength);
+    largePool =
+        largeAllocationLength == mediumAllocationLength
+            ? mediumPool
+            : new Pool(largeAllocationLength);
+    // Distinct pools, ordered from largest to smallest allocation length.
+    if (smallPool == largePool) {
+      pools = new Pool[] {largePool};
+    } else if (smallPool == mediumPool || mediumPool == largePool) {
+      pools = new Pool[] {largePool, smallPool};
+    } else {
+      pools = new Pool[] {largePool, mediumPool, smallPool};
+    }
+  }
+
+  /**
+   * Notifies the allocator of memory pressure. Forward calls to {@link
+   * ComponentCallbacks2#onTrimMemory(int)} to this method.
+   *
+   * <p>Unused allocations retained for re-use are released. Allocations currently held by callers
+   * are unaffected.
+   *
+   * @param level The trim level, as defined by {@link ComponentCallbacks2}.
+   */
+  public synchronized void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      for (Pool pool : pools) {
+        pool.discardAvailable(/* targetAvailableCount= */ 0);
+      }
+    } else {
+      trim();
+    }
+  }
+
+  /** Returns the total number of bytes retained for re-use, but not currently allocated. */
+  public synchronized int getTotalBytesAvailable() {
+    int totalBytesAvailable = 0;
+    for (Pool pool : pools) {
+      totalBytesAvailable += pool.availableCount * pool.allocationLength;
+    }
+    return totalBytesAvailable;
+  }
+
+  // BoundedAllocator implementation.
+
+  @Override
+  public synchronized void reset() {
+    if (trimOnReset) {
+      setTargetBufferSize(0);
+    }
+  }
+
+  @Override
+  public synchronized void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+    this.targetBufferSize = targetBufferSize;
+    if (targetBufferSizeReduced) {
+      trim();
+    }
+  }
+
+  @Override
+  public Allocation allocate() {
+    return largePool.allocate();
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    largePool.release(allocation);
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    largePool.release(allocations);
+  }
+
+  @Override
+  public synchronized void trim() {
+    // Retain unused allocations up to the target buffer size, preferring larger size classes.
+    int remainingBytes = Math.max(0, targetBufferSize - getTotalBytesAllocated());
+    for (Pool pool : pools) {
+      int targetAvailableCount =
+          Math.min(pool.availableCount, remainingBytes / pool.allocationLength);
+      pool.discardAvailable(targetAvailableCount);
+      remainingBytes -= targetAvailableCount * pool.allocationLength;
+    }
+  }
+
+  @Override
+  public synchronized int getTotalBytesAllocated() {
+    int totalBytesAllocated = 0;
+    for (Pool pool : pools) {
+      totalBytesAllocated += pool.allocatedCount * pool.allocationLength;
+    }
+    return totalBytesAllocated;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return largePool.allocationLength;
+  }
+
+  @Override
+  public Allocator getTrackAllocator(int trackType) {
+    switch (trackType) {
+      case C.TRACK_TYPE_AUDIO:
+        return mediumPool;
+      case C.TRACK_TYPE_TEXT:
+      case C.TRACK_TYPE_METADATA:
+      case C.TRACK_TYPE_CAMERA_MOTION:
+        return smallPool;
+      case C.TRACK_TYPE_DEFAULT:
+      case C.TRACK_TYPE_VIDEO:
+      default:
+        return largePool;
+    }
+  }
+
+  /** A pool of allocations of a single length, sharing the lock of the enclosing allocator. */
+  private final class Pool implements Allocator {
+
+    public final int allocationLength;
+
+    private final Allocation[] singleAllocationReleaseHolder;
+
+    public int allocatedCount;
+    public int availableCount;
+    private Allocation[] availableAllocations;
+
+    public Pool(int allocationLength) {
+      this.allocationLength = allocationLength;
+      singleAllocationReleaseHolder = new Allocation[1];
+      availableAllocations = new Allocation[AVAILABLE_EXTRA_CAPACITY];
+    }
+
+    @Override
+    public Allocation allocate() {
+      synchronized (SizeClassAllocator.this) {
+        allocatedCount++;
+        Allocation allocation;
+        if (availableCount > 0) {
+          allocation = availableAllocations[--availableCount];
+          availableAllocations[availableCount] = null;
+        } else {
+          allocation = new Allocation(new byte[allocationLength], 0);
+        }
+        return allocation;
+      }
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      synchronized (SizeClassAllocator.this) {
+        singleAllocationReleaseHolder[0] = allocation;
+        release(singleAllocationReleaseHolder);
+      }
+    }
+
+    @Override
+    public void release(Allocation[] allocations) {
+      synchronized (SizeClassAllocator.this) {
+        if (availableCount + allocations.length >= availableAllocations.length) {
+          availableAllocations =
+              Arrays.copyOf(
+                  availableAllocations,
+                  Math.max(availableAllocations.length * 2, availableCount + allocations.length));
+        }
+        for (Allocation allocation : allocations) {
+          availableAllocations[availableCount++] = allocation;
+        }
+        allocatedCount -= allocations.length;
+        // Wake up threads waiting for the allocated size to drop.
+        SizeClassAllocator.this.notifyAll();
+      }
+    }
+
+    @Override
+    public void trim() {
+      SizeClassAllocator.this.trim();
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      return SizeClassAllocator.this.getTotalBytesAllocated();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocationLength;
+    }
+
+    @Override
+    public Allocator getTrackAllocator(int trackType) {
+      return SizeClassAllocator.this.getTrackAllocator(trackType);
+    }
+
+    /** Must be called while holding the lock of the enclosing allocator. */
+    public void discardAvailable(int targetAvailableCount) {
+      if (targetAvailableCount < availableCount) {
+        Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
+        availableCount = targetAvailableCount;
+      }
+    }
+  }
+}
@@ -15,13 +15,22 @@
  */
 package com.google.android.exoplayer2.upstream.cache;
 
+import androidx.annotation.Nullable;
+
 /** Metadata associated with a cache file. */
 /* package */ final class CacheFileMetadata {
 
+  /**
+   * The name of the directory containing the file, relative to the cache directory, or null if
+   * unknown. The empty string denotes the cache directory itself.
+   */
+  @Nullable public final String directory;
+
   public final long length;
   public final long lastTouchTimestamp;
 
-  public CacheFileMetadata(long length, long lastTouchTimestamp) {
+  public CacheFileMetadata(@Nullable String directory, long length, long lastTouchTimestamp) {
+    this.directory = directory;
     this.length = length;
     this.lastTouchTimestamp = lastTouchTimestamp;
   }
@@ -19,6 +19,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import com.google.android.exoplayer2.database.DatabaseIOException;
 import com.google.android.exoplayer2.database.DatabaseProvider;
@@ -27,27 +28,32 @@ import com.google.android.exoplayer2.util.Assertions;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** Maintains an index of cache file metadata. */
 /* package */ final class CacheFileMetadataIndex {
 
   private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "CacheFileMetadata";
-  private static final int TABLE_VERSION = 1;
+  private static final int TABLE_VERSION = 2;
+  /** The version prior to the addition of {@link #COLUMN_DIRECTORY}. */
+  private static final int TABLE_VERSION_WITHOUT_DIRECTORY = 1;
 
   private static final String COLUMN_NAME = "name";
   private static final String COLUMN_LENGTH = "length";
   private static final String COLUMN_LAST_TOUCH_TIMESTAMP = "last_touch_timestamp";
+  private static final String COLUMN_DIRECTORY = "directory";
 
   private static final int COLUMN_INDEX_NAME = 0;
   private static final int COLUMN_INDEX_LENGTH = 1;
   private static final int COLUMN_INDEX_LAST_TOUCH_TIMESTAMP = 2;
+  private static final int COLUMN_INDEX_DIRECTORY = 3;
 
   private static final String WHERE_NAME_EQUALS = COLUMN_NAME + " = ?";
 
   private static final String[] COLUMNS =
       new String[] {
-        COLUMN_NAME, COLUMN_LENGTH, COLUMN_LAST_TOUCH_TIMESTAMP,
+        COLUMN_NAME, COLUMN_LENGTH, COLUMN_LAST_TOUCH_TIMESTAMP, COLUMN_DIRECTORY,
       };
   private static final String TABLE_SCHEMA =
       "("
@@ -56,7 +62,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           + COLUMN_LENGTH
           + " INTEGER NOT NULL,"
           + COLUMN_LAST_TOUCH_TIMESTAMP
-          + " INTEGER NOT NULL)";
+          + " INTEGER NOT NULL,"
+          + COLUMN_DIRECTORY
+          + " TEXT)";
 
   private final DatabaseProvider databaseProvider;
 
@@ -120,8 +128,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         try {
           VersionTable.setVersion(
               writableDatabase, VersionTable.FEATURE_CACHE_FILE_METADATA, hexUid, TABLE_VERSION);
-          dropTable(writableDatabase, tableName);
-          writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          if (version == TABLE_VERSION_WITHOUT_DIRECTORY) {
+            // Keep the existing metadata. Its directories are unknown until the files are found.
+            writableDatabase.execSQL(
+                "ALTER TABLE " + tableName + " ADD COLUMN " + COLUMN_DIRECTORY + " TEXT");
+          } else {
+            dropTable(writableDatabase, tableName);
+            writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          }
           writableDatabase.setTransactionSuccessful();
         } finally {
           writableDatabase.endTransaction();
@@ -149,7 +163,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         String name = cursor.getString(COLUMN_INDEX_NAME);
         long length = cursor.getLong(COLUMN_INDEX_LENGTH);
         long lastTouchTimestamp = cursor.getLong(COLUMN_INDEX_LAST_TOUCH_TIMESTAMP);
-        fileMetadata.put(name, new CacheFileMetadata(length, lastTouchTimestamp));
+        @Nullable
+        String directory =
+            cursor.isNull(COLUMN_INDEX_DIRECTORY) ? null : cursor.getString(COLUMN_INDEX_DIRECTORY);
+        fileMetadata.put(name, new CacheFileMetadata(directory, length, lastTouchTimestamp));
       }
       return fileMetadata;
     } catch (SQLException e) {
@@ -163,20 +180,60 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * <p>This method may be slow and shouldn't normally be called on the main thread.
    *
    * @param name The name of the file.
+   * @param directory The name of the directory containing the file, relative to the cache
+   *     directory. The empty string denotes the cache directory itself.
    * @param length The file length.
    * @param lastTouchTimestamp The file last touch timestamp.
    * @throws DatabaseIOException If an error occurs setting the metadata.
    */
   @WorkerThread
-  public void set(String name, long length, long lastTouchTimestamp) throws DatabaseIOException {
+  public void set(String name, String directory, long length, long lastTouchTimestamp)
+      throws DatabaseIOException {
+    Assertions.checkNotNull(tableName);
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      replace(writableDatabase, name, directory, length, lastTouchTimestamp);
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /**
+   * Sets and removes metadata for a number of files in a single transaction.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param metadata The metadata to set, keyed by file name. A null value removes the metadata of
+   *     the corresponding file.
+   * @throws DatabaseIOException If an error occurs updating the metadata, in which case none of the
+   *     changes are made.
+   */
+  @WorkerThread
+  public void setAll(Map<String, @NullableType CacheFileMetadata> metadata)
+      throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
     try {
       SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      ContentValues values = new ContentValues();
-      values.put(COLUMN_NAME, name);
-      values.put(COLUMN_LENGTH, length);
-      values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
-      writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (Map.Entry<String, @NullableType CacheFileMetadata> entry : metadata.entrySet()) {
+          String name = entry.getKey();
+          @Nullable CacheFileMetadata fileMetadata = entry.getValue();
+          if (fileMetadata == null) {
+            writableDatabase.delete(tableName, WHERE_NAME_EQUALS, new String[] {name});
+          } else {
+            replace(
+                writableDatabase,
+                name,
+                fileMetadata.directory,
+                fileMetadata.length,
+                fileMetadata.lastTouchTimestamp);
+          }
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
     } catch (SQLException e) {
       throw new DatabaseIOException(e);
     }
@@ -242,6 +299,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             /* orderBy= */ null);
   }
 
+  private void replace(
+      SQLiteDatabase writableDatabase,
+      String name,
+      @Nullable String directory,
+      long length,
+      long lastTouchTimestamp) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_NAME, name);
+    values.put(COLUMN_LENGTH, length);
+    values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
+    values.put(COLUMN_DIRECTORY, directory);
+    writableDatabase.replaceOrThrow(
+        Assertions.checkNotNull(tableName), /* nullColumnHack= */ null, values);
+  }
+
   private static void dropTable(SQLiteDatabase writableDatabase, String tableName) {
     writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
   }
@@ -19,9 +19,18 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 
-/** Defines the cached content for a single stream. */
+/**
+ * Defines the cached content for a single stream.
+ *
+ * <p>Span and metadata lookups may be performed concurrently with each other and with a single
+ * thread that mutates the content, which allows {@link SimpleCache} to serve them without holding
+ * its lock. Mutations must not be performed concurrently.
+ */
 /* package */ final class CachedContent {
 
   private static final String TAG = "CachedContent";
@@ -30,12 +39,12 @@ import java.util.TreeSet;
   public final int id;
   /** The cache key that uniquely identifies the original stream. */
   public final String key;
-  /** The cached spans of this content. */
-  private final TreeSet<SimpleCacheSpan> cachedSpans;
+  /** The cached spans of this content, keyed by their positions. */
+  private final ConcurrentSkipListMap<Long, SimpleCacheSpan> cachedSpans;
   /** Metadata values. */
-  private DefaultContentMetadata metadata;
+  private volatile DefaultContentMetadata metadata;
   /** Whether the content is locked. */
-  private boolean locked;
+  private volatile boolean locked;
 
   /**
    * Creates a CachedContent.
@@ -51,7 +60,7 @@ import java.util.TreeSet;
     this.id = id;
     this.key = key;
     this.metadata = metadata;
-    this.cachedSpans = new TreeSet<>();
+    this.cachedSpans = new ConcurrentSkipListMap<>();
   }
 
   /** Returns the metadata. */
@@ -82,12 +91,12 @@ import java.util.TreeSet;
 
   /** Adds the given {@link SimpleCacheSpan} which contains a part of the content. */
   public void addSpan(SimpleCacheSpan span) {
-    cachedSpans.add(span);
+    cachedSpans.put(span.position, span);
   }
 
-  /** Returns a set of all {@link SimpleCacheSpan}s. */
+  /** Returns a snapshot of all {@link SimpleCacheSpan}s, ordered by position. */
   public TreeSet<SimpleCacheSpan> getSpans() {
-    return cachedSpans;
+    return new TreeSet<>(cachedSpans.values());
   }
 
   /**
@@ -95,14 +104,16 @@ import java.util.TreeSet;
    * which defines the maximum extents of the hole in the cache.
    */
   public SimpleCacheSpan getSpan(long position) {
-    SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(key, position);
-    SimpleCacheSpan floorSpan = cachedSpans.floor(lookupSpan);
-    if (floorSpan != null && floorSpan.position + floorSpan.length > position) {
-      return floorSpan;
+    Map.Entry<Long, SimpleCacheSpan> floorEntry = cachedSpans.floorEntry(position);
+    if (floorEntry != null) {
+      SimpleCacheSpan floorSpan = floorEntry.getValue();
+      if (floorSpan.position + floorSpan.length > position) {
+        return floorSpan;
+      }
     }
-    SimpleCacheSpan ceilSpan = cachedSpans.ceiling(lookupSpan);
-    return ceilSpan == null ? SimpleCacheSpan.createOpenHole(key, position)
-        : SimpleCacheSpan.createClosedHole(key, position, ceilSpan.position - position);
+    Long ceilPosition = cachedSpans.ceilingKey(position);
+    return ceilPosition == null ? SimpleCacheSpan.createOpenHole(key, position)
+        : SimpleCacheSpan.createClosedHole(key, position, ceilPosition - position);
   }
 
   /**
@@ -123,7 +134,7 @@ import java.util.TreeSet;
     long queryEndPosition = position + length;
     long currentEndPosition = span.position + span.length;
     if (currentEndPosition < queryEndPosition) {
-      for (SimpleCacheSpan next : cachedSpans.tailSet(span, false)) {
+      for (SimpleCacheSpan next : cachedSpans.tailMap(span.position, false).values()) {
         if (next.position > currentEndPosition) {
           // There's a hole in the cache within the queried region.
           break;
@@ -151,7 +162,7 @@ import java.util.TreeSet;
    */
   public SimpleCacheSpan setLastTouchTimestamp(
       SimpleCacheSpan cacheSpan, long lastTouchTimestamp, boolean updateFile) {
-    Assertions.checkState(cachedSpans.remove(cacheSpan));
+    Assertions.checkState(cachedSpans.containsKey(cacheSpan.position));
     File file = cacheSpan.file;
     if (updateFile) {
       File directory = file.getParentFile();
@@ -165,10 +176,36 @@ import java.util.TreeSet;
     }
     SimpleCacheSpan newCacheSpan =
         cacheSpan.copyWithFileAndLastTouchTimestamp(file, lastTouchTimestamp);
-    cachedSpans.add(newCacheSpan);
+    // Replace the span in a single operation, so that concurrent lookups always find one.
+    cachedSpans.put(newCacheSpan.position, newCacheSpan);
     return newCacheSpan;
   }
 
+  /**
+   * Replaces contiguous spans with a single span containing the same data. Concurrent lookups find
+   * either a replaced span or the new span at every position.
+   *
+   * @param spans The spans to replace, ordered by position.
+   * @param newSpan The span that replaces them, which must start at the position of the first.
+   * @return Whether the spans were replaced. False if any of them is no longer cached in the same
+   *     file.
+   */
+  public boolean replaceSpans(List<SimpleCacheSpan> spans, SimpleCacheSpan newSpan) {
+    Assertions.checkArgument(newSpan.position == spans.get(0).position);
+    for (int i = 0; i < spans.size(); i++) {
+      SimpleCacheSpan span = spans.get(i);
+      SimpleCacheSpan cachedSpan = cachedSpans.get(span.position);
+      if (cachedSpan == null || !Assertions.checkNotNull(span.file).equals(cachedSpan.file)) {
+        return false;
+      }
+    }
+    cachedSpans.put(newSpan.position, newSpan);
+    for (int i = 1; i < spans.size(); i++) {
+      cachedSpans.remove(spans.get(i).position);
+    }
+    return true;
+  }
+
   /** Returns whether there are any spans cached. */
   public boolean isEmpty() {
     return cachedSpans.isEmpty();
@@ -176,7 +213,7 @@ import java.util.TreeSet;
 
   /** Removes the given span from cache. */
   public boolean removeSpan(CacheSpan span) {
-    if (cachedSpans.remove(span)) {
+    if (cachedSpans.remove(span.position) != null) {
       span.file.delete();
       return true;
     }
@@ -202,7 +239,7 @@ import java.util.TreeSet;
     CachedContent that = (CachedContent) o;
     return id == that.id
         && key.equals(that.key)
-        && cachedSpans.equals(that.cachedSpans)
+        && getSpans().equals(that.getSpans())
         && metadata.equals(that.metadata);
   }
 }
@@ -51,6 +51,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -66,7 +67,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  private final Map<String, CachedContent> keyToContent;
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
    * have been removed from the index since it was last stored. This prevents reuse of these ids,
@@ -153,7 +154,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
     Assertions.checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -443,7 +444,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -453,17 +454,17 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -536,7 +537,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       Assertions.checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -546,13 +547,13 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -570,7 +571,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -625,7 +626,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -786,7 +787,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       Assertions.checkState(pendingUpdates.size() == 0);
       try {
@@ -829,7 +830,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -849,7 +850,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+/**
+ * Estimates how frequently cache keys have been accessed recently, using a count-min sketch with
+ * small saturating counters. All counters are periodically halved, so that the estimates favor
+ * recent accesses.
+ */
+/* package */ final class FrequencySketch {
+
+  /** The maximum frequency that can be estimated. */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final int[] SEEDS = new int[] {0x97CB3127, 0xB8AF5A1D, 0x6C8E9CF5, 0x7FEB352D};
+  private static final int SAMPLE_SIZE_MULTIPLIER = 10;
+
+  private final byte[][] counters;
+  private final int widthMask;
+  private final int sampleSize;
+
+  private int additions;
+
+  /** @param expectedKeyCount The expected number of distinct keys in the cache. */
+  public FrequencySketch(int expectedKeyCount) {
+    int width = Integer.highestOneBit(Math.max(expectedKeyCount, 16) - 1) << 1;
+    counters = new byte[SEEDS.length][width];
+    widthMask = width - 1;
+    sampleSize = width * SAMPLE_SIZE_MULTIPLIER;
+  }
+
+  /** Records an access of {@code key}. */
+  public void increment(String key) {
+    int keyHash = key.hashCode();
+    int frequency = getFrequency(keyHash);
+    if (frequency == MAX_FREQUENCY) {
+      return;
+    }
+    // Only increment the smallest counters, which reduces the overestimate caused by collisions.
+    for (int i = 0; i < SEEDS.length; i++) {
+      byte[] row = counters[i];
+      int index = getIndex(keyHash, i);
+      if (row[index] == frequency) {
+        row[index]++;
+      }
+    }
+    if (++additions == sampleSize) {
+      age();
+    }
+  }
+
+  /** Returns the estimated number of recent accesses of {@code key}. */
+  public int getFrequency(String key) {
+    return getFrequency(key.hashCode());
+  }
+
+  private int getFrequency(int keyHash) {
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < SEEDS.length; i++) {
+      frequency = Math.min(frequency, counters[i][getIndex(keyHash, i)]);
+    }
+    return frequency;
+  }
+
+  private int getIndex(int keyHash, int row) {
+    int hash = (keyHash ^ SEEDS[row]) * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & widthMask;
+  }
+
+  private void age() {
+    for (byte[] row : counters) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] = (byte) (row[i] >> 1);
+      }
+    }
+    additions /= 2;
+  }
+}
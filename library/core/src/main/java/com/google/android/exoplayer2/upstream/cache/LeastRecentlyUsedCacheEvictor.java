@@ -78,7 +78,8 @@ public final class LeastRecentlyUsedCacheEvictor implements CacheEvictor {
     }
   }
 
-  private static int compare(CacheSpan lhs, CacheSpan rhs) {
+  /** Orders spans from least to most recently used. */
+  /* package */ static int compare(CacheSpan lhs, CacheSpan rhs) {
     long lastTouchTimestampDelta = lhs.lastTouchTimestamp - rhs.lastTouchTimestamp;
     if (lastTouchTimestampDelta == 0) {
       // Use the standard compareTo method as a tie-break.
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A bounded in-memory store of recently read cache data, for use with {@link MemoryTierDataSource}.
+ *
+ * <p>Data is stored as byte ranges of content, identified by cache key and position. When the total
+ * size of the stored ranges exceeds the byte budget, the least recently used ranges are discarded.
+ * A single instance can be shared between any number of {@link MemoryTierDataSource}s, and all of
+ * its methods may be called from any thread.
+ */
+public final class MemoryTier {
+
+  /** The default maximum size of a single stored range, in bytes. */
+  public static final int DEFAULT_MAX_RANGE_BYTES = 1024 * 1024;
+
+  /** A stored range of content. */
+  /* package */ static final class Range {
+
+    public final String key;
+    public final long position;
+    public final byte[] data;
+
+    public Range(String key, long position, byte[] data) {
+      this.key = key;
+      this.position = position;
+      this.data = data;
+    }
+
+    /** Returns the position one byte beyond the end of the range. */
+    public long getEndPosition() {
+      return position + data.length;
+    }
+  }
+
+  private final long maxBytes;
+  private final int maxRangeBytes;
+  // Ranges of each key, keyed by position. Ranges of a key never contain each other, so the range
+  // with the greatest start position at or before a given position also has the greatest end.
+  private final HashMap<String, TreeMap<Long, Range>> keyToRanges;
+  // All stored ranges, from least to most recently used.
+  private final LinkedHashSet<Range> ranges;
+
+  private long currentBytes;
+
+  /**
+   * Creates an instance that stores ranges of up to {@link #DEFAULT_MAX_RANGE_BYTES}.
+   *
+   * @param maxBytes The maximum total size of the stored data, in bytes.
+   */
+  public MemoryTier(long maxBytes) {
+    this(maxBytes, (int) Math.min(maxBytes, DEFAULT_MAX_RANGE_BYTES));
+  }
+
+  /**
+   * @param maxBytes The maximum total size of the stored data, in bytes.
+   * @param maxRangeBytes The maximum size of a single stored range, in bytes. Reads of larger
+   *     ranges are not stored. Must not be greater than {@code maxBytes}.
+   */
+  public MemoryTier(long maxBytes, int maxRangeBytes) {
+    Assertions.checkArgument(maxRangeBytes >= 0 && maxRangeBytes <= maxBytes);
+    this.maxBytes = maxBytes;
+    this.maxRangeBytes = maxRangeBytes;
+    keyToRanges = new HashMap<>();
+    ranges = new LinkedHashSet<>();
+  }
+
+  /** Returns the maximum size of a single stored range, in bytes. */
+  public int getMaxRangeBytes() {
+    return maxRangeBytes;
+  }
+
+  /** Returns the total size of the stored data, in bytes. */
+  public synchronized long getCurrentBytes() {
+    return currentBytes;
+  }
+
+  /**
+   * Removes all stored ranges of the content with the given key. Should be called if the content
+   * is removed from the underlying cache because it has changed.
+   *
+   * @param key The cache key of the content.
+   */
+  public synchronized void removeKey(String key) {
+    TreeMap<Long, Range> keyRanges = keyToRanges.remove(key);
+    if (keyRanges != null) {
+      for (Range range : keyRanges.values()) {
+        ranges.remove(range);
+        currentBytes -= range.data.length;
+      }
+    }
+  }
+
+  /** Removes all stored ranges. */
+  public synchronized void clear() {
+    keyToRanges.clear();
+    ranges.clear();
+    currentBytes = 0;
+  }
+
+  /**
+   * Returns a stored range that contains all of the requested data, or null if there isn't one.
+   * The returned range is marked as the most recently used.
+   *
+   * @param key The cache key of the content.
+   * @param position The position of the requested data.
+   * @param length The length of the requested data.
+   * @return A {@link Range} containing the requested data, or null.
+   */
+  @Nullable
+  /* package */ synchronized Range get(String key, long position, long length) {
+    TreeMap<Long, Range> keyRanges = keyToRanges.get(key);
+    if (keyRanges == null) {
+      return null;
+    }
+    Map.Entry<Long, Range> floorEntry = keyRanges.floorEntry(position);
+    if (floorEntry == null || floorEntry.getValue().getEndPosition() < position + length) {
+      return null;
+    }
+    Range range = floorEntry.getValue();
+    ranges.remove(range);
+    ranges.add(range);
+    return range;
+  }
+
+  /**
+   * Stores a range of content, evicting the least recently used ranges if necessary. Does nothing
+   * if the range is larger than {@link #getMaxRangeBytes()}, or if it's already stored.
+   *
+   * @param key The cache key of the content.
+   * @param position The position of the start of the data.
+   * @param data The data, which must not be modified after this method is called.
+   */
+  /* package */ synchronized void put(String key, long position, byte[] data) {
+    if (data.length == 0
+        || data.length > maxRangeBytes
+        || get(key, position, data.length) != null) {
+      return;
+    }
+    TreeMap<Long, Range> keyRanges = keyToRanges.get(key);
+    if (keyRanges == null) {
+      keyRanges = new TreeMap<>();
+      keyToRanges.put(key, keyRanges);
+    }
+    // Remove ranges contained by the new one.
+    long endPosition = position + data.length;
+    Iterator<Range> iterator = keyRanges.tailMap(position, true).values().iterator();
+    while (iterator.hasNext()) {
+      Range range = iterator.next();
+      if (range.getEndPosition() > endPosition) {
+        break;
+      }
+      iterator.remove();
+      ranges.remove(range);
+      currentBytes -= range.data.length;
+    }
+    Range range = new Range(key, position, data);
+    keyRanges.put(position, range);
+    ranges.add(range);
+    currentBytes += data.length;
+    evict();
+  }
+
+  private void evict() {
+    Iterator<Range> iterator = ranges.iterator();
+    while (currentBytes > maxBytes && iterator.hasNext()) {
+      Range range = iterator.next();
+      iterator.remove();
+      currentBytes -= range.data.length;
+      TreeMap<Long, Range> keyRanges = Assertions.checkNotNull(keyToRanges.get(range.key));
+      keyRanges.remove(range.position);
+      if (keyRanges.isEmpty()) {
+        keyToRanges.remove(range.key);
+      }
+    }
+  }
+}
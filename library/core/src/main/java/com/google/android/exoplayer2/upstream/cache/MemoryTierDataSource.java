@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} for reading from a cache, which keeps recently read data in a {@link
+ * MemoryTier}.
+ *
+ * <p>This source is intended to be passed as the {@code cacheReadDataSource} of a {@link
+ * CacheDataSource}, or created by passing a {@link Factory} as the {@code
+ * cacheReadDataSourceFactory} of a {@link CacheDataSourceFactory}. Requests whose data is held by
+ * the memory tier are served without accessing the underlying cache files. Other requests are
+ * passed to an upstream source that reads the files, and the data they read is stored in the memory
+ * tier if it's small enough.
+ *
+ * <p>Requests are matched to stored data using the {@link DataSpec#key} and {@link
+ * DataSpec#absoluteStreamPosition}, both of which are set by {@link CacheDataSource}. Requests
+ * without a key or with an unset length always pass through to the upstream source.
+ */
+public final class MemoryTierDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link MemoryTierDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final MemoryTier memoryTier;
+    private final DataSource.Factory upstreamFactory;
+
+    /**
+     * Creates a factory whose sources read cache files using {@link FileDataSource}.
+     *
+     * @param memoryTier The {@link MemoryTier} shared by the created sources.
+     */
+    public Factory(MemoryTier memoryTier) {
+      this(memoryTier, new FileDataSource.Factory());
+    }
+
+    /**
+     * @param memoryTier The {@link MemoryTier} shared by the created sources.
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream sources that read cache
+     *     files.
+     */
+    public Factory(MemoryTier memoryTier, DataSource.Factory upstreamFactory) {
+      this.memoryTier = memoryTier;
+      this.upstreamFactory = upstreamFactory;
+    }
+
+    @Override
+    public MemoryTierDataSource createDataSource() {
+      return new MemoryTierDataSource(memoryTier, upstreamFactory.createDataSource());
+    }
+  }
+
+  private final MemoryTier memoryTier;
+  private final DataSource upstream;
+
+  @Nullable private Uri uri;
+  @Nullable private MemoryTier.Range currentRange;
+  private int currentRangeOffset;
+  @Nullable private byte[] storeBuffer;
+  private int storeBufferPosition;
+  @Nullable private String storeKey;
+  private long storePosition;
+  private long bytesRemaining;
+  private boolean upstreamOpened;
+
+  /**
+   * @param memoryTier The {@link MemoryTier} to read data from and store data in.
+   * @param upstream The upstream {@link DataSource} that reads cache files.
+   */
+  public MemoryTierDataSource(MemoryTier memoryTier, DataSource upstream) {
+    this.memoryTier = Assertions.checkNotNull(memoryTier);
+    this.upstream = Assertions.checkNotNull(upstream);
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    String key = dataSpec.key;
+    long length = dataSpec.length;
+    if (key == null || length == C.LENGTH_UNSET) {
+      upstreamOpened = true;
+      return upstream.open(dataSpec);
+    }
+
+    @Nullable
+    MemoryTier.Range range = memoryTier.get(key, dataSpec.absoluteStreamPosition, length);
+    if (range != null) {
+      currentRange = range;
+      currentRangeOffset = (int) (dataSpec.absoluteStreamPosition - range.position);
+      bytesRemaining = length;
+      return length;
+    }
+
+    upstreamOpened = true;
+    long openedLength = upstream.open(dataSpec);
+    if (length <= memoryTier.getMaxRangeBytes()) {
+      storeBuffer = new byte[(int) length];
+      storeBufferPosition = 0;
+      storeKey = key;
+      storePosition = dataSpec.absoluteStreamPosition;
+    }
+    return openedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    MemoryTier.Range currentRange = this.currentRange;
+    if (currentRange != null) {
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = (int) Math.min(readLength, bytesRemaining);
+      System.arraycopy(currentRange.data, currentRangeOffset, buffer, offset, bytesToRead);
+      currentRangeOffset += bytesToRead;
+      bytesRemaining -= bytesToRead;
+      return bytesToRead;
+    }
+
+    int bytesRead = upstream.read(buffer, offset, readLength);
+    byte[] storeBuffer = this.storeBuffer;
+    if (storeBuffer != null) {
+      if (bytesRead == C.RESULT_END_OF_INPUT
+          || storeBufferPosition + bytesRead > storeBuffer.length) {
+        // The file was shorter or longer than the request. Don't store anything.
+        this.storeBuffer = null;
+      } else {
+        System.arraycopy(buffer, offset, storeBuffer, storeBufferPosition, bytesRead);
+        storeBufferPosition += bytesRead;
+        if (storeBufferPosition == storeBuffer.length) {
+          memoryTier.put(Assertions.checkNotNull(storeKey), storePosition, storeBuffer);
+          this.storeBuffer = null;
+        }
+      }
+    }
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return currentRange != null ? uri : upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    currentRange = null;
+    storeBuffer = null;
+    storeKey = null;
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evicts cache files using a segmented least recently used policy.
+ *
+ * <p>Newly added spans enter a probationary segment. Spans that are read again are promoted to a
+ * protected segment, which is limited to a fraction of the cache size. When the protected segment
+ * is full, its least recently used spans are demoted back to the probationary segment. Spans are
+ * evicted from the probationary segment first, so content that's only read once, such as that
+ * written during a long sequential playback, can't flush content that's read repeatedly.
+ *
+ * <p>Content can be {@link #pin(String) pinned} to prevent it from being evicted.
+ */
+public final class SegmentedLeastRecentlyUsedCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that may be occupied by the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final TreeSet<CacheSpan> probationSpans;
+  private final TreeSet<CacheSpan> protectedSpans;
+  private final Set<String> pinnedKeys;
+
+  private long currentSize;
+  private long protectedSize;
+
+  /**
+   * Creates an instance with a protected segment of {@link #DEFAULT_PROTECTED_FRACTION}.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of {@code maxBytes} that may be occupied by the protected
+   *     segment. Must be between 0 and 1.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes, float protectedFraction) {
+    Assertions.checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    probationSpans = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    protectedSpans = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    pinnedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Pins the content with the given key, so that its spans are not evicted. Pinned spans still
+   * count toward the maximum size of the cache. May be called from any thread.
+   *
+   * @param key The cache key of the content.
+   */
+  public void pin(String key) {
+    pinnedKeys.add(key);
+  }
+
+  /**
+   * Unpins content previously {@link #pin(String) pinned}. May be called from any thread.
+   *
+   * @param key The cache key of the content.
+   */
+  public void unpin(String key) {
+    pinnedKeys.remove(key);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    probationSpans.add(span);
+    currentSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (protectedSpans.remove(span)) {
+      protectedSize -= span.length;
+    } else {
+      probationSpans.remove(span);
+    }
+    currentSize -= span.length;
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    onSpanRemoved(cache, oldSpan);
+    // The span has been read again, so it's promoted to (or remains in) the protected segment.
+    protectedSpans.add(newSpan);
+    protectedSize += newSpan.length;
+    currentSize += newSpan.length;
+    while (protectedSize > maxProtectedBytes && !protectedSpans.isEmpty()) {
+      CacheSpan demotedSpan = protectedSpans.pollFirst();
+      protectedSize -= demotedSpan.length;
+      probationSpans.add(demotedSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes) {
+      @Nullable CacheSpan span = getLeastRecentlyUsedUnpinnedSpan(probationSpans);
+      if (span == null) {
+        span = getLeastRecentlyUsedUnpinnedSpan(protectedSpans);
+      }
+      if (span == null) {
+        // Everything that's left is pinned.
+        break;
+      }
+      try {
+        cache.removeSpan(span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  @Nullable
+  private CacheSpan getLeastRecentlyUsedUnpinnedSpan(TreeSet<CacheSpan> spans) {
+    if (pinnedKeys.isEmpty()) {
+      return spans.isEmpty() ? null : spans.first();
+    }
+    for (CacheSpan span : spans) {
+      if (!pinnedKeys.contains(span.key)) {
+        return span;
+      }
+    }
+    return null;
+  }
+}
@@ -26,16 +26,27 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -59,6 +70,12 @@ public final class SimpleCache implements Cache {
   private static final int SUBDIRECTORY_COUNT = 10;
 
   private static final String UID_FILE_SUFFIX = ".uid";
+  /**
+   * Suffix of files to which spans are merged by {@link #compact(long)}, before they're renamed.
+   * Such files are unrecognized, and so are deleted if left behind.
+   */
+  private static final String MERGE_FILE_SUFFIX = ".merge";
+  private static final int MERGE_BUFFER_SIZE = 64 * 1024;
 
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
@@ -67,13 +84,23 @@ public final class SimpleCache implements Cache {
   private final CachedContentIndex contentIndex;
   @Nullable private final CacheFileMetadataIndex fileIndex;
   private final HashMap<String, ArrayList<Listener>> listeners;
+  // File index changes that haven't been written yet, keyed by file name. Null values are removals.
+  private final HashMap<String, @NullableType CacheFileMetadata> pendingFileMetadata;
   private final Random random;
   private final boolean touchCacheSpans;
-
-  private long uid;
-  private long totalSpace;
-  private boolean released;
+  private final boolean deferDirectoryScan;
+
+  // Read without holding the lock by methods that only query the cache. Modifications are made
+  // whilst holding the lock.
+  private volatile long uid;
+  private volatile long totalSpace;
+  private volatile boolean released;
+  private volatile boolean initialized;
   private @MonotonicNonNull CacheException initializationException;
+  @Nullable private Map<String, CacheFileMetadata> unresolvedFileMetadata;
+  private long indexFlushIntervalMs;
+  private boolean indexFlushScheduled;
+  @Nullable private ScheduledExecutorService indexFlushExecutor;
 
   /**
    * Returns whether {@code cacheFolder} is locked by a {@link SimpleCache} instance. To unlock the
@@ -226,6 +253,50 @@ public final class SimpleCache implements Cache {
       @Nullable byte[] legacyIndexSecretKey,
       boolean legacyIndexEncrypt,
       boolean preferLegacyIndex) {
+    this(
+        cacheDir,
+        evictor,
+        databaseProvider,
+        legacyIndexSecretKey,
+        legacyIndexEncrypt,
+        preferLegacyIndex,
+        /* deferDirectoryScan= */ false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the cache directory.
+   * Hence the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the cache index is stored, or {@code
+   *     null} to use a legacy index. Using a database index is highly recommended for performance
+   *     reasons.
+   * @param legacyIndexSecretKey A 16 byte AES key for reading, and optionally writing, the legacy
+   *     index. Not used by the database index, however should still be provided when using the
+   *     database index in cases where upgrading from the legacy index may be necessary.
+   * @param legacyIndexEncrypt Whether to encrypt when writing to the legacy index. Must be {@code
+   *     false} if {@code legacyIndexSecretKey} is {@code null}. Not used by the database index.
+   * @param preferLegacyIndex Whether to use the legacy index even if a {@code databaseProvider} is
+   *     provided. Should be {@code false} in nearly all cases. Setting this to {@code true} is only
+   *     useful for downgrading from the database index back to the legacy index.
+   * @param deferDirectoryScan Whether the cache should be initialized from the database index
+   *     alone, rather than by listing all of the files in the cache directory. This makes
+   *     initialization time independent of the number of cached files, which is useful for large
+   *     caches. The cache directory is instead scanned on a background thread after initialization,
+   *     adding any files that are missing from the index and removing spans whose file lengths have
+   *     changed. Spans whose files have been deleted are removed when they're next read. Must be
+   *     {@code false} if the database index isn't used.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      @Nullable DatabaseProvider databaseProvider,
+      @Nullable byte[] legacyIndexSecretKey,
+      boolean legacyIndexEncrypt,
+      boolean preferLegacyIndex,
+      boolean deferDirectoryScan) {
     this(
         cacheDir,
         evictor,
@@ -237,7 +308,8 @@ public final class SimpleCache implements Cache {
             preferLegacyIndex),
         databaseProvider != null && !preferLegacyIndex
             ? new CacheFileMetadataIndex(databaseProvider)
-            : null);
+            : null,
+        deferDirectoryScan);
   }
 
   /* package */ SimpleCache(
@@ -245,6 +317,16 @@ public final class SimpleCache implements Cache {
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
       @Nullable CacheFileMetadataIndex fileIndex) {
+    this(cacheDir, evictor, contentIndex, fileIndex, /* deferDirectoryScan= */ false);
+  }
+
+  /* package */ SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      CachedContentIndex contentIndex,
+      @Nullable CacheFileMetadataIndex fileIndex,
+      boolean deferDirectoryScan) {
+    Assertions.checkArgument(!deferDirectoryScan || fileIndex != null);
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -254,8 +336,10 @@ public final class SimpleCache implements Cache {
     this.contentIndex = contentIndex;
     this.fileIndex = fileIndex;
     listeners = new HashMap<>();
+    pendingFileMetadata = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    this.deferDirectoryScan = deferDirectoryScan;
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -267,6 +351,10 @@ public final class SimpleCache implements Cache {
           conditionVariable.open();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          initialized = true;
+        }
+        if (SimpleCache.this.deferDirectoryScan) {
+          scanDirectory();
         }
       }
     }.start();
@@ -284,8 +372,40 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Sets the interval at which changes to the cache index are written.
+   *
+   * <p>By default, changes are written as soon as they're made, whilst holding the cache lock. When
+   * content is written to the cache in many small spans, for example when downloading segmented
+   * media, this limits the rate at which spans can be committed. If a positive interval is set, the
+   * changes made during each interval are instead written together on a background thread, in a
+   * single transaction when a database index is used. Pending changes are also written when the
+   * cache is released.
+   *
+   * <p>If the process is killed before pending changes are written, the cache is reconciled with
+   * the files in the cache directory when it's next initialized. Content committed during the last
+   * interval may be lost as a result, but the cache remains consistent.
+   *
+   * @param indexFlushIntervalMs The interval in milliseconds, or 0 to write changes immediately.
+   * @throws CacheException If an error occurs writing pending changes when setting the interval to
+   *     0.
+   */
+  public synchronized void setIndexFlushIntervalMs(long indexFlushIntervalMs)
+      throws CacheException {
+    Assertions.checkArgument(indexFlushIntervalMs >= 0);
+    this.indexFlushIntervalMs = indexFlushIntervalMs;
+    if (indexFlushIntervalMs == 0 && indexFlushScheduled && !released) {
+      try {
+        flushIndex();
+      } catch (IOException e) {
+        throw new CacheException(e);
+      }
+    }
+  }
+
   @Override
-  public synchronized long getUid() {
+  public long getUid() {
+    blockUntilInitialized();
     return uid;
   }
 
@@ -297,12 +417,16 @@ public final class SimpleCache implements Cache {
     listeners.clear();
     removeStaleSpans();
     try {
-      contentIndex.store();
+      flushIndex();
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
     } finally {
       unlockFolder(cacheDir);
       released = true;
+      if (indexFlushExecutor != null) {
+        indexFlushExecutor.shutdownNow();
+        indexFlushExecutor = null;
+      }
     }
   }
 
@@ -334,8 +458,9 @@ public final class SimpleCache implements Cache {
 
   @NonNull
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     CachedContent cachedContent = contentIndex.get(key);
     return cachedContent == null || cachedContent.isEmpty()
         ? new TreeSet<>()
@@ -343,14 +468,16 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return new HashSet<>(contentIndex.getKeys());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return totalSpace;
   }
 
@@ -446,16 +573,15 @@ public final class SimpleCache implements Cache {
     }
 
     if (fileIndex != null) {
-      String fileName = file.getName();
       try {
-        fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
+        setFileMetadata(file, span.length, span.lastTouchTimestamp);
       } catch (IOException e) {
         throw new CacheException(e);
       }
     }
     addSpan(span);
     try {
-      contentIndex.store();
+      storeContentIndex();
     } catch (IOException e) {
       throw new CacheException(e);
     }
@@ -469,7 +595,7 @@ public final class SimpleCache implements Cache {
     Assertions.checkNotNull(cachedContent);
     Assertions.checkState(cachedContent.isLocked());
     cachedContent.setLocked(false);
-    contentIndex.maybeRemove(cachedContent.key);
+    maybeRemoveContent(cachedContent.key);
     notifyAll();
   }
 
@@ -480,15 +606,17 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     CachedContent cachedContent = contentIndex.get(key);
     return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public long getCachedLength(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     CachedContent cachedContent = contentIndex.get(key);
     return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
   }
@@ -501,18 +629,91 @@ public final class SimpleCache implements Cache {
 
     contentIndex.applyContentMetadataMutations(key, mutations);
     try {
-      contentIndex.store();
+      storeContentIndex();
     } catch (IOException e) {
       throw new CacheException(e);
     }
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return contentIndex.getContentMetadata(key);
   }
 
+  /**
+   * Compacts the cache by merging runs of contiguous spans belonging to the same content into
+   * single files. This reduces the number of files in the cache, which can be large for segmented
+   * media, and so reduces the cost of file system operations. Merged spans are read in the same way
+   * as any other span.
+   *
+   * <p>Whilst content is being compacted, new data can't be written for it, but cached data can
+   * still be read. This method may be slow and shouldn't be called on the main thread.
+   *
+   * @param maxFileSize The maximum size of a merged file, in bytes. Longer runs of spans are merged
+   *     into multiple files.
+   * @return The number of files that were removed from the cache.
+   * @throws CacheException If an error occurs initializing the cache.
+   */
+  @WorkerThread
+  public int compact(long maxFileSize) throws CacheException {
+    Set<String> keys;
+    synchronized (this) {
+      Assertions.checkState(!released);
+      checkInitialization();
+      keys = new HashSet<>(contentIndex.getKeys());
+    }
+    byte[] buffer = new byte[MERGE_BUFFER_SIZE];
+    int removedFileCount = 0;
+    for (String key : keys) {
+      List<List<SimpleCacheSpan>> runs;
+      synchronized (this) {
+        if (released) {
+          break;
+        }
+        CachedContent cachedContent = contentIndex.get(key);
+        if (cachedContent == null || cachedContent.isLocked()) {
+          continue;
+        }
+        runs = getContiguousRuns(cachedContent.getSpans(), maxFileSize);
+        if (runs.isEmpty()) {
+          continue;
+        }
+        // Lock the content, so that it's not written whilst its spans are being merged.
+        cachedContent.setLocked(true);
+      }
+      try {
+        for (int i = 0; i < runs.size(); i++) {
+          List<SimpleCacheSpan> run = runs.get(i);
+          if (mergeSpans(key, run, buffer)) {
+            removedFileCount += run.size() - 1;
+          }
+        }
+      } finally {
+        synchronized (this) {
+          Assertions.checkNotNull(contentIndex.get(key)).setLocked(false);
+          maybeRemoveContent(key);
+          notifyAll();
+        }
+      }
+    }
+    return removedFileCount;
+  }
+
+  /**
+   * Blocks until the cache's in-memory representation has been initialized. Must be called by
+   * methods that read it without holding the lock.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      // The initialization thread holds the lock until initialization has completed.
+      synchronized (this) {
+        // Do nothing.
+      }
+    }
+  }
+
   /** Ensures that the cache's in-memory representation has been initialized. */
   private void initialize() {
     if (!cacheDir.exists()) {
@@ -549,8 +750,12 @@ public final class SimpleCache implements Cache {
       if (fileIndex != null) {
         fileIndex.initialize(uid);
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
-        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
-        fileIndex.removeAll(fileMetadata.keySet());
+        if (deferDirectoryScan) {
+          loadFileIndex(fileMetadata);
+        } else {
+          loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
+          fileIndex.removeAll(fileMetadata.keySet());
+        }
       } else {
         loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
       }
@@ -561,6 +766,11 @@ public final class SimpleCache implements Cache {
       return;
     }
 
+    if (deferDirectoryScan) {
+      // Content whose files are missing from the file index appears to be empty until the
+      // directory has been scanned, so empty content is removed by the scan.
+      return;
+    }
     contentIndex.removeEmpty();
     try {
       contentIndex.store();
@@ -621,6 +831,360 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Loads the in-memory representation from the file index, without accessing the cache files.
+   * Metadata for files whose directories are unknown is retained in {@link
+   * #unresolvedFileMetadata}, to be resolved by {@link #scanDirectory()}.
+   *
+   * @param fileMetadata A mutable map containing cache file metadata, keyed by file name.
+   * @throws DatabaseIOException If an error occurs removing metadata for unrecognized files.
+   */
+  private void loadFileIndex(Map<String, CacheFileMetadata> fileMetadata)
+      throws DatabaseIOException {
+    CacheFileMetadataIndex fileIndex = Assertions.checkNotNull(this.fileIndex);
+    Set<String> unrecognizedFileNames = new HashSet<>();
+    Iterator<Map.Entry<String, CacheFileMetadata>> iterator = fileMetadata.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, CacheFileMetadata> entry = iterator.next();
+      CacheFileMetadata metadata = entry.getValue();
+      if (metadata.directory == null) {
+        continue;
+      }
+      iterator.remove();
+      File file = new File(getDirectory(metadata.directory), entry.getKey());
+      SimpleCacheSpan span =
+          SimpleCacheSpan.createCacheEntry(
+              file, metadata.length, metadata.lastTouchTimestamp, contentIndex);
+      if (span != null) {
+        addSpan(span);
+      } else {
+        unrecognizedFileNames.add(entry.getKey());
+      }
+    }
+    fileIndex.removeAll(unrecognizedFileNames);
+    unresolvedFileMetadata = fileMetadata;
+  }
+
+  /**
+   * Reconciles the files in the cache directory with the in-memory representation loaded by {@link
+   * #loadFileIndex(Map)}. Called on the initialization thread after initialization has completed.
+   * Directories are listed without holding the lock, so that the cache remains usable whilst the
+   * scan is in progress.
+   */
+  private void scanDirectory() {
+    synchronized (this) {
+      if (released || initializationException != null) {
+        return;
+      }
+    }
+    scanFiles(/* isRoot= */ true, cacheDir.listFiles());
+    synchronized (this) {
+      if (released) {
+        return;
+      }
+      Set<String> unresolvedFileNames = Assertions.checkNotNull(unresolvedFileMetadata).keySet();
+      unresolvedFileMetadata = null;
+      contentIndex.removeEmpty();
+      try {
+        removeFileMetadata(unresolvedFileNames);
+        storeContentIndex();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index failed after scanning cache directory", e);
+      }
+    }
+  }
+
+  private void scanFiles(boolean isRoot, @Nullable File[] files) {
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (isRoot && fileName.indexOf('.') == -1) {
+        scanFiles(/* isRoot= */ false, file.listFiles());
+      } else if (!isRoot
+          || (!CachedContentIndex.isIndexFile(fileName) && !fileName.endsWith(UID_FILE_SUFFIX))) {
+        synchronized (this) {
+          if (released) {
+            return;
+          }
+          reconcileFile(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reconciles a file found by {@link #scanDirectory()} with the in-memory representation. Files
+   * that are missing from the representation are added to it, and spans whose files have changed
+   * length are removed.
+   *
+   * @param file The file.
+   */
+  private void reconcileFile(File file) {
+    int id = SimpleCacheSpan.getCacheFileId(file);
+    @Nullable String key = id == C.INDEX_UNSET ? null : contentIndex.getKeyForId(id);
+    @Nullable CachedContent lockedContent = key == null ? null : contentIndex.get(key);
+    if (lockedContent != null && lockedContent.isLocked()) {
+      // The file may still be being written. If so, it will be added when it's committed.
+      return;
+    }
+    @Nullable
+    CacheFileMetadata metadata =
+        Assertions.checkNotNull(unresolvedFileMetadata).remove(file.getName());
+    SimpleCacheSpan span =
+        metadata != null
+            ? SimpleCacheSpan.createCacheEntry(
+                file, metadata.length, metadata.lastTouchTimestamp, contentIndex)
+            : SimpleCacheSpan.createCacheEntry(file, C.LENGTH_UNSET, contentIndex);
+    if (span == null) {
+      file.delete();
+      return;
+    }
+    SimpleCacheSpan existingSpan = contentIndex.getOrAdd(span.key).getSpan(span.position);
+    if (existingSpan.isCached) {
+      if (!span.file.equals(existingSpan.file)) {
+        // The file overlaps a span that's already cached.
+        span.file.delete();
+      } else if (span.length != existingSpan.length) {
+        removeSpanInternal(existingSpan);
+      }
+      return;
+    }
+    try {
+      setFileMetadata(span.file, span.length, span.lastTouchTimestamp);
+    } catch (IOException e) {
+      // The file will be added again the next time the directory is scanned.
+      Log.w(TAG, "Failed to add file index entry for: " + span.file);
+    }
+    addSpan(span);
+  }
+
+  /**
+   * Merges contiguous spans of locked content into a single span. The data is copied without
+   * holding the lock.
+   *
+   * @param key The key of the content.
+   * @param spans The spans to merge, ordered by position.
+   * @param buffer A buffer to use when copying data.
+   * @return Whether the spans were merged. False if they were modified whilst being merged.
+   */
+  private boolean mergeSpans(String key, List<SimpleCacheSpan> spans, byte[] buffer) {
+    SimpleCacheSpan firstSpan = spans.get(0);
+    File firstFile = Assertions.checkNotNull(firstSpan.file);
+    File directory = Assertions.checkNotNull(firstFile.getParentFile());
+    File mergeFile = new File(directory, firstFile.getName() + MERGE_FILE_SUFFIX);
+    long length = 0;
+    long lastTouchTimestamp = firstSpan.lastTouchTimestamp;
+    try (OutputStream outputStream = new FileOutputStream(mergeFile)) {
+      for (int i = 0; i < spans.size(); i++) {
+        SimpleCacheSpan span = spans.get(i);
+        long bytesCopied = 0;
+        try (InputStream inputStream = new FileInputStream(Assertions.checkNotNull(span.file))) {
+          int bytesRead;
+          while ((bytesRead = inputStream.read(buffer)) != C.RESULT_END_OF_INPUT) {
+            outputStream.write(buffer, 0, bytesRead);
+            bytesCopied += bytesRead;
+          }
+        }
+        if (bytesCopied != span.length) {
+          throw new IOException("Unexpected span file length: " + span.file);
+        }
+        length += span.length;
+        lastTouchTimestamp = Math.max(lastTouchTimestamp, span.lastTouchTimestamp);
+      }
+    } catch (IOException e) {
+      // A span may have been evicted or modified whilst it was being copied.
+      Log.w(TAG, "Failed to merge spans into: " + mergeFile, e);
+      mergeFile.delete();
+      return false;
+    }
+
+    synchronized (this) {
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(key));
+      File file =
+          SimpleCacheSpan.getCacheFile(
+              directory, cachedContent.id, firstSpan.position, lastTouchTimestamp);
+      while (file.exists()) {
+        // Avoid replacing a span file that may still be in use.
+        file =
+            SimpleCacheSpan.getCacheFile(
+                directory, cachedContent.id, firstSpan.position, ++lastTouchTimestamp);
+      }
+      if (released || !mergeFile.renameTo(file)) {
+        mergeFile.delete();
+        return false;
+      }
+      SimpleCacheSpan mergedSpan =
+          Assertions.checkNotNull(
+              SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex));
+      if (!cachedContent.replaceSpans(spans, mergedSpan)) {
+        file.delete();
+        return false;
+      }
+      if (fileIndex != null) {
+        Set<String> fileNames = new HashSet<>();
+        for (int i = 0; i < spans.size(); i++) {
+          fileNames.add(Assertions.checkNotNull(spans.get(i).file).getName());
+        }
+        try {
+          setFileMetadata(file, length, lastTouchTimestamp);
+          removeFileMetadata(fileNames);
+        } catch (IOException e) {
+          // The file index will be corrected next time the cache is initialized.
+          Log.w(TAG, "Failed to update file index entries for: " + file.getName());
+        }
+      }
+      // The total size of the cache is unchanged.
+      for (int i = 0; i < spans.size(); i++) {
+        SimpleCacheSpan span = spans.get(i);
+        Assertions.checkNotNull(span.file).delete();
+        notifySpanRemoved(span);
+      }
+      notifySpanAdded(mergedSpan);
+      return true;
+    }
+  }
+
+  /**
+   * Returns the runs of contiguous spans that can be merged into files of at most {@code
+   * maxFileSize} bytes. Only runs of two or more spans are returned.
+   */
+  private static List<List<SimpleCacheSpan>> getContiguousRuns(
+      NavigableSet<SimpleCacheSpan> spans, long maxFileSize) {
+    List<List<SimpleCacheSpan>> runs = new ArrayList<>();
+    List<SimpleCacheSpan> run = new ArrayList<>();
+    long runLength = 0;
+    for (SimpleCacheSpan span : spans) {
+      if (!run.isEmpty()) {
+        SimpleCacheSpan lastSpan = run.get(run.size() - 1);
+        if (lastSpan.position + lastSpan.length != span.position
+            || runLength + span.length > maxFileSize) {
+          if (run.size() > 1) {
+            runs.add(run);
+          }
+          run = new ArrayList<>();
+          runLength = 0;
+        }
+      }
+      run.add(span);
+      runLength += span.length;
+    }
+    if (run.size() > 1) {
+      runs.add(run);
+    }
+    return runs;
+  }
+
+  /**
+   * Sets the file index entry for a cache file, or records the change to be written by {@link
+   * #flushIndex()} if changes are being batched.
+   */
+  private void setFileMetadata(File file, long length, long lastTouchTimestamp)
+      throws DatabaseIOException {
+    CacheFileMetadataIndex fileIndex = Assertions.checkNotNull(this.fileIndex);
+    String fileName = file.getName();
+    String directory = getRelativeDirectory(file);
+    if (indexFlushIntervalMs > 0) {
+      pendingFileMetadata.put(
+          fileName, new CacheFileMetadata(directory, length, lastTouchTimestamp));
+      scheduleIndexFlush();
+    } else {
+      fileIndex.set(fileName, directory, length, lastTouchTimestamp);
+    }
+  }
+
+  /**
+   * Removes the file index entries for cache files, or records the change to be written by {@link
+   * #flushIndex()} if changes are being batched.
+   */
+  private void removeFileMetadata(Set<String> fileNames) throws DatabaseIOException {
+    CacheFileMetadataIndex fileIndex = Assertions.checkNotNull(this.fileIndex);
+    if (indexFlushIntervalMs > 0) {
+      for (String fileName : fileNames) {
+        pendingFileMetadata.put(fileName, null);
+      }
+      scheduleIndexFlush();
+    } else if (fileNames.size() == 1) {
+      fileIndex.remove(fileNames.iterator().next());
+    } else {
+      fileIndex.removeAll(fileNames);
+    }
+  }
+
+  /**
+   * Removes content from the content index if it's empty and unlocked. Whilst a deferred directory
+   * scan is pending, content is retained, since its files may not have been found yet. Empty
+   * content is then removed when the scan completes.
+   */
+  private void maybeRemoveContent(String key) {
+    if (unresolvedFileMetadata == null) {
+      contentIndex.maybeRemove(key);
+    }
+  }
+
+  /** Stores the content index, or schedules it to be stored if changes are being batched. */
+  private void storeContentIndex() throws IOException {
+    if (indexFlushIntervalMs > 0) {
+      scheduleIndexFlush();
+    } else {
+      contentIndex.store();
+    }
+  }
+
+  /** Writes the content index and any pending file index changes. */
+  private void flushIndex() throws IOException {
+    indexFlushScheduled = false;
+    contentIndex.store();
+    if (fileIndex != null && !pendingFileMetadata.isEmpty()) {
+      fileIndex.setAll(pendingFileMetadata);
+      pendingFileMetadata.clear();
+    }
+  }
+
+  /**
+   * Schedules a call to {@link #flushIndex()} after {@link #indexFlushIntervalMs}, if one isn't
+   * already pending. Flushes run on a single thread that's created when the first one is scheduled,
+   * and stopped when the cache is released.
+   */
+  private void scheduleIndexFlush() {
+    if (indexFlushScheduled || released) {
+      return;
+    }
+    indexFlushScheduled = true;
+    if (indexFlushExecutor == null) {
+      indexFlushExecutor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> new Thread(runnable, "SimpleCache.flushIndex()"));
+    }
+    indexFlushExecutor.schedule(
+        this::flushScheduledIndex, indexFlushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** Performs a flush scheduled by {@link #scheduleIndexFlush()}, on the index flush thread. */
+  private synchronized void flushScheduledIndex() {
+    // The flush is no longer scheduled if it's been done early, for example by release().
+    if (indexFlushScheduled && !released) {
+      try {
+        flushIndex();
+      } catch (IOException e) {
+        // The changes remain pending, and will be written by the next flush.
+        Log.e(TAG, "Storing index failed", e);
+      }
+    }
+  }
+
+  /** Returns the name of the directory containing {@code file}, relative to the cache directory. */
+  private String getRelativeDirectory(File file) {
+    File directory = Assertions.checkNotNull(file.getParentFile());
+    return directory.equals(cacheDir) ? "" : directory.getName();
+  }
+
+  /** Returns the directory with the given name, relative to the cache directory. */
+  private File getDirectory(String relativeDirectory) {
+    return relativeDirectory.isEmpty() ? cacheDir : new File(cacheDir, relativeDirectory);
+  }
+
   /**
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
@@ -633,13 +1197,13 @@ public final class SimpleCache implements Cache {
     if (!touchCacheSpans) {
       return span;
     }
-    String fileName = Assertions.checkNotNull(span.file).getName();
+    File file = Assertions.checkNotNull(span.file);
     long length = span.length;
     long lastTouchTimestamp = System.currentTimeMillis();
     boolean updateFile = false;
     if (fileIndex != null) {
       try {
-        fileIndex.set(fileName, length, lastTouchTimestamp);
+        setFileMetadata(file, length, lastTouchTimestamp);
       } catch (IOException e) {
         Log.w(TAG, "Failed to update index with new touch timestamp.");
       }
@@ -702,14 +1266,14 @@ public final class SimpleCache implements Cache {
     if (fileIndex != null) {
       String fileName = span.file.getName();
       try {
-        fileIndex.remove(fileName);
+        removeFileMetadata(Collections.singleton(fileName));
       } catch (IOException e) {
         // This will leave a stale entry in the file index. It will be removed next time the cache
         // is initialized.
         Log.w(TAG, "Failed to remove file index entry for: " + fileName);
       }
     }
-    contentIndex.maybeRemove(cachedContent.key);
+    maybeRemoveContent(cachedContent.key);
     notifySpanRemoved(span);
   }
 
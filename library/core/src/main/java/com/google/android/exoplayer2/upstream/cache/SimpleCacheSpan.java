@@ -51,14 +51,15 @@ import java.util.regex.Pattern;
   }
 
   /**
-   * Creates a lookup span.
+   * Returns the id of the content to which a cache file belongs, or {@link C#INDEX_UNSET} if the
+   * file name isn't that of a current version cache file.
    *
-   * @param key The cache key.
-   * @param position The position of the {@link CacheSpan} in the original stream.
-   * @return The span.
+   * @param file The cache file.
+   * @return The cache file id, or {@link C#INDEX_UNSET}.
    */
-  public static SimpleCacheSpan createLookup(String key, long position) {
-    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, null);
+  public static int getCacheFileId(File file) {
+    Matcher matcher = CACHE_FILE_PATTERN_V3.matcher(file.getName());
+    return matcher.matches() ? Integer.parseInt(matcher.group(1)) : C.INDEX_UNSET;
   }
 
   /**
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evicts cache files using a frequency aware policy based on W-TinyLFU.
+ *
+ * <p>Newly added spans enter a small admission window, which is ordered by recency. The rest of the
+ * cache is a main region, which is managed in the same way as by {@link
+ * SegmentedLeastRecentlyUsedCacheEvictor}. When space is needed and the window exceeds its share of
+ * the cache, the least recently used span in the window competes with the span that the main
+ * region would evict. The span whose content has been accessed less frequently is evicted, and the
+ * other is kept in the main region. Access frequencies are tracked per cache key, and decay over
+ * time. This allows content that's accessed repeatedly to stay in the cache whilst content that's
+ * accessed once, such as that written during a long sequential playback, passes through the window
+ * and is evicted.
+ *
+ * <p>Content can be {@link #pin(String) pinned} to prevent it from being evicted.
+ */
+public final class WindowTinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that may be occupied by the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+  /** The default number of distinct cache keys that access frequencies are tracked for. */
+  public static final int DEFAULT_EXPECTED_KEY_COUNT = 1024;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxProtectedBytes;
+  private final TreeSet<CacheSpan> windowSpans;
+  private final TreeSet<CacheSpan> probationSpans;
+  private final TreeSet<CacheSpan> protectedSpans;
+  private final FrequencySketch frequencySketch;
+  private final Set<String> pinnedKeys;
+
+  private long currentSize;
+  private long windowSize;
+  private long protectedSize;
+
+  /**
+   * Creates an instance with an admission window of {@link #DEFAULT_WINDOW_FRACTION}, which tracks
+   * access frequencies for {@link #DEFAULT_EXPECTED_KEY_COUNT} keys.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public WindowTinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, DEFAULT_EXPECTED_KEY_COUNT);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowFraction The fraction of {@code maxBytes} that may be occupied by the admission
+   *     window. Must be between 0 and 1.
+   * @param expectedKeyCount The expected number of distinct cache keys. Frequency estimates become
+   *     less accurate if the cache holds many more keys than this.
+   */
+  public WindowTinyLfuCacheEvictor(long maxBytes, float windowFraction, int expectedKeyCount) {
+    Assertions.checkArgument(windowFraction >= 0 && windowFraction <= 1);
+    this.maxBytes = maxBytes;
+    maxWindowBytes = (long) (maxBytes * windowFraction);
+    maxProtectedBytes =
+        (long)
+            ((maxBytes - maxWindowBytes)
+                * SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION);
+    windowSpans = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    probationSpans = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    protectedSpans = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    frequencySketch = new FrequencySketch(expectedKeyCount);
+    pinnedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Pins the content with the given key, so that its spans are not evicted. Pinned spans still
+   * count toward the maximum size of the cache. May be called from any thread.
+   *
+   * @param key The cache key of the content.
+   */
+  public void pin(String key) {
+    pinnedKeys.add(key);
+  }
+
+  /**
+   * Unpins content previously {@link #pin(String) pinned}. May be called from any thread.
+   *
+   * @param key The cache key of the content.
+   */
+  public void unpin(String key) {
+    pinnedKeys.remove(key);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    // A write is the result of a cache miss, which also counts as an access.
+    frequencySketch.increment(key);
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    windowSpans.add(span);
+    windowSize += span.length;
+    currentSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (windowSpans.remove(span)) {
+      windowSize -= span.length;
+    } else if (protectedSpans.remove(span)) {
+      protectedSize -= span.length;
+    } else {
+      probationSpans.remove(span);
+    }
+    currentSize -= span.length;
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    frequencySketch.increment(newSpan.key);
+    if (windowSpans.remove(oldSpan)) {
+      // Spans remain in the window until they're admitted to the main region.
+      windowSpans.add(newSpan);
+      return;
+    }
+    onSpanRemoved(cache, oldSpan);
+    protectedSpans.add(newSpan);
+    protectedSize += newSpan.length;
+    currentSize += newSpan.length;
+    while (protectedSize > maxProtectedBytes && !protectedSpans.isEmpty()) {
+      CacheSpan demotedSpan = protectedSpans.pollFirst();
+      protectedSize -= demotedSpan.length;
+      probationSpans.add(demotedSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes) {
+      @Nullable
+      CacheSpan candidate =
+          windowSize > maxWindowBytes ? getLeastRecentlyUsedUnpinnedSpan(windowSpans) : null;
+      @Nullable CacheSpan victim = getLeastRecentlyUsedUnpinnedSpan(probationSpans);
+      if (victim == null) {
+        victim = getLeastRecentlyUsedUnpinnedSpan(protectedSpans);
+      }
+      if (candidate != null) {
+        if (victim == null
+            || frequencySketch.getFrequency(candidate.key)
+                > frequencySketch.getFrequency(victim.key)) {
+          // Admit the candidate to the main region. If there was a victim, it's evicted instead.
+          windowSpans.remove(candidate);
+          windowSize -= candidate.length;
+          probationSpans.add(candidate);
+          if (victim == null) {
+            continue;
+          }
+        } else {
+          victim = candidate;
+        }
+      } else if (victim == null) {
+        victim = getLeastRecentlyUsedUnpinnedSpan(windowSpans);
+        if (victim == null) {
+          // Everything that's left is pinned.
+          break;
+        }
+      }
+      try {
+        cache.removeSpan(victim);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  @Nullable
+  private CacheSpan getLeastRecentlyUsedUnpinnedSpan(TreeSet<CacheSpan> spans) {
+    if (pinnedKeys.isEmpty()) {
+      return spans.isEmpty() ? null : spans.first();
+    }
+    for (CacheSpan span : spans) {
+      if (!pinnedKeys.contains(span.key)) {
+        return span;
+      }
+    }
+    return null;
+  }
+}
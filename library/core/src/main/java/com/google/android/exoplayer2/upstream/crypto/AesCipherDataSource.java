@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -33,14 +34,49 @@ import javax.crypto.Cipher;
  */
 public final class AesCipherDataSource implements DataSource {
 
+  /** The AES block size, in bytes. */
+  private static final int BLOCK_SIZE = 16;
+
   private final DataSource upstream;
   private final byte[] secretKey;
+  @Nullable private final byte[] readBuffer;
 
   @Nullable private AesFlushingCipher cipher;
+  private long decryptPosition;
+  private int readBufferPosition;
+  private int decryptedLimit;
+  private int bufferedLimit;
+  private boolean upstreamEnded;
 
+  /**
+   * Creates an instance that decrypts data in the buffers passed to {@link #read(byte[], int,
+   * int)}, using a cipher call per read.
+   *
+   * @param secretKey The key data.
+   * @param upstream The upstream {@link DataSource}.
+   */
   public AesCipherDataSource(byte[] secretKey, DataSource upstream) {
+    this(secretKey, upstream, /* readBuffer= */ null);
+  }
+
+  /**
+   * Creates an instance that reads ahead from the upstream source into a buffer, which is
+   * decrypted in batches. Use this constructor for maximum efficiency in the case that the source
+   * is read in small chunks, for example by an extractor.
+   *
+   * @param secretKey The key data.
+   * @param upstream The upstream {@link DataSource}.
+   * @param readBuffer Read-ahead buffer. Data is read from the upstream source into this array,
+   *     and decrypted in runs of whole AES blocks before being copied out by {@link #read(byte[],
+   *     int, int)}. Its length should be much larger than that of the expected reads. Must be at
+   *     least 16 bytes long. If {@code null} then data is decrypted in the buffers passed to {@link
+   *     #read(byte[], int, int)}.
+   */
+  public AesCipherDataSource(byte[] secretKey, DataSource upstream, @Nullable byte[] readBuffer) {
+    Assertions.checkArgument(readBuffer == null || readBuffer.length >= BLOCK_SIZE);
     this.upstream = upstream;
     this.secretKey = secretKey;
+    this.readBuffer = readBuffer;
   }
 
   @Override
@@ -54,6 +90,7 @@ public final class AesCipherDataSource implements DataSource {
     long nonce = CryptoUtil.getFNV64Hash(dataSpec.key);
     cipher = new AesFlushingCipher(Cipher.DECRYPT_MODE, secretKey, nonce,
         dataSpec.absoluteStreamPosition);
+    decryptPosition = dataSpec.absoluteStreamPosition;
     return dataLength;
   }
 
@@ -62,6 +99,15 @@ public final class AesCipherDataSource implements DataSource {
     if (readLength == 0) {
       return 0;
     }
+    if (readBuffer != null) {
+      if (readBufferPosition == decryptedLimit && !fillReadBuffer(readBuffer)) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToCopy = Math.min(readLength, decryptedLimit - readBufferPosition);
+      System.arraycopy(readBuffer, readBufferPosition, data, offset, bytesToCopy);
+      readBufferPosition += bytesToCopy;
+      return bytesToCopy;
+    }
     int read = upstream.read(data, offset, readLength);
     if (read == C.RESULT_END_OF_INPUT) {
       return C.RESULT_END_OF_INPUT;
@@ -84,6 +130,48 @@ public final class AesCipherDataSource implements DataSource {
   @Override
   public void close() throws IOException {
     cipher = null;
+    readBufferPosition = 0;
+    decryptedLimit = 0;
+    bufferedLimit = 0;
+    upstreamEnded = false;
     upstream.close();
   }
+
+  /**
+   * Reads from the upstream source into the read buffer, and decrypts as much of the buffered data
+   * as ends on an AES block boundary. All buffered data is decrypted once the upstream source has
+   * ended.
+   *
+   * @param readBuffer The read buffer.
+   * @return Whether any data was decrypted. False if the end of the input has been reached.
+   * @throws IOException If an error occurs reading from the upstream source.
+   */
+  private boolean fillReadBuffer(byte[] readBuffer) throws IOException {
+    // Move the data that was read but not decrypted by the last call to the start of the buffer.
+    int encryptedLength = bufferedLimit - decryptedLimit;
+    System.arraycopy(readBuffer, decryptedLimit, readBuffer, 0, encryptedLength);
+    readBufferPosition = 0;
+    decryptedLimit = 0;
+    bufferedLimit = encryptedLength;
+    while (true) {
+      int decryptLength =
+          upstreamEnded
+              ? bufferedLimit
+              : bufferedLimit - (int) ((decryptPosition + bufferedLimit) % BLOCK_SIZE);
+      if (decryptLength > 0) {
+        castNonNull(cipher).updateInPlace(readBuffer, /* offset= */ 0, decryptLength);
+        decryptPosition += decryptLength;
+        decryptedLimit = decryptLength;
+        return true;
+      } else if (upstreamEnded) {
+        return false;
+      }
+      int bytesRead = upstream.read(readBuffer, bufferedLimit, readBuffer.length - bufferedLimit);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        upstreamEnded = true;
+      } else {
+        bufferedLimit += bytesRead;
+      }
+    }
+  }
 }
@@ -20,6 +20,8 @@ import static com.google.common.truth.Truth.assertThat;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.DefaultLoadControl.Builder;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.SharedAllocator;
+import com.google.android.exoplayer2.upstream.SharedAllocator.PlayerAllocator;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -85,6 +87,26 @@ public class DefaultLoadControlTest {
     assertThat(loadControl.shouldContinueLoading(MAX_BUFFER_US, SPEED)).isFalse();
   }
 
+  @Test
+  public void testShouldNotContinueLoading_whenAllocationLimitReached() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TARGET_BUFFER_BYTES);
+    PlayerAllocator otherPlayerAllocator =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    otherPlayerAllocator.setTargetBufferSize(TARGET_BUFFER_BYTES);
+    PlayerAllocator playerAllocator =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    builder.setAllocator(playerAllocator);
+    builder.setTargetBufferBytes(TARGET_BUFFER_BYTES);
+    loadControl = builder.createDefaultLoadControl();
+    loadControl.onTracksSelected(new Renderer[0], null, null);
+
+    // The player is granted half of the shared budget.
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(MIN_BUFFER_US, SPEED)).isTrue();
+    playerAllocator.allocate();
+    assertThat(loadControl.shouldContinueLoading(MIN_BUFFER_US, SPEED)).isFalse();
+  }
+
   @Test
   public void testShouldContinueLoadingWithMinBufferReached_inFastPlayback() {
     createDefaultLoadControl();
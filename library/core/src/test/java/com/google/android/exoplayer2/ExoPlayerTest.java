@@ -24,6 +24,7 @@ import android.content.Intent;
 import android.graphics.SurfaceTexture;
 import android.media.AudioManager;
 import android.net.Uri;
+import android.os.Handler;
 import android.os.Looper;
 import android.view.Surface;
 import androidx.annotation.Nullable;
@@ -2926,8 +2927,105 @@ public final class ExoPlayerTest {
     assertThat(seenPlaybackSuppression.get()).isFalse();
   }
 
+  @Test
+  public void rendererDeferringProgressReducesDoSomeWorkCount() throws Exception {
+    long defaultDoSomeWorkCount =
+        playUntilEndedAndGetDoSomeWorkCount(new FakeRenderer(Builder.VIDEO_FORMAT));
+    FakeRenderer deferringRenderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+            return C.MICROS_PER_SECOND;
+          }
+        };
+    long deferringDoSomeWorkCount = playUntilEndedAndGetDoSomeWorkCount(deferringRenderer);
+
+    // The 10 second window is played with a 10ms interval by default, and a 1s interval when the
+    // renderer defers progress.
+    assertThat(defaultDoSomeWorkCount).isAtLeast(1000L);
+    assertThat(deferringDoSomeWorkCount).isLessThan(100L);
+  }
+
+  @Test
+  public void rendererDeferringProgressDoesNotDelayMessages() throws Exception {
+    AtomicBoolean messageDelivered = new AtomicBoolean();
+    AtomicLong renderPositionAtDeliveryUs = new AtomicLong(C.TIME_UNSET);
+    FakeRenderer deferringRenderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            if (messageDelivered.get()) {
+              renderPositionAtDeliveryUs.compareAndSet(C.TIME_UNSET, positionUs);
+            }
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+
+          @Override
+          public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+            return C.MICROS_PER_SECOND;
+          }
+        };
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("rendererDeferringProgressDoesNotDelayMessages")
+            .pause()
+            .waitForTimelineChanged(timeline)
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    // Deliver the message on the playback thread, so that it's handled before the
+                    // renderers are rendered at the position at which it's triggered.
+                    player
+                        .createMessage((messageType, payload) -> messageDelivered.set(true))
+                        .setPosition(/* positionMs= */ 2500)
+                        .setHandler(new Handler(player.getPlaybackLooper()))
+                        .send();
+                  }
+                })
+            .play()
+            .build();
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(deferringRenderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+
+    // Without a bound, the message would only be delivered by the next 1s step, at 3000ms.
+    assertThat(messageDelivered.get()).isTrue();
+    assertThat(renderPositionAtDeliveryUs.get()).isAtLeast(2_500_000L);
+    assertThat(renderPositionAtDeliveryUs.get()).isLessThan(2_600_000L);
+  }
+
   // Internal methods.
 
+  private long playUntilEndedAndGetDoSomeWorkCount(FakeRenderer renderer) throws Exception {
+    long[] doSomeWorkCount = new long[1];
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("playUntilEndedAndGetDoSomeWorkCount")
+            .waitForPlaybackState(Player.STATE_ENDED)
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    doSomeWorkCount[0] = player.experimental_getDoSomeWorkCount();
+                  }
+                })
+            .build();
+    new ExoPlayerTestRunner.Builder()
+        .setTimeline(new FakeTimeline(/* windowCount= */ 1))
+        .setRenderers(renderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    return doSomeWorkCount[0];
+  }
+
   private static ActionSchedule.Builder addSurfaceSwitch(ActionSchedule.Builder builder) {
     final Surface surface1 = new Surface(new SurfaceTexture(/* texName= */ 0));
     final Surface surface2 = new Surface(new SurfaceTexture(/* texName= */ 1));
@@ -19,6 +19,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.robolectric.annotation.Config.OLDEST_SDK;
 import static org.robolectric.annotation.Config.TARGET_SDK;
 
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.PlaybackParameters;
@@ -29,6 +32,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
 
 /**
  * Unit tests for {@link DefaultAudioSink}.
@@ -199,6 +204,85 @@ public final class DefaultAudioSinkTest {
         .isTrue();
   }
 
+  @Config(minSdk = OLDEST_SDK, maxSdk = 28)
+  @Test
+  public void doesNotSupportOffloadBeforeApi29() {
+    defaultAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(),
+            /* enableFloatOutput= */ false,
+            /* enableOffload= */ true);
+
+    assertThat(defaultAudioSink.supportsOutput(CHANNEL_COUNT_STEREO, C.ENCODING_MP3)).isFalse();
+  }
+
+  @Config(sdk = 29, shadows = ShadowAudioManagerWithOffload.class)
+  @Test
+  public void configuresOffloadedMp3FromApi29() throws Exception {
+    DefaultAudioSink offloadAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(),
+            /* enableFloatOutput= */ false,
+            /* enableOffload= */ true);
+    DefaultAudioSink passthroughAudioSink =
+        new DefaultAudioSink(
+            new AudioCapabilities(
+                new int[] {C.ENCODING_MP3}, /* maxChannelCount= */ CHANNEL_COUNT_STEREO),
+            new DefaultAudioSink.DefaultAudioProcessorChain(),
+            /* enableFloatOutput= */ false,
+            /* enableOffload= */ true);
+
+    assertThat(offloadAudioSink.supportsOutput(CHANNEL_COUNT_STEREO, C.ENCODING_MP3)).isTrue();
+    configureMp3(offloadAudioSink);
+    configureMp3(passthroughAudioSink);
+
+    DefaultAudioSink.Configuration offloadConfiguration =
+        offloadAudioSink.getLatestConfiguration();
+    DefaultAudioSink.Configuration passthroughConfiguration =
+        passthroughAudioSink.getLatestConfiguration();
+    assertThat(offloadConfiguration.offload).isTrue();
+    // 50 seconds at the maximum MP3 bitrate of 320 kbit/s.
+    assertThat(offloadConfiguration.bufferSize).isEqualTo(50 * 320 * 1000 / 8);
+    assertThat(passthroughConfiguration.offload).isFalse();
+    assertThat(offloadConfiguration.canReuseAudioTrack(passthroughConfiguration)).isFalse();
+    assertThat(offloadConfiguration.canReuseAudioTrack(offloadConfiguration)).isTrue();
+  }
+
+  @Config(
+      sdk = 29,
+      shadows = {ShadowAudioManagerWithOffload.class, ShadowAudioSystemWithOffload.class})
+  @Test
+  public void handlesOffloadedMp3Frame() throws Exception {
+    defaultAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(),
+            /* enableFloatOutput= */ false,
+            /* enableOffload= */ true);
+    configureMp3(defaultAudioSink);
+
+    defaultAudioSink.handleBuffer(createMp3FrameBuffer(), /* presentationTimeUs= */ 0);
+
+    assertThat(defaultAudioSink.getLatestConfiguration().offload).isTrue();
+    // An MPEG-1 Layer III frame holds 1152 samples.
+    assertThat(defaultAudioSink.getSubmittedFrames()).isEqualTo(1152);
+  }
+
+  @Config(sdk = 29)
+  @Test
+  public void doesNotSupportOffloadIfPlatformDoesNot() {
+    defaultAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(),
+            /* enableFloatOutput= */ false,
+            /* enableOffload= */ true);
+
+    assertThat(defaultAudioSink.supportsOutput(CHANNEL_COUNT_STEREO, C.ENCODING_MP3)).isFalse();
+  }
+
   private void configureDefaultAudioSink(int channelCount) throws AudioSink.ConfigurationException {
     configureDefaultAudioSink(channelCount, /* trimStartFrames= */ 0, /* trimEndFrames= */ 0);
   }
@@ -215,6 +299,18 @@ public final class DefaultAudioSinkTest {
         /* trimEndFrames= */ trimEndFrames);
   }
 
+  private static void configureMp3(DefaultAudioSink audioSink)
+      throws AudioSink.ConfigurationException {
+    audioSink.configure(
+        C.ENCODING_MP3,
+        CHANNEL_COUNT_STEREO,
+        SAMPLE_RATE_44_1,
+        /* specifiedBufferSize= */ 0,
+        /* outputChannels= */ null,
+        /* trimStartFrames= */ 0,
+        /* trimEndFrames= */ 0);
+  }
+
   /** Creates a one second silence buffer for 44.1 kHz stereo 16-bit audio. */
   private static ByteBuffer createDefaultSilenceBuffer() {
     return ByteBuffer.allocateDirect(
@@ -222,6 +318,17 @@ public final class DefaultAudioSinkTest {
         .order(ByteOrder.nativeOrder());
   }
 
+  /**
+   * Creates a buffer holding a 128 kbit/s, 44.1 kHz stereo MPEG-1 Layer III frame of silence. The
+   * buffer uses the native byte order, as buffers passed to the sink do.
+   */
+  private static ByteBuffer createMp3FrameBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(417).order(ByteOrder.nativeOrder());
+    buffer.put(new byte[] {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x64});
+    buffer.position(0);
+    return buffer;
+  }
+
   private static final class ArrayAudioBufferSink implements TeeAudioProcessor.AudioBufferSink {
 
     private byte[] output;
@@ -244,4 +351,25 @@ public final class DefaultAudioSinkTest {
       buffer.position(position);
     }
   }
+
+  /** Reports that offloaded playback is supported, which Robolectric's AudioManager doesn't. */
+  @Implements(AudioManager.class)
+  public static final class ShadowAudioManagerWithOffload {
+
+    @Implementation
+    protected static boolean isOffloadedPlaybackSupported(
+        AudioFormat format, AudioAttributes attributes) {
+      return true;
+    }
+  }
+
+  /** Reports that offload is supported when an offloaded AudioTrack is built. */
+  @Implements(className = "android.media.AudioSystem", isInAndroidSdk = false)
+  public static final class ShadowAudioSystemWithOffload {
+
+    @Implementation
+    protected static boolean isOffloadSupported(AudioFormat format, AudioAttributes attributes) {
+      return true;
+    }
+  }
 }
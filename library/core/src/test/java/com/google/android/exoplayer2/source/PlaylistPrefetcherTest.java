@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.StubExoPlayer;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PlaylistPrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaylistPrefetcherTest {
+
+  private static final int WINDOW_DATA_LENGTH = 1000;
+  private static final int MANIFEST_DATA_LENGTH = 100;
+  private static final int MAX_BYTES_PER_WINDOW = 300;
+  private static final long TIMEOUT_MS = 10000;
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private FakeDataSet fakeDataSet;
+  private TestPlayer player;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache = new SimpleCache(tempFolder, new NoOpCacheEvictor());
+    fakeDataSet = new FakeDataSet();
+    for (int i = 0; i < 4; i++) {
+      fakeDataSet.setRandomData(getUri(i), WINDOW_DATA_LENGTH);
+      fakeDataSet.setRandomData(getManifestUri(i), MANIFEST_DATA_LENGTH);
+    }
+    player = new TestPlayer(new FakeTimeline(/* windowCount= */ 4));
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void testPrefetchesStartOfNextWindows() throws Exception {
+    PlaylistPrefetcher prefetcher =
+        new PlaylistPrefetcher(
+            player,
+            cache,
+            new FakeDataSource.Factory().setFakeDataSet(fakeDataSet),
+            (timeline, windowIndex) ->
+                Collections.singletonList(new DataSpec(Uri.parse(getUri(windowIndex)))),
+            /* windowCount= */ 2,
+            MAX_BYTES_PER_WINDOW);
+
+    waitForCachedLength(getUri(1), MAX_BYTES_PER_WINDOW);
+    waitForCachedLength(getUri(2), MAX_BYTES_PER_WINDOW);
+    prefetcher.release();
+
+    assertThat(getCachedLength(getUri(0))).isEqualTo(0);
+    assertThat(getCachedLength(getUri(3))).isEqualTo(0);
+  }
+
+  @Test
+  public void testDataOfUnknownLengthOnlyUsesCachedBytesOfBudget() throws Exception {
+    PlaylistPrefetcher prefetcher =
+        new PlaylistPrefetcher(
+            player,
+            cache,
+            new FakeDataSource.Factory().setFakeDataSet(fakeDataSet),
+            (timeline, windowIndex) ->
+                Arrays.asList(
+                    new DataSpec(Uri.parse(getManifestUri(windowIndex))),
+                    new DataSpec(Uri.parse(getUri(windowIndex)))),
+            /* windowCount= */ 1,
+            MAX_BYTES_PER_WINDOW);
+
+    waitForCachedLength(getUri(1), MAX_BYTES_PER_WINDOW - MANIFEST_DATA_LENGTH);
+    prefetcher.release();
+
+    assertThat(getCachedLength(getManifestUri(1))).isEqualTo(MANIFEST_DATA_LENGTH);
+  }
+
+  private void waitForCachedLength(String uri, long length) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (getCachedLength(uri) < length && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertThat(getCachedLength(uri)).isEqualTo(length);
+  }
+
+  private long getCachedLength(String uri) {
+    return cache.getCachedLength(uri, /* position= */ 0, WINDOW_DATA_LENGTH);
+  }
+
+  private static String getUri(int windowIndex) {
+    return "test://window" + windowIndex;
+  }
+
+  private static String getManifestUri(int windowIndex) {
+    return "test://manifest" + windowIndex;
+  }
+
+  private static final class TestPlayer extends StubExoPlayer {
+
+    private final Timeline timeline;
+
+    public TestPlayer(Timeline timeline) {
+      this.timeline = timeline;
+    }
+
+    @Override
+    public void addListener(Player.EventListener listener) {}
+
+    @Override
+    public void removeListener(Player.EventListener listener) {}
+
+    @Override
+    public Timeline getCurrentTimeline() {
+      return timeline;
+    }
+
+    @Override
+    public int getCurrentWindowIndex() {
+      return 0;
+    }
+
+    @Override
+    public int getRepeatMode() {
+      return Player.REPEAT_MODE_OFF;
+    }
+
+    @Override
+    public boolean getShuffleModeEnabled() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner.Builder;
+import com.google.android.exoplayer2.testutil.FakeMediaPeriod;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTrackSelection;
+import com.google.android.exoplayer2.testutil.MediaSourceTestRunner;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit tests for {@link PreloadMediaSource}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class PreloadMediaSourceTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private FakeMediaSource fakeMediaSource;
+  private DefaultAllocator playerAllocator;
+  private PreloadMediaSource preloadMediaSource;
+  @Nullable private Allocator firstPeriodAllocator;
+  private MediaSourceTestRunner testRunner;
+
+  @Before
+  public void setUp() {
+    Format videoFormat = Builder.VIDEO_FORMAT;
+    TrackGroup videoGroup =
+        new TrackGroup(
+            videoFormat.copyWithBitrate(/* bitrate= */ 500_000),
+            videoFormat.copyWithBitrate(/* bitrate= */ 1_000_000));
+    fakeMediaSource =
+        new FakeMediaSource(
+            new FakeTimeline(/* windowCount= */ 1), new TrackGroupArray(videoGroup)) {
+          @Override
+          protected FakeMediaPeriod createFakeMediaPeriod(
+              MediaPeriodId id,
+              TrackGroupArray trackGroupArray,
+              Allocator allocator,
+              EventDispatcher eventDispatcher,
+              @Nullable TransferListener transferListener) {
+            if (firstPeriodAllocator == null) {
+              firstPeriodAllocator = allocator;
+            }
+            return super.createFakeMediaPeriod(
+                id, trackGroupArray, allocator, eventDispatcher, transferListener);
+          }
+        };
+    playerAllocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    preloadMediaSource =
+        new PreloadMediaSource(
+            fakeMediaSource,
+            playerAllocator,
+            /* mediaTransferListener= */ null,
+            /* preloadDurationUs= */ C.msToUs(1000),
+            /* maxPreloadBytes= */ 1024 * 1024);
+    testRunner = new MediaSourceTestRunner(preloadMediaSource, playerAllocator);
+  }
+
+  @After
+  public void tearDown() {
+    testRunner.release();
+  }
+
+  @Test
+  public void testPlayerAdoptsPreloadedPeriod() throws Exception {
+    testRunner.runOnPlaybackThread(preloadMediaSource::preload);
+    Timeline timeline = testRunner.prepareSource();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+
+    MediaPeriodId periodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+    MediaPeriod mediaPeriod = testRunner.createPeriod(periodId, /* startPositionUs= */ 0);
+    assertThat(
+            testRunner
+                .preparePeriod(mediaPeriod, /* positionUs= */ 0)
+                .await(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void testAdaptiveSelectionOfPreloadedTrackGroupRetainsPreloadedStream() throws Exception {
+    testRunner.runOnPlaybackThread(preloadMediaSource::preload);
+    Timeline timeline = testRunner.prepareSource();
+
+    MediaPeriodId periodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+    MediaPeriod mediaPeriod = testRunner.createPeriod(periodId, /* startPositionUs= */ 0);
+    assertThat(
+            testRunner
+                .preparePeriod(mediaPeriod, /* positionUs= */ 0)
+                .await(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    // Select both tracks of the group that was preloaded, as an adaptive selection would.
+    TrackSelection[] selections =
+        new TrackSelection[] {new FakeTrackSelection(mediaPeriod.getTrackGroups().get(0))};
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    testRunner.runOnPlaybackThread(
+        () ->
+            mediaPeriod.selectTracks(
+                selections,
+                /* mayRetainStreamFlags= */ new boolean[1],
+                streams,
+                streamResetFlags,
+                /* positionUs= */ 0));
+
+    assertThat(selections[0].length()).isEqualTo(2);
+    assertThat(streams[0]).isNotNull();
+    assertThat(streamResetFlags[0]).isFalse();
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void testPendingPreloadDoesNotAllocateFromPlayerAllocator() throws Exception {
+    testRunner.runOnPlaybackThread(preloadMediaSource::preload);
+    Timeline timeline = testRunner.prepareSource();
+    Allocator preloadAllocator = Assertions.checkNotNull(firstPeriodAllocator);
+
+    Allocation preloadedAllocation = preloadAllocator.allocate();
+
+    // The player's allocator, whose usage its LoadControl checks, isn't used by the preload.
+    assertThat(playerAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(preloadAllocator.getTotalBytesAllocated())
+        .isEqualTo(C.DEFAULT_BUFFER_SEGMENT_SIZE);
+
+    MediaPeriodId periodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+    MediaPeriod mediaPeriod = testRunner.createPeriod(periodId, /* startPositionUs= */ 0);
+    Allocation adoptedAllocation = preloadAllocator.allocate();
+
+    // Once the period is adopted, further loads are accounted for by the player.
+    assertThat(playerAllocator.getTotalBytesAllocated()).isEqualTo(C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    preloadAllocator.release(new Allocation[] {preloadedAllocation, adoptedAllocation});
+    assertThat(playerAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(preloadAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void testPlayerStartingAtOtherPositionCreatesNewPeriod() throws Exception {
+    testRunner.runOnPlaybackThread(preloadMediaSource::preload);
+    Timeline timeline = testRunner.prepareSource();
+
+    MediaPeriodId periodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+    MediaPeriod mediaPeriod = testRunner.createPeriod(periodId, /* startPositionUs= */ 1000);
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(2);
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void testReleasePreloadBeforePlayerPreparesReleasesSource() {
+    testRunner.runOnPlaybackThread(preloadMediaSource::preload);
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+
+    fakeMediaSource.assertReleased();
+  }
+}
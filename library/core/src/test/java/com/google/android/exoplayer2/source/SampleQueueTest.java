@@ -711,6 +711,52 @@ public final class SampleQueueTest {
     assertNoSamplesToRead(FORMAT_2);
   }
 
+  @Test
+  public void testSeekToInLongQueue_seeksToPrecedingKeyframe() {
+    int sampleCount = 3 * SampleQueue.SAMPLE_CAPACITY_INCREMENT + 1;
+    writeSamplesWithKeyframeInterval(sampleCount, /* keyframeInterval= */ 10);
+    sampleQueue.discardTo(/* timeUs= */ 155_000, /* toKeyframe= */ true, false);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(150);
+
+    boolean success = sampleQueue.seekTo(/* timeUs= */ 2_345_000, false);
+
+    assertThat(success).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(2340);
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 2_999_000)).isEqualTo(650);
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(2990);
+  }
+
+  @Test
+  public void testDiscardToInLongQueue_discardsToPrecedingSample() {
+    int sampleCount = 3 * SampleQueue.SAMPLE_CAPACITY_INCREMENT + 1;
+    writeSamplesWithKeyframeInterval(sampleCount, /* keyframeInterval= */ 10);
+
+    sampleQueue.discardTo(/* timeUs= */ 2_345_000, /* toKeyframe= */ false, false);
+
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(2345);
+  }
+
+  @Test
+  public void testSeekToWithNonMonotonicKeyframes() {
+    sampleQueue.format(FORMAT_1);
+    sampleQueue.sampleData(new ParsableByteArray(4), /* length= */ 4);
+    long[] timesUs = new long[] {0, 3000, 1000, 2000};
+    for (int i = 0; i < timesUs.length; i++) {
+      sampleQueue.sampleMetadata(
+          timesUs[i],
+          /* flags= */ C.BUFFER_FLAG_KEY_FRAME,
+          /* size= */ 1,
+          /* offset= */ timesUs.length - i - 1,
+          /* cryptoData= */ null);
+    }
+
+    // The search stops at the first sample after the target time in decode order.
+    boolean success = sampleQueue.seekTo(/* timeUs= */ 2000, false);
+
+    assertThat(success).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(0);
+  }
+
   @Test
   public void testDiscardToEnd() {
     writeTestData();
@@ -1047,6 +1093,25 @@ public final class SampleQueueTest {
         DATA, SAMPLE_SIZES, SAMPLE_OFFSETS, SAMPLE_TIMESTAMPS, SAMPLE_FORMATS, SAMPLE_FLAGS);
   }
 
+  /**
+   * Writes single byte samples with timestamps one millisecond apart to {@code sampleQueue}.
+   *
+   * @param sampleCount The number of samples to write.
+   * @param keyframeInterval The number of samples from one keyframe to the next.
+   */
+  private void writeSamplesWithKeyframeInterval(int sampleCount, int keyframeInterval) {
+    sampleQueue.format(FORMAT_1);
+    sampleQueue.sampleData(new ParsableByteArray(sampleCount), /* length= */ sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      sampleQueue.sampleMetadata(
+          /* timeUs= */ i * 1000,
+          /* flags= */ i % keyframeInterval == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0,
+          /* size= */ 1,
+          /* offset= */ sampleCount - i - 1,
+          /* cryptoData= */ null);
+    }
+  }
+
   private void writeTestDataWithEncryptedSections() {
     writeTestData(
         ENCRYPTED_SAMPLE_DATA,
@@ -20,10 +20,12 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
@@ -110,6 +112,82 @@ public class DefaultHttpDataSourceTest {
     assertThat(sentRequestProperties.get("5")).isEqualTo(dataSpecParameter);
   }
 
+  @Test
+  public void close_withConnectionReuseEnabledAfterReadingToEnd_doesNotDisconnect()
+      throws Exception {
+    HttpConnectionReuseStats connectionReuseStats = new HttpConnectionReuseStats();
+    DefaultHttpDataSource defaultHttpDataSource =
+        Mockito.spy(new DefaultHttpDataSource(/* userAgent= */ "testAgent"));
+    defaultHttpDataSource.setConnectionReuseEnabled(true);
+    defaultHttpDataSource.setConnectionReuseStats(connectionReuseStats);
+    HttpURLConnection mockHttpUrlConnection = makeMockHttpUrlConnection(new HashMap<>());
+    Mockito.doReturn(mockHttpUrlConnection)
+        .when(defaultHttpDataSource)
+        .openConnection(ArgumentMatchers.any());
+
+    defaultHttpDataSource.open(new DataSpec(Uri.parse("http://www.google.com")));
+    readToEnd(defaultHttpDataSource);
+    defaultHttpDataSource.close();
+
+    Mockito.verify(mockHttpUrlConnection, Mockito.never()).disconnect();
+    HttpConnectionReuseStats.HostStats hostStats =
+        connectionReuseStats.getHostStats("www.google.com");
+    assertThat(hostStats.requestCount).isEqualTo(1);
+    assertThat(hostStats.reusableRequestCount).isEqualTo(1);
+  }
+
+  @Test
+  public void close_withConnectionReuseDisabled_disconnects() throws Exception {
+    HttpConnectionReuseStats connectionReuseStats = new HttpConnectionReuseStats();
+    DefaultHttpDataSource defaultHttpDataSource =
+        Mockito.spy(new DefaultHttpDataSource(/* userAgent= */ "testAgent"));
+    defaultHttpDataSource.setConnectionReuseStats(connectionReuseStats);
+    HttpURLConnection mockHttpUrlConnection = makeMockHttpUrlConnection(new HashMap<>());
+    Mockito.doReturn(mockHttpUrlConnection)
+        .when(defaultHttpDataSource)
+        .openConnection(ArgumentMatchers.any());
+
+    defaultHttpDataSource.open(new DataSpec(Uri.parse("http://www.google.com")));
+    readToEnd(defaultHttpDataSource);
+    defaultHttpDataSource.close();
+
+    Mockito.verify(mockHttpUrlConnection).disconnect();
+    HttpConnectionReuseStats.HostStats hostStats =
+        connectionReuseStats.getHostStats("www.google.com");
+    assertThat(hostStats.requestCount).isEqualTo(1);
+    assertThat(hostStats.getReuseRatio()).isEqualTo(0f);
+  }
+
+  @Test
+  public void close_withConnectionReuseEnabledBeforeEndOfUnknownLength_disconnects()
+      throws Exception {
+    HttpConnectionReuseStats connectionReuseStats = new HttpConnectionReuseStats();
+    DefaultHttpDataSource defaultHttpDataSource =
+        Mockito.spy(new DefaultHttpDataSource(/* userAgent= */ "testAgent"));
+    defaultHttpDataSource.setConnectionReuseEnabled(true);
+    defaultHttpDataSource.setConnectionReuseStats(connectionReuseStats);
+    HttpURLConnection mockHttpUrlConnection = makeMockHttpUrlConnection(new HashMap<>());
+    Mockito.doReturn(mockHttpUrlConnection)
+        .when(defaultHttpDataSource)
+        .openConnection(ArgumentMatchers.any());
+
+    // The response doesn't have a content length, so the remainder must not be drained.
+    defaultHttpDataSource.open(new DataSpec(Uri.parse("http://www.google.com")));
+    defaultHttpDataSource.read(new byte[64], /* offset= */ 0, /* readLength= */ 64);
+    defaultHttpDataSource.close();
+
+    Mockito.verify(mockHttpUrlConnection).disconnect();
+    HttpConnectionReuseStats.HostStats hostStats =
+        connectionReuseStats.getHostStats("www.google.com");
+    assertThat(hostStats.requestCount).isEqualTo(1);
+    assertThat(hostStats.reusableRequestCount).isEqualTo(0);
+  }
+
+  private static void readToEnd(DataSource dataSource) throws IOException {
+    byte[] buffer = new byte[64];
+    while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {}
+  }
+
   /**
    * Creates a mock {@link HttpURLConnection} that stores all request parameters inside {@code
    * requestProperties}.
@@ -118,6 +196,7 @@ public class DefaultHttpDataSourceTest {
       throws IOException {
     HttpURLConnection mockHttpUrlConnection = Mockito.mock(HttpURLConnection.class);
     Mockito.when(mockHttpUrlConnection.usingProxy()).thenReturn(false);
+    Mockito.when(mockHttpUrlConnection.getURL()).thenReturn(new URL("http://www.google.com"));
 
     Mockito.when(mockHttpUrlConnection.getInputStream())
         .thenReturn(new ByteArrayInputStream(new byte[128]));
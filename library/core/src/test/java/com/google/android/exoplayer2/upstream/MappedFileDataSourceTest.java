@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MappedFileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MappedFileDataSourceTest {
+
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(/* length= */ 1000);
+  private static final long LAST_MODIFIED_MS = 1_000_000_000_000L;
+
+  private File file;
+  private Uri uri;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Util.createTempFile(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    uri = Uri.fromFile(file);
+    writeFile(TEST_DATA);
+    file.setLastModified(LAST_MODIFIED_MS);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testReadFullFile() throws Exception {
+    TestUtil.assertDataSourceContent(
+        new MappedFileDataSource(), new DataSpec(uri), TEST_DATA, /* expectKnownLength= */ true);
+  }
+
+  @Test
+  public void testReadRangesOfSameFile() throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    TestUtil.assertDataSourceContent(
+        dataSource,
+        new DataSpec(uri, /* absoluteStreamPosition= */ 0, /* length= */ 100, /* key= */ null),
+        Arrays.copyOf(TEST_DATA, 100),
+        /* expectKnownLength= */ true);
+    MappedByteBuffer mappedBuffer = dataSource.getMappedBuffer();
+
+    TestUtil.assertDataSourceContent(
+        dataSource,
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, C.LENGTH_UNSET, /* key= */ null),
+        Arrays.copyOfRange(TEST_DATA, 100, TEST_DATA.length),
+        /* expectKnownLength= */ true);
+
+    assertThat(dataSource.getMappedBuffer()).isSameInstanceAs(mappedBuffer);
+  }
+
+  @Test
+  public void testReadAfterFileLengthChanged() throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(uri), TEST_DATA, /* expectKnownLength= */ true);
+    MappedByteBuffer mappedBuffer = dataSource.getMappedBuffer();
+
+    byte[] newData = TestUtil.buildTestData(/* length= */ 500, /* seed= */ 1);
+    writeFile(newData);
+    // Keep the modification time, so that only the length change invalidates the mapping.
+    file.setLastModified(LAST_MODIFIED_MS);
+
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(uri), newData, /* expectKnownLength= */ true);
+    assertThat(dataSource.getMappedBuffer()).isNotSameInstanceAs(mappedBuffer);
+  }
+
+  @Test
+  public void testReadAfterFileModified() throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(uri), TEST_DATA, /* expectKnownLength= */ true);
+    MappedByteBuffer mappedBuffer = dataSource.getMappedBuffer();
+
+    // Replace the file with one of the same length.
+    byte[] newData = TestUtil.buildTestData(TEST_DATA.length, /* seed= */ 1);
+    file.delete();
+    writeFile(newData);
+    file.setLastModified(LAST_MODIFIED_MS + 1000);
+
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(uri), newData, /* expectKnownLength= */ true);
+    assertThat(dataSource.getMappedBuffer()).isNotSameInstanceAs(mappedBuffer);
+  }
+
+  @Test
+  public void testReadOtherFileReplacesMapping() throws Exception {
+    File otherFile =
+        Util.createTempFile(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    byte[] otherData = TestUtil.buildTestData(/* length= */ 500, /* seed= */ 1);
+    try (FileOutputStream outputStream = new FileOutputStream(otherFile)) {
+      outputStream.write(otherData);
+    }
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    try {
+      TestUtil.assertDataSourceContent(
+          dataSource, new DataSpec(uri), TEST_DATA, /* expectKnownLength= */ true);
+      MappedByteBuffer mappedBuffer = dataSource.getMappedBuffer();
+
+      TestUtil.assertDataSourceContent(
+          dataSource,
+          new DataSpec(Uri.fromFile(otherFile)),
+          otherData,
+          /* expectKnownLength= */ true);
+
+      assertThat(dataSource.getMappedBuffer()).isNotSameInstanceAs(mappedBuffer);
+      assertThat(dataSource.getMappedBuffer().capacity()).isEqualTo(otherData.length);
+    } finally {
+      otherFile.delete();
+    }
+  }
+
+  @Test
+  public void testOpenBeyondEndOfFile() throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    try {
+      dataSource.open(
+          new DataSpec(uri, /* absoluteStreamPosition= */ 1001, C.LENGTH_UNSET, /* key= */ null));
+      fail();
+    } catch (FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private void writeFile(byte[] data) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelRangeDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelRangeDataSourceTest {
+
+  private static final Uri URI = Uri.parse("test://data");
+  private static final int CHUNK_SIZE = 1000;
+
+  private byte[] data;
+  private AtomicInteger upstreamCount;
+  private DataSource.Factory upstreamFactory;
+
+  @Before
+  public void setUp() {
+    data = TestUtil.buildTestData(/* length= */ 10 * CHUNK_SIZE + 123);
+    upstreamCount = new AtomicInteger();
+    upstreamFactory =
+        () -> {
+          upstreamCount.incrementAndGet();
+          return new ByteArrayDataSource(data);
+        };
+  }
+
+  @Test
+  public void testReadSplitsRequestIntoChunks() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(upstreamFactory, CHUNK_SIZE, /* maxConnections= */ 3);
+
+    assertThat(dataSource.open(new DataSpec(URI))).isEqualTo(data.length);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(upstreamCount.get()).isEqualTo(11);
+  }
+
+  @Test
+  public void testReadFromPosition() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(upstreamFactory, CHUNK_SIZE, /* maxConnections= */ 2);
+
+    dataSource.open(
+        new DataSpec(URI, /* absoluteStreamPosition= */ 1500, /* length= */ 5000, /* key= */ null));
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 1500, 6500));
+    assertThat(upstreamCount.get()).isEqualTo(5);
+  }
+
+  @Test
+  public void testShortRequestIsNotSplit() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(upstreamFactory, CHUNK_SIZE, /* maxConnections= */ 3);
+
+    dataSource.open(
+        new DataSpec(URI, /* absoluteStreamPosition= */ 0, CHUNK_SIZE, /* key= */ null));
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOf(data, CHUNK_SIZE));
+    assertThat(upstreamCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCloseBeforeReadingAllChunks() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(upstreamFactory, CHUNK_SIZE, /* maxConnections= */ 3);
+
+    dataSource.open(new DataSpec(URI));
+    TestUtil.readExactly(dataSource, /* length= */ 2500);
+    dataSource.close();
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.SharedAllocator.PlayerAllocator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int TOTAL_BUFFER_SIZE = 1000;
+
+  @Test
+  public void singlePlayer_isLimitedByRequestedTarget() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator player =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+
+    player.setTargetBufferSize(400);
+
+    assertThat(player.getAllocationLimit()).isEqualTo(400);
+  }
+
+  @Test
+  public void singlePlayer_isLimitedByTotalBufferSize() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator player =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+
+    player.setTargetBufferSize(5000);
+
+    assertThat(player.getAllocationLimit()).isEqualTo(TOTAL_BUFFER_SIZE);
+  }
+
+  @Test
+  public void competingPlayers_splitBudgetByPriority() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator foreground =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    PlayerAllocator prefetch =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_PREFETCH);
+
+    foreground.setTargetBufferSize(5000);
+    prefetch.setTargetBufferSize(5000);
+
+    assertThat(foreground.getAllocationLimit()).isEqualTo(800);
+    assertThat(prefetch.getAllocationLimit()).isEqualTo(200);
+  }
+
+  @Test
+  public void competingPlayers_redistributeUnrequestedBudget() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator foreground =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    PlayerAllocator prefetch =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_PREFETCH);
+
+    foreground.setTargetBufferSize(300);
+    prefetch.setTargetBufferSize(5000);
+
+    assertThat(foreground.getAllocationLimit()).isEqualTo(300);
+    assertThat(prefetch.getAllocationLimit()).isEqualTo(700);
+  }
+
+  @Test
+  public void pausedPlayer_receivesNoShare() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator foreground =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    PlayerAllocator paused =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    foreground.setTargetBufferSize(5000);
+    paused.setTargetBufferSize(5000);
+
+    paused.setPriority(SharedAllocator.PRIORITY_PAUSED);
+
+    assertThat(paused.getAllocationLimit()).isEqualTo(0);
+    assertThat(foreground.getAllocationLimit()).isEqualTo(TOTAL_BUFFER_SIZE);
+  }
+
+  @Test
+  public void removePlayerAllocator_returnsShareToOtherPlayers() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator first =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    PlayerAllocator second =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    first.setTargetBufferSize(5000);
+    second.setTargetBufferSize(5000);
+    assertThat(first.getAllocationLimit()).isEqualTo(500);
+
+    sharedAllocator.removePlayerAllocator(second);
+
+    assertThat(first.getAllocationLimit()).isEqualTo(TOTAL_BUFFER_SIZE);
+  }
+
+  @Test
+  public void allocate_countsPerPlayerAndGlobally() {
+    SharedAllocator sharedAllocator = new SharedAllocator(TOTAL_BUFFER_SIZE, ALLOCATION_SIZE);
+    PlayerAllocator first =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_FOREGROUND);
+    PlayerAllocator second =
+        sharedAllocator.createPlayerAllocator(SharedAllocator.PRIORITY_PREFETCH);
+
+    Allocation allocation = first.allocate();
+    second.allocate();
+    second.allocate();
+
+    assertThat(first.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(second.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(sharedAllocator.getTotalBytesAllocated()).isEqualTo(3 * ALLOCATION_SIZE);
+
+    first.release(allocation);
+    assertThat(first.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(second.allocate()).isSameInstanceAs(allocation);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentCallbacks2;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SizeClassAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class SizeClassAllocatorTest {
+
+  private static final int SMALL = 8;
+  private static final int MEDIUM = 32;
+  private static final int LARGE = 128;
+
+  @Test
+  public void getTrackAllocator_returnsSizeClassForTrackType() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, MEDIUM, LARGE);
+
+    assertThat(allocator.getIndividualAllocationLength()).isEqualTo(LARGE);
+    assertThat(allocator.getTrackAllocator(C.TRACK_TYPE_VIDEO).getIndividualAllocationLength())
+        .isEqualTo(LARGE);
+    assertThat(allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO).getIndividualAllocationLength())
+        .isEqualTo(MEDIUM);
+    assertThat(allocator.getTrackAllocator(C.TRACK_TYPE_TEXT).getIndividualAllocationLength())
+        .isEqualTo(SMALL);
+    assertThat(allocator.getTrackAllocator(C.TRACK_TYPE_METADATA).getIndividualAllocationLength())
+        .isEqualTo(SMALL);
+  }
+
+  @Test
+  public void allocate_fromTrackAllocators_countsTowardsTotal() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, MEDIUM, LARGE);
+    Allocator audioAllocator = allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO);
+    Allocator textAllocator = allocator.getTrackAllocator(C.TRACK_TYPE_TEXT);
+
+    Allocation videoAllocation = allocator.allocate();
+    Allocation audioAllocation = audioAllocator.allocate();
+    Allocation textAllocation = textAllocator.allocate();
+
+    assertThat(videoAllocation.data.length).isEqualTo(LARGE);
+    assertThat(audioAllocation.data.length).isEqualTo(MEDIUM);
+    assertThat(textAllocation.data.length).isEqualTo(SMALL);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(LARGE + MEDIUM + SMALL);
+    assertThat(audioAllocator.getTotalBytesAllocated()).isEqualTo(LARGE + MEDIUM + SMALL);
+
+    audioAllocator.release(audioAllocation);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(LARGE + SMALL);
+    assertThat(allocator.getTotalBytesAvailable()).isEqualTo(MEDIUM);
+  }
+
+  @Test
+  public void allocate_afterRelease_reusesAllocation() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, MEDIUM, LARGE);
+    Allocator audioAllocator = allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO);
+    Allocation allocation = audioAllocator.allocate();
+    audioAllocator.release(allocation);
+
+    assertThat(audioAllocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void trim_retainsAvailableAllocationsUpToTargetBufferSize() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, MEDIUM, LARGE);
+    Allocator audioAllocator = allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO);
+    allocator.setTargetBufferSize(LARGE + MEDIUM);
+    allocator.release(new Allocation[] {allocator.allocate(), allocator.allocate()});
+    audioAllocator.release(new Allocation[] {audioAllocator.allocate(), audioAllocator.allocate()});
+
+    allocator.trim();
+
+    assertThat(allocator.getTotalBytesAvailable()).isEqualTo(LARGE + MEDIUM);
+  }
+
+  @Test
+  public void reset_withTrimOnReset_releasesAvailableAllocations() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, MEDIUM, LARGE);
+    allocator.setTargetBufferSize(4 * LARGE);
+    allocator.release(allocator.allocate());
+
+    allocator.reset();
+
+    assertThat(allocator.getTotalBytesAvailable()).isEqualTo(0);
+  }
+
+  @Test
+  public void onTrimMemory_runningLow_releasesAvailableAllocations() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ false, SMALL, MEDIUM, LARGE);
+    allocator.setTargetBufferSize(4 * LARGE);
+    Allocation heldAllocation = allocator.allocate();
+    allocator.release(allocator.allocate());
+    allocator.getTrackAllocator(C.TRACK_TYPE_TEXT).release(
+        allocator.getTrackAllocator(C.TRACK_TYPE_TEXT).allocate());
+
+    allocator.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+    assertThat(allocator.getTotalBytesAvailable()).isEqualTo(0);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(LARGE);
+    allocator.release(heldAllocation);
+  }
+
+  @Test
+  public void constructor_withEqualLengths_sharesPools() {
+    SizeClassAllocator allocator =
+        new SizeClassAllocator(/* trimOnReset= */ true, SMALL, SMALL, LARGE);
+
+    assertThat(allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO))
+        .isSameInstanceAs(allocator.getTrackAllocator(C.TRACK_TYPE_TEXT));
+    Allocation allocation = allocator.getTrackAllocator(C.TRACK_TYPE_AUDIO).allocate();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(SMALL);
+    allocator.getTrackAllocator(C.TRACK_TYPE_TEXT).release(allocation);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+}
@@ -39,19 +39,21 @@ public class CacheFileMetadataIndexTest {
   public void insert() throws DatabaseIOException {
     CacheFileMetadataIndex index = newInitializedIndex();
 
-    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
-    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.set("name1", /* directory= */ "1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name2", /* directory= */ "2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
 
     Map<String, CacheFileMetadata> all = index.getAll();
     assertThat(all.size()).isEqualTo(2);
 
     CacheFileMetadata metadata = all.get("name1");
     assertThat(metadata).isNotNull();
+    assertThat(metadata.directory).isEqualTo("1");
     assertThat(metadata.length).isEqualTo(123);
     assertThat(metadata.lastTouchTimestamp).isEqualTo(456);
 
     metadata = all.get("name2");
     assertThat(metadata).isNotNull();
+    assertThat(metadata.directory).isEqualTo("2");
     assertThat(metadata.length).isEqualTo(789);
     assertThat(metadata.lastTouchTimestamp).isEqualTo(123);
 
@@ -63,8 +65,8 @@ public class CacheFileMetadataIndexTest {
   public void insertAndRemove() throws DatabaseIOException {
     CacheFileMetadataIndex index = newInitializedIndex();
 
-    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
-    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.set("name1", /* directory= */ "1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name2", /* directory= */ "2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
 
     index.remove("name1");
 
@@ -92,8 +94,8 @@ public class CacheFileMetadataIndexTest {
   public void insertAndRemoveAll() throws DatabaseIOException {
     CacheFileMetadataIndex index = newInitializedIndex();
 
-    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
-    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.set("name1", /* directory= */ "1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name2", /* directory= */ "2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
 
     HashSet<String> namesToRemove = new HashSet<>();
     namesToRemove.add("name1");
@@ -114,8 +116,8 @@ public class CacheFileMetadataIndexTest {
   public void insertAndReplace() throws DatabaseIOException {
     CacheFileMetadataIndex index = newInitializedIndex();
 
-    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
-    index.set("name1", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.set("name1", /* directory= */ "1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name1", /* directory= */ "1", /* length= */ 789, /* lastTouchTimestamp= */ 123);
 
     Map<String, CacheFileMetadata> all = index.getAll();
     assertThat(all.size()).isEqualTo(1);
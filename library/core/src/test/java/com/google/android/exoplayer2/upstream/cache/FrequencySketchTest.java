@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FrequencySketch}. */
+@RunWith(AndroidJUnit4.class)
+public final class FrequencySketchTest {
+
+  /** The number of additions after which a sketch for 16 keys ages its counters. */
+  private static final int SAMPLE_SIZE = 160;
+
+  @Test
+  public void testIncrementSaturatesAtMaxFrequency() {
+    FrequencySketch sketch = new FrequencySketch(/* expectedKeyCount= */ 16);
+
+    for (int i = 0; i < FrequencySketch.MAX_FREQUENCY + 5; i++) {
+      sketch.increment("key");
+    }
+
+    assertThat(sketch.getFrequency("key")).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+  }
+
+  @Test
+  public void testAgingHalvesFrequencies() {
+    FrequencySketch sketch = new FrequencySketch(/* expectedKeyCount= */ 16);
+    // Increments of a saturated key aren't counted as additions.
+    for (int i = 0; i < FrequencySketch.MAX_FREQUENCY + 5; i++) {
+      sketch.increment("hot");
+    }
+    int otherKeyCount = SAMPLE_SIZE - FrequencySketch.MAX_FREQUENCY;
+    for (int i = 0; i < otherKeyCount - 1; i++) {
+      sketch.increment("other" + i);
+    }
+    assertThat(sketch.getFrequency("hot")).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+
+    sketch.increment("other" + (otherKeyCount - 1));
+
+    assertThat(sketch.getFrequency("hot")).isEqualTo(FrequencySketch.MAX_FREQUENCY / 2);
+  }
+
+  @Test
+  public void testEstimatesAreNotLowerThanCountsUnderCollisions() {
+    // Far more keys than the sketch is sized for, so that counters are shared between keys.
+    FrequencySketch sketch = new FrequencySketch(/* expectedKeyCount= */ 16);
+    int keyCount = 40;
+    for (int i = 0; i < keyCount; i++) {
+      for (int j = 0; j <= i % 3; j++) {
+        sketch.increment("key" + i);
+      }
+    }
+
+    for (int i = 0; i < keyCount; i++) {
+      assertThat(sketch.getFrequency("key" + i)).isAtLeast(i % 3 + 1);
+    }
+  }
+
+  @Test
+  public void testKeysWithSameHashCodeShareEstimate() {
+    FrequencySketch sketch = new FrequencySketch(/* expectedKeyCount= */ 16);
+    assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+    for (int i = 0; i < 3; i++) {
+      sketch.increment("Aa");
+    }
+
+    assertThat(sketch.getFrequency("Aa")).isEqualTo(3);
+    assertThat(sketch.getFrequency("BB")).isEqualTo(3);
+  }
+}
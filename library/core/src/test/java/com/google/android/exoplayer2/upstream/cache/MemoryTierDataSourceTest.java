@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemoryTierDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemoryTierDataSourceTest {
+
+  private static final String FILE_URI_1 = "file:///cache/span1";
+  private static final String FILE_URI_2 = "file:///cache/span2";
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+  private static final int SPAN_LENGTH = 100;
+  private static final long SPAN_POSITION = 1000;
+
+  private FakeDataSet fakeDataSet;
+  private FakeDataSource upstream;
+  private MemoryTier memoryTier;
+  private MemoryTierDataSource dataSource;
+
+  @Before
+  public void setUp() {
+    fakeDataSet =
+        new FakeDataSet()
+            .setRandomData(FILE_URI_1, SPAN_LENGTH)
+            .setRandomData(FILE_URI_2, SPAN_LENGTH);
+    upstream = new FakeDataSource(fakeDataSet);
+    memoryTier = new MemoryTier(/* maxBytes= */ 150, /* maxRangeBytes= */ SPAN_LENGTH);
+    dataSource = new MemoryTierDataSource(memoryTier, upstream);
+  }
+
+  @Test
+  public void testRepeatedReadIsServedFromMemory() throws Exception {
+    byte[] expected = fakeDataSet.getData(FILE_URI_1).getData();
+
+    assertThat(read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH)).isEqualTo(expected);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(memoryTier.getCurrentBytes()).isEqualTo(SPAN_LENGTH);
+
+    assertThat(read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH)).isEqualTo(expected);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void testReadWithinStoredRangeIsServedFromMemory() throws Exception {
+    byte[] data = fakeDataSet.getData(FILE_URI_1).getData();
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH);
+    upstream.getAndClearOpenedDataSpecs();
+
+    assertThat(read(FILE_URI_1, KEY_1, /* filePosition= */ 10, /* length= */ 20))
+        .isEqualTo(Arrays.copyOfRange(data, 10, 30));
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void testReadBeyondStoredRangeIsServedFromUpstream() throws Exception {
+    byte[] data = fakeDataSet.getData(FILE_URI_1).getData();
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, /* length= */ 50);
+    upstream.getAndClearOpenedDataSpecs();
+
+    assertThat(read(FILE_URI_1, KEY_1, /* filePosition= */ 40, /* length= */ 20))
+        .isEqualTo(Arrays.copyOfRange(data, 40, 60));
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void testPartiallyReadRangeIsNotStored() throws Exception {
+    dataSource.open(
+        new DataSpec(
+            Uri.parse(FILE_URI_1),
+            SPAN_POSITION,
+            /* position= */ 0,
+            SPAN_LENGTH,
+            KEY_1,
+            /* flags= */ 0));
+    TestUtil.readExactly(dataSource, /* length= */ 50);
+    dataSource.close();
+
+    assertThat(memoryTier.getCurrentBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedRangeIsEvicted() throws Exception {
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH);
+    read(FILE_URI_2, KEY_2, /* filePosition= */ 0, SPAN_LENGTH);
+    upstream.getAndClearOpenedDataSpecs();
+    assertThat(memoryTier.getCurrentBytes()).isEqualTo(SPAN_LENGTH);
+
+    read(FILE_URI_2, KEY_2, /* filePosition= */ 0, SPAN_LENGTH);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void testRemoveKey() throws Exception {
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH);
+    upstream.getAndClearOpenedDataSpecs();
+
+    memoryTier.removeKey(KEY_1);
+
+    assertThat(memoryTier.getCurrentBytes()).isEqualTo(0);
+    read(FILE_URI_1, KEY_1, /* filePosition= */ 0, SPAN_LENGTH);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  private byte[] read(String fileUri, String key, int filePosition, int length) throws Exception {
+    dataSource.open(
+        new DataSpec(
+            Uri.parse(fileUri),
+            SPAN_POSITION + filePosition,
+            filePosition,
+            length,
+            key,
+            /* flags= */ 0));
+    try {
+      return TestUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+/** Unit tests for {@link SegmentedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentedLeastRecentlyUsedCacheEvictorTest {
+
+  private static final int MAX_BYTES = 100;
+  private static final int SPAN_LENGTH = 10;
+
+  private Cache cache;
+  private List<String> removedKeys;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = Mockito.mock(Cache.class);
+    removedKeys = new ArrayList<>();
+  }
+
+  @Test
+  public void testReadContentSurvivesSequentialScan() throws Exception {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        createEvictor(SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION);
+    CacheSpan hotSpan = createSpan("hot", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, hotSpan);
+    evictor.onSpanTouched(cache, hotSpan, createSpan("hot", /* lastTouchTimestamp= */ 1));
+
+    // Write more content than fits in the cache, none of which is read again.
+    for (int i = 0; i < 20; i++) {
+      evictor.onSpanAdded(cache, createSpan("scan" + i, /* lastTouchTimestamp= */ 2 + i));
+    }
+
+    assertThat(removedKeys).hasSize(11);
+    assertThat(removedKeys).doesNotContain("hot");
+  }
+
+  @Test
+  public void testProtectedSegmentOverflowDemotesLeastRecentlyReadSpan() throws Exception {
+    // The protected segment holds two spans.
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        createEvictor(/* protectedFraction= */ 0.2f);
+    String[] keys = new String[] {"read0", "read1", "read2"};
+    CacheSpan[] spans = new CacheSpan[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      spans[i] = createSpan(keys[i], /* lastTouchTimestamp= */ i);
+      evictor.onSpanAdded(cache, spans[i]);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      evictor.onSpanTouched(
+          cache, spans[i], createSpan(keys[i], /* lastTouchTimestamp= */ 10 + i));
+    }
+
+    // Fill the cache, so that one span has to be evicted.
+    for (int i = 0; i < 8; i++) {
+      evictor.onSpanAdded(cache, createSpan("other" + i, /* lastTouchTimestamp= */ 20 + i));
+    }
+
+    // The first read span was demoted to the probationary segment, where it's the least recently
+    // used span.
+    assertThat(removedKeys).containsExactly("read0");
+  }
+
+  @Test
+  public void testPinnedContentIsNotEvicted() throws Exception {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        createEvictor(SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION);
+    evictor.pin("pinned");
+    evictor.onSpanAdded(cache, createSpan("pinned", /* lastTouchTimestamp= */ 0));
+
+    for (int i = 0; i < 20; i++) {
+      evictor.onSpanAdded(cache, createSpan("other" + i, /* lastTouchTimestamp= */ 1 + i));
+    }
+
+    assertThat(removedKeys).hasSize(11);
+    assertThat(removedKeys).doesNotContain("pinned");
+  }
+
+  private SegmentedLeastRecentlyUsedCacheEvictor createEvictor(float protectedFraction)
+      throws Exception {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(MAX_BYTES, protectedFraction);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedKeys.add(span.key);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return evictor;
+  }
+
+  private static CacheSpan createSpan(String key, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, /* position= */ 0, SPAN_LENGTH, lastTouchTimestamp, /* file= */ null);
+  }
+}
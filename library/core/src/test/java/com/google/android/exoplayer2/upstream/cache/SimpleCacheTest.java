@@ -21,8 +21,11 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 import static org.mockito.Mockito.doAnswer;
 
+import android.database.sqlite.SQLiteDatabase;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Util;
@@ -33,6 +36,9 @@ import java.io.IOException;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -190,6 +196,130 @@ public class SimpleCacheTest {
     assertCachedDataReadCorrect(cacheSpan2);
   }
 
+  @Test
+  public void testReloadCacheWithDeferredDirectoryScan() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getDeferredScanSimpleCache(databaseProvider);
+
+    // write data
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+    simpleCache.release();
+
+    // Reload cache. The span should be loaded from the file index.
+    simpleCache = getDeferredScanSimpleCache(databaseProvider);
+
+    // read data back
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan2);
+  }
+
+  @Test
+  public void testDeferredDirectoryScanAddsFilesMissingFromFileIndex() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    long uid = simpleCache.getUid();
+    simpleCache.release();
+    // Delete the file index, as would happen if it were written by an earlier version.
+    CacheFileMetadataIndex.delete(databaseProvider, uid);
+
+    simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    waitForCachedSpan(simpleCache, KEY_1);
+
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan);
+  }
+
+  @Test
+  public void testDeferredDirectoryScanKeepsSpansMigratedFromVersion1FileIndex() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    long uid = simpleCache.getUid();
+    simpleCache.release();
+    // Rewrite the file index as version 1, which doesn't record the directory of each file.
+    String hexUid = Long.toHexString(uid);
+    String tableName = DatabaseProvider.TABLE_PREFIX + "CacheFileMetadata" + hexUid;
+    SQLiteDatabase database = databaseProvider.getWritableDatabase();
+    database.execSQL(
+        "CREATE TABLE v1 (name TEXT PRIMARY KEY NOT NULL, length INTEGER NOT NULL,"
+            + " last_touch_timestamp INTEGER NOT NULL)");
+    database.execSQL("INSERT INTO v1 SELECT name, length, last_touch_timestamp FROM " + tableName);
+    database.execSQL("DROP TABLE " + tableName);
+    database.execSQL("ALTER TABLE v1 RENAME TO " + tableName);
+    VersionTable.setVersion(
+        database, VersionTable.FEATURE_CACHE_FILE_METADATA, hexUid, /* version= */ 1);
+
+    simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    waitForCachedSpan(simpleCache, KEY_1);
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan);
+    simpleCache.releaseHoleSpan(cacheSpan);
+    simpleCache.release();
+
+    // The scan should have recorded the file's directory, so the span is loaded from the index.
+    simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+  }
+
+  @Test
+  public void testIndexChangesAreWrittenOnReleaseWithFlushInterval() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+    simpleCache.setIndexFlushIntervalMs(/* indexFlushIntervalMs= */ 60_000);
+    CacheFileMetadataIndex fileIndex = new CacheFileMetadataIndex(databaseProvider);
+    fileIndex.initialize(simpleCache.getUid());
+
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    // The change to the file index should be pending until the cache is released.
+    assertThat(fileIndex.getAll()).isEmpty();
+    simpleCache.release();
+    assertThat(fileIndex.getAll()).hasSize(1);
+
+    // Reload the cache from the file index alone.
+    simpleCache = getDeferredScanSimpleCache(databaseProvider);
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan);
+  }
+
+  @Test
+  public void testIndexChangesAreWrittenPeriodicallyWithFlushInterval() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+    simpleCache.setIndexFlushIntervalMs(/* indexFlushIntervalMs= */ 10);
+    CacheFileMetadataIndex fileIndex = new CacheFileMetadataIndex(databaseProvider);
+    fileIndex.initialize(simpleCache.getUid());
+
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 15);
+    simpleCache.applyContentMetadataMutations(KEY_1, mutations);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    // Wait for a scheduled flush to write the file index, without releasing the cache.
+    long timeoutMs = System.currentTimeMillis() + 10_000;
+    while (fileIndex.getAll().isEmpty() && System.currentTimeMillis() < timeoutMs) {
+      Thread.sleep(10);
+    }
+    assertThat(fileIndex.getAll()).hasSize(1);
+    // The content index is written before the file index, so the metadata change is written too.
+    CachedContentIndex contentIndex = new CachedContentIndex(databaseProvider);
+    contentIndex.initialize(simpleCache.getUid());
+    assertThat(ContentMetadata.getContentLength(contentIndex.getContentMetadata(KEY_1)))
+        .isEqualTo(15);
+    simpleCache.release();
+  }
+
   @Test
   public void testReloadCacheWithoutRelease() throws Exception {
     SimpleCache simpleCache = getSimpleCache();
@@ -318,6 +448,75 @@ public class SimpleCacheTest {
     simpleCache.releaseHoleSpan(cacheSpan);
   }
 
+  @Test
+  public void testGetCachedLengthWhileSpansAreTouched() throws Exception {
+    // LeastRecentlyUsedCacheEvictor requires spans to be touched each time they're read.
+    SimpleCache simpleCache =
+        new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 1000));
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 35);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    AtomicReference<Throwable> touchError = new AtomicReference<>();
+    Thread touchThread =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < 100; i++) {
+                  simpleCache.startReadWrite(KEY_1, 0);
+                  simpleCache.startReadWrite(KEY_1, 15);
+                }
+              } catch (Throwable e) {
+                touchError.set(e);
+              }
+            });
+    touchThread.start();
+    // Touching a span replaces it, which must not be observable by concurrent lookups.
+    while (touchThread.isAlive()) {
+      assertThat(simpleCache.getCachedLength(KEY_1, 0, 100)).isEqualTo(50);
+      assertThat(simpleCache.isCached(KEY_1, 10, 20)).isTrue();
+    }
+    touchThread.join();
+
+    assertThat(touchError.get()).isNull();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(2);
+  }
+
+  @Test
+  public void testCompactMergesContiguousSpans() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 35);
+    addCache(simpleCache, KEY_1, 50, 10);
+    addCache(simpleCache, KEY_1, 100, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    // The first three spans are contiguous, but only two of them fit in a merged file.
+    assertThat(simpleCache.compact(/* maxFileSize= */ 50)).isEqualTo(1);
+
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(cachedSpans).hasSize(3);
+    CacheSpan mergedSpan = cachedSpans.first();
+    assertThat(mergedSpan.position).isEqualTo(0);
+    assertThat(mergedSpan.length).isEqualTo(50);
+    try (FileInputStream inputStream = new FileInputStream(mergedSpan.file)) {
+      assertThat(toByteArray(inputStream))
+          .isEqualTo(
+              TestUtil.joinByteArrays(
+                  generateData(KEY_1, 0, 15), generateData(KEY_1, 15, 35)));
+    }
+    assertThat(simpleCache.getCachedLength(KEY_1, 0, 100)).isEqualTo(60);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(70);
+
+    // The merged span should survive the cache being reloaded.
+    simpleCache.release();
+    simpleCache = getSimpleCache();
+    assertThat(simpleCache.getCachedLength(KEY_1, 0, 100)).isEqualTo(60);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(3);
+  }
+
   /* Tests https://github.com/google/ExoPlayer/issues/3260 case. */
   @Test
   public void testExceptionDuringEvictionByLeastRecentlyUsedCacheEvictorNotHang() throws Exception {
@@ -398,6 +597,41 @@ public class SimpleCacheTest {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), secretKey);
   }
 
+  /** Waits for the deferred directory scan to add a span for {@code key}, if it's not cached. */
+  private static void waitForCachedSpan(SimpleCache simpleCache, String key) throws Exception {
+    CountDownLatch spanAddedLatch = new CountDownLatch(1);
+    NavigableSet<CacheSpan> cachedSpans =
+        simpleCache.addListener(
+            key,
+            new Cache.Listener() {
+              @Override
+              public void onSpanAdded(Cache cache, CacheSpan span) {
+                spanAddedLatch.countDown();
+              }
+
+              @Override
+              public void onSpanRemoved(Cache cache, CacheSpan span) {}
+
+              @Override
+              public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {}
+            });
+    if (cachedSpans.isEmpty()) {
+      // The span will be added by the directory scan.
+      assertThat(spanAddedLatch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  private SimpleCache getDeferredScanSimpleCache(DatabaseProvider databaseProvider) {
+    return new SimpleCache(
+        cacheDir,
+        new NoOpCacheEvictor(),
+        databaseProvider,
+        /* legacyIndexSecretKey= */ null,
+        /* legacyIndexEncrypt= */ false,
+        /* preferLegacyIndex= */ false,
+        /* deferDirectoryScan= */ true);
+  }
+
   private static void addCache(SimpleCache simpleCache, String key, int position, int length)
       throws IOException {
     File file = simpleCache.startFile(key, position, length);
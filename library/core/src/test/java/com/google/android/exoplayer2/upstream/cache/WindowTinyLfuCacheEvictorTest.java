@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+/** Unit tests for {@link WindowTinyLfuCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class WindowTinyLfuCacheEvictorTest {
+
+  private static final int MAX_BYTES = 100;
+  private static final int SPAN_LENGTH = 10;
+
+  private Cache cache;
+  private List<String> removedKeys;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = Mockito.mock(Cache.class);
+    removedKeys = new ArrayList<>();
+  }
+
+  @Test
+  public void testFrequentlyReadContentSurvivesSequentialScan() throws Exception {
+    WindowTinyLfuCacheEvictor evictor = createEvictor();
+    CacheSpan hotSpan = writeSpan(evictor, "hot", /* lastTouchTimestamp= */ 0);
+    for (int i = 1; i <= 3; i++) {
+      CacheSpan touchedSpan = createSpan("hot", /* lastTouchTimestamp= */ i);
+      evictor.onSpanTouched(cache, hotSpan, touchedSpan);
+      hotSpan = touchedSpan;
+    }
+
+    // Write more content than fits in the cache, none of which is read again.
+    for (int i = 0; i < 20; i++) {
+      writeSpan(evictor, "scan" + i, /* lastTouchTimestamp= */ 4 + i);
+    }
+
+    assertThat(removedKeys).hasSize(11);
+    assertThat(removedKeys).doesNotContain("hot");
+  }
+
+  @Test
+  public void testFrequentlyReadWindowSpanIsAdmittedOverMainRegionSpan() throws Exception {
+    WindowTinyLfuCacheEvictor evictor = createEvictor();
+    long timestamp = 0;
+    for (int i = 0; i < 10; i++) {
+      writeSpan(evictor, "once" + i, timestamp++);
+    }
+    // The cache is full, so the least recently used span in the window is admitted to the main
+    // region, and the next one is evicted.
+    CacheSpan hotSpan = writeSpan(evictor, "hot", timestamp++);
+    assertThat(removedKeys).containsExactly("once1");
+    for (int i = 0; i < 3; i++) {
+      CacheSpan touchedSpan = createSpan("hot", timestamp++);
+      evictor.onSpanTouched(cache, hotSpan, touchedSpan);
+      hotSpan = touchedSpan;
+    }
+
+    // Write content until the hot span is the least recently used span in the window.
+    for (int i = 0; i < 9; i++) {
+      writeSpan(evictor, "other" + i, timestamp++);
+    }
+
+    // The hot span has been accessed more often than the span in the main region, which is evicted
+    // instead of it.
+    assertThat(removedKeys).contains("once0");
+    assertThat(removedKeys).doesNotContain("hot");
+  }
+
+  @Test
+  public void testPinnedContentIsNotEvicted() throws Exception {
+    WindowTinyLfuCacheEvictor evictor = createEvictor();
+    evictor.pin("pinned");
+    writeSpan(evictor, "pinned", /* lastTouchTimestamp= */ 0);
+
+    for (int i = 0; i < 20; i++) {
+      writeSpan(evictor, "other" + i, /* lastTouchTimestamp= */ 1 + i);
+    }
+
+    assertThat(removedKeys).hasSize(11);
+    assertThat(removedKeys).doesNotContain("pinned");
+  }
+
+  private WindowTinyLfuCacheEvictor createEvictor() throws Exception {
+    WindowTinyLfuCacheEvictor evictor =
+        new WindowTinyLfuCacheEvictor(
+            MAX_BYTES, /* windowFraction= */ 0.1f, /* expectedKeyCount= */ 64);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedKeys.add(span.key);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return evictor;
+  }
+
+  private CacheSpan writeSpan(
+      WindowTinyLfuCacheEvictor evictor, String key, long lastTouchTimestamp) {
+    evictor.onStartFile(cache, key, /* position= */ 0, SPAN_LENGTH);
+    CacheSpan span = createSpan(key, lastTouchTimestamp);
+    evictor.onSpanAdded(cache, span);
+    return span;
+  }
+
+  private static CacheSpan createSpan(String key, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, /* position= */ 0, SPAN_LENGTH, lastTouchTimestamp, /* file= */ null);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.crypto;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AesCipherDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class AesCipherDataSourceTest {
+
+  private static final byte[] KEY = Util.getUtf8Bytes("testKey:12345678");
+  private static final String URI = "test://encrypted";
+  private static final String CACHE_KEY = "key";
+  private static final int DATA_LENGTH = 10000;
+
+  @Test
+  public void testReadWithoutReadBuffer() throws Exception {
+    assertDecryptsCorrectly(/* position= */ 0, /* readBuffer= */ null, /* readLength= */ 100);
+  }
+
+  @Test
+  public void testReadWithReadBuffer() throws Exception {
+    assertDecryptsCorrectly(/* position= */ 0, new byte[4096], /* readLength= */ 100);
+  }
+
+  @Test
+  public void testReadWithReadBufferFromUnalignedPosition() throws Exception {
+    assertDecryptsCorrectly(/* position= */ 1011, new byte[4096], /* readLength= */ 7);
+  }
+
+  @Test
+  public void testReadWithMinimumSizeReadBuffer() throws Exception {
+    assertDecryptsCorrectly(/* position= */ 5, new byte[16], /* readLength= */ 1000);
+  }
+
+  private static void assertDecryptsCorrectly(
+      long position, @Nullable byte[] readBuffer, int readLength) throws Exception {
+    byte[] plaintext = TestUtil.buildTestData(DATA_LENGTH);
+    byte[] ciphertext = Arrays.copyOf(plaintext, DATA_LENGTH);
+    new AesFlushingCipher(
+            Cipher.ENCRYPT_MODE, KEY, CryptoUtil.getFNV64Hash(CACHE_KEY), /* offset= */ 0)
+        .updateInPlace(ciphertext, /* offset= */ 0, DATA_LENGTH);
+    // Return the encrypted data from upstream in chunks that aren't aligned to AES blocks.
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    FakeDataSet.FakeData fakeData = fakeDataSet.newData(URI);
+    for (int i = 0; i < DATA_LENGTH; i += 333) {
+      fakeData.appendReadData(
+          Arrays.copyOfRange(ciphertext, i, Math.min(i + 333, DATA_LENGTH)));
+    }
+    AesCipherDataSource dataSource =
+        new AesCipherDataSource(KEY, new FakeDataSource(fakeDataSet), readBuffer);
+
+    dataSource.open(new DataSpec(Uri.parse(URI), position, C.LENGTH_UNSET, CACHE_KEY));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[readLength];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, readLength)) != C.RESULT_END_OF_INPUT) {
+      output.write(buffer, 0, bytesRead);
+    }
+    dataSource.close();
+
+    assertThat(output.toByteArray())
+        .isEqualTo(Arrays.copyOfRange(plaintext, (int) position, DATA_LENGTH));
+  }
+}
@@ -284,7 +284,10 @@ public final class PlayerEmsgHandler implements Handler.Callback {
     private final MetadataInputBuffer buffer;
 
     /* package */ PlayerTrackEmsgHandler(Allocator allocator) {
-      this.sampleQueue = new SampleQueue(allocator, DrmSessionManager.getDummyDrmSessionManager());
+      this.sampleQueue =
+          new SampleQueue(
+              allocator.getTrackAllocator(C.TRACK_TYPE_METADATA),
+              DrmSessionManager.getDummyDrmSessionManager());
       formatHolder = new FormatHolder();
       buffer = new MetadataInputBuffer();
     }
@@ -50,6 +50,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -171,6 +174,100 @@ public class DashDownloaderTest {
     assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
   }
 
+  @Test
+  public void testDownloadAllRepresentationsInParallel() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3)
+            .setRandomData("period_2_segment_1", 1)
+            .setRandomData("period_2_segment_2", 2)
+            .setRandomData("period_2_segment_3", 3);
+    DownloaderConstructorHelper constructorHelper =
+        new DownloaderConstructorHelper(
+            cache,
+            new Factory().setFakeDataSet(fakeDataSet),
+            /* cacheReadDataSourceFactory= */ null,
+            /* cacheWriteDataSinkFactory= */ null,
+            /* priorityTaskManager= */ null,
+            /* cacheKeyFactory= */ null,
+            /* maxParallelSegmentDownloads= */ 4);
+
+    DashDownloader dashDownloader =
+        new DashDownloader(TEST_MPD_URI, Collections.emptyList(), constructorHelper);
+    dashDownloader.download(progressListener);
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+    progressListener.assertBytesDownloaded(10 + 4 + 5 + 6 + 1 + 2 + 3 + 1 + 2 + 3);
+  }
+
+  @Test
+  public void testCancelParallelDownloadWaitsForWorkers() throws Exception {
+    CountDownLatch readStarted = new CountDownLatch(1);
+    AtomicBoolean readFinished = new AtomicBoolean();
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3)
+            .setRandomData("period_2_segment_1", 1)
+            .setRandomData("period_2_segment_2", 2)
+            .setRandomData("period_2_segment_3", 3);
+    fakeDataSet
+        .newData("audio_segment_2")
+        .appendReadAction(
+            () -> {
+              readStarted.countDown();
+              try {
+                Thread.sleep(200);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } finally {
+                readFinished.set(true);
+              }
+            })
+        .appendReadData(5);
+    DownloaderConstructorHelper constructorHelper =
+        new DownloaderConstructorHelper(
+            cache,
+            new Factory().setFakeDataSet(fakeDataSet),
+            /* cacheReadDataSourceFactory= */ null,
+            /* cacheWriteDataSinkFactory= */ null,
+            /* priorityTaskManager= */ null,
+            /* cacheKeyFactory= */ null,
+            /* maxParallelSegmentDownloads= */ 4);
+    DashDownloader dashDownloader =
+        new DashDownloader(TEST_MPD_URI, Collections.emptyList(), constructorHelper);
+    AtomicBoolean readFinishedWhenDownloadReturned = new AtomicBoolean();
+    Thread downloadThread =
+        new Thread(
+            () -> {
+              try {
+                dashDownloader.download(progressListener);
+              } catch (IOException | InterruptedException e) {
+                // Expected if the download is canceled before it completes.
+              }
+              readFinishedWhenDownloadReturned.set(readFinished.get());
+            });
+    downloadThread.start();
+
+    assertThat(readStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    dashDownloader.cancel();
+    downloadThread.join();
+
+    // The worker reading audio_segment_2 must have stopped before download returned.
+    assertThat(readFinishedWhenDownloadReturned.get()).isTrue();
+  }
+
   @Test
   public void testProgressiveDownload() throws Exception {
     FakeDataSet fakeDataSet =
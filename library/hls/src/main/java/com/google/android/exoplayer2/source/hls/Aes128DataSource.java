@@ -23,7 +23,11 @@ import com.google.android.exoplayer2.upstream.DataSourceInputStream;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -31,6 +35,10 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
@@ -44,24 +52,69 @@ import javax.crypto.spec.SecretKeySpec;
  * <p>Note that this {@link DataSource} does not support being opened from arbitrary offsets. It is
  * designed specifically for reading whole files as defined in an HLS media playlist. For this
  * reason the implementation is private to the HLS package.
+ *
+ * <p>In pipelined mode, data is read from the upstream source on a pooled thread, into a small
+ * number of large buffers. Each buffer is decrypted with a single cipher call on the thread calling
+ * {@link #read(byte[], int, int)}, whilst the next one is being read. Data is otherwise read and
+ * decrypted serially, through a {@link CipherInputStream}.
  */
 /* package */ class Aes128DataSource implements DataSource {
 
+  /** The size of each buffer used in pipelined mode. */
+  private static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
+  /** The number of buffers used in pipelined mode. */
+  private static final int PIPELINE_BUFFER_COUNT = 3;
+
+  /**
+   * Runs the {@link UpstreamReader} of each open pipelined source. Threads are reused by later
+   * sources, and stop after being idle for a while.
+   */
+  private static final ExecutorService upstreamReaderExecutor =
+      Executors.newCachedThreadPool(runnable -> new Thread(runnable, "ExoPlayer:Aes128DataSource"));
+
   private final DataSource upstream;
   private final byte[] encryptionKey;
   private final byte[] encryptionIv;
+  private final boolean pipelined;
+  private final BlockingQueue<PipelineBuffer> freeBuffers;
+  private final BlockingQueue<PipelineBuffer> filledBuffers;
 
   @Nullable private CipherInputStream cipherInputStream;
+  @Nullable private Cipher pipelineCipher;
+  @Nullable private UpstreamReader upstreamReader;
+  private byte[] decryptedData;
+  private int decryptedDataPosition;
+  private int decryptedDataLimit;
+  private boolean decryptedAllData;
 
   /**
+   * Creates an instance that reads and decrypts data serially.
+   *
    * @param upstream The upstream {@link DataSource}.
    * @param encryptionKey The encryption key.
    * @param encryptionIv The encryption initialization vector.
    */
   public Aes128DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
+    this(upstream, encryptionKey, encryptionIv, /* pipelined= */ false);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param encryptionKey The encryption key.
+   * @param encryptionIv The encryption initialization vector.
+   * @param pipelined Whether to read from the upstream source on a separate thread, so that reading
+   *     is overlapped with decryption. This is worthwhile for large segments, but not for small
+   *     ones such as initialization segments.
+   */
+  public Aes128DataSource(
+      DataSource upstream, byte[] encryptionKey, byte[] encryptionIv, boolean pipelined) {
     this.upstream = upstream;
     this.encryptionKey = encryptionKey;
     this.encryptionIv = encryptionIv;
+    this.pipelined = pipelined;
+    freeBuffers = new ArrayBlockingQueue<>(PIPELINE_BUFFER_COUNT);
+    filledBuffers = new ArrayBlockingQueue<>(PIPELINE_BUFFER_COUNT);
+    decryptedData = Util.EMPTY_BYTE_ARRAY;
   }
 
   @Override
@@ -87,6 +140,22 @@ import javax.crypto.spec.SecretKeySpec;
       throw new RuntimeException(e);
     }
 
+    if (pipelined) {
+      pipelineCipher = cipher;
+      upstream.open(dataSpec);
+      int decryptedDataLength = cipher.getOutputSize(PIPELINE_BUFFER_SIZE);
+      if (decryptedData.length < decryptedDataLength) {
+        decryptedData = new byte[decryptedDataLength];
+      }
+      // Buffers are allocated by the first open, and reused by later ones.
+      while (freeBuffers.remainingCapacity() > 0) {
+        freeBuffers.add(new PipelineBuffer());
+      }
+      upstreamReader = new UpstreamReader(upstream, freeBuffers, filledBuffers);
+      upstreamReaderExecutor.execute(upstreamReader);
+      return C.LENGTH_UNSET;
+    }
+
     DataSourceInputStream inputStream = new DataSourceInputStream(upstream, dataSpec);
     cipherInputStream = new CipherInputStream(inputStream, cipher);
     inputStream.open();
@@ -96,6 +165,21 @@ import javax.crypto.spec.SecretKeySpec;
 
   @Override
   public final int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (pipelined) {
+      if (readLength == 0) {
+        return 0;
+      }
+      while (decryptedDataPosition == decryptedDataLimit) {
+        if (decryptedAllData) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        decryptNextBuffer();
+      }
+      int bytesToCopy = Math.min(readLength, decryptedDataLimit - decryptedDataPosition);
+      System.arraycopy(decryptedData, decryptedDataPosition, buffer, offset, bytesToCopy);
+      decryptedDataPosition += bytesToCopy;
+      return bytesToCopy;
+    }
     Assertions.checkNotNull(cipherInputStream);
     int bytesRead = cipherInputStream.read(buffer, offset, readLength);
     if (bytesRead < 0) {
@@ -120,10 +204,176 @@ import javax.crypto.spec.SecretKeySpec;
     if (cipherInputStream != null) {
       cipherInputStream = null;
       upstream.close();
+    } else if (pipelineCipher != null) {
+      pipelineCipher = null;
+      decryptedDataPosition = 0;
+      decryptedDataLimit = 0;
+      decryptedAllData = false;
+      if (upstreamReader != null) {
+        upstreamReader.cancel();
+        upstreamReader = null;
+      }
+      // The reader has stopped, so return the buffers it filled for reuse by the next open.
+      @Nullable PipelineBuffer buffer;
+      while ((buffer = filledBuffers.poll()) != null) {
+        buffer.error = null;
+        freeBuffers.offer(buffer);
+      }
+      upstream.close();
     }
   }
 
   protected Cipher getCipherInstance() throws NoSuchPaddingException, NoSuchAlgorithmException {
     return Cipher.getInstance("AES/CBC/PKCS7Padding");
   }
+
+  /**
+   * Decrypts the next buffer read by the {@link UpstreamReader} into {@link #decryptedData}. The
+   * cipher may hold back some or all of the data until the next call.
+   */
+  private void decryptNextBuffer() throws IOException {
+    Cipher cipher = Assertions.checkNotNull(pipelineCipher);
+    PipelineBuffer buffer;
+    try {
+      buffer = filledBuffers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (buffer.error != null) {
+      // Reading has ended. Keep the buffer, so that the error is thrown again by later reads.
+      filledBuffers.add(buffer);
+      if (buffer.error instanceof IOException) {
+        throw (IOException) buffer.error;
+      }
+      throw (RuntimeException) buffer.error;
+    }
+    try {
+      decryptedDataLimit =
+          buffer.endOfInput
+              ? cipher.doFinal(buffer.data, /* inputOffset= */ 0, buffer.length, decryptedData)
+              : cipher.update(buffer.data, /* inputOffset= */ 0, buffer.length, decryptedData);
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    } finally {
+      freeBuffers.add(buffer);
+    }
+    decryptedDataPosition = 0;
+    decryptedAllData = buffer.endOfInput;
+  }
+
+  /** A buffer of data read from the upstream source in pipelined mode. */
+  private static final class PipelineBuffer {
+
+    public final byte[] data;
+
+    public int length;
+    public boolean endOfInput;
+    @Nullable public Exception error;
+
+    public PipelineBuffer() {
+      data = new byte[PIPELINE_BUFFER_SIZE];
+    }
+  }
+
+  /**
+   * Reads from an opened upstream source on a separate thread, filling buffers taken from a queue
+   * of free buffers and passing them to a queue of filled buffers. The last buffer passed is marked
+   * as the end of the input, or holds the error that ended reading.
+   */
+  private static final class UpstreamReader implements Runnable {
+
+    private final DataSource upstream;
+    private final BlockingQueue<PipelineBuffer> freeBuffers;
+    private final BlockingQueue<PipelineBuffer> filledBuffers;
+    private final ConditionVariable finished;
+
+    private volatile boolean canceled;
+    @Nullable private Thread thread;
+
+    public UpstreamReader(
+        DataSource upstream,
+        BlockingQueue<PipelineBuffer> freeBuffers,
+        BlockingQueue<PipelineBuffer> filledBuffers) {
+      this.upstream = upstream;
+      this.freeBuffers = freeBuffers;
+      this.filledBuffers = filledBuffers;
+      finished = new ConditionVariable();
+    }
+
+    /**
+     * Stops reading, and blocks until the reader has stopped using the upstream source. Must not be
+     * called from the thread running the reader.
+     */
+    public void cancel() {
+      synchronized (this) {
+        canceled = true;
+        if (thread != null) {
+          thread.interrupt();
+        }
+      }
+      boolean wasInterrupted = false;
+      while (!finished.isOpen()) {
+        try {
+          finished.block();
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        // Restore the interrupted status.
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        thread = Thread.currentThread();
+      }
+      try {
+        readUpstream();
+      } finally {
+        synchronized (this) {
+          thread = null;
+          // Clear an interrupt from cancel(), so that it doesn't affect the next use of the thread.
+          Thread.interrupted();
+        }
+        finished.open();
+      }
+    }
+
+    private void readUpstream() {
+      PipelineBuffer buffer = null;
+      try {
+        while (!canceled) {
+          buffer = freeBuffers.take();
+          buffer.length = 0;
+          buffer.endOfInput = false;
+          while (!canceled && buffer.length < buffer.data.length) {
+            int bytesRead =
+                upstream.read(buffer.data, buffer.length, buffer.data.length - buffer.length);
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+              buffer.endOfInput = true;
+              break;
+            }
+            buffer.length += bytesRead;
+          }
+          filledBuffers.add(buffer);
+          if (buffer.endOfInput) {
+            return;
+          }
+          buffer = null;
+        }
+      } catch (InterruptedException e) {
+        // Reading was canceled.
+      } catch (IOException | RuntimeException e) {
+        if (buffer == null) {
+          buffer = new PipelineBuffer();
+        }
+        buffer.error = e;
+        filledBuffers.add(buffer);
+      }
+    }
+  }
 }
@@ -17,7 +17,9 @@ package com.google.android.exoplayer2.source.hls;
 
 import android.net.Uri;
 import android.os.SystemClock;
+import android.util.Pair;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
@@ -28,12 +30,15 @@ import com.google.android.exoplayer2.source.chunk.DataChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
 import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
@@ -87,13 +92,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final HlsExtractorFactory extractorFactory;
   private final DataSource mediaDataSource;
   private final DataSource encryptionDataSource;
+  private final DataSource keyPrefetchDataSource;
   private final TimestampAdjusterProvider timestampAdjusterProvider;
   private final Uri[] playlistUrls;
   private final Format[] playlistFormats;
   private final HlsPlaylistTracker playlistTracker;
   private final TrackGroup trackGroup;
   @Nullable private final List<Format> muxedCaptionFormats;
+  private final boolean usePipelinedDecryption;
   private final FullSegmentEncryptionKeyCache keyCache;
+  private final KeyPrefetchCallback keyPrefetchCallback;
 
   private boolean isTimestampMaster;
   private byte[] scratchSpace;
@@ -107,6 +115,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private TrackSelection trackSelection;
   private long liveEdgeInPeriodTimeUs;
   private boolean seenExpectedPlaylistError;
+  @Nullable private Loader keyPrefetchLoader;
 
   /**
    * @param extractorFactory An {@link HlsExtractorFactory} from which to obtain the extractors for
@@ -124,6 +133,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     provider.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the master playlist.
+   * @param usePipelinedDecryption Whether to decrypt fully encrypted media segments in a pipelined
+   *     fashion.
    */
   public HlsChunkSource(
       HlsExtractorFactory extractorFactory,
@@ -133,14 +144,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       HlsDataSourceFactory dataSourceFactory,
       @Nullable TransferListener mediaTransferListener,
       TimestampAdjusterProvider timestampAdjusterProvider,
-      @Nullable List<Format> muxedCaptionFormats) {
+      @Nullable List<Format> muxedCaptionFormats,
+      boolean usePipelinedDecryption) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.playlistUrls = playlistUrls;
     this.playlistFormats = playlistFormats;
     this.timestampAdjusterProvider = timestampAdjusterProvider;
     this.muxedCaptionFormats = muxedCaptionFormats;
+    this.usePipelinedDecryption = usePipelinedDecryption;
     keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
+    keyPrefetchCallback = new KeyPrefetchCallback();
     scratchSpace = Util.EMPTY_BYTE_ARRAY;
     liveEdgeInPeriodTimeUs = C.TIME_UNSET;
     mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
@@ -148,6 +162,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       mediaDataSource.addTransferListener(mediaTransferListener);
     }
     encryptionDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
+    keyPrefetchDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
     trackGroup = new TrackGroup(playlistFormats);
     int[] initialTrackSelection = new int[playlistUrls.length];
     for (int i = 0; i < playlistUrls.length; i++) {
@@ -278,9 +293,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     // Select the chunk.
     long startOfPlaylistInPeriodUs =
         mediaPlaylist.startTimeUs - playlistTracker.getInitialStartTimeUs();
-    long chunkMediaSequence =
-        getChunkMediaSequence(
+    Pair<Long, Integer> nextMediaSequenceAndPartIndex =
+        getNextMediaSequenceAndPartIndex(
             previous, switchingTrack, mediaPlaylist, startOfPlaylistInPeriodUs, loadPositionUs);
+    long chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+    int partIndex = nextMediaSequenceAndPartIndex.second;
     if (chunkMediaSequence < mediaPlaylist.mediaSequence && previous != null && switchingTrack) {
         // We try getting the next chunk without adapting in case that's the reason for falling
         // behind the live window.
@@ -293,7 +310,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Assertions.checkNotNull(mediaPlaylist);
         startOfPlaylistInPeriodUs =
             mediaPlaylist.startTimeUs - playlistTracker.getInitialStartTimeUs();
-        chunkMediaSequence = previous.getNextChunkIndex();
+        nextMediaSequenceAndPartIndex =
+            getNextMediaSequenceAndPartIndex(
+                previous,
+                /* switchingTrack= */ false,
+                mediaPlaylist,
+                startOfPlaylistInPeriodUs,
+                loadPositionUs);
+        chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+        partIndex = nextMediaSequenceAndPartIndex.second;
     }
 
     if (chunkMediaSequence < mediaPlaylist.mediaSequence) {
@@ -301,15 +326,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return;
     }
 
-    int segmentIndexInPlaylist = (int) (chunkMediaSequence - mediaPlaylist.mediaSequence);
-    int availableSegmentCount = mediaPlaylist.segments.size();
-    if (segmentIndexInPlaylist >= availableSegmentCount) {
+    @Nullable
+    SegmentBaseHolder segmentBaseHolder =
+        getNextSegmentHolder(mediaPlaylist, chunkMediaSequence, partIndex);
+    if (segmentBaseHolder == null) {
       if (mediaPlaylist.hasEndTag) {
+        int availableSegmentCount = mediaPlaylist.segments.size();
         if (allowEndOfStream || availableSegmentCount == 0) {
           out.endOfStream = true;
           return;
         }
-        segmentIndexInPlaylist = availableSegmentCount - 1;
+        segmentBaseHolder =
+            new SegmentBaseHolder(
+                mediaPlaylist.segments.get(availableSegmentCount - 1),
+                mediaPlaylist.mediaSequence + availableSegmentCount - 1,
+                /* partIndex= */ C.INDEX_UNSET);
       } else /* Live */ {
         out.playlistUrl = selectedPlaylistUrl;
         seenExpectedPlaylistError &= selectedPlaylistUrl.equals(expectedPlaylistUrl);
@@ -322,7 +353,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     expectedPlaylistUrl = null;
 
     // Handle encryption.
-    HlsMediaPlaylist.Segment segment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+    HlsMediaPlaylist.SegmentBase segment = segmentBaseHolder.segmentBase;
 
     // Check if the segment or its initialization segment are fully encrypted.
     Uri initSegmentKeyUri = getFullEncryptionKeyUri(mediaPlaylist, segment.initializationSegment);
@@ -335,6 +366,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     if (out.chunk != null) {
       return;
     }
+    maybePrefetchNextSegmentKey(mediaPlaylist, segmentBaseHolder, selectedTrackIndex);
 
     out.chunk =
         HlsMediaChunk.createInstance(
@@ -343,7 +375,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             playlistFormats[selectedTrackIndex],
             startOfPlaylistInPeriodUs,
             mediaPlaylist,
-            segmentIndexInPlaylist,
+            segment,
+            segmentBaseHolder.mediaSequence,
+            segmentBaseHolder.partIndex,
             selectedPlaylistUrl,
             muxedCaptionFormats,
             trackSelection.getSelectionReason(),
@@ -352,7 +386,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             timestampAdjusterProvider,
             previous,
             /* mediaSegmentKey= */ keyCache.get(mediaSegmentKeyUri),
-            /* initSegmentKey= */ keyCache.get(initSegmentKeyUri));
+            /* initSegmentKey= */ keyCache.get(initSegmentKeyUri),
+            usePipelinedDecryption);
+  }
+
+  /** Releases the source. Must be called when the source is no longer required. */
+  public void release() {
+    if (keyPrefetchLoader != null) {
+      keyPrefetchLoader.release();
+      keyPrefetchLoader = null;
+    }
   }
 
   /**
@@ -438,8 +481,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           playlist.startTimeUs - playlistTracker.getInitialStartTimeUs();
       boolean switchingTrack = trackIndex != oldTrackIndex;
       long chunkMediaSequence =
-          getChunkMediaSequence(
-              previous, switchingTrack, playlist, startOfPlaylistInPeriodUs, loadPositionUs);
+          getNextMediaSequenceAndPartIndex(
+                  previous, switchingTrack, playlist, startOfPlaylistInPeriodUs, loadPositionUs)
+              .first;
       if (chunkMediaSequence < playlist.mediaSequence) {
         chunkIterators[i] = MediaChunkIterator.EMPTY;
         continue;
@@ -454,18 +498,20 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   // Private methods.
 
   /**
-   * Returns the media sequence number of the segment to load next in {@code mediaPlaylist}.
+   * Returns the media sequence number of the segment to load next in {@code mediaPlaylist}, and the
+   * index of the part to load within that segment.
    *
-   * @param previous The last (at least partially) loaded segment.
+   * @param previous The last (at least partially) loaded segment or part.
    * @param switchingTrack Whether the segment to load is not preceded by a segment in the same
    *     track.
    * @param mediaPlaylist The media playlist to which the segment to load belongs.
    * @param startOfPlaylistInPeriodUs The start of {@code mediaPlaylist} relative to the period
    *     start in microseconds.
    * @param loadPositionUs The current load position relative to the period start in microseconds.
-   * @return The media sequence of the segment to load.
+   * @return The media sequence of the segment to load, and the index of the part to load within it,
+   *     or {@link C#INDEX_UNSET} if the full segment should be loaded.
    */
-  private long getChunkMediaSequence(
+  private Pair<Long, Integer> getNextMediaSequenceAndPartIndex(
       @Nullable HlsMediaChunk previous,
       boolean switchingTrack,
       HlsMediaPlaylist mediaPlaylist,
@@ -477,19 +523,89 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           (previous == null || independentSegments) ? loadPositionUs : previous.startTimeUs;
       if (!mediaPlaylist.hasEndTag && targetPositionInPeriodUs >= endOfPlaylistInPeriodUs) {
         // If the playlist is too old to contain the chunk, we need to refresh it.
-        return mediaPlaylist.mediaSequence + mediaPlaylist.segments.size();
+        return new Pair<>(
+            mediaPlaylist.mediaSequence + mediaPlaylist.segments.size(),
+            /* second= */ C.INDEX_UNSET);
       }
       long targetPositionInPlaylistUs = targetPositionInPeriodUs - startOfPlaylistInPeriodUs;
-      return Util.binarySearchFloor(
+      int segmentIndexInPlaylist =
+          Util.binarySearchFloor(
               mediaPlaylist.segments,
               /* value= */ targetPositionInPlaylistUs,
               /* inclusive= */ true,
-              /* stayInBounds= */ !playlistTracker.isLive() || previous == null)
-          + mediaPlaylist.mediaSequence;
+              /* stayInBounds= */ !playlistTracker.isLive() || previous == null);
+      long mediaSequence = segmentIndexInPlaylist + mediaPlaylist.mediaSequence;
+      int partIndex = C.INDEX_UNSET;
+      if (segmentIndexInPlaylist >= 0) {
+        // Near the live edge, start with the part containing the target position if it can be
+        // decoded independently, rather than with the full segment.
+        Segment segment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+        List<Part> parts =
+            targetPositionInPlaylistUs < segment.relativeStartTimeUs + segment.durationUs
+                ? segment.parts
+                : mediaPlaylist.trailingParts;
+        for (int i = 0; i < parts.size(); i++) {
+          Part part = parts.get(i);
+          if (targetPositionInPlaylistUs < part.relativeStartTimeUs + part.durationUs) {
+            if (part.isIndependent) {
+              partIndex = i;
+              if (parts == mediaPlaylist.trailingParts) {
+                // Trailing parts belong to the segment that follows the last listed segment.
+                mediaSequence++;
+              }
+            }
+            break;
+          }
+        }
+      }
+      return new Pair<>(mediaSequence, partIndex);
     }
     // We ignore the case of previous not having loaded completely, in which case we load the next
-    // segment.
-    return previous.getNextChunkIndex();
+    // segment or part.
+    return previous.partIndex == C.INDEX_UNSET
+        ? new Pair<>(previous.getNextChunkIndex(), C.INDEX_UNSET)
+        : new Pair<>(previous.chunkIndex, previous.partIndex + 1);
+  }
+
+  /**
+   * Returns the segment or part identified by {@code mediaSequence} and {@code partIndex}, or the
+   * one that follows it if {@code partIndex} is past the last part of a completed segment. If the
+   * parts of a partially loaded segment are no longer listed, the full segment is returned. Returns
+   * null if it's not available in {@code mediaPlaylist}.
+   */
+  @VisibleForTesting
+  @Nullable
+  /* package */ static SegmentBaseHolder getNextSegmentHolder(
+      HlsMediaPlaylist mediaPlaylist, long mediaSequence, int partIndex) {
+    int segmentIndexInPlaylist = (int) (mediaSequence - mediaPlaylist.mediaSequence);
+    if (segmentIndexInPlaylist == mediaPlaylist.segments.size()) {
+      int index = partIndex != C.INDEX_UNSET ? partIndex : 0;
+      return index < mediaPlaylist.trailingParts.size()
+          ? new SegmentBaseHolder(mediaPlaylist.trailingParts.get(index), mediaSequence, index)
+          : null;
+    } else if (segmentIndexInPlaylist > mediaPlaylist.segments.size()) {
+      return null;
+    }
+    Segment segment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+    if (partIndex == C.INDEX_UNSET) {
+      return new SegmentBaseHolder(segment, mediaSequence, C.INDEX_UNSET);
+    } else if (partIndex < segment.parts.size()) {
+      return new SegmentBaseHolder(segment.parts.get(partIndex), mediaSequence, partIndex);
+    } else if (segment.parts.isEmpty()) {
+      // The segment was completed and its parts were removed from the playlist before all of them
+      // were loaded. Load the full segment, whose samples are spliced into those already loaded.
+      return new SegmentBaseHolder(segment, mediaSequence, /* partIndex= */ C.INDEX_UNSET);
+    } else if (segmentIndexInPlaylist + 1 < mediaPlaylist.segments.size()) {
+      // The segment is complete. Continue with the next one, which is loaded in full.
+      return new SegmentBaseHolder(
+          mediaPlaylist.segments.get(segmentIndexInPlaylist + 1),
+          mediaSequence + 1,
+          /* partIndex= */ C.INDEX_UNSET);
+    } else if (!mediaPlaylist.trailingParts.isEmpty()) {
+      return new SegmentBaseHolder(
+          mediaPlaylist.trailingParts.get(0), mediaSequence + 1, /* partIndex= */ 0);
+    }
+    return null;
   }
 
   private long resolveTimeToLiveEdgeUs(long playbackPositionUs) {
@@ -530,8 +646,46 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         scratchSpace);
   }
 
+  /**
+   * Starts loading the full segment encryption key of the segment that follows {@code
+   * segmentBaseHolder}, if it's not already cached. The key is then loaded whilst the current
+   * segment is loaded, rather than delaying the request for the following segment.
+   */
+  private void maybePrefetchNextSegmentKey(
+      HlsMediaPlaylist mediaPlaylist, SegmentBaseHolder segmentBaseHolder, int selectedTrackIndex) {
+    if (segmentBaseHolder.partIndex != C.INDEX_UNSET
+        || (keyPrefetchLoader != null && keyPrefetchLoader.isLoading())) {
+      return;
+    }
+    int nextSegmentIndex =
+        (int) (segmentBaseHolder.mediaSequence - mediaPlaylist.mediaSequence) + 1;
+    if (nextSegmentIndex >= mediaPlaylist.segments.size()) {
+      return;
+    }
+    Segment nextSegment = mediaPlaylist.segments.get(nextSegmentIndex);
+    @Nullable Uri keyUri = getFullEncryptionKeyUri(mediaPlaylist, nextSegment);
+    if (keyUri == null || keyCache.containsUri(keyUri)) {
+      return;
+    }
+    if (keyPrefetchLoader == null) {
+      keyPrefetchLoader = new Loader("Loader:HlsKeyPrefetch");
+    }
+    DataSpec dataSpec = new DataSpec(keyUri, 0, C.LENGTH_UNSET, null, DataSpec.FLAG_ALLOW_GZIP);
+    keyPrefetchLoader.startLoading(
+        new EncryptionKeyChunk(
+            keyPrefetchDataSource,
+            dataSpec,
+            playlistFormats[selectedTrackIndex],
+            trackSelection.getSelectionReason(),
+            trackSelection.getSelectionData(),
+            Util.EMPTY_BYTE_ARRAY),
+        keyPrefetchCallback,
+        /* defaultMinRetryCount= */ 0);
+  }
+
   @Nullable
-  private static Uri getFullEncryptionKeyUri(HlsMediaPlaylist playlist, @Nullable Segment segment) {
+  private static Uri getFullEncryptionKeyUri(
+      HlsMediaPlaylist playlist, @Nullable HlsMediaPlaylist.SegmentBase segment) {
     if (segment == null || segment.fullSegmentEncryptionKeyUri == null) {
       return null;
     }
@@ -540,6 +694,22 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   // Private classes.
 
+  /** A segment or part, together with the indices that identify it. */
+  @VisibleForTesting
+  /* package */ static final class SegmentBaseHolder {
+
+    public final HlsMediaPlaylist.SegmentBase segmentBase;
+    public final long mediaSequence;
+    public final int partIndex;
+
+    public SegmentBaseHolder(
+        HlsMediaPlaylist.SegmentBase segmentBase, long mediaSequence, int partIndex) {
+      this.segmentBase = segmentBase;
+      this.mediaSequence = mediaSequence;
+      this.partIndex = partIndex;
+    }
+  }
+
   /**
    * A {@link TrackSelection} to use for initialization.
    */
@@ -620,6 +790,39 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   }
 
+  /** Adds prefetched keys to the key cache. Prefetch failures are ignored. */
+  private final class KeyPrefetchCallback implements Loader.Callback<EncryptionKeyChunk> {
+
+    @Override
+    public void onLoadCompleted(
+        EncryptionKeyChunk loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      @Nullable byte[] key = loadable.getResult();
+      if (key != null) {
+        keyCache.put(loadable.dataSpec.uri, key);
+      }
+    }
+
+    @Override
+    public void onLoadCanceled(
+        EncryptionKeyChunk loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public LoadErrorAction onLoadError(
+        EncryptionKeyChunk loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      // The key will be loaded again before the segment that requires it, if necessary.
+      return Loader.DONT_RETRY;
+    }
+  }
+
   /** {@link MediaChunkIterator} wrapping a {@link HlsMediaPlaylist}. */
   private static final class HlsMediaPlaylistSegmentIterator extends BaseMediaChunkIterator {
 
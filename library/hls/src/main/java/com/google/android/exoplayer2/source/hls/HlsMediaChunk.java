@@ -59,6 +59,11 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * @param format The chunk format.
    * @param startOfPlaylistInPeriodUs The position of the playlist in the period in microseconds.
    * @param mediaPlaylist The media playlist from which this chunk was obtained.
+   * @param segmentBase The segment or part to load.
+   * @param mediaSequence The media sequence number of the segment to load, or of the segment to
+   *     which the part to load belongs.
+   * @param partIndex The index of the part to load within its segment, or {@link C#INDEX_UNSET} if
+   *     a full segment is loaded.
    * @param playlistUrl The url of the playlist from which this chunk was obtained.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the master playlist.
@@ -71,6 +76,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * @param mediaSegmentKey The media segment decryption key, if fully encrypted. Null otherwise.
    * @param initSegmentKey The initialization segment decryption key, if fully encrypted. Null
    *     otherwise.
+   * @param usePipelinedDecryption Whether to decrypt the media segment in a pipelined fashion, if
+   *     it's fully encrypted.
    */
   public static HlsMediaChunk createInstance(
       HlsExtractorFactory extractorFactory,
@@ -78,7 +85,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       Format format,
       long startOfPlaylistInPeriodUs,
       HlsMediaPlaylist mediaPlaylist,
-      int segmentIndexInPlaylist,
+      HlsMediaPlaylist.SegmentBase segmentBase,
+      long mediaSequence,
+      int partIndex,
       Uri playlistUrl,
       @Nullable List<Format> muxedCaptionFormats,
       int trackSelectionReason,
@@ -87,24 +96,26 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       TimestampAdjusterProvider timestampAdjusterProvider,
       @Nullable HlsMediaChunk previousChunk,
       @Nullable byte[] mediaSegmentKey,
-      @Nullable byte[] initSegmentKey) {
+      @Nullable byte[] initSegmentKey,
+      boolean usePipelinedDecryption) {
     // Media segment.
-    HlsMediaPlaylist.Segment mediaSegment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
     DataSpec dataSpec =
         new DataSpec(
-            UriUtil.resolveToUri(mediaPlaylist.baseUri, mediaSegment.url),
-            mediaSegment.byterangeOffset,
-            mediaSegment.byterangeLength,
+            UriUtil.resolveToUri(mediaPlaylist.baseUri, segmentBase.url),
+            segmentBase.byterangeOffset,
+            segmentBase.byterangeLength,
             /* key= */ null);
     boolean mediaSegmentEncrypted = mediaSegmentKey != null;
     byte[] mediaSegmentIv =
         mediaSegmentEncrypted
-            ? getEncryptionIvArray(Assertions.checkNotNull(mediaSegment.encryptionIV))
+            ? getEncryptionIvArray(Assertions.checkNotNull(segmentBase.encryptionIV))
             : null;
-    DataSource mediaDataSource = buildDataSource(dataSource, mediaSegmentKey, mediaSegmentIv);
+    DataSource mediaDataSource =
+        buildDataSource(
+            dataSource, mediaSegmentKey, mediaSegmentIv, /* pipelined= */ usePipelinedDecryption);
 
     // Init segment.
-    HlsMediaPlaylist.Segment initSegment = mediaSegment.initializationSegment;
+    HlsMediaPlaylist.Segment initSegment = segmentBase.initializationSegment;
     DataSpec initDataSpec = null;
     boolean initSegmentEncrypted = false;
     DataSource initDataSource = null;
@@ -121,13 +132,14 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
               initSegment.byterangeOffset,
               initSegment.byterangeLength,
               /* key= */ null);
-      initDataSource = buildDataSource(dataSource, initSegmentKey, initSegmentIv);
+      initDataSource =
+          buildDataSource(dataSource, initSegmentKey, initSegmentIv, /* pipelined= */ false);
     }
 
-    long segmentStartTimeInPeriodUs = startOfPlaylistInPeriodUs + mediaSegment.relativeStartTimeUs;
-    long segmentEndTimeInPeriodUs = segmentStartTimeInPeriodUs + mediaSegment.durationUs;
+    long segmentStartTimeInPeriodUs = startOfPlaylistInPeriodUs + segmentBase.relativeStartTimeUs;
+    long segmentEndTimeInPeriodUs = segmentStartTimeInPeriodUs + segmentBase.durationUs;
     int discontinuitySequenceNumber =
-        mediaPlaylist.discontinuitySequence + mediaSegment.relativeDiscontinuitySequence;
+        mediaPlaylist.discontinuitySequence + segmentBase.relativeDiscontinuitySequence;
 
     Extractor previousExtractor = null;
     Id3Decoder id3Decoder;
@@ -136,8 +148,13 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     if (previousChunk != null) {
       id3Decoder = previousChunk.id3Decoder;
       scratchId3Data = previousChunk.scratchId3Data;
+      // Also splice in a full segment that follows some of its own parts, since it repeats them.
       shouldSpliceIn =
-          !playlistUrl.equals(previousChunk.playlistUrl) || !previousChunk.loadCompleted;
+          !playlistUrl.equals(previousChunk.playlistUrl)
+              || !previousChunk.loadCompleted
+              || (partIndex == C.INDEX_UNSET
+                  && previousChunk.partIndex != C.INDEX_UNSET
+                  && previousChunk.chunkIndex == mediaSequence);
       previousExtractor =
           previousChunk.isExtractorReusable
                   && previousChunk.discontinuitySequenceNumber == discontinuitySequenceNumber
@@ -165,12 +182,13 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         trackSelectionData,
         segmentStartTimeInPeriodUs,
         segmentEndTimeInPeriodUs,
-        /* chunkMediaSequence= */ mediaPlaylist.mediaSequence + segmentIndexInPlaylist,
+        /* chunkMediaSequence= */ mediaSequence,
+        partIndex,
         discontinuitySequenceNumber,
-        mediaSegment.hasGapTag,
+        segmentBase.hasGapTag,
         isMasterTimestampSource,
         /* timestampAdjuster= */ timestampAdjusterProvider.getAdjuster(discontinuitySequenceNumber),
-        mediaSegment.drmInitData,
+        segmentBase.drmInitData,
         previousExtractor,
         id3Decoder,
         scratchId3Data,
@@ -193,6 +211,12 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    */
   public final int discontinuitySequenceNumber;
 
+  /**
+   * The index of the loaded part within the segment whose media sequence number is {@link
+   * #chunkIndex}, or {@link C#INDEX_UNSET} if the chunk is a full segment.
+   */
+  public final int partIndex;
+
   /** The url of the playlist from which this chunk was obtained. */
   public final Uri playlistUrl;
 
@@ -238,6 +262,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       long startTimeUs,
       long endTimeUs,
       long chunkMediaSequence,
+      int partIndex,
       int discontinuitySequenceNumber,
       boolean hasGapTag,
       boolean isMasterTimestampSource,
@@ -257,6 +282,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         endTimeUs,
         chunkMediaSequence);
     this.mediaSegmentEncrypted = mediaSegmentEncrypted;
+    this.partIndex = partIndex;
     this.discontinuitySequenceNumber = discontinuitySequenceNumber;
     this.initDataSpec = initDataSpec;
     this.initDataSource = initDataSource;
@@ -504,14 +530,18 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * in order to decrypt the loaded data. Else returns the original.
    *
    * <p>{@code fullSegmentEncryptionKey} & {@code encryptionIv} can either both be null, or neither.
+   *
+   * <p>{@code pipelined} is passed to {@link Aes128DataSource#Aes128DataSource(DataSource, byte[],
+   * byte[], boolean)}.
    */
   private static DataSource buildDataSource(
       DataSource dataSource,
       @Nullable byte[] fullSegmentEncryptionKey,
-      @Nullable byte[] encryptionIv) {
+      @Nullable byte[] encryptionIv,
+      boolean pipelined) {
     if (fullSegmentEncryptionKey != null) {
       Assertions.checkNotNull(encryptionIv);
-      return new Aes128DataSource(dataSource, fullSegmentEncryptionKey, encryptionIv);
+      return new Aes128DataSource(dataSource, fullSegmentEncryptionKey, encryptionIv, pipelined);
     }
     return dataSource;
   }
@@ -77,6 +77,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
   private final boolean allowChunklessPreparation;
   private final @HlsMediaSource.MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final boolean usePipelinedDecryption;
 
   @Nullable private Callback callback;
   private int pendingPrepareCount;
@@ -106,6 +107,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param usePipelinedDecryption Whether to decrypt fully encrypted media segments in a pipelined
+   *     fashion.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -119,7 +122,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       boolean allowChunklessPreparation,
       @HlsMediaSource.MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      boolean usePipelinedDecryption) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.dataSourceFactory = dataSourceFactory;
@@ -132,6 +136,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.usePipelinedDecryption = usePipelinedDecryption;
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
     streamWrapperIndices = new IdentityHashMap<>();
@@ -749,7 +754,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
             dataSourceFactory,
             mediaTransferListener,
             timestampAdjusterProvider,
-            muxedCaptionFormats);
+            muxedCaptionFormats,
+            usePipelinedDecryption);
     return new HlsSampleStreamWrapper(
         trackType,
         /* callback= */ this,
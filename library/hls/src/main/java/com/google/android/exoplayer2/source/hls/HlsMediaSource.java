@@ -99,6 +99,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     @MetadataType private int metadataType;
     private boolean useSessionKeys;
+    private boolean usePipelinedDecryption;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -296,6 +297,23 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets whether fully encrypted media segments are decrypted in a pipelined fashion. If enabled,
+     * each segment is read on a separate thread whilst the previously read data is decrypted,
+     * which can reduce load times when decryption is slow. This uses an additional thread and
+     * about 200 KB of buffers for each segment that's being loaded. The default value is {@code
+     * false}.
+     *
+     * @param usePipelinedDecryption Whether to decrypt media segments in a pipelined fashion.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setUsePipelinedDecryption(boolean usePipelinedDecryption) {
+      Assertions.checkState(!isCreateCalled);
+      this.usePipelinedDecryption = usePipelinedDecryption;
+      return this;
+    }
+
     /**
      * @deprecated Use {@link #createMediaSource(Uri)} and {@link #addEventListener(Handler,
      *     MediaSourceEventListener)} instead.
@@ -351,6 +369,7 @@ public final class HlsMediaSource extends BaseMediaSource
           allowChunklessPreparation,
           metadataType,
           useSessionKeys,
+          usePipelinedDecryption,
           tag);
     }
 
@@ -377,6 +396,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final boolean usePipelinedDecryption;
   private final HlsPlaylistTracker playlistTracker;
   @Nullable private final Object tag;
 
@@ -393,6 +413,7 @@ public final class HlsMediaSource extends BaseMediaSource
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
       boolean useSessionKeys,
+      boolean usePipelinedDecryption,
       @Nullable Object tag) {
     this.manifestUri = manifestUri;
     this.dataSourceFactory = dataSourceFactory;
@@ -404,6 +425,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.usePipelinedDecryption = usePipelinedDecryption;
     this.tag = tag;
   }
 
@@ -441,7 +463,8 @@ public final class HlsMediaSource extends BaseMediaSource
         compositeSequenceableLoaderFactory,
         allowChunklessPreparation,
         metadataType,
-        useSessionKeys);
+        useSessionKeys,
+        usePipelinedDecryption);
   }
 
   @Override
@@ -477,13 +500,25 @@ public final class HlsMediaSource extends BaseMediaSource
       long periodDurationUs =
           playlist.hasEndTag ? offsetFromInitialStartTimeUs + playlist.durationUs : C.TIME_UNSET;
       List<HlsMediaPlaylist.Segment> segments = playlist.segments;
-      if (windowDefaultStartPositionUs == C.TIME_UNSET) {
+      boolean hasParts = playlist.partTargetDurationUs != C.TIME_UNSET;
+      if (windowDefaultStartPositionUs == C.TIME_UNSET
+          && hasParts
+          && playlist.serverControl.partHoldBackUs != C.TIME_UNSET) {
+        // Low latency playback starts at the server-recommended offset, which may be within a
+        // segment. Loading starts from the closest independent part.
+        windowDefaultStartPositionUs =
+            Math.max(0, playlist.durationUs - playlist.serverControl.partHoldBackUs);
+      } else if (windowDefaultStartPositionUs == C.TIME_UNSET) {
         windowDefaultStartPositionUs = 0;
         if (!segments.isEmpty()) {
           int defaultStartSegmentIndex = Math.max(0, segments.size() - 3);
-          // We attempt to set the default start position to be at least twice the target duration
-          // behind the live edge.
-          long minStartPositionUs = playlist.durationUs - playlist.targetDurationUs * 2;
+          // We attempt to set the default start position to be at least the server-recommended
+          // hold back, or twice the target duration if none is given, behind the live edge.
+          long liveOffsetUs =
+              playlist.serverControl.holdBackUs != C.TIME_UNSET
+                  ? playlist.serverControl.holdBackUs
+                  : playlist.targetDurationUs * 2;
+          long minStartPositionUs = playlist.durationUs - liveOffsetUs;
           while (defaultStartSegmentIndex > 0
               && segments.get(defaultStartSegmentIndex).relativeStartTimeUs > minStartPositionUs) {
             defaultStartSegmentIndex--;
@@ -492,6 +492,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       }
     }
     loader.release(this);
+    chunkSource.release();
     handler.removeCallbacksAndMessages(null);
     released = true;
     hlsSampleStreams.clear();
@@ -907,7 +908,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
     boolean isAudioVideo = type == C.TRACK_TYPE_AUDIO || type == C.TRACK_TYPE_VIDEO;
     FormatAdjustingSampleQueue trackOutput =
-        new FormatAdjustingSampleQueue(allocator, drmSessionManager, overridingDrmInitData);
+        new FormatAdjustingSampleQueue(
+            allocator.getTrackAllocator(type), drmSessionManager, overridingDrmInitData);
     if (isAudioVideo) {
       trackOutput.setDrmInitData(drmInitData);
     }
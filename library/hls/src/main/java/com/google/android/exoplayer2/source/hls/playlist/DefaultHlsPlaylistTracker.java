@@ -19,6 +19,7 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.SystemClock;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
@@ -49,6 +50,10 @@ public final class DefaultHlsPlaylistTracker
    */
   public static final double DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
 
+  private static final String BLOCK_MSN_PARAM = "_HLS_msn";
+  private static final String BLOCK_PART_PARAM = "_HLS_part";
+  private static final String SKIP_PARAM = "_HLS_skip";
+
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParserFactory playlistParserFactory;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
@@ -56,7 +61,6 @@ public final class DefaultHlsPlaylistTracker
   private final List<PlaylistEventListener> listeners;
   private final double playlistStuckTargetDurationCoefficient;
 
-  @Nullable private ParsingLoadable.Parser<HlsPlaylist> mediaPlaylistParser;
   @Nullable private EventDispatcher eventDispatcher;
   @Nullable private Loader initialPlaylistLoader;
   @Nullable private Handler playlistRefreshHandler;
@@ -230,7 +234,6 @@ public final class DefaultHlsPlaylistTracker
       masterPlaylist = (HlsMasterPlaylist) result;
     }
     this.masterPlaylist = masterPlaylist;
-    mediaPlaylistParser = playlistParserFactory.createPlaylistParser(masterPlaylist);
     primaryMediaPlaylistUrl = masterPlaylist.variants.get(0).url;
     createBundles(masterPlaylist.mediaPlaylistUrls);
     MediaPlaylistBundle primaryBundle = playlistBundles.get(primaryMediaPlaylistUrl);
@@ -441,13 +444,79 @@ public final class DefaultHlsPlaylistTracker
     return mediaSequenceOffset < oldSegments.size() ? oldSegments.get(mediaSequenceOffset) : null;
   }
 
+  /**
+   * Returns the uri from which to reload a media playlist.
+   *
+   * @param playlistUrl The url of the media playlist.
+   * @param playlistSnapshot The current snapshot of the playlist, or null if none was loaded yet.
+   * @param requestDeltaUpdate Whether to request a delta update.
+   * @return The uri to load.
+   */
+  @VisibleForTesting
+  /* package */ static Uri getReloadUri(
+      Uri playlistUrl, @Nullable HlsMediaPlaylist playlistSnapshot, boolean requestDeltaUpdate) {
+    if (playlistSnapshot == null
+        || playlistSnapshot.hasEndTag
+        || (!playlistSnapshot.serverControl.canBlockReload && !requestDeltaUpdate)) {
+      return playlistUrl;
+    }
+    Uri.Builder uriBuilder = playlistUrl.buildUpon();
+    if (requestDeltaUpdate) {
+      // Ask the server to omit the segments that are already in the current snapshot. See RFC
+      // 8216bis, Section 6.2.5.1.
+      uriBuilder.appendQueryParameter(SKIP_PARAM, "YES");
+    }
+    if (!playlistSnapshot.serverControl.canBlockReload) {
+      return uriBuilder.build();
+    }
+    // Ask the server to hold the response until the segment or part that follows the current
+    // snapshot is available. See RFC 8216bis, Section 6.2.5.2.
+    uriBuilder.appendQueryParameter(
+        BLOCK_MSN_PARAM,
+        String.valueOf(playlistSnapshot.mediaSequence + playlistSnapshot.segments.size()));
+    if (playlistSnapshot.partTargetDurationUs != C.TIME_UNSET) {
+      int partIndex = 0;
+      for (int i = 0; i < playlistSnapshot.trailingParts.size(); i++) {
+        if (!playlistSnapshot.trailingParts.get(i).isPreload) {
+          partIndex++;
+        }
+      }
+      uriBuilder.appendQueryParameter(BLOCK_PART_PARAM, String.valueOf(partIndex));
+    }
+    return uriBuilder.build();
+  }
+
+  /**
+   * Returns the minimum delay before a media playlist may be loaded again.
+   *
+   * <p>If the server supports blocking playlist reload, a new snapshot can be requested as soon as
+   * one was obtained, since the server holds the response until it has something new. Else the
+   * playlist is not loaded again within the part target duration (or the target duration if the
+   * playlist has no parts) if a new snapshot was obtained, or half of it otherwise.
+   *
+   * @param playlist The current snapshot of the playlist.
+   * @param snapshotChanged Whether the last load obtained a new snapshot.
+   * @return The delay, in microseconds.
+   */
+  @VisibleForTesting
+  /* package */ static long getRefreshDelayUs(HlsMediaPlaylist playlist, boolean snapshotChanged) {
+    long refreshIntervalUs =
+        playlist.partTargetDurationUs != C.TIME_UNSET
+            ? playlist.partTargetDurationUs
+            : playlist.targetDurationUs;
+    if (playlist.serverControl.canBlockReload) {
+      return snapshotChanged ? 0 : refreshIntervalUs / 2;
+    }
+    return snapshotChanged ? refreshIntervalUs : refreshIntervalUs / 2;
+  }
+
   /** Holds all information related to a specific Media Playlist. */
   private final class MediaPlaylistBundle
       implements Loader.Callback<ParsingLoadable<HlsPlaylist>>, Runnable {
 
     private final Uri playlistUrl;
     private final Loader mediaPlaylistLoader;
-    private final ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable;
+    private final DataSource mediaPlaylistDataSource;
 
     @Nullable private HlsMediaPlaylist playlistSnapshot;
     private long lastSnapshotLoadMs;
@@ -455,17 +524,13 @@ public final class DefaultHlsPlaylistTracker
     private long earliestNextLoadTimeMs;
     private long blacklistUntilMs;
     private boolean loadPending;
+    private boolean deltaUpdateFailed;
     private IOException playlistError;
 
     public MediaPlaylistBundle(Uri playlistUrl) {
       this.playlistUrl = playlistUrl;
       mediaPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MediaPlaylist");
-      mediaPlaylistLoadable =
-          new ParsingLoadable<>(
-              dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
-              playlistUrl,
-              C.DATA_TYPE_MANIFEST,
-              mediaPlaylistParser);
+      mediaPlaylistDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST);
     }
 
     @Nullable
@@ -557,6 +622,23 @@ public final class DefaultHlsPlaylistTracker
         int errorCount) {
       LoadErrorAction loadErrorAction;
 
+      if (error instanceof HlsPlaylistParser.DeltaUpdateException) {
+        // The delta update couldn't be merged with the current snapshot. Request the full playlist.
+        deltaUpdateFailed = true;
+        eventDispatcher.loadError(
+            loadable.dataSpec,
+            loadable.getUri(),
+            loadable.getResponseHeaders(),
+            C.DATA_TYPE_MANIFEST,
+            elapsedRealtimeMs,
+            loadDurationMs,
+            loadable.bytesLoaded(),
+            error,
+            /* wasCanceled= */ true);
+        loadPlaylistImmediately();
+        return Loader.DONT_RETRY;
+      }
+
       long blacklistDurationMs =
           loadErrorHandlingPolicy.getBlacklistDurationMsFor(
               loadable.type, loadDurationMs, error, errorCount);
@@ -605,6 +687,13 @@ public final class DefaultHlsPlaylistTracker
     // Internal methods.
 
     private void loadPlaylistImmediately() {
+      // The parser may reuse segments of the current snapshot, so a new one is created per load.
+      ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable =
+          new ParsingLoadable<>(
+              mediaPlaylistDataSource,
+              getMediaPlaylistUriForReload(),
+              C.DATA_TYPE_MANIFEST,
+              playlistParserFactory.createPlaylistParser(masterPlaylist, playlistSnapshot));
       long elapsedRealtime =
           mediaPlaylistLoader.startLoading(
               mediaPlaylistLoadable,
@@ -616,6 +705,28 @@ public final class DefaultHlsPlaylistTracker
           elapsedRealtime);
     }
 
+    private Uri getMediaPlaylistUriForReload() {
+      boolean requestDeltaUpdate = shouldRequestDeltaUpdate();
+      deltaUpdateFailed = false;
+      return getReloadUri(playlistUrl, playlistSnapshot, requestDeltaUpdate);
+    }
+
+    /**
+     * Returns whether a delta update should be requested. Delta updates may only be requested if
+     * the current snapshot is younger than half the skip boundary, and are not requested again
+     * directly after one couldn't be merged.
+     */
+    private boolean shouldRequestDeltaUpdate() {
+      if (playlistSnapshot == null
+          || playlistSnapshot.hasEndTag
+          || playlistSnapshot.serverControl.skipUntilUs == C.TIME_UNSET
+          || deltaUpdateFailed) {
+        return false;
+      }
+      long snapshotAgeMs = SystemClock.elapsedRealtime() - lastSnapshotLoadMs;
+      return snapshotAgeMs < C.usToMs(playlistSnapshot.serverControl.skipUntilUs) / 2;
+    }
+
     private void processLoadedPlaylist(HlsMediaPlaylist loadedPlaylist, long loadDurationMs) {
       HlsMediaPlaylist oldPlaylist = playlistSnapshot;
       long currentTimeMs = SystemClock.elapsedRealtime();
@@ -647,14 +758,9 @@ public final class DefaultHlsPlaylistTracker
           }
         }
       }
-      // Do not allow the playlist to load again within the target duration if we obtained a new
-      // snapshot, or half the target duration otherwise.
       earliestNextLoadTimeMs =
           currentTimeMs
-              + C.usToMs(
-                  playlistSnapshot != oldPlaylist
-                      ? playlistSnapshot.targetDurationUs
-                      : (playlistSnapshot.targetDurationUs / 2));
+              + C.usToMs(getRefreshDelayUs(playlistSnapshot, playlistSnapshot != oldPlaylist));
       // Schedule a load if this is the primary playlist and it doesn't have an end tag. Else the
       // next load will be scheduled when refreshPlaylist is called, or when this playlist becomes
       // the primary.
@@ -23,15 +23,60 @@ import com.google.android.exoplayer2.offline.StreamKey;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /** Represents an HLS media playlist. */
 public final class HlsMediaPlaylist extends HlsPlaylist {
 
-  /** Media segment reference. */
+  /** Server control attributes, as defined by #EXT-X-SERVER-CONTROL. */
+  public static final class ServerControl {
+
+    /** Server control attributes for a playlist without an #EXT-X-SERVER-CONTROL tag. */
+    public static final ServerControl DEFAULT =
+        new ServerControl(
+            /* skipUntilUs= */ C.TIME_UNSET,
+            /* holdBackUs= */ C.TIME_UNSET,
+            /* partHoldBackUs= */ C.TIME_UNSET,
+            /* canBlockReload= */ false);
+
+    /**
+     * The skip boundary for delta updates in microseconds, as defined by CAN-SKIP-UNTIL, or {@link
+     * C#TIME_UNSET} if delta updates are not supported.
+     */
+    public final long skipUntilUs;
+    /**
+     * The server-recommended live offset in microseconds, as defined by HOLD-BACK, or {@link
+     * C#TIME_UNSET} if not specified.
+     */
+    public final long holdBackUs;
+    /**
+     * The server-recommended live offset in microseconds when playing with partial segments, as
+     * defined by PART-HOLD-BACK, or {@link C#TIME_UNSET} if not specified.
+     */
+    public final long partHoldBackUs;
+    /** Whether the server supports blocking playlist reload, as defined by CAN-BLOCK-RELOAD. */
+    public final boolean canBlockReload;
+
+    /**
+     * @param skipUntilUs See {@link #skipUntilUs}.
+     * @param holdBackUs See {@link #holdBackUs}.
+     * @param partHoldBackUs See {@link #partHoldBackUs}.
+     * @param canBlockReload See {@link #canBlockReload}.
+     */
+    public ServerControl(
+        long skipUntilUs, long holdBackUs, long partHoldBackUs, boolean canBlockReload) {
+      this.skipUntilUs = skipUntilUs;
+      this.holdBackUs = holdBackUs;
+      this.partHoldBackUs = partHoldBackUs;
+      this.canBlockReload = canBlockReload;
+    }
+  }
+
+  /** The base for a {@link Segment} or a {@link Part} required for playback. */
   @SuppressWarnings("ComparableType")
-  public static final class Segment implements Comparable<Long> {
+  public static class SegmentBase implements Comparable<Long> {
 
     /**
      * The url of the segment.
@@ -43,10 +88,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
      * used for all segments that share an EXT-X-MAP tag.
      */
     @Nullable public final Segment initializationSegment;
-    /** The duration of the segment in microseconds, as defined by #EXTINF. */
+    /** The duration of the segment in microseconds, as defined by #EXTINF or #EXT-X-PART. */
     public final long durationUs;
-    /** The human readable title of the segment. */
-    public final String title;
     /**
      * The number of #EXT-X-DISCONTINUITY tags in the playlist before the segment.
      */
@@ -83,6 +126,49 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     /** Whether the segment is tagged with #EXT-X-GAP. */
     public final boolean hasGapTag;
 
+    private SegmentBase(
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag) {
+      this.url = url;
+      this.initializationSegment = initializationSegment;
+      this.durationUs = durationUs;
+      this.relativeDiscontinuitySequence = relativeDiscontinuitySequence;
+      this.relativeStartTimeUs = relativeStartTimeUs;
+      this.drmInitData = drmInitData;
+      this.fullSegmentEncryptionKeyUri = fullSegmentEncryptionKeyUri;
+      this.encryptionIV = encryptionIV;
+      this.byterangeOffset = byterangeOffset;
+      this.byterangeLength = byterangeLength;
+      this.hasGapTag = hasGapTag;
+    }
+
+    @Override
+    public int compareTo(Long relativeStartTimeUs) {
+      return this.relativeStartTimeUs > relativeStartTimeUs
+          ? 1 : (this.relativeStartTimeUs < relativeStartTimeUs ? -1 : 0);
+    }
+  }
+
+  /** Media segment reference. */
+  public static final class Segment extends SegmentBase {
+
+    /** The human readable title of the segment. */
+    public final String title;
+    /**
+     * The partial segments that make up the segment, as defined by #EXT-X-PART, or an empty list
+     * if the playlist doesn't list the parts of this segment.
+     */
+    public final List<Part> parts;
+
     /**
      * @param uri See {@link #url}.
      * @param byterangeOffset See {@link #byterangeOffset}.
@@ -138,26 +224,179 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         long byterangeOffset,
         long byterangeLength,
         boolean hasGapTag) {
-      this.url = url;
-      this.initializationSegment = initializationSegment;
+      this(
+          url,
+          initializationSegment,
+          title,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          /* parts= */ Collections.emptyList());
+    }
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param title See {@link #title}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param drmInitData See {@link #drmInitData}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param parts See {@link #parts}.
+     */
+    public Segment(
+        String url,
+        @Nullable Segment initializationSegment,
+        String title,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        List<Part> parts) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
       this.title = title;
-      this.durationUs = durationUs;
-      this.relativeDiscontinuitySequence = relativeDiscontinuitySequence;
-      this.relativeStartTimeUs = relativeStartTimeUs;
-      this.drmInitData = drmInitData;
-      this.fullSegmentEncryptionKeyUri = fullSegmentEncryptionKeyUri;
-      this.encryptionIV = encryptionIV;
-      this.byterangeOffset = byterangeOffset;
-      this.byterangeLength = byterangeLength;
-      this.hasGapTag = hasGapTag;
+      this.parts = Collections.unmodifiableList(parts);
     }
 
-    @Override
-    public int compareTo(Long relativeStartTimeUs) {
-      return this.relativeStartTimeUs > relativeStartTimeUs
-          ? 1 : (this.relativeStartTimeUs < relativeStartTimeUs ? -1 : 0);
+    /**
+     * Returns a copy of this segment with the given position relative to the start of the playlist,
+     * or this instance if the position is unchanged.
+     *
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @return The segment.
+     */
+    /* package */ Segment copyWithRelativePosition(
+        int relativeDiscontinuitySequence, long relativeStartTimeUs) {
+      if (relativeDiscontinuitySequence == this.relativeDiscontinuitySequence
+          && relativeStartTimeUs == this.relativeStartTimeUs) {
+        return this;
+      }
+      List<Part> updatedParts = new ArrayList<>(parts.size());
+      long partStartTimeUs = relativeStartTimeUs;
+      for (int i = 0; i < parts.size(); i++) {
+        Part part = parts.get(i);
+        updatedParts.add(
+            part.copyWithRelativePosition(relativeDiscontinuitySequence, partStartTimeUs));
+        partStartTimeUs += part.durationUs;
+      }
+      return new Segment(
+          url,
+          initializationSegment,
+          title,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          updatedParts);
+    }
+  }
+
+  /** A partial segment, as defined by #EXT-X-PART or #EXT-X-PRELOAD-HINT. */
+  public static final class Part extends SegmentBase {
+
+    /** Whether the part is independent, as defined by INDEPENDENT. */
+    public final boolean isIndependent;
+    /**
+     * Whether the part is a preload hint, as defined by #EXT-X-PRELOAD-HINT. The {@link
+     * #durationUs} of a preload hint is an estimate, and the part may not be available yet.
+     */
+    public final boolean isPreload;
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param drmInitData See {@link #drmInitData}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param isIndependent See {@link #isIndependent}.
+     * @param isPreload See {@link #isPreload}.
+     */
+    public Part(
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        boolean isIndependent,
+        boolean isPreload) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+      this.isIndependent = isIndependent;
+      this.isPreload = isPreload;
     }
 
+    /* package */ Part copyWithRelativePosition(
+        int relativeDiscontinuitySequence, long relativeStartTimeUs) {
+      return new Part(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          isIndependent,
+          isPreload);
+    }
   }
 
   /**
@@ -227,9 +466,22 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    */
   public final List<Segment> segments;
   /**
-   * The total duration of the playlist in microseconds.
+   * The parts of the segment that follows the last segment in {@link #segments}, and which isn't
+   * complete yet. The last part may be a {@link Part#isPreload preload hint}.
+   */
+  public final List<Part> trailingParts;
+  /**
+   * The total duration of the playlist in microseconds, including {@link #trailingParts} other than
+   * preload hints.
    */
   public final long durationUs;
+  /**
+   * The part target duration in microseconds, as defined by #EXT-X-PART-INF, or {@link
+   * C#TIME_UNSET} if the playlist doesn't contain partial segments.
+   */
+  public final long partTargetDurationUs;
+  /** The server control attributes, as defined by #EXT-X-SERVER-CONTROL. */
+  public final ServerControl serverControl;
 
   /**
    * @param playlistType See {@link #playlistType}.
@@ -264,6 +516,66 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       boolean hasProgramDateTime,
       @Nullable DrmInitData protectionSchemes,
       List<Segment> segments) {
+    this(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs,
+        startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        /* partTargetDurationUs= */ C.TIME_UNSET,
+        hasIndependentSegments,
+        hasEndTag,
+        hasProgramDateTime,
+        protectionSchemes,
+        segments,
+        /* trailingParts= */ Collections.emptyList(),
+        ServerControl.DEFAULT);
+  }
+
+  /**
+   * @param playlistType See {@link #playlistType}.
+   * @param baseUri See {@link #baseUri}.
+   * @param tags See {@link #tags}.
+   * @param startOffsetUs See {@link #startOffsetUs}.
+   * @param startTimeUs See {@link #startTimeUs}.
+   * @param hasDiscontinuitySequence See {@link #hasDiscontinuitySequence}.
+   * @param discontinuitySequence See {@link #discontinuitySequence}.
+   * @param mediaSequence See {@link #mediaSequence}.
+   * @param version See {@link #version}.
+   * @param targetDurationUs See {@link #targetDurationUs}.
+   * @param partTargetDurationUs See {@link #partTargetDurationUs}.
+   * @param hasIndependentSegments See {@link #hasIndependentSegments}.
+   * @param hasEndTag See {@link #hasEndTag}.
+   * @param protectionSchemes See {@link #protectionSchemes}.
+   * @param hasProgramDateTime See {@link #hasProgramDateTime}.
+   * @param segments See {@link #segments}.
+   * @param trailingParts See {@link #trailingParts}.
+   * @param serverControl See {@link #serverControl}.
+   */
+  public HlsMediaPlaylist(
+      @PlaylistType int playlistType,
+      String baseUri,
+      List<String> tags,
+      long startOffsetUs,
+      long startTimeUs,
+      boolean hasDiscontinuitySequence,
+      int discontinuitySequence,
+      long mediaSequence,
+      int version,
+      long targetDurationUs,
+      long partTargetDurationUs,
+      boolean hasIndependentSegments,
+      boolean hasEndTag,
+      boolean hasProgramDateTime,
+      @Nullable DrmInitData protectionSchemes,
+      List<Segment> segments,
+      List<Part> trailingParts,
+      ServerControl serverControl) {
     super(baseUri, tags, hasIndependentSegments);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -276,12 +588,20 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     this.hasProgramDateTime = hasProgramDateTime;
     this.protectionSchemes = protectionSchemes;
     this.segments = Collections.unmodifiableList(segments);
-    if (!segments.isEmpty()) {
-      Segment last = segments.get(segments.size() - 1);
-      durationUs = last.relativeStartTimeUs + last.durationUs;
-    } else {
-      durationUs = 0;
+    this.trailingParts = Collections.unmodifiableList(trailingParts);
+    this.partTargetDurationUs = partTargetDurationUs;
+    this.serverControl = serverControl;
+    @Nullable SegmentBase last = null;
+    for (int i = trailingParts.size() - 1; i >= 0 && last == null; i--) {
+      Part part = trailingParts.get(i);
+      if (!part.isPreload) {
+        last = part;
+      }
+    }
+    if (last == null && !segments.isEmpty()) {
+      last = segments.get(segments.size() - 1);
     }
+    durationUs = last != null ? last.relativeStartTimeUs + last.durationUs : 0;
     this.startOffsetUs = startOffsetUs == C.TIME_UNSET ? C.TIME_UNSET
         : startOffsetUs >= 0 ? startOffsetUs : durationUs + startOffsetUs;
   }
@@ -307,8 +627,13 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     // The media sequences are equal.
     int segmentCount = segments.size();
     int otherSegmentCount = other.segments.size();
-    return segmentCount > otherSegmentCount
-        || (segmentCount == otherSegmentCount && hasEndTag && !other.hasEndTag);
+    if (segmentCount != otherSegmentCount) {
+      return segmentCount > otherSegmentCount;
+    }
+    int partCount = trailingParts.size();
+    int otherPartCount = other.trailingParts.size();
+    return partCount > otherPartCount
+        || (partCount == otherPartCount && hasEndTag && !other.hasEndTag);
   }
 
   /**
@@ -339,11 +664,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegments,
         hasEndTag,
         hasProgramDateTime,
         protectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
   }
 
   /**
@@ -365,11 +693,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegments,
         /* hasEndTag= */ true,
         hasProgramDateTime,
         protectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
   }
 
 }
@@ -31,7 +31,9 @@ import com.google.android.exoplayer2.source.hls.HlsTrackMetadataEntry;
 import com.google.android.exoplayer2.source.hls.HlsTrackMetadataEntry.VariantInfo;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.Rendition;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.Variant;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.ServerControl;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -61,6 +63,12 @@ import org.checkerframework.checker.nullness.qual.PolyNull;
  */
 public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlaylist> {
 
+  /**
+   * Thrown when a delta update playlist, as defined by #EXT-X-SKIP, can't be merged with the
+   * previous snapshot of the playlist. The full playlist should be requested instead.
+   */
+  public static final class DeltaUpdateException extends IOException {}
+
   private static final String PLAYLIST_HEADER = "#EXTM3U";
 
   private static final String TAG_PREFIX = "#EXT";
@@ -84,11 +92,18 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final String TAG_SESSION_KEY = "#EXT-X-SESSION-KEY";
   private static final String TAG_BYTERANGE = "#EXT-X-BYTERANGE";
   private static final String TAG_GAP = "#EXT-X-GAP";
+  private static final String TAG_SERVER_CONTROL = "#EXT-X-SERVER-CONTROL";
+  private static final String TAG_PART_INF = "#EXT-X-PART-INF";
+  private static final String TAG_PART = "#EXT-X-PART";
+  private static final String TAG_PRELOAD_HINT = "#EXT-X-PRELOAD-HINT";
+  private static final String TAG_SKIP = "#EXT-X-SKIP";
 
   private static final String TYPE_AUDIO = "AUDIO";
   private static final String TYPE_VIDEO = "VIDEO";
   private static final String TYPE_SUBTITLES = "SUBTITLES";
   private static final String TYPE_CLOSED_CAPTIONS = "CLOSED-CAPTIONS";
+  private static final String TYPE_PART = "PART";
+  private static final String TYPE_MAP = "MAP";
 
   private static final String METHOD_NONE = "NONE";
   private static final String METHOD_AES_128 = "AES-128";
@@ -134,6 +149,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       + ":(\\d+(?:@\\d+)?)\\b");
   private static final Pattern REGEX_ATTR_BYTERANGE =
       Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
+  private static final Pattern REGEX_BYTERANGE_START = Pattern.compile("BYTERANGE-START=(\\d+)\\b");
+  private static final Pattern REGEX_BYTERANGE_LENGTH =
+      Pattern.compile("BYTERANGE-LENGTH=(\\d+)\\b");
+  private static final Pattern REGEX_ATTR_DURATION = Pattern.compile("[:,]DURATION=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_PART_TARGET_DURATION =
+      Pattern.compile("PART-TARGET=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_CAN_SKIP_UNTIL =
+      Pattern.compile("CAN-SKIP-UNTIL=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_HOLD_BACK = Pattern.compile("[:,]HOLD-BACK=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_PART_HOLD_BACK =
+      Pattern.compile("PART-HOLD-BACK=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_SKIPPED_SEGMENTS =
+      Pattern.compile("SKIPPED-SEGMENTS=(\\d+)\\b");
+  private static final Pattern REGEX_PRELOAD_HINT_TYPE =
+      Pattern.compile("TYPE=(" + TYPE_PART + "|" + TYPE_MAP + ")");
   private static final Pattern REGEX_METHOD =
       Pattern.compile(
           "METHOD=("
@@ -164,12 +194,17 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
   private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
   private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
+  private static final Pattern REGEX_INDEPENDENT = compileBooleanAttrPattern("INDEPENDENT");
+  private static final Pattern REGEX_GAP = compileBooleanAttrPattern("GAP");
+  private static final Pattern REGEX_CAN_BLOCK_RELOAD =
+      compileBooleanAttrPattern("CAN-BLOCK-RELOAD");
   private static final Pattern REGEX_VALUE = Pattern.compile("VALUE=\"(.+?)\"");
   private static final Pattern REGEX_IMPORT = Pattern.compile("IMPORT=\"(.+?)\"");
   private static final Pattern REGEX_VARIABLE_REFERENCE =
       Pattern.compile("\\{\\$([a-zA-Z0-9\\-_]+)\\}");
 
   private final HlsMasterPlaylist masterPlaylist;
+  @Nullable private final HlsMediaPlaylist previousMediaPlaylist;
 
   /**
    * Creates an instance where media playlists are parsed without inheriting attributes from a
@@ -186,7 +221,25 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
    * @param masterPlaylist The master playlist from which media playlists will inherit attributes.
    */
   public HlsPlaylistParser(HlsMasterPlaylist masterPlaylist) {
+    this(masterPlaylist, /* previousMediaPlaylist= */ null);
+  }
+
+  /**
+   * Creates an instance where parsed media playlists inherit attributes from the given master
+   * playlist, and reuse unchanged segments of a previously loaded snapshot of the same playlist.
+   *
+   * <p>Segments are matched to those of {@code previousMediaPlaylist} by media sequence number. A
+   * matching segment whose attributes are unchanged is reused rather than re-created, so that
+   * refreshing a live playlist with a long window allocates little more than its new segments.
+   *
+   * @param masterPlaylist The master playlist from which media playlists will inherit attributes.
+   * @param previousMediaPlaylist The previously loaded snapshot of the playlist being parsed, or
+   *     null.
+   */
+  public HlsPlaylistParser(
+      HlsMasterPlaylist masterPlaylist, @Nullable HlsMediaPlaylist previousMediaPlaylist) {
     this.masterPlaylist = masterPlaylist;
+    this.previousMediaPlaylist = previousMediaPlaylist;
   }
 
   @Override
@@ -216,7 +269,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             || line.equals(TAG_ENDLIST)) {
           extraLines.add(line);
           return parseMediaPlaylist(
-              masterPlaylist, new LineIterator(extraLines, reader), uri.toString());
+              masterPlaylist,
+              previousMediaPlaylist,
+              new LineIterator(extraLines, reader),
+              uri.toString());
         } else {
           extraLines.add(line);
         }
@@ -591,21 +647,33 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   private static HlsMediaPlaylist parseMediaPlaylist(
-      HlsMasterPlaylist masterPlaylist, LineIterator iterator, String baseUri) throws IOException {
+      HlsMasterPlaylist masterPlaylist,
+      @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      LineIterator iterator,
+      String baseUri)
+      throws IOException {
     @HlsMediaPlaylist.PlaylistType int playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_UNKNOWN;
     long startOffsetUs = C.TIME_UNSET;
     long mediaSequence = 0;
     int version = 1; // Default version == 1.
     long targetDurationUs = C.TIME_UNSET;
+    long partTargetDurationUs = C.TIME_UNSET;
     boolean hasIndependentSegmentsTag = masterPlaylist.hasIndependentSegments;
     boolean hasEndTag = false;
     Segment initializationSegment = null;
     HashMap<String, String> variableDefinitions = new HashMap<>();
     List<Segment> segments = new ArrayList<>();
+    List<Part> trailingParts = new ArrayList<>();
+    @Nullable Part preloadPart = null;
+    ServerControl serverControl = ServerControl.DEFAULT;
     List<String> tags = new ArrayList<>();
 
     long segmentDurationUs = 0;
     String segmentTitle = "";
+    // Consecutive segments often have identical #EXTINF tags, which are parsed only once.
+    @Nullable String lastMediaDurationLine = null;
+    long lastMediaDurationUs = 0;
+    String lastMediaTitle = "";
     boolean hasDiscontinuitySequence = false;
     int playlistDiscontinuitySequence = 0;
     int relativeDiscontinuitySequence = 0;
@@ -615,6 +683,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long segmentByteRangeLength = C.LENGTH_UNSET;
     long segmentMediaSequence = 0;
     boolean hasGapTag = false;
+    long partStartTimeUs = 0;
+    long partByteRangeOffset = 0;
 
     DrmInitData playlistProtectionSchemes = null;
     String fullSegmentEncryptionKeyUri = null;
@@ -666,6 +736,11 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 fullSegmentEncryptionIV);
         segmentByteRangeOffset = 0;
         segmentByteRangeLength = C.LENGTH_UNSET;
+      } else if (line.startsWith(TAG_SERVER_CONTROL)) {
+        serverControl = parseServerControl(line);
+      } else if (line.startsWith(TAG_PART_INF)) {
+        partTargetDurationUs =
+            (long) (parseDoubleAttr(line, REGEX_PART_TARGET_DURATION) * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
         targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
@@ -674,6 +749,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.startsWith(TAG_VERSION)) {
         version = parseIntAttr(line, REGEX_VERSION);
       } else if (line.startsWith(TAG_DEFINE)) {
+        lastMediaDurationLine = null;
         String importName = parseOptionalStringAttr(line, REGEX_IMPORT, variableDefinitions);
         if (importName != null) {
           String value = masterPlaylist.variableDefinitions.get(importName);
@@ -688,9 +764,15 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               parseStringAttr(line, REGEX_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        if (!line.equals(lastMediaDurationLine)) {
+          lastMediaDurationUs =
+              (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
+          lastMediaTitle =
+              parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+          lastMediaDurationLine = line;
+        }
+        segmentDurationUs = lastMediaDurationUs;
+        segmentTitle = lastMediaTitle;
       } else if (line.startsWith(TAG_KEY)) {
         String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
         String keyFormat =
@@ -745,15 +827,143 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasIndependentSegmentsTag = true;
       } else if (line.equals(TAG_ENDLIST)) {
         hasEndTag = true;
-      } else if (!line.startsWith("#")) {
-        String segmentEncryptionIV;
-        if (fullSegmentEncryptionKeyUri == null) {
-          segmentEncryptionIV = null;
-        } else if (fullSegmentEncryptionIV != null) {
-          segmentEncryptionIV = fullSegmentEncryptionIV;
+      } else if (line.startsWith(TAG_SKIP)) {
+        int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
+        if (!segments.isEmpty()) {
+          throw new ParserException("Unexpected " + TAG_SKIP + " after media segments.");
+        }
+        if (previousMediaPlaylist == null) {
+          throw new DeltaUpdateException();
+        }
+        int startIndex = (int) (mediaSequence - previousMediaPlaylist.mediaSequence);
+        int endIndex = startIndex + skippedSegmentCount;
+        if (startIndex < 0 || endIndex > previousMediaPlaylist.segments.size()) {
+          throw new DeltaUpdateException();
+        }
+        // The skipped segments are taken from the previous snapshot, along with the state that
+        // applies to the segments that follow them.
+        for (int i = startIndex; i < endIndex; i++) {
+          Segment segment = previousMediaPlaylist.segments.get(i);
+          segment =
+              segment.copyWithRelativePosition(
+                  previousMediaPlaylist.discontinuitySequence
+                      + segment.relativeDiscontinuitySequence
+                      - playlistDiscontinuitySequence,
+                  segmentStartTimeUs);
+          segments.add(segment);
+          segmentStartTimeUs += segment.durationUs;
+          partStartTimeUs = segmentStartTimeUs;
+          if (segment.byterangeLength != C.LENGTH_UNSET) {
+            segmentByteRangeOffset = segment.byterangeOffset + segment.byterangeLength;
+          }
+          relativeDiscontinuitySequence = segment.relativeDiscontinuitySequence;
+          initializationSegment = segment.initializationSegment;
+          cachedDrmInitData = segment.drmInitData;
+          fullSegmentEncryptionKeyUri = segment.fullSegmentEncryptionKeyUri;
+          if (segment.encryptionIV == null
+              || !segment.encryptionIV.equals(Long.toHexString(segmentMediaSequence))) {
+            fullSegmentEncryptionIV = segment.encryptionIV;
+          }
+          segmentMediaSequence++;
+        }
+        if (playlistProtectionSchemes == null && cachedDrmInitData != null) {
+          playlistProtectionSchemes = previousMediaPlaylist.protectionSchemes;
+        }
+        if (previousMediaPlaylist.hasProgramDateTime && playlistStartTimeUs == 0) {
+          // The #EXT-X-PROGRAM-DATE-TIME tags of skipped segments aren't repeated.
+          playlistStartTimeUs =
+              previousMediaPlaylist.startTimeUs
+                  + previousMediaPlaylist.segments.get(startIndex).relativeStartTimeUs;
+        }
+      } else if (line.startsWith(TAG_PART)) {
+        // Parts use the media sequence number of the segment they belong to. See RFC 8216bis,
+        // Section 5.2.
+        @Nullable
+        String partEncryptionIV =
+            getSegmentEncryptionIV(
+                segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
+        if (cachedDrmInitData == null && !currentSchemeDatas.isEmpty()) {
+          SchemeData[] schemeDatas = currentSchemeDatas.values().toArray(new SchemeData[0]);
+          cachedDrmInitData = new DrmInitData(encryptionScheme, schemeDatas);
+          if (playlistProtectionSchemes == null) {
+            playlistProtectionSchemes = getPlaylistProtectionSchemes(encryptionScheme, schemeDatas);
+          }
+        }
+
+        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        long partDurationUs =
+            (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
+        long partByteRangeLength = C.LENGTH_UNSET;
+        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        if (byteRange != null) {
+          String[] splitByteRange = byteRange.split("@");
+          partByteRangeLength = Long.parseLong(splitByteRange[0]);
+          if (splitByteRange.length > 1) {
+            partByteRangeOffset = Long.parseLong(splitByteRange[1]);
+          }
         } else {
-          segmentEncryptionIV = Long.toHexString(segmentMediaSequence);
+          partByteRangeOffset = 0;
         }
+        trailingParts.add(
+            new Part(
+                url,
+                initializationSegment,
+                partDurationUs,
+                relativeDiscontinuitySequence,
+                partStartTimeUs,
+                cachedDrmInitData,
+                fullSegmentEncryptionKeyUri,
+                partEncryptionIV,
+                partByteRangeOffset,
+                partByteRangeLength,
+                /* hasGapTag= */ parseOptionalBooleanAttribute(line, REGEX_GAP, false),
+                /* isIndependent= */ parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, false),
+                /* isPreload= */ false));
+        partStartTimeUs += partDurationUs;
+        if (partByteRangeLength != C.LENGTH_UNSET) {
+          partByteRangeOffset += partByteRangeLength;
+        }
+      } else if (line.startsWith(TAG_PRELOAD_HINT)) {
+        if (preloadPart == null
+            && TYPE_PART.equals(
+                parseStringAttr(line, REGEX_PRELOAD_HINT_TYPE, variableDefinitions))) {
+          // Preload hints for initialization sections are ignored, since they're loaded with the
+          // first part that references them.
+          @Nullable
+          String partEncryptionIV =
+              getSegmentEncryptionIV(
+                  segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
+          if (cachedDrmInitData == null && !currentSchemeDatas.isEmpty()) {
+            SchemeData[] schemeDatas = currentSchemeDatas.values().toArray(new SchemeData[0]);
+            cachedDrmInitData = new DrmInitData(encryptionScheme, schemeDatas);
+            if (playlistProtectionSchemes == null) {
+              playlistProtectionSchemes =
+                  getPlaylistProtectionSchemes(encryptionScheme, schemeDatas);
+            }
+          }
+          preloadPart =
+              new Part(
+                  parseStringAttr(line, REGEX_URI, variableDefinitions),
+                  initializationSegment,
+                  /* durationUs= */ partTargetDurationUs != C.TIME_UNSET ? partTargetDurationUs : 0,
+                  relativeDiscontinuitySequence,
+                  partStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  partEncryptionIV,
+                  parseOptionalLongAttr(line, REGEX_BYTERANGE_START, /* defaultValue= */ 0),
+                  parseOptionalLongAttr(line, REGEX_BYTERANGE_LENGTH, C.LENGTH_UNSET),
+                  /* hasGapTag= */ false,
+                  /* isIndependent= */ false,
+                  /* isPreload= */ true);
+        }
+      } else if (!line.startsWith("#")) {
+        @Nullable
+        Segment previousSegment = getSegment(previousMediaPlaylist, segmentMediaSequence);
+        @Nullable
+        String segmentEncryptionIV =
+            getSegmentEncryptionIV(
+                segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
 
         segmentMediaSequence++;
         if (segmentByteRangeLength == C.LENGTH_UNSET) {
@@ -764,29 +974,64 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           SchemeData[] schemeDatas = currentSchemeDatas.values().toArray(new SchemeData[0]);
           cachedDrmInitData = new DrmInitData(encryptionScheme, schemeDatas);
           if (playlistProtectionSchemes == null) {
-            SchemeData[] playlistSchemeDatas = new SchemeData[schemeDatas.length];
-            for (int i = 0; i < schemeDatas.length; i++) {
-              playlistSchemeDatas[i] = schemeDatas[i].copyWithData(null);
-            }
-            playlistProtectionSchemes = new DrmInitData(encryptionScheme, playlistSchemeDatas);
+            playlistProtectionSchemes = getPlaylistProtectionSchemes(encryptionScheme, schemeDatas);
           }
         }
 
-        segments.add(
-            new Segment(
-                replaceVariableReferences(line, variableDefinitions),
-                initializationSegment,
-                segmentTitle,
-                segmentDurationUs,
-                relativeDiscontinuitySequence,
-                segmentStartTimeUs,
-                cachedDrmInitData,
-                fullSegmentEncryptionKeyUri,
-                segmentEncryptionIV,
-                segmentByteRangeOffset,
-                segmentByteRangeLength,
-                hasGapTag));
+        String segmentUrl = replaceVariableReferences(line, variableDefinitions);
+        Segment segment;
+        if (previousSegment != null) {
+          // Share instances with the previous snapshot, so that unchanged segments can be
+          // compared by reference.
+          if (initializationSegment != previousSegment.initializationSegment
+              && isSameInitializationSegment(
+                  initializationSegment, previousSegment.initializationSegment)) {
+            initializationSegment = previousSegment.initializationSegment;
+          }
+          if (cachedDrmInitData != previousSegment.drmInitData
+              && Util.areEqual(cachedDrmInitData, previousSegment.drmInitData)) {
+            cachedDrmInitData = previousSegment.drmInitData;
+          }
+        }
+        if (previousSegment != null
+            && trailingParts.isEmpty()
+            && previousSegment.parts.isEmpty()
+            && previousSegment.initializationSegment == initializationSegment
+            && previousSegment.drmInitData == cachedDrmInitData
+            && previousSegment.durationUs == segmentDurationUs
+            && previousSegment.byterangeOffset == segmentByteRangeOffset
+            && previousSegment.byterangeLength == segmentByteRangeLength
+            && previousSegment.hasGapTag == hasGapTag
+            && previousSegment.url.equals(segmentUrl)
+            && previousSegment.title.equals(segmentTitle)
+            && Util.areEqual(
+                previousSegment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+            && Util.areEqual(previousSegment.encryptionIV, segmentEncryptionIV)) {
+          segment =
+              previousSegment.copyWithRelativePosition(
+                  relativeDiscontinuitySequence, segmentStartTimeUs);
+        } else {
+          segment =
+              new Segment(
+                  segmentUrl,
+                  initializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag,
+                  trailingParts);
+          trailingParts = new ArrayList<>();
+        }
+        segments.add(segment);
         segmentStartTimeUs += segmentDurationUs;
+        partStartTimeUs = segmentStartTimeUs;
+        partByteRangeOffset = 0;
         segmentDurationUs = 0;
         segmentTitle = "";
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
@@ -796,6 +1041,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasGapTag = false;
       }
     }
+    if (preloadPart != null) {
+      trailingParts.add(preloadPart);
+    }
     return new HlsMediaPlaylist(
         playlistType,
         baseUri,
@@ -807,11 +1055,49 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegmentsTag,
         hasEndTag,
         /* hasProgramDateTime= */ playlistStartTimeUs != 0,
         playlistProtectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
+  }
+
+  private static ServerControl parseServerControl(String line) {
+    return new ServerControl(
+        /* skipUntilUs= */ parseOptionalTimeAttrUs(line, REGEX_CAN_SKIP_UNTIL),
+        /* holdBackUs= */ parseOptionalTimeAttrUs(line, REGEX_HOLD_BACK),
+        /* partHoldBackUs= */ parseOptionalTimeAttrUs(line, REGEX_PART_HOLD_BACK),
+        /* canBlockReload= */ parseOptionalBooleanAttribute(line, REGEX_CAN_BLOCK_RELOAD, false));
+  }
+
+  /**
+   * Returns the encryption IV of a segment or part, or null if it's not fully encrypted. If the
+   * #EXT-X-KEY tag doesn't declare an IV, the media sequence number of the segment is used.
+   */
+  @Nullable
+  private static String getSegmentEncryptionIV(
+      long segmentMediaSequence,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String fullSegmentEncryptionIV) {
+    if (fullSegmentEncryptionKeyUri == null) {
+      return null;
+    } else if (fullSegmentEncryptionIV != null) {
+      return fullSegmentEncryptionIV;
+    }
+    return Long.toHexString(segmentMediaSequence);
+  }
+
+  /** Returns a copy of the given scheme data without their data, for the playlist's schemes. */
+  private static DrmInitData getPlaylistProtectionSchemes(
+      @Nullable String encryptionScheme, SchemeData[] schemeDatas) {
+    SchemeData[] playlistSchemeDatas = new SchemeData[schemeDatas.length];
+    for (int i = 0; i < schemeDatas.length; i++) {
+      playlistSchemeDatas[i] = schemeDatas[i].copyWithData(null);
+    }
+    return new DrmInitData(encryptionScheme, playlistSchemeDatas);
   }
 
   @C.SelectionFlags
@@ -898,10 +1184,30 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return Long.parseLong(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
+  private static long parseOptionalLongAttr(String line, Pattern pattern, long defaultValue) {
+    Matcher matcher = pattern.matcher(line);
+    if (matcher.find()) {
+      return Long.parseLong(matcher.group(1));
+    }
+    return defaultValue;
+  }
+
   private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
     return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
+  /**
+   * Parses an optional attribute whose value is a duration in seconds, returning it in
+   * microseconds, or {@link C#TIME_UNSET} if the attribute isn't present.
+   */
+  private static long parseOptionalTimeAttrUs(String line, Pattern pattern) {
+    Matcher matcher = pattern.matcher(line);
+    if (matcher.find()) {
+      return (long) (Double.parseDouble(matcher.group(1)) * C.MICROS_PER_SECOND);
+    }
+    return C.TIME_UNSET;
+  }
+
   private static String parseStringAttr(
       String line, Pattern pattern, Map<String, String> variableDefinitions)
       throws ParserException {
@@ -930,8 +1236,38 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         : replaceVariableReferences(value, variableDefinitions);
   }
 
+  @Nullable
+  private static Segment getSegment(@Nullable HlsMediaPlaylist playlist, long mediaSequence) {
+    if (playlist == null) {
+      return null;
+    }
+    long segmentIndex = mediaSequence - playlist.mediaSequence;
+    return segmentIndex >= 0 && segmentIndex < playlist.segments.size()
+        ? playlist.segments.get((int) segmentIndex)
+        : null;
+  }
+
+  private static boolean isSameInitializationSegment(
+      @Nullable Segment initializationSegment, @Nullable Segment otherInitializationSegment) {
+    if (initializationSegment == null || otherInitializationSegment == null) {
+      return initializationSegment == otherInitializationSegment;
+    }
+    return initializationSegment.url.equals(otherInitializationSegment.url)
+        && initializationSegment.byterangeOffset == otherInitializationSegment.byterangeOffset
+        && initializationSegment.byterangeLength == otherInitializationSegment.byterangeLength
+        && Util.areEqual(
+            initializationSegment.fullSegmentEncryptionKeyUri,
+            otherInitializationSegment.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(
+            initializationSegment.encryptionIV, otherInitializationSegment.encryptionIV);
+  }
+
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
+    if (variableDefinitions.isEmpty()) {
+      // Undefined references are left unchanged, so there's nothing to replace.
+      return string;
+    }
     Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
     // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
     StringBuffer stringWithReplacements = new StringBuffer();
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.source.hls.playlist;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 
 /** Factory for {@link HlsPlaylist} parsers. */
@@ -35,4 +36,21 @@ public interface HlsPlaylistParserFactory {
    * @return A parser for HLS playlists.
    */
   ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser(HlsMasterPlaylist masterPlaylist);
+
+  /**
+   * Returns a playlist parser for refreshes of a media playlist that was referenced by the given
+   * {@link HlsMasterPlaylist}. The returned parser may reuse parts of {@code
+   * previousMediaPlaylist} in the playlists it parses.
+   *
+   * <p>The default implementation returns {@link #createPlaylistParser(HlsMasterPlaylist)}.
+   *
+   * @param masterPlaylist The master playlist that referenced any parsed media playlists.
+   * @param previousMediaPlaylist The previously loaded snapshot of the media playlist, or null if
+   *     it hasn't been loaded before.
+   * @return A parser for HLS playlists.
+   */
+  default ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser(
+      HlsMasterPlaylist masterPlaylist, @Nullable HlsMediaPlaylist previousMediaPlaylist) {
+    return createPlaylistParser(masterPlaylist);
+  }
 }
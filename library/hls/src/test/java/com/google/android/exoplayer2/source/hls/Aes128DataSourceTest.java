@@ -20,13 +20,19 @@ import static com.google.common.truth.Truth.assertThat;
 import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -75,12 +81,89 @@ public class Aes128DataSourceTest {
     assertThat(upstream.closedCalled).isTrue();
   }
 
+  @Test
+  public void testPipelinedOpenCallsUpstreamThrowingOpen_CloseCallsUpstreamClose()
+      throws IOException {
+    UpstreamDataSource upstream =
+        new UpstreamDataSource() {
+          @Override
+          public long open(DataSpec dataSpec) throws IOException {
+            throw new IOException();
+          }
+        };
+    Aes128DataSource testInstance =
+        new TestAes123DataSource(
+            upstream, new byte[16], new byte[16], /* pipelined= */ true);
+
+    try {
+      testInstance.open(new DataSpec(Uri.parse("http.abc.com/def")));
+    } catch (IOException e) {
+      // Expected.
+    }
+    testInstance.close();
+    assertThat(upstream.closedCalled).isTrue();
+  }
+
+  @Test
+  public void testSerialRead() throws Exception {
+    assertDecryptsCorrectly(/* pipelined= */ false, /* reopen= */ false);
+  }
+
+  @Test
+  public void testPipelinedRead() throws Exception {
+    assertDecryptsCorrectly(/* pipelined= */ true, /* reopen= */ false);
+  }
+
+  @Test
+  public void testPipelinedReadAfterReopen() throws Exception {
+    assertDecryptsCorrectly(/* pipelined= */ true, /* reopen= */ true);
+  }
+
+  /**
+   * Asserts that a source decrypts a segment correctly. If {@code reopen} is true, the source is
+   * first opened and closed after a partial read, so that the second open reuses its state.
+   */
+  private static void assertDecryptsCorrectly(boolean pipelined, boolean reopen)
+      throws Exception {
+    byte[] key = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 1);
+    byte[] iv = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 2);
+    // Larger than several pipeline buffers, and not a multiple of the AES block size.
+    byte[] plaintext = TestUtil.buildTestData(/* length= */ 300_001);
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    byte[] ciphertext = cipher.doFinal(plaintext);
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    FakeDataSet.FakeData fakeData = fakeDataSet.newData("test://segment");
+    for (int i = 0; i < ciphertext.length; i += 10_000) {
+      fakeData.appendReadData(
+          Arrays.copyOfRange(ciphertext, i, Math.min(i + 10_000, ciphertext.length)));
+    }
+    Aes128DataSource testInstance =
+        new TestAes123DataSource(new FakeDataSource(fakeDataSet), key, iv, pipelined);
+
+    if (reopen) {
+      testInstance.open(new DataSpec(Uri.parse("test://segment")));
+      testInstance.read(new byte[1000], /* offset= */ 0, /* readLength= */ 1000);
+      testInstance.close();
+    }
+    testInstance.open(new DataSpec(Uri.parse("test://segment")));
+    byte[] decrypted = TestUtil.readToEnd(testInstance);
+    testInstance.close();
+
+    assertThat(decrypted).isEqualTo(plaintext);
+  }
+
   private static class TestAes123DataSource extends Aes128DataSource {
 
     public TestAes123DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
       super(upstream, encryptionKey, encryptionIv);
     }
 
+    public TestAes123DataSource(
+        DataSource upstream, byte[] encryptionKey, byte[] encryptionIv, boolean pipelined) {
+      super(upstream, encryptionKey, encryptionIv, pipelined);
+    }
+
     @Override
     protected Cipher getCipherInstance() throws NoSuchPaddingException, NoSuchAlgorithmException {
       try {
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.net.Uri;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.hls.HlsChunkSource.HlsChunkHolder;
+import com.google.android.exoplayer2.source.hls.HlsChunkSource.SegmentBaseHolder;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link HlsChunkSource}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class HlsChunkSourceTest {
+
+  private static final long TIMEOUT_MS = 10000;
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/test.m3u8");
+
+  private static final String PLAYLIST_WITH_PARTS =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-PART-INF:PART-TARGET=2.0\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4.0,\n"
+          + "segment10.ts\n"
+          + "#EXT-X-PART:DURATION=2.0,INDEPENDENT=YES,URI=\"part11.0.ts\"\n"
+          + "#EXT-X-PART:DURATION=2.0,URI=\"part11.1.ts\"\n"
+          + "#EXTINF:4.0,\n"
+          + "segment11.ts\n"
+          + "#EXT-X-PART:DURATION=2.0,INDEPENDENT=YES,URI=\"part12.0.ts\"\n";
+
+  private static final String PLAYLIST_WITH_KEYS =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-MEDIA-SEQUENCE:0\n"
+          + "#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key0\"\n"
+          + "#EXTINF:4.0,\n"
+          + "segment0.ts\n"
+          + "#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key1\"\n"
+          + "#EXTINF:4.0,\n"
+          + "segment1.ts\n"
+          + "#EXT-X-ENDLIST\n";
+
+  private static final String PLAYLIST_WITH_DROPPED_PARTS =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-PART-INF:PART-TARGET=2.0\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4.0,\n"
+          + "segment10.ts\n"
+          + "#EXTINF:4.0,\n"
+          + "segment11.ts\n"
+          + "#EXTINF:4.0,\n"
+          + "segment12.ts\n";
+
+  @Test
+  public void getNextSegmentHolder_withListedPart_returnsPart() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_PARTS);
+
+    SegmentBaseHolder holder =
+        HlsChunkSource.getNextSegmentHolder(playlist, /* mediaSequence= */ 11, /* partIndex= */ 1);
+
+    assertThat(holder.segmentBase.url).isEqualTo("part11.1.ts");
+    assertThat(holder.mediaSequence).isEqualTo(11);
+    assertThat(holder.partIndex).isEqualTo(1);
+  }
+
+  @Test
+  public void getNextSegmentHolder_pastLastPartOfCompletedSegment_returnsNextSegment()
+      throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_PARTS);
+
+    SegmentBaseHolder holder =
+        HlsChunkSource.getNextSegmentHolder(playlist, /* mediaSequence= */ 11, /* partIndex= */ 2);
+
+    // Segment 11 is the last complete segment, so loading continues with the trailing parts.
+    assertThat(holder.segmentBase.url).isEqualTo("part12.0.ts");
+    assertThat(holder.mediaSequence).isEqualTo(12);
+    assertThat(holder.partIndex).isEqualTo(0);
+  }
+
+  @Test
+  public void getNextSegmentHolder_atLiveEdge_returnsTrailingPart() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_PARTS);
+
+    SegmentBaseHolder holder =
+        HlsChunkSource.getNextSegmentHolder(playlist, /* mediaSequence= */ 12, /* partIndex= */ 0);
+
+    assertThat(holder.segmentBase.url).isEqualTo("part12.0.ts");
+    assertThat(holder.mediaSequence).isEqualTo(12);
+    assertThat(holder.partIndex).isEqualTo(0);
+    assertThat(
+            HlsChunkSource.getNextSegmentHolder(
+                playlist, /* mediaSequence= */ 12, /* partIndex= */ 1))
+        .isNull();
+    assertThat(
+            HlsChunkSource.getNextSegmentHolder(
+                playlist, /* mediaSequence= */ 13, /* partIndex= */ C.INDEX_UNSET))
+        .isNull();
+  }
+
+  @Test
+  public void getNextSegmentHolder_withDroppedPartsOfPartiallyLoadedSegment_returnsFullSegment()
+      throws IOException {
+    HlsMediaPlaylist playlistWithParts = parseMediaPlaylist(PLAYLIST_WITH_PARTS);
+    HlsMediaPlaylist playlistWithDroppedParts = parseMediaPlaylist(PLAYLIST_WITH_DROPPED_PARTS);
+
+    // Part 0 of segment 12 was loaded from the first snapshot, after which segment 12 completed
+    // and the next snapshot no longer lists its parts.
+    SegmentBaseHolder partHolder =
+        HlsChunkSource.getNextSegmentHolder(
+            playlistWithParts, /* mediaSequence= */ 12, /* partIndex= */ 0);
+    SegmentBaseHolder holder =
+        HlsChunkSource.getNextSegmentHolder(
+            playlistWithDroppedParts, /* mediaSequence= */ 12, /* partIndex= */ 1);
+
+    assertThat(partHolder.segmentBase.url).isEqualTo("part12.0.ts");
+    assertThat(holder.segmentBase.url).isEqualTo("segment12.ts");
+    assertThat(holder.mediaSequence).isEqualTo(12);
+    assertThat(holder.partIndex).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void getNextChunk_prefetchesKeyOfNextSegmentOnce() throws Exception {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_KEYS);
+    FakeDataSet keyDataSet =
+        new FakeDataSet()
+            .setRandomData("https://example.com/key0", /* length= */ 16)
+            .setRandomData("https://example.com/key1", /* length= */ 16);
+    FakeDataSource encryptionDataSource = new FakeDataSource(keyDataSet);
+    FakeDataSource keyPrefetchDataSource = new FakeDataSource(keyDataSet);
+    HlsDataSourceFactory dataSourceFactory = mock(HlsDataSourceFactory.class);
+    when(dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA)).thenReturn(new FakeDataSource());
+    when(dataSourceFactory.createDataSource(C.DATA_TYPE_DRM))
+        .thenReturn(encryptionDataSource, keyPrefetchDataSource);
+    HlsPlaylistTracker playlistTracker = mock(HlsPlaylistTracker.class);
+    when(playlistTracker.isSnapshotValid(any())).thenReturn(true);
+    when(playlistTracker.getPlaylistSnapshot(any(), anyBoolean())).thenReturn(playlist);
+    when(playlistTracker.getInitialStartTimeUs()).thenReturn(playlist.startTimeUs);
+    HlsChunkSource chunkSource =
+        new HlsChunkSource(
+            mock(HlsExtractorFactory.class),
+            playlistTracker,
+            new Uri[] {PLAYLIST_URI},
+            new Format[] {
+              Format.createContainerFormat(
+                  /* id= */ null,
+                  /* label= */ null,
+                  MimeTypes.APPLICATION_M3U8,
+                  /* sampleMimeType= */ null,
+                  /* codecs= */ null,
+                  /* bitrate= */ Format.NO_VALUE,
+                  /* selectionFlags= */ 0,
+                  /* roleFlags= */ 0,
+                  /* language= */ null)
+            },
+            dataSourceFactory,
+            /* mediaTransferListener= */ null,
+            new TimestampAdjusterProvider(),
+            /* muxedCaptionFormats= */ null,
+            /* usePipelinedDecryption= */ false);
+    HlsChunkHolder out = new HlsChunkHolder();
+
+    // The key of the first segment is loaded before the segment.
+    getNextChunk(chunkSource, /* previous= */ null, out);
+    assertThat(out.chunk.dataSpec.uri.toString()).isEqualTo("https://example.com/key0");
+    out.chunk.load();
+    chunkSource.onChunkLoadCompleted(out.chunk);
+    // Creating the chunk for the first segment starts loading the key of the second.
+    getNextChunk(chunkSource, /* previous= */ null, out);
+    HlsMediaChunk firstChunk = (HlsMediaChunk) out.chunk;
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    do {
+      shadowOf(Looper.getMainLooper()).idle();
+      getNextChunk(chunkSource, firstChunk, out);
+    } while (!(out.chunk instanceof HlsMediaChunk) && System.currentTimeMillis() < deadlineMs);
+    chunkSource.release();
+
+    // The second segment can be loaded straight away, using the prefetched key.
+    assertThat(out.chunk).isInstanceOf(HlsMediaChunk.class);
+    assertThat(((HlsMediaChunk) out.chunk).chunkIndex).isEqualTo(1L);
+    DataSpec[] prefetchedDataSpecs = keyPrefetchDataSource.getAndClearOpenedDataSpecs();
+    assertThat(prefetchedDataSpecs).hasLength(1);
+    assertThat(prefetchedDataSpecs[0].uri.toString()).isEqualTo("https://example.com/key1");
+    DataSpec[] loadedDataSpecs = encryptionDataSource.getAndClearOpenedDataSpecs();
+    assertThat(loadedDataSpecs).hasLength(1);
+    assertThat(loadedDataSpecs[0].uri.toString()).isEqualTo("https://example.com/key0");
+  }
+
+  private static void getNextChunk(
+      HlsChunkSource chunkSource, @Nullable HlsMediaChunk previous, HlsChunkHolder out) {
+    out.clear();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ previous == null ? 0 : previous.endTimeUs,
+        previous == null ? Collections.emptyList() : Collections.singletonList(previous),
+        /* allowEndOfStream= */ true,
+        out);
+  }
+
+  private static HlsMediaPlaylist parseMediaPlaylist(String playlistString) throws IOException {
+    return (HlsMediaPlaylist)
+        new HlsPlaylistParser()
+            .parse(PLAYLIST_URI, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+  }
+}
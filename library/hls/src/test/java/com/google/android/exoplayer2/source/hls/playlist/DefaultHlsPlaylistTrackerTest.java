@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DefaultHlsPlaylistTracker}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultHlsPlaylistTrackerTest {
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/test.m3u8");
+
+  private static final String PLAYLIST_WITH_BLOCKING_RELOAD =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=3.0\n"
+          + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4.0,\n"
+          + "segment10.ts\n"
+          + "#EXTINF:4.0,\n"
+          + "segment11.ts\n"
+          + "#EXT-X-PART:DURATION=1.0,INDEPENDENT=YES,URI=\"part12.0.ts\"\n"
+          + "#EXT-X-PART:DURATION=1.0,URI=\"part12.1.ts\"\n"
+          + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part12.2.ts\"\n";
+
+  private static final String PLAYLIST_WITHOUT_BLOCKING_RELOAD =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4.0,\n"
+          + "segment10.ts\n";
+
+  @Test
+  public void getReloadUri_withBlockingReload_requestsNextPart() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_BLOCKING_RELOAD);
+
+    Uri uri =
+        DefaultHlsPlaylistTracker.getReloadUri(
+            PLAYLIST_URI, playlist, /* requestDeltaUpdate= */ false);
+
+    // The preload hint is not counted, as it's the part that is being requested.
+    assertThat(uri.getQueryParameter("_HLS_msn")).isEqualTo("12");
+    assertThat(uri.getQueryParameter("_HLS_part")).isEqualTo("2");
+    assertThat(uri.getQueryParameter("_HLS_skip")).isNull();
+  }
+
+  @Test
+  public void getReloadUri_withBlockingReloadAndDeltaUpdate_requestsSkip() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_BLOCKING_RELOAD);
+
+    Uri uri =
+        DefaultHlsPlaylistTracker.getReloadUri(
+            PLAYLIST_URI, playlist, /* requestDeltaUpdate= */ true);
+
+    assertThat(uri.getQueryParameter("_HLS_skip")).isEqualTo("YES");
+    assertThat(uri.getQueryParameter("_HLS_msn")).isEqualTo("12");
+  }
+
+  @Test
+  public void getReloadUri_withoutBlockingReload_returnsPlaylistUri() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITHOUT_BLOCKING_RELOAD);
+
+    assertThat(
+            DefaultHlsPlaylistTracker.getReloadUri(
+                PLAYLIST_URI, playlist, /* requestDeltaUpdate= */ false))
+        .isEqualTo(PLAYLIST_URI);
+    assertThat(
+            DefaultHlsPlaylistTracker.getReloadUri(
+                PLAYLIST_URI, /* playlistSnapshot= */ null, /* requestDeltaUpdate= */ false))
+        .isEqualTo(PLAYLIST_URI);
+  }
+
+  @Test
+  public void getReloadUri_withEndTag_returnsPlaylistUri() throws IOException {
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(PLAYLIST_WITH_BLOCKING_RELOAD + "#EXT-X-ENDLIST\n");
+
+    assertThat(
+            DefaultHlsPlaylistTracker.getReloadUri(
+                PLAYLIST_URI, playlist, /* requestDeltaUpdate= */ false))
+        .isEqualTo(PLAYLIST_URI);
+  }
+
+  @Test
+  public void getRefreshDelayUs_withBlockingReload_reloadsImmediatelyAfterChange()
+      throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITH_BLOCKING_RELOAD);
+
+    assertThat(DefaultHlsPlaylistTracker.getRefreshDelayUs(playlist, /* snapshotChanged= */ true))
+        .isEqualTo(0);
+    assertThat(DefaultHlsPlaylistTracker.getRefreshDelayUs(playlist, /* snapshotChanged= */ false))
+        .isEqualTo(500000);
+  }
+
+  @Test
+  public void getRefreshDelayUs_withoutBlockingReload_usesTargetDuration() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(PLAYLIST_WITHOUT_BLOCKING_RELOAD);
+
+    assertThat(DefaultHlsPlaylistTracker.getRefreshDelayUs(playlist, /* snapshotChanged= */ true))
+        .isEqualTo(4000000);
+    assertThat(DefaultHlsPlaylistTracker.getRefreshDelayUs(playlist, /* snapshotChanged= */ false))
+        .isEqualTo(2000000);
+  }
+
+  private static HlsMediaPlaylist parseMediaPlaylist(String playlistString) throws IOException {
+    return (HlsMediaPlaylist)
+        new HlsPlaylistParser()
+            .parse(PLAYLIST_URI, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+  }
+}
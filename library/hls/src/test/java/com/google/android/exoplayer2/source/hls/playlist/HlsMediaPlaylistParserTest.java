@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
@@ -528,4 +529,355 @@ public class HlsMediaPlaylistParserTest {
       assertThat(playlist.segments.get(i - 1).url).isEqualTo("long_path" + i + ".ts");
     }
   }
+
+  @Test
+  public void testParseWithPreviousPlaylist_reusesUnchangedSegments() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + "#EXTINF:5.005,\n"
+                + "10.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n",
+            /* previousPlaylist= */ null);
+
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + "#EXTINF:5.005,\n"
+                + "10.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "12.ts\n",
+            previousPlaylist);
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(2).url).isEqualTo("12.ts");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(10010000);
+    assertThat(playlist.segments.get(2).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+  }
+
+  @Test
+  public void testParseWithPreviousPlaylist_slidingWindow_updatesRelativePositions()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:5.005,\n"
+                + "10.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "12.ts\n",
+            /* previousPlaylist= */ null);
+
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:11\n"
+                + "#EXT-X-DISCONTINUITY-SEQUENCE:1\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "12.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "13.ts\n",
+            previousPlaylist);
+
+    assertThat(playlist.segments).hasSize(3);
+    Segment segment = playlist.segments.get(1);
+    assertThat(segment.url).isEqualTo("12.ts");
+    assertThat(segment.relativeStartTimeUs).isEqualTo(5005000);
+    assertThat(segment.relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(segment.url).isSameInstanceAs(previousPlaylist.segments.get(2).url);
+  }
+
+  @Test
+  public void testParseWithPreviousPlaylist_doesNotReuseChangedSegments() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:5.005,\n"
+                + "10.ts\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n",
+            /* previousPlaylist= */ null);
+
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:5.005,\n"
+                + "10-replaced.ts\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\"\n"
+                + "#EXTINF:5.005,\n"
+                + "11.ts\n",
+            previousPlaylist);
+
+    assertThat(playlist.segments.get(0).url).isEqualTo("10-replaced.ts");
+    assertThat(playlist.segments.get(1)).isNotSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(1).fullSegmentEncryptionKeyUri)
+        .isEqualTo("https://example.com/key");
+  }
+
+  @Test
+  public void testParseServerControl() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,CAN-SKIP-UNTIL=24.0,"
+                + "HOLD-BACK=12.0,PART-HOLD-BACK=1.5\n"
+                + "#EXT-X-MEDIA-SEQUENCE:266\n"
+                + "#EXTINF:4.00008,\n"
+                + "fileSequence266.mp4\n",
+            /* previousPlaylist= */ null);
+
+    assertThat(playlist.serverControl.canBlockReload).isTrue();
+    assertThat(playlist.serverControl.skipUntilUs).isEqualTo(24000000);
+    assertThat(playlist.serverControl.holdBackUs).isEqualTo(12000000);
+    assertThat(playlist.serverControl.partHoldBackUs).isEqualTo(1500000);
+  }
+
+  @Test
+  public void testParseServerControl_withoutTag_usesDefaults() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXTINF:4.00008,\n"
+                + "fileSequence0.mp4\n",
+            /* previousPlaylist= */ null);
+
+    assertThat(playlist.serverControl).isSameInstanceAs(HlsMediaPlaylist.ServerControl.DEFAULT);
+    assertThat(playlist.partTargetDurationUs).isEqualTo(C.TIME_UNSET);
+    assertThat(playlist.trailingParts).isEmpty();
+  }
+
+  @Test
+  public void testParseParts() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+                + "#EXT-X-MEDIA-SEQUENCE:266\n"
+                + "#EXT-X-PART:DURATION=2.0,INDEPENDENT=YES,URI=\"part266.0.ts\"\n"
+                + "#EXT-X-PART:DURATION=2.0,URI=\"part266.1.ts\"\n"
+                + "#EXTINF:4.0,\n"
+                + "fileSequence266.ts\n"
+                + "#EXT-X-PART:DURATION=1.0,URI=\"fileSequence267.ts\",BYTERANGE=\"1000@0\"\n"
+                + "#EXT-X-PART:DURATION=1.0,URI=\"fileSequence267.ts\",BYTERANGE=\"2000\"\n",
+            /* previousPlaylist= */ null);
+
+    assertThat(playlist.partTargetDurationUs).isEqualTo(1000000);
+    assertThat(playlist.segments).hasSize(1);
+    List<HlsMediaPlaylist.Part> parts = playlist.segments.get(0).parts;
+    assertThat(parts).hasSize(2);
+    assertThat(parts.get(0).url).isEqualTo("part266.0.ts");
+    assertThat(parts.get(0).isIndependent).isTrue();
+    assertThat(parts.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(parts.get(1).isIndependent).isFalse();
+    assertThat(parts.get(1).relativeStartTimeUs).isEqualTo(2000000);
+    assertThat(playlist.trailingParts).hasSize(2);
+    assertThat(playlist.trailingParts.get(0).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(playlist.trailingParts.get(0).byterangeOffset).isEqualTo(0);
+    assertThat(playlist.trailingParts.get(0).byterangeLength).isEqualTo(1000);
+    assertThat(playlist.trailingParts.get(1).byterangeOffset).isEqualTo(1000);
+    assertThat(playlist.trailingParts.get(1).byterangeLength).isEqualTo(2000);
+    assertThat(playlist.durationUs).isEqualTo(6000000);
+  }
+
+  @Test
+  public void testParsePreloadHint() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+                + "#EXTINF:4.0,\n"
+                + "fileSequence0.ts\n"
+                + "#EXT-X-PART:DURATION=1.0,INDEPENDENT=YES,URI=\"part1.0.ts\"\n"
+                + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part1.1.ts\",BYTERANGE-START=10\n",
+            /* previousPlaylist= */ null);
+
+    assertThat(playlist.trailingParts).hasSize(2);
+    HlsMediaPlaylist.Part preloadPart = playlist.trailingParts.get(1);
+    assertThat(preloadPart.isPreload).isTrue();
+    assertThat(preloadPart.url).isEqualTo("part1.1.ts");
+    assertThat(preloadPart.relativeStartTimeUs).isEqualTo(5000000);
+    assertThat(preloadPart.durationUs).isEqualTo(1000000);
+    assertThat(preloadPart.byterangeOffset).isEqualTo(10);
+    assertThat(preloadPart.byterangeLength).isEqualTo(C.LENGTH_UNSET);
+    // Preload hints don't count towards the playlist duration.
+    assertThat(playlist.durationUs).isEqualTo(5000000);
+  }
+
+  @Test
+  public void testIsNewerThan_withMoreTrailingParts_returnsTrue() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+            + "#EXTINF:4.0,\n"
+            + "fileSequence0.ts\n"
+            + "#EXT-X-PART:DURATION=1.0,INDEPENDENT=YES,URI=\"part1.0.ts\"\n";
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(playlistUri, playlistString, /* previousPlaylist= */ null);
+    HlsMediaPlaylist newerPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            playlistString + "#EXT-X-PART:DURATION=1.0,URI=\"part1.1.ts\"\n",
+            playlist);
+
+    assertThat(newerPlaylist.isNewerThan(playlist)).isTrue();
+    assertThat(playlist.isNewerThan(newerPlaylist)).isFalse();
+  }
+
+  @Test
+  public void testParseDeltaUpdate_mergesSkippedSegmentsFromPreviousPlaylist() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=12.0\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXT-X-DISCONTINUITY-SEQUENCE:2\n"
+                + "#EXTINF:4.0,\n"
+                + "10.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:4.0,\n"
+                + "11.ts\n"
+                + "#EXTINF:4.0,\n"
+                + "12.ts\n"
+                + "#EXTINF:4.0,\n"
+                + "13.ts\n",
+            /* previousPlaylist= */ null);
+
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=12.0\n"
+                + "#EXT-X-MEDIA-SEQUENCE:11\n"
+                + "#EXT-X-DISCONTINUITY-SEQUENCE:3\n"
+                + "#EXT-X-SKIP:SKIPPED-SEGMENTS=2\n"
+                + "#EXTINF:4.0,\n"
+                + "13.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:4.0,\n"
+                + "14.ts\n",
+            previousPlaylist);
+
+    assertThat(playlist.mediaSequence).isEqualTo(11);
+    assertThat(playlist.segments).hasSize(4);
+    assertThat(playlist.segments.get(0).url).isEqualTo("11.ts");
+    assertThat(playlist.segments.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(playlist.segments.get(0).relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(playlist.segments.get(1).url).isEqualTo("12.ts");
+    assertThat(playlist.segments.get(1).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(playlist.segments.get(2).url).isEqualTo("13.ts");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8000000);
+    assertThat(playlist.segments.get(2).relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(playlist.segments.get(3).url).isEqualTo("14.ts");
+    assertThat(playlist.segments.get(3).relativeStartTimeUs).isEqualTo(12000000);
+    assertThat(playlist.segments.get(3).relativeDiscontinuitySequence).isEqualTo(1);
+    assertThat(playlist.durationUs).isEqualTo(16000000);
+  }
+
+  @Test
+  public void testParseDeltaUpdate_withoutPreviousPlaylist_throwsDeltaUpdateException()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    try {
+      parseMediaPlaylist(
+          playlistUri,
+          "#EXTM3U\n"
+              + "#EXT-X-TARGETDURATION:4\n"
+              + "#EXT-X-MEDIA-SEQUENCE:11\n"
+              + "#EXT-X-SKIP:SKIPPED-SEGMENTS=2\n"
+              + "#EXTINF:4.0,\n"
+              + "13.ts\n",
+          /* previousPlaylist= */ null);
+      fail();
+    } catch (HlsPlaylistParser.DeltaUpdateException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testParseDeltaUpdate_skippingUnknownSegments_throwsDeltaUpdateException()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            playlistUri,
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:4.0,\n"
+                + "10.ts\n",
+            /* previousPlaylist= */ null);
+    try {
+      parseMediaPlaylist(
+          playlistUri,
+          "#EXTM3U\n"
+              + "#EXT-X-TARGETDURATION:4\n"
+              + "#EXT-X-MEDIA-SEQUENCE:10\n"
+              + "#EXT-X-SKIP:SKIPPED-SEGMENTS=3\n"
+              + "#EXTINF:4.0,\n"
+              + "13.ts\n",
+          previousPlaylist);
+      fail();
+    } catch (HlsPlaylistParser.DeltaUpdateException e) {
+      // Expected.
+    }
+  }
+
+  private static HlsMediaPlaylist parseMediaPlaylist(
+      Uri playlistUri, String playlistString, @Nullable HlsMediaPlaylist previousPlaylist)
+      throws IOException {
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+    return (HlsMediaPlaylist)
+        new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousPlaylist)
+            .parse(playlistUri, inputStream);
+  }
 }